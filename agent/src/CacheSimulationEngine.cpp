@@ -2,7 +2,7 @@
 #include <algorithm>
 
 CacheSimulationEngine::CacheSimulationEngine(size_t cacheSize, size_t blockSize, const std::string& policy)
-    : cacheSize(cacheSize), blockSize(blockSize), policy(policy), hits(0), misses(0) {
+    : cacheSize(cacheSize), blockSize(blockSize), policy(policy), hits(0), misses(0), tick(0) {
     numBlocks = cacheSize / blockSize;
     if (numBlocks == 0) numBlocks = 1;
 }
@@ -57,23 +57,26 @@ void CacheSimulationEngine::accessLRU(uint64_t blockAddress) {
 }
 
 void CacheSimulationEngine::accessLFU(uint64_t blockAddress) {
+    tick++;
     auto it = frequencies.find(blockAddress);
     if (it != frequencies.end()) {
         hits++;
-        frequencies[blockAddress]++;
+        it->second.count++;
+        it->second.lastAccess = tick;
     } else {
         misses++;
         if (frequencies.size() >= numBlocks) {
-            // Find LFU
+            // Find LFU; ties go to the least recently accessed block
             auto lfuIt = frequencies.begin();
             for (auto iter = frequencies.begin(); iter != frequencies.end(); ++iter) {
-                if (iter->second < lfuIt->second) {
+                if (iter->second.count < lfuIt->second.count ||
+                    (iter->second.count == lfuIt->second.count && iter->second.lastAccess < lfuIt->second.lastAccess)) {
                     lfuIt = iter;
                 }
             }
             frequencies.erase(lfuIt);
         }
-        frequencies[blockAddress] = 1;
+        frequencies[blockAddress] = LfuEntry{1, tick};
     }
 }
 
@@ -33,8 +33,14 @@ private:
     std::unordered_map<uint64_t, std::list<uint64_t>::iterator> cacheMap;
     std::list<uint64_t> cacheList; // For FIFO and LRU
     
-    // For LFU
-    std::unordered_map<uint64_t, uint32_t> frequencies;
+    // For LFU: access count plus the tick of the last access, so ties on the
+    // count evict the least recently touched block (deterministic across STLs)
+    struct LfuEntry {
+        uint32_t count;
+        uint64_t lastAccess;
+    };
+    std::unordered_map<uint64_t, LfuEntry> frequencies;
+    uint64_t tick;
 
     void accessFIFO(uint64_t blockAddress);
     void accessLRU(uint64_t blockAddress);
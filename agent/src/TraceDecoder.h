@@ -0,0 +1,52 @@
+#ifndef TRACE_DECODER_H
+#define TRACE_DECODER_H
+
+#include <cstddef>
+#include <cstdint>
+
+// Incremental decoder for the SMT1 binary trace (see the frontend's
+// com.smcmap.sim.TraceFormat): a 4-byte "SMT1" header followed by
+// varint(zigzag(address delta)) per access. Bytes can be fed in chunks of
+// any size, so a streamed request body never has to be buffered whole.
+class TraceDecoder {
+public:
+    // Decode one chunk, calling sink(address) for every complete address.
+    // Returns false once the input is known to be malformed.
+    template <typename Sink>
+    bool feed(const uint8_t* data, size_t len, Sink&& sink) {
+        static const uint8_t MAGIC[4] = {'S', 'M', 'T', '1'};
+        for (size_t i = 0; i < len; i++) {
+            uint8_t b = data[i];
+            if (headerSeen < 4) {
+                if (b != MAGIC[headerSeen++]) return false;
+                continue;
+            }
+            acc |= static_cast<uint64_t>(b & 0x7F) << shift;
+            if (b & 0x80) {
+                shift += 7;
+                if (shift > 63) return false;
+            } else {
+                uint64_t delta = (acc >> 1) ^ (~(acc & 1) + 1);
+                prev += delta;
+                sink(prev);
+                count++;
+                acc = 0;
+                shift = 0;
+            }
+        }
+        return true;
+    }
+
+    // True if the stream ended cleanly (header read, no partial varint).
+    bool complete() const { return headerSeen == 4 && shift == 0; }
+    uint64_t decoded() const { return count; }
+
+private:
+    int headerSeen = 0;
+    int shift = 0;
+    uint64_t acc = 0;
+    uint64_t prev = 0;
+    uint64_t count = 0;
+};
+
+#endif // TRACE_DECODER_H
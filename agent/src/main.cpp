@@ -1,20 +1,26 @@
 #include "httplib.h"
 #include <nlohmann/json.hpp>
 #include <iostream>
+#include <chrono>
+#include <thread>
 #include <windows.h>
 #include "MemoryStatsReader.h"
 #include "ProcessMemoryTracker.h"
 #include "CacheSimulationEngine.h"
+#include "TraceDecoder.h"
 
 using json = nlohmann::json;
 
 int main(int argc, char** argv) {
     httplib::Server svr;
+    // Stream events span several segments; do not let Nagle hold the last one back
+    svr.set_tcp_nodelay(true);
 
     // Default simulation engine (global for simplicity)
     CacheSimulationEngine cacheSim(1024 * 1024, 64, "LRU"); // 1MB cache, 64B blocks
 
-    svr.Get("/api/stats", [&](const httplib::Request& req, httplib::Response& res) {
+    // Body of /api/stats, also one event of /api/stats/stream
+    auto buildStats = [&]() {
         // Prepare memory stats
         MemoryStats memStats = MemoryStatsReader::getMemoryStats();
         
@@ -46,12 +52,68 @@ int main(int argc, char** argv) {
                 {"hitRatio", cacheResult.hitRatio}
             }}
         };
+        return response;
+    };
 
-        res.set_content(response.dump(), "application/json");
+    svr.Get("/api/stats", [&](const httplib::Request& req, httplib::Response& res) {
+        res.set_content(buildStats().dump(), "application/json");
         // Add CORS to allow java frontend to fetch easily if needed later through web
         res.set_header("Access-Control-Allow-Origin", "*");
     });
 
+    // Server-Sent Events: one stats sample per interval over a single
+    // connection. Event ids are tick numbers since agent start, shared by all
+    // connections, so a client reconnecting with Last-Event-ID carries on
+    // numbering and sees how many samples it missed. Samples are taken live;
+    // the agent keeps no history to replay. Each open stream holds one server
+    // thread.
+    const auto agentStart = std::chrono::steady_clock::now();
+    const long long streamIntervalMs = 1000;
+    svr.Get("/api/stats/stream", [&](const httplib::Request& req, httplib::Response& res) {
+        long long lastId = -1;
+        if (req.has_header("Last-Event-ID")) {
+            try {
+                lastId = std::stoll(req.get_header_value("Last-Event-ID"));
+            } catch (...) {
+            }
+        }
+        // An id ahead of ours was issued before this agent restarted; the
+        // client expects a lower id in that case, so start it afresh
+        long long startTick = std::chrono::duration_cast<std::chrono::milliseconds>(
+                                  std::chrono::steady_clock::now() - agentStart).count() / streamIntervalMs;
+        if (lastId > startTick)
+            lastId = -1;
+        res.set_header("Cache-Control", "no-cache");
+        res.set_header("Access-Control-Allow-Origin", "*");
+        res.set_chunked_content_provider("text/event-stream",
+            [&, lastId](size_t offset, httplib::DataSink& sink) mutable {
+                auto now = std::chrono::steady_clock::now();
+                long long tick = std::chrono::duration_cast<std::chrono::milliseconds>(now - agentStart).count()
+                                 / streamIntervalMs;
+                if (tick <= lastId) {
+                    // Already seen this tick; wait for the next one, at most one
+                    // interval so a closed client is noticed on the next write
+                    auto next = agentStart + std::chrono::milliseconds((lastId + 1) * streamIntervalMs);
+                    auto cap = now + std::chrono::milliseconds(streamIntervalMs);
+                    std::this_thread::sleep_until(next < cap ? next : cap);
+                    return true;
+                }
+                std::string frame;
+                if (offset == 0)
+                    frame = "retry: " + std::to_string(streamIntervalMs) + "\n\n";
+                json sample = buildStats();
+                sample["seq"] = tick;
+                sample["timestampMs"] = std::chrono::duration_cast<std::chrono::milliseconds>(
+                    std::chrono::system_clock::now().time_since_epoch()).count();
+                frame += "id: " + std::to_string(tick) + "\ndata: " + sample.dump() + "\n\n";
+                if (!sink.write(frame.data(), frame.size()))
+                    return false;
+                lastId = tick;
+                std::this_thread::sleep_until(agentStart + std::chrono::milliseconds((tick + 1) * streamIntervalMs));
+                return true;
+            });
+    });
+
     svr.Post("/api/cache/config", [&](const httplib::Request& req, httplib::Response& res) {
         try {
             auto config = json::parse(req.body);
@@ -90,6 +152,31 @@ int main(int argc, char** argv) {
          }
     });
 
+    // Streamed binary trace (application/x-smcmap-trace). Decoded chunk by
+    // chunk as it arrives, so trace length is not bounded by memory.
+    svr.Post("/api/cache/simulate/trace", [&](const httplib::Request& req, httplib::Response& res,
+                                              const httplib::ContentReader& contentReader) {
+        TraceDecoder decoder;
+        bool ok = contentReader([&](const char* data, size_t len) {
+            return decoder.feed(reinterpret_cast<const uint8_t*>(data), len,
+                                [&](uint64_t addr) { cacheSim.access(addr); });
+        });
+        if (!ok || !decoder.complete()) {
+            res.status = 400;
+            res.set_content(R"({"status":"error","message":"Malformed trace"})", "application/json");
+            return;
+        }
+        CacheSimulationResult cacheResult = cacheSim.getResult();
+        json response = {
+            {"algorithm", cacheResult.algorithm},
+            {"hits", cacheResult.hits},
+            {"misses", cacheResult.misses},
+            {"hitRatio", cacheResult.hitRatio},
+            {"accesses", decoder.decoded()}
+        };
+        res.set_content(response.dump(), "application/json");
+    });
+
     // Kill a process by PID
     svr.Post("/api/process/kill", [&](const httplib::Request& req, httplib::Response& res) {
         res.set_header("Access-Control-Allow-Origin", "*");
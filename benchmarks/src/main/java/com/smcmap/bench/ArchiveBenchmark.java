@@ -0,0 +1,102 @@
+package com.smcmap.bench;
+
+import com.smcmap.model.SnapshotSeries;
+import com.smcmap.service.SnapshotArchive;
+import com.smcmap.service.SnapshotBlockCodec;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnapshotArchive holding one week of 1 Hz history for a single node.
+ * data=walk is a realistic random walk (see Payloads.memoryWalk), data=noise
+ * draws used RAM uniformly from a 256 MB band every second, close to the
+ * codec's worst case. Setup prints the resulting bytes per sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveBenchmark {
+
+  private static final int WEEK_ROWS = 7 * 86_400;
+  private static final int HOUR_ROWS = 3600;
+  private static final String NODE = "bench";
+
+  @Param({ "walk", "noise" })
+  public String data;
+
+  private File dir;
+  private SnapshotArchive archive;
+  private SnapshotSeries week;
+  private ByteBuffer hourBlock;
+  private long fromMs;
+  private long toMs;
+  private int hourCursor;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    dir = Files.createTempDirectory("smcmap-archive-bench").toFile();
+    week = "walk".equals(data) ? Payloads.memoryWalk(WEEK_ROWS) : Payloads.series(WEEK_ROWS);
+    archive = new SnapshotArchive(dir);
+    archive.append(NODE, week);
+    fromMs = week.getTimestamp(0);
+    toMs = week.getTimestamp(WEEK_ROWS - 1) + 1;
+    hourBlock = ByteBuffer.wrap(SnapshotBlockCodec.encode(week, 0, HOUR_ROWS));
+    System.out.printf("%n[archive] %s: %d samples in %d bytes, %.2f bytes/sample%n", data,
+        archive.getSampleCount(), archive.getSizeBytes(), archive.getSizeBytes() / (double) archive.getSampleCount());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    archive.close();
+    Payloads.deleteTree(dir);
+  }
+
+  /** Compress one hour block (3600 samples). */
+  @Benchmark
+  @OperationsPerInvocation(HOUR_ROWS)
+  public byte[] encodeHour() {
+    return SnapshotBlockCodec.encode(week, 0, HOUR_ROWS);
+  }
+
+  /** Decompress one hour block from the heap. */
+  @Benchmark
+  @OperationsPerInvocation(HOUR_ROWS)
+  public long decodeHour() throws Exception {
+    long[] sum = { 0 };
+    SnapshotBlockCodec.decode(hourBlock, 0, HOUR_ROWS, Long.MIN_VALUE, Long.MAX_VALUE, (ts, total, used, free) -> {
+      sum[0] += used;
+      return true;
+    });
+    return sum[0];
+  }
+
+  /** Stream the whole week through a visitor (mapped, block by block). */
+  @Benchmark
+  @OperationsPerInvocation(WEEK_ROWS)
+  public long scanWeek() throws Exception {
+    long[] sum = { 0 };
+    archive.scan(NODE, fromMs, toMs, (ts, total, used, free) -> {
+      sum[0] += used;
+      return true;
+    });
+    return sum[0];
+  }
+
+  /** One hour somewhere in the week into a SnapshotSeries: index search plus at most two blocks. */
+  @Benchmark
+  public SnapshotSeries readHour() throws Exception {
+    hourCursor = (hourCursor + 1) % (WEEK_ROWS / HOUR_ROWS - 1);
+    long start = fromMs + hourCursor * 3_600_000L + 1_234_567L;
+    SnapshotSeries out = new SnapshotSeries(HOUR_ROWS);
+    archive.read(NODE, start, start + 3_600_000L, out);
+    return out;
+  }
+}
@@ -0,0 +1,18 @@
+package com.smcmap.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command line and
+ * always attaches the GC profiler, so every result carries gc.alloc.rate and
+ * gc.alloc.rate.norm (bytes per operation).
+ */
+public class BenchmarkMain {
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cli = new CommandLineOptions(args);
+    new Runner(new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class).build()).run();
+  }
+}
@@ -0,0 +1,55 @@
+package com.smcmap.bench;
+
+import com.smcmap.service.StatsDecoder;
+import com.smcmap.service.SystemStatsService;
+import com.smcmap.ui.DashboardJson;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full UI payload (DashboardJson.build, what a resync sends) and the
+ * escJs/esc escaping applied before executeScript.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DashboardJsonBenchmark {
+
+  @Param({ "20", "1000", "20000" })
+  public int processes;
+
+  private SystemStatsService.SystemDataResult result;
+  private String json;
+
+  @Setup
+  public void setup() throws Exception {
+    result = StatsDecoder.decode(new ByteArrayInputStream(Payloads.statsJson(processes)));
+    json = DashboardJson.build(result);
+  }
+
+  @Benchmark
+  public String buildJson() {
+    return DashboardJson.build(result);
+  }
+
+  @Benchmark
+  public String escJs() {
+    return DashboardJson.escJs(json);
+  }
+
+  @Benchmark
+  public String esc() {
+    return DashboardJson.esc(json);
+  }
+
+  @Benchmark
+  public String buildAndEscape() {
+    return DashboardJson.escJs(DashboardJson.build(result));
+  }
+}
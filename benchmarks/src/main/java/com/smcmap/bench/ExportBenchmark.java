@@ -0,0 +1,46 @@
+package com.smcmap.bench;
+
+import com.smcmap.model.SnapshotSeries;
+import com.smcmap.ui.SnapshotExporter;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** The three "Save Stats" formats written by SnapshotExporter at several history sizes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+
+  @Param({ "json", "md", "pdf" })
+  public String format;
+
+  @Param({ "180", "3600", "86400" })
+  public int rows;
+
+  private SnapshotSeries series;
+  private File out;
+
+  @Setup
+  public void setup() throws IOException {
+    series = Payloads.series(rows);
+    out = File.createTempFile("smcmap-export", "." + format);
+  }
+
+  @TearDown
+  public void tearDown() {
+    out.delete();
+  }
+
+  @Benchmark
+  public long export() throws IOException {
+    SnapshotExporter.write(out, format, series);
+    return out.length();
+  }
+}
@@ -0,0 +1,309 @@
+package com.smcmap.bench;
+
+import com.smcmap.agent.StandInAgent;
+import com.smcmap.service.AnalysisPersistenceService;
+import com.smcmap.service.LatencyHistogram;
+import com.smcmap.service.MetricsRegistry;
+import com.smcmap.service.MultiNodePoller;
+import com.smcmap.service.NodeRegistry;
+import com.smcmap.service.StatsSubscription;
+import com.smcmap.service.SystemStatsService;
+
+import java.io.File;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * End-to-end load test of the frontend's fetch, decode and persistence path
+ * against {@link StandInAgent}s, as opposed to the JMH benchmarks, which time
+ * single operations on canned input.
+ *
+ * Three modes:
+ * <ul>
+ * <li>poll: the production {@link MultiNodePoller} watches {@code --agents}
+ * stand-ins at its 1 Hz per-node cadence. Shows whether many slow or flaky
+ * agents still get their samples on time and persisted.</li>
+ * <li>flood: {@code --concurrency} threads call
+ * {@link SystemStatsService#fetchStats} and save every result back to back,
+ * round-robin over the agents. Shows peak throughput.</li>
+ * <li>stream: one {@link StatsSubscription} per agent, each sample persisted
+ * as it is pushed. Compare its stream.lag with poll mode's age of data.</li>
+ * </ul>
+ * Agents run in-process on ephemeral ports and take every
+ * {@link StandInAgent.Options} flag (--processes, --latency, --error-rate,
+ * ...); {@code --url} targets already running agents instead. Latencies come
+ * from the frontend's own {@link MetricsRegistry}, which is printed every
+ * second and dumped with {@code --metrics FILE}.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.smcmap.bench.LoadHarness --mode poll --agents 200 --latency 50 --jitter 150 --error-rate 0.02 --duration 30
+ * java -cp benchmarks/target/benchmarks.jar com.smcmap.bench.LoadHarness --mode flood --agents 4 --processes 5000 --concurrency 8
+ * java -cp benchmarks/target/benchmarks.jar com.smcmap.bench.LoadHarness --mode stream --agents 200 --stream-interval 250 --flap 10/3
+ * </pre>
+ */
+public class LoadHarness {
+
+  private String mode = "poll";
+  private int agents = 10;
+  private int concurrency = 4;
+  private int maxConcurrent = MultiNodePoller.DEFAULT_MAX_CONCURRENT;
+  private int durationSec = 20;
+  private String urls;
+  private String dbPath;
+  private String metricsFile;
+  /** Conditional fetches (304 / delta against the sample held); false downloads every table whole. */
+  private boolean delta = true;
+  private final StandInAgent.Options agentOptions = new StandInAgent.Options();
+
+  public static void main(String[] args) throws Exception {
+    LoadHarness harness = new LoadHarness();
+    try {
+      harness.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println("Usage: LoadHarness [--mode poll|flood|stream] [--agents 10] [--concurrency 4] [--max-concurrent 32]\n"
+          + "                   [--duration 20] [--url URL,...] [--db FILE] [--metrics FILE] [--delta true]\n"
+          + "                   [stand-in options]");
+      System.exit(2);
+    }
+    harness.run();
+    System.exit(0);
+  }
+
+  private void parse(String[] args) {
+    agentOptions.port = 0;
+    agentOptions.churnPerSec = 5;
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 >= args.length)
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      String value = args[i + 1];
+      switch (args[i]) {
+        case "--mode":
+          mode = value;
+          break;
+        case "--agents":
+          agents = Integer.parseInt(value);
+          break;
+        case "--concurrency":
+          concurrency = Integer.parseInt(value);
+          break;
+        case "--max-concurrent":
+          maxConcurrent = Integer.parseInt(value);
+          break;
+        case "--duration":
+          durationSec = Integer.parseInt(value);
+          break;
+        case "--url":
+          urls = value;
+          break;
+        case "--db":
+          dbPath = value;
+          break;
+        case "--metrics":
+          metricsFile = value;
+          break;
+        case "--delta":
+          delta = Boolean.parseBoolean(value);
+          break;
+        default:
+          if (!agentOptions.apply(args[i], value))
+            throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+    if (!mode.equals("poll") && !mode.equals("flood") && !mode.equals("stream"))
+      throw new IllegalArgumentException("--mode must be poll, flood or stream");
+  }
+
+  private void run() throws Exception {
+    List<StandInAgent> started = new ArrayList<>();
+    List<String> targets = new ArrayList<>();
+    if (urls != null) {
+      for (String u : urls.split(","))
+        targets.add(u.trim());
+    } else {
+      for (int i = 0; i < agents; i++) {
+        StandInAgent.Options o = agentOptions.copy();
+        o.seed = agentOptions.seed + i;
+        // Few agents take all the flood; many share a small pool each
+        o.threads = agents > 16 ? 1 : agentOptions.threads;
+        StandInAgent agent = new StandInAgent(o);
+        agent.start();
+        started.add(agent);
+        targets.add(agent.getUrl());
+      }
+    }
+
+    File tempDir = null;
+    String db = dbPath;
+    if (db == null) {
+      tempDir = Files.createTempDirectory("smcmap-load").toFile();
+      db = new File(tempDir, "load.db").getPath();
+    }
+    AnalysisPersistenceService persistence = new AnalysisPersistenceService(db);
+
+    System.out.printf(Locale.ROOT, "%s mode, %d agents%s, %d s%n", mode, targets.size(),
+        urls != null ? " (external)" : " (" + agentOptions + ")", durationSec);
+    long start = System.nanoTime();
+    try {
+      if (mode.equals("poll"))
+        runPoll(targets, persistence);
+      else if (mode.equals("stream"))
+        runStream(targets, persistence);
+      else
+        runFlood(targets, persistence);
+    } finally {
+      double elapsed = (System.nanoTime() - start) / 1e9;
+      long flushStart = System.nanoTime();
+      boolean flushed = persistence.flush(30_000);
+      double flushSec = (System.nanoTime() - flushStart) / 1e9;
+      long dropped = persistence.getDroppedCount();
+      persistence.close();
+      for (StandInAgent agent : started)
+        agent.stop();
+      report(elapsed, flushed, flushSec, dropped, started);
+      if (tempDir != null)
+        Payloads.deleteTree(tempDir);
+    }
+  }
+
+  private void runPoll(List<String> targets, AnalysisPersistenceService persistence) throws InterruptedException {
+    NodeRegistry registry = new NodeRegistry(new SystemStatsService(targets.get(0)));
+    for (int i = 0; i < targets.size(); i++) {
+      registry.add("load-" + i, targets.get(i), NodeRegistry.DEFAULT_TIMEOUT_MS);
+      registry.get("load-" + i).getStats().setConditionalFetch(delta);
+    }
+    MultiNodePoller poller = new MultiNodePoller(registry, persistence, maxConcurrent);
+    poller.start();
+    try {
+      progress(() -> "in flight " + poller.getInFlightCount());
+    } finally {
+      poller.stop();
+    }
+  }
+
+  private void runFlood(List<String> targets, AnalysisPersistenceService persistence) throws InterruptedException {
+    List<SystemStatsService> services = new ArrayList<>();
+    for (String url : targets) {
+      SystemStatsService service = new SystemStatsService(url);
+      service.setConditionalFetch(delta);
+      services.add(service);
+    }
+    AtomicBoolean stop = new AtomicBoolean();
+    AtomicLong cursor = new AtomicLong();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < concurrency; t++) {
+      Thread thread = new Thread(() -> {
+        while (!stop.get()) {
+          int i = (int) (cursor.getAndIncrement() % services.size());
+          try {
+            SystemStatsService.SystemDataResult result = services.get(i).fetchStats();
+            persistence.saveSystemSnapshot("load-" + i, result.systemSnapshot, result.processes);
+          } catch (Exception e) {
+            // Counted as agent.errors by SystemStatsService
+          }
+        }
+      }, "SMCMAP-Load-" + t);
+      thread.setDaemon(true);
+      thread.start();
+      threads.add(thread);
+    }
+    try {
+      progress(() -> "queued " + persistence.getPendingCount());
+    } finally {
+      stop.set(true);
+      for (Thread t : threads)
+        t.join(5000);
+    }
+  }
+
+  private void runStream(List<String> targets, AnalysisPersistenceService persistence) throws InterruptedException {
+    HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    List<StatsSubscription> subscriptions = new ArrayList<>();
+    for (int i = 0; i < targets.size(); i++) {
+      String nodeId = "load-" + i;
+      subscriptions.add(new SystemStatsService(targets.get(i), client).subscribe(
+          (seq, result) -> persistence.saveSystemSnapshot(nodeId, result.systemSnapshot, result.processes)));
+    }
+    try {
+      progress(() -> {
+        long connected = subscriptions.stream().filter(StatsSubscription::isConnected).count();
+        return "connected " + connected + "/" + subscriptions.size();
+      });
+    } finally {
+      for (StatsSubscription s : subscriptions)
+        s.close();
+    }
+  }
+
+  /** Print one line per second for the run's duration. */
+  private void progress(Supplier<String> extra) throws InterruptedException {
+    MetricsRegistry m = MetricsRegistry.global();
+    LatencyHistogram rtt = m.histogram(latencyMetric());
+    MetricsRegistry.Counter rows = m.counter("sqlite.rows");
+    MetricsRegistry.Counter errors = m.counter("agent.errors");
+    long lastRtt = 0, lastRows = 0, lastErrors = 0;
+    for (int s = 1; s <= durationSec; s++) {
+      Thread.sleep(1000);
+      long r = rtt.getCount(), w = rows.get(), e = errors.get();
+      System.out.printf(Locale.ROOT, "%4ds  fetched %6d/s  failed %5d/s  persisted %6d/s  %s p50 %7.2f p99 %7.2f ms  %s%n",
+          s, r - lastRtt, e - lastErrors, w - lastRows, mode.equals("stream") ? "lag" : "rtt", rtt.percentile(0.5) / 1e6, rtt.percentile(0.99) / 1e6,
+          extra.get());
+      lastRtt = r;
+      lastRows = w;
+      lastErrors = e;
+    }
+  }
+
+  /** Fetches in poll and flood mode, pushed samples (agent timestamp to decoded) in stream mode. */
+  private String latencyMetric() {
+    return mode.equals("stream") ? "stream.lag" : "agent.rtt";
+  }
+
+  private void report(double elapsed, boolean flushed, double flushSec, long dropped, List<StandInAgent> agents)
+      throws Exception {
+    MetricsRegistry m = MetricsRegistry.global();
+    long fetched = m.histogram(latencyMetric()).getCount();
+    long errors = m.counter("agent.errors").get();
+    long rows = m.counter("sqlite.rows").get();
+    System.out.println();
+    System.out.printf(Locale.ROOT, "fetched   %10d  (%.1f/s)%n", fetched, fetched / elapsed);
+    System.out.printf(Locale.ROOT, "failed    %10d  (%.2f%%)%n", errors,
+        fetched + errors == 0 ? 0.0 : 100.0 * errors / (fetched + errors));
+    if (!mode.equals("stream"))
+      System.out.printf(Locale.ROOT, "wire      %10.1f KB/fetch, %d not modified, %d deltas%n",
+          fetched == 0 ? 0.0 : m.counter("agent.bytes").get() / 1024.0 / fetched,
+          m.counter("agent.notModified").get(), m.counter("agent.deltas").get());
+    if (mode.equals("stream"))
+      System.out.printf(Locale.ROOT, "streams   %10d reconnects, %d samples lost to gaps%n",
+          m.counter("stream.reconnects").get(), m.counter("stream.gaps").get());
+    System.out.printf(Locale.ROOT, "persisted %10d  (%.1f/s), dropped %d, final flush %.2f s%s%n", rows,
+        rows / elapsed, dropped, flushSec, flushed ? "" : " (timed out)");
+    if (!agents.isEmpty()) {
+      long served = 0, injected = 0;
+      for (StandInAgent a : agents) {
+        served += a.getRequestCount();
+        injected += a.getInjectedErrors() + a.getInjectedDrops();
+      }
+      System.out.printf(Locale.ROOT, "agents served %d requests, %d with injected faults%n", served, injected);
+    }
+    System.out.println();
+    System.out.printf("%-18s %9s %9s %9s %9s %9s%n", "path", "count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+    for (String name : new String[] { latencyMetric(), "agent.decode", "sqlite.write" }) {
+      LatencyHistogram h = m.histogram(name);
+      System.out.printf(Locale.ROOT, "%-18s %9d %9.3f %9.3f %9.3f %9.3f%n", name, h.getCount(),
+          h.percentile(0.5) / 1e6, h.percentile(0.9) / 1e6, h.percentile(0.99) / 1e6, h.getMaxNanos() / 1e6);
+    }
+    if (metricsFile != null) {
+      m.dump(Paths.get(metricsFile));
+      System.out.println("\nMetrics written to " + metricsFile);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package com.smcmap.bench;
+
+import com.smcmap.model.SnapshotSeries;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/** Canned, deterministic inputs shared by the benchmarks. */
+final class Payloads {
+
+  private Payloads() {
+  }
+
+  /** An /api/stats body shaped like the agent's, with {@code processes} entries. */
+  static byte[] statsJson(int processes) {
+    Random r = new Random(42);
+    StringBuilder sb = new StringBuilder(
+        "{\"memory\":{\"totalRam\":17179869184,\"usedRam\":9123456789,\"freeRam\":8056412395},\"processes\":[");
+    for (int i = 0; i < processes; i++) {
+      if (i > 0)
+        sb.append(',');
+      sb.append("{\"pid\":").append(1000 + i)
+          .append(",\"name\":\"proc_").append(i).append(i % 7 == 0 ? " \\\"svc\\\"" : "").append(".exe\"")
+          .append(",\"memoryUsed\":").append(r.nextInt(1 << 30)).append('}');
+    }
+    sb.append("],\"cache\":{\"algorithm\":\"LRU\",\"hits\":123456,\"misses\":7890,\"hitRatio\":0.9399}}");
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** {@code rows} one-second samples ending now. */
+  static SnapshotSeries series(int rows) {
+    Random r = new Random(7);
+    SnapshotSeries s = new SnapshotSeries(rows);
+    long start = System.currentTimeMillis() - rows * 1000L;
+    long total = 16L << 30;
+    for (int i = 0; i < rows; i++) {
+      long used = (8L << 30) + r.nextInt(1 << 28);
+      s.add(start + i * 1000L, total, used, total - used);
+    }
+    return s;
+  }
+
+  /**
+   * {@code rows} samples ending now that look like a live machine: ~1 Hz with
+   * a few ms of scheduling jitter, used RAM taking page-granular random-walk
+   * steps and free RAM mirroring it.
+   */
+  static SnapshotSeries memoryWalk(int rows) {
+    Random r = new Random(11);
+    SnapshotSeries s = new SnapshotSeries(rows);
+    long ts = System.currentTimeMillis() - rows * 1000L;
+    long total = 16L << 30;
+    long used = 8L << 30;
+    for (int i = 0; i < rows; i++) {
+      ts += 1000 + r.nextInt(7) - 3;
+      used = Math.max(1L << 30, Math.min(15L << 30, used + (long) (r.nextGaussian() * 256) * 4096));
+      s.add(ts, total, used, total - used);
+    }
+    return s;
+  }
+
+  /** Delete a throwaway benchmark directory and everything in it. */
+  static void deleteTree(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files)
+        deleteTree(f);
+    }
+    dir.delete();
+  }
+}
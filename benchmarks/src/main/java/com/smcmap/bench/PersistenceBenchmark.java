@@ -0,0 +1,120 @@
+package com.smcmap.bench;
+
+import com.smcmap.model.SnapshotRollup;
+import com.smcmap.model.SnapshotSeries;
+import com.smcmap.model.SystemSnapshot;
+import com.smcmap.service.AnalysisPersistenceService;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AnalysisPersistenceService against a throwaway database pre-filled with one
+ * day of 1 Hz history. With ring=warm the service has also been fed an hour
+ * of live samples, so recent reads are served from its in-memory ring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+
+  private static final int HISTORY_ROWS = 86_400;
+  private static final int INSERT_BATCH = 1000;
+  private static final int LIVE_SAMPLES = 3600;
+
+  @Param({ "cold", "warm" })
+  public String ring;
+
+  private File dir;
+  private AnalysisPersistenceService service;
+  private SystemSnapshot sample;
+  private long now;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    dir = Files.createTempDirectory("smcmap-bench").toFile();
+    String db = new File(dir, "bench.db").getPath();
+    // Create the schema, then bulk-load history directly so rows carry spread-out timestamps
+    new AnalysisPersistenceService(db).close();
+    now = System.currentTimeMillis();
+    SnapshotSeries history = Payloads.series(HISTORY_ROWS);
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db);
+        PreparedStatement ps = c.prepareStatement(
+            "INSERT INTO system_snapshot(ts_ms, total_ram, used_ram, free_ram) VALUES(?,?,?,?)")) {
+      c.setAutoCommit(false);
+      for (int i = 0; i < history.size(); i++) {
+        ps.setLong(1, history.getTimestamp(i));
+        ps.setLong(2, history.getTotalRam(i));
+        ps.setLong(3, history.getUsedRam(i));
+        ps.setLong(4, history.getFreeRam(i));
+        ps.addBatch();
+      }
+      ps.executeBatch();
+      c.commit();
+    }
+    // Reopening backfills the rollup tiers from the raw rows
+    service = new AnalysisPersistenceService(db);
+    sample = new SystemSnapshot();
+    sample.setTotalRam(16L << 30);
+    sample.setUsedRam(9L << 30);
+    sample.setFreeRam(7L << 30);
+    if ("warm".equals(ring)) {
+      for (int i = 0; i < LIVE_SAMPLES; i++)
+        service.saveSystemSnapshot(sample);
+      service.flush(60_000);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    service.close();
+    Payloads.deleteTree(dir);
+  }
+
+  /** Enqueue latency only: what the polling thread pays per sample. */
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void enqueue() {
+    service.saveSystemSnapshot(sample);
+  }
+
+  /** End-to-end: 1000 samples enqueued and committed (incl. rollup upserts). */
+  @Benchmark
+  @OperationsPerInvocation(INSERT_BATCH)
+  public boolean insertAndFlush() {
+    for (int i = 0; i < INSERT_BATCH; i++)
+      service.saveSystemSnapshot(sample);
+    return service.flush(60_000);
+  }
+
+  @Benchmark
+  public SnapshotSeries recent100() {
+    return service.getRecentSeries(100);
+  }
+
+  @Benchmark
+  public SnapshotSeries rangeLastHour() {
+    return service.getSeries(now - 3_600_000L, now);
+  }
+
+  @Benchmark
+  public SnapshotSeries rangeLastDayRaw() {
+    return service.getSeries(now - 86_400_000L, now);
+  }
+
+  @Benchmark
+  public List<SnapshotRollup> rangeLastDayMinuteTier() {
+    return service.getRollupHistory(now - 86_400_000L, now, 60_000L);
+  }
+}
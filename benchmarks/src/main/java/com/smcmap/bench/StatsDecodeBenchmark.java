@@ -0,0 +1,35 @@
+package com.smcmap.bench;
+
+import com.smcmap.service.StatsDecoder;
+import com.smcmap.service.SystemStatsService;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** SystemStatsService.fetchStats parsing: the /api/stats body from bytes to model objects. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsDecodeBenchmark {
+
+  @Param({ "20", "1000", "20000" })
+  public int processes;
+
+  private byte[] payload;
+
+  @Setup
+  public void setup() {
+    payload = Payloads.statsJson(processes);
+  }
+
+  @Benchmark
+  public SystemStatsService.SystemDataResult decode() throws IOException {
+    return StatsDecoder.decode(new ByteArrayInputStream(payload));
+  }
+}
@@ -1,7 +1,12 @@
 package com.smcmap;
 
+import com.smcmap.agent.StandInAgent;
 import com.smcmap.service.SystemStatsService;
 import com.smcmap.service.AnalysisPersistenceService;
+import com.smcmap.service.MultiNodePoller;
+import com.smcmap.service.NodeRegistry;
+import com.smcmap.service.ProcStatsCollector;
+import com.smcmap.service.StatsSource;
 import com.smcmap.ui.JavaBridge;
 
 import javafx.application.Application;
@@ -18,25 +23,37 @@ import netscape.javascript.JSObject;
 import java.io.File;
 import java.net.URL;
 import java.nio.file.*;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class Main extends Application {
 
-  private Timer timer;
   private SystemStatsService statsService;
   private AnalysisPersistenceService persistenceService;
+  private MultiNodePoller nodePoller;
   private JavaBridge bridge;
   private String htmlFilePath; // filesystem path for hot-reload
   private Thread watchThread;
 
   private Process agentProcess;
+  private StandInAgent standInAgent;
+
+  /** Port the dashboard polls on this host, whichever agent serves it. */
+  private static final int AGENT_PORT = 8080;
 
   @Override
   public void start(Stage primaryStage) throws Exception {
     startAgentProcess();
 
-    statsService = new SystemStatsService("http://127.0.0.1:8080");
+    statsService = new SystemStatsService("http://127.0.0.1:" + AGENT_PORT);
+    StatsSource statsSource = statsService;
+    // -Dsmcmap.collector=proc / SMCMAP_COLLECTOR=proc: sample Linux hosts in-process, no agent round trip
+    if ("proc".equals(System.getProperty("smcmap.collector", System.getenv("SMCMAP_COLLECTOR")))) {
+      if (ProcStatsCollector.isSupported()) {
+        statsSource = new ProcStatsCollector();
+        System.out.println("[SMCMAP] Sampling this host from /proc in-process.");
+      } else {
+        System.err.println("[SMCMAP] /proc collector requested but /proc is not readable; using the agent.");
+      }
+    }
     persistenceService = new AnalysisPersistenceService();
 
     WebView webView = new WebView();
@@ -61,8 +78,15 @@ public class Main extends Application {
       System.out.println("[SMCMAP] Using classpath HTML (no hot-reload)");
     }
 
+    // Additional agents (smcmap-nodes.properties / -Dsmcmap.nodes) are polled in the background
+    NodeRegistry nodeRegistry = NodeRegistry.load(statsService);
+    nodePoller = new MultiNodePoller(nodeRegistry, persistenceService);
+    nodePoller.start();
+
     // Create the Java bridge object
-    bridge = new JavaBridge(statsService, persistenceService, webEngine);
+    bridge = new JavaBridge(statsService, statsSource, persistenceService, nodeRegistry, webEngine);
+    // -Dsmcmap.transport=poll / SMCMAP_TRANSPORT=poll: request/response polling even if the agent can stream
+    bridge.setStreamingEnabled(!"poll".equals(System.getProperty("smcmap.transport", System.getenv("SMCMAP_TRANSPORT"))));
 
     // When page loads, inject the Java bridge and start polling
     webEngine.getLoadWorker().stateProperty().addListener((obs, oldState, newState) -> {
@@ -70,8 +94,9 @@ public class Main extends Application {
         JSObject window = (JSObject) webEngine.executeScript("window");
         window.setMember("javaBridge", bridge);
         System.out.println("[SMCMAP] Java-JS bridge injected.");
+        bridge.resyncDashboard();
         bridge.loadSystemInfo();
-        startPolling(webEngine);
+        bridge.startPolling();
       }
     });
 
@@ -91,16 +116,25 @@ public class Main extends Application {
     primaryStage.setTitle("SMCMAP V2 | Modular Workspace");
     primaryStage.setScene(scene);
     primaryStage.setOnCloseRequest(e -> {
-      if (timer != null)
-        timer.cancel();
       if (watchThread != null)
         watchThread.interrupt();
+      if (nodePoller != null)
+        nodePoller.stop();
+      if (bridge != null)
+        bridge.shutdown();
+      if (persistenceService != null)
+        persistenceService.close();
       if (agentProcess != null) {
         agentProcess.destroy();
       }
+      if (standInAgent != null)
+        standInAgent.stop();
       Platform.exit();
       System.exit(0);
     });
+    // Poll less often while the window is minimized or in the background
+    primaryStage.iconifiedProperty().addListener((obs, was, now) -> bridge.setWindowState(now, primaryStage.isFocused()));
+    primaryStage.focusedProperty().addListener((obs, was, now) -> bridge.setWindowState(primaryStage.isIconified(), now));
     primaryStage.show();
   }
 
@@ -129,6 +163,7 @@ public class Main extends Application {
           }
         }
 
+        String standInArgs = System.getProperty("smcmap.standin", System.getenv("SMCMAP_STANDIN"));
         if (agentExe.exists()) {
           System.out.println("[SMCMAP] Starting bundled C++ Agent: " + agentExe.getAbsolutePath());
           ProcessBuilder pb = new ProcessBuilder(agentExe.getAbsolutePath());
@@ -137,6 +172,8 @@ public class Main extends Application {
           // Redirect output to console
           pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
           agentProcess = pb.start();
+        } else if (standInArgs != null) {
+          startStandInAgent(standInArgs);
         } else {
           System.out.println("[SMCMAP] Warning: smcmap_agent.exe not found at " + agentExe.getAbsolutePath()
               + ". Assuming it is running externally.");
@@ -147,71 +184,27 @@ public class Main extends Application {
     }).start();
   }
 
-  private void startPolling(WebEngine webEngine) {
-    timer = new Timer(true);
-    timer.scheduleAtFixedRate(new TimerTask() {
-      @Override
-      public void run() {
-        try {
-          SystemStatsService.SystemDataResult result = statsService.fetchStats();
-          // Persist to SQLite
-          persistenceService.saveSystemSnapshot(result.systemSnapshot);
-
-          // Build JSON to pass to JS
-          String json = buildJson(result);
-
-          Platform.runLater(() -> {
-            try {
-              webEngine.executeScript("updateDashboard('" + escapeJs(json) + "')");
-            } catch (Exception ex) {
-              System.err.println("[SMCMAP] JS update error: " + ex.getMessage());
-            }
-          });
-        } catch (Exception e) {
-          Platform.runLater(() -> {
-            try {
-              webEngine.executeScript("document.getElementById('proc-status').textContent='AGENT DISCONNECTED'");
-            } catch (Exception ignored) {
-            }
-          });
-        }
-      }
-    }, 0, 1000);
-  }
-
-  private String buildJson(SystemStatsService.SystemDataResult result) {
-    StringBuilder sb = new StringBuilder();
-    sb.append("{");
-    sb.append("\"memory\":{");
-    sb.append("\"totalRam\":").append(result.systemSnapshot.getTotalRam()).append(",");
-    sb.append("\"usedRam\":").append(result.systemSnapshot.getUsedRam()).append(",");
-    sb.append("\"freeRam\":").append(result.systemSnapshot.getFreeRam());
-    sb.append("},");
-    sb.append("\"cache\":{");
-    sb.append("\"algorithm\":\"").append(result.cacheData.get("algorithm").getAsString()).append("\",");
-    sb.append("\"hits\":").append(result.cacheData.get("hits").getAsInt()).append(",");
-    sb.append("\"misses\":").append(result.cacheData.get("misses").getAsInt()).append(",");
-    sb.append("\"hitRatio\":").append(result.cacheData.get("hitRatio").getAsDouble());
-    sb.append("},");
-    sb.append("\"processes\":[");
-    for (int i = 0; i < result.processes.size(); i++) {
-      var p = result.processes.get(i);
-      if (i > 0)
-        sb.append(",");
-      sb.append("{\"pid\":").append(p.getPid());
-      sb.append(",\"name\":\"").append(escapeJsonStr(p.getName())).append("\"");
-      sb.append(",\"memoryUsed\":").append(p.getMemoryUsed()).append("}");
+  /**
+   * Serve the dashboard from the in-process Java stand-in agent, for
+   * platforms without the native one. {@code args} are StandInAgent options,
+   * from -Dsmcmap.standin or SMCMAP_STANDIN, e.g. "--processes 5000 --latency 200".
+   * The port is fixed at AGENT_PORT, where the dashboard looks for its agent.
+   */
+  private void startStandInAgent(String args) {
+    StandInAgent.Options options = new StandInAgent.Options();
+    String[] argv = args.isBlank() ? new String[0] : args.trim().split("\\s+");
+    try {
+      int next = options.parse(argv, 0);
+      if (next < argv.length)
+        throw new IllegalArgumentException("Unknown stand-in option: " + argv[next]);
+      if (options.port != AGENT_PORT)
+        throw new IllegalArgumentException("--port is not supported here; the dashboard polls port " + AGENT_PORT);
+      standInAgent = new StandInAgent(options);
+      standInAgent.start();
+      System.out.println("[SMCMAP] Started stand-in agent on " + standInAgent.getUrl() + " (" + options + ")");
+    } catch (Exception e) {
+      System.err.println("[SMCMAP] Failed to start stand-in agent: " + e.getMessage());
     }
-    sb.append("]}");
-    return sb.toString();
-  }
-
-  private String escapeJs(String s) {
-    return s.replace("\\", "\\\\").replace("'", "\\'").replace("\n", "\\n").replace("\r", "");
-  }
-
-  private String escapeJsonStr(String s) {
-    return s.replace("\\", "\\\\").replace("\"", "\\\"");
   }
 
   // Load (or reload) the HTML into WebView
@@ -0,0 +1,122 @@
+package com.smcmap.agent;
+
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic machine behind {@link StandInAgent}: a process table of fixed
+ * target size with churn, and system memory that random-walks in page steps.
+ *
+ * The table is three parallel arrays, snapshotted into a
+ * {@link StatsHistory.Table} per request with no per-process objects. Every
+ * {@link #advance} call replaces {@code churnPerSec} processes per elapsed
+ * second (fractional remainders carry over), respawns killed ones at the
+ * same rate, and jitters the memory of each process by up to 2% with
+ * probability {@code volatility} per elapsed second, as on a real host where
+ * most processes sit idle between samples. All randomness comes from one
+ * seeded generator, so a given request sequence reproduces the same table.
+ */
+final class SimulatedHost {
+
+  private static final String[] NAMES = { "chrome", "firefox", "java", "node", "python", "code", "svchost",
+      "explorer", "postgres", "redis-server", "nginx", "dockerd", "sshd", "slack", "teams", "systemd",
+      "kworker", "Xorg", "gnome-shell", "containerd" };
+  private static final long PAGE = 4096;
+
+  private final int target;
+  private final double churnPerSec;
+  private final double volatility;
+  private final int nameLength;
+  private final long totalRam;
+  private final SplittableRandom rand;
+
+  private int[] pids;
+  private String[] names;
+  private long[] memory;
+  private int size;
+  private int nextPid = 1000;
+  private long usedRam;
+  private long lastAdvanceMs = -1;
+  private double churnCarry;
+
+  SimulatedHost(int processes, double churnPerSec, double volatility, int nameLength, long totalRam, long seed) {
+    this.target = Math.max(0, processes);
+    this.churnPerSec = Math.max(0, churnPerSec);
+    this.volatility = Math.max(0, volatility);
+    this.nameLength = Math.max(0, nameLength);
+    this.totalRam = totalRam;
+    this.rand = new SplittableRandom(seed);
+    pids = new int[Math.max(1, target)];
+    names = new String[pids.length];
+    memory = new long[pids.length];
+    for (int i = 0; i < target; i++)
+      spawn(size++);
+    usedRam = totalRam * 6 / 10 / PAGE * PAGE;
+  }
+
+  /** Move the simulation forward to {@code nowMs}. */
+  synchronized void advance(long nowMs) {
+    long elapsed = lastAdvanceMs < 0 ? 0 : Math.max(0, nowMs - lastAdvanceMs);
+    lastAdvanceMs = nowMs;
+    churnCarry += churnPerSec * elapsed / 1000.0;
+    int changes = (int) churnCarry;
+    churnCarry -= changes;
+    for (int c = 0; c < changes; c++) {
+      if (size < target)
+        spawn(size++);
+      else if (size > 0)
+        spawn(rand.nextInt(size));
+    }
+    if (elapsed == 0)
+      return;
+    double moving = Math.min(1, volatility * elapsed / 1000.0);
+    for (int i = 0; i < size; i++) {
+      if (moving >= 1 || rand.nextDouble() < moving)
+        memory[i] = Math.max(PAGE, memory[i] + (long) (memory[i] * (rand.nextDouble() - 0.5) * 0.04) / PAGE * PAGE);
+    }
+    long step = (long) (rand.nextGaussian() * 256) * PAGE;
+    usedRam = Math.max(totalRam / 10, Math.min(totalRam * 95 / 100, usedRam + step));
+  }
+
+  /** Replace slot {@code i} with a new process. */
+  private void spawn(int i) {
+    pids[i] = nextPid++;
+    String base = NAMES[rand.nextInt(NAMES.length)];
+    names[i] = base.length() >= nameLength ? base : pad(base, pids[i]);
+    // Log-normal resident size, median about 40 MB, clamped to [1 MB, 8 GB]
+    double bytes = Math.exp(17.5 + 1.5 * rand.nextGaussian());
+    memory[i] = Math.max(1L << 20, Math.min(8L << 30, (long) bytes)) / PAGE * PAGE;
+  }
+
+  /** Name padded to {@code nameLength} with a per-process suffix, to inflate the payload. */
+  private String pad(String base, int pid) {
+    StringBuilder sb = new StringBuilder(nameLength).append(base).append("-worker-").append(pid);
+    while (sb.length() < nameLength)
+      sb.append('x');
+    sb.setLength(nameLength);
+    return sb.toString();
+  }
+
+  /** Terminate {@code pid}; returns false if no such process. */
+  synchronized boolean kill(int pid) {
+    for (int i = 0; i < size; i++) {
+      if (pids[i] == pid) {
+        size--;
+        pids[i] = pids[size];
+        names[i] = names[size];
+        memory[i] = memory[size];
+        names[size] = null;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  synchronized int getProcessCount() {
+    return size;
+  }
+
+  /** The current state with {@code cacheJson} as its cache section. */
+  synchronized StatsHistory.Table table(String cacheJson) {
+    return new StatsHistory.Table(totalRam, usedRam, totalRam - usedRam, pids, names, memory, size, cacheJson);
+  }
+}
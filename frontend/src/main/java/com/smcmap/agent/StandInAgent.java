@@ -0,0 +1,712 @@
+package com.smcmap.agent;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.smcmap.service.ProcStatsCollector;
+import com.smcmap.sim.CacheSimulationEngine;
+import com.smcmap.sim.TraceFormat;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pure-Java stand-in for the C++ agent, for running and load-testing the
+ * frontend where the real agent does not build (it needs the Win32 API).
+ *
+ * Serves /api/stats, /api/stats/stream, /api/cache/config,
+ * /api/cache/simulate, /api/cache/simulate/trace and /api/process/kill with
+ * the agent's JSON contract on the JDK's built-in HTTP server. The machine behind it is a
+ * {@link SimulatedHost} and the cache is the pure-Java
+ * {@link CacheSimulationEngine}, which reports the same hits and misses as
+ * the agent's.
+ *
+ * Faults are injected per request, in this order: while the agent is
+ * flapping down the listening socket is closed (connection refused); a
+ * dropped request has its connection closed without a response; a failed
+ * request gets HTTP 500; everything else is answered after the configured
+ * latency plus uniform jitter. Delays are scheduled rather than slept, so a
+ * 200 ms agent does not hold a server thread per request.
+ *
+ * /api/stats/stream pushes a sample every {@code --stream-interval} ms as
+ * Server-Sent Events (see {@link StatsStream}); sampling starts with the
+ * first subscriber. Drop and error faults apply when a stream is opened, and
+ * drops also sever open streams per frame; flapping closes them all.
+ *
+ * <pre>
+ * java -cp smcmap-frontend.jar com.smcmap.agent.StandInAgent --processes 5000 --churn 50 --latency 200
+ * </pre>
+ */
+public final class StandInAgent {
+
+  /** Tunables; see {@link #usage()} for the command-line names. */
+  public static final class Options {
+    public int port = 8080;
+    /** Address to listen on; null for loopback only. "0.0.0.0" serves remote load generators. */
+    public String bind = null;
+    public int processes = 200;
+    public double churnPerSec = 2;
+    /** Fraction of processes whose memory moves per second. */
+    public double volatility = 0.1;
+    public int nameLength = 0;
+    public long totalRam = 16L << 30;
+    public long latencyMs = 0;
+    public long jitterMs = 0;
+    public double errorRate = 0;
+    public double dropRate = 0;
+    public long flapUpMs = 0;
+    public long flapDownMs = 0;
+    public long seed = 42;
+    public int threads = 4;
+    /** "synthetic" for the simulated host, "proc" for this Linux host's real figures. */
+    public String source = "synthetic";
+    /** With --source proc, let /api/process/kill terminate real processes; refused otherwise. */
+    public boolean allowKill = false;
+    public long streamIntervalMs = 1000;
+
+    public Options copy() {
+      Options o = new Options();
+      o.port = port;
+      o.bind = bind;
+      o.processes = processes;
+      o.churnPerSec = churnPerSec;
+      o.volatility = volatility;
+      o.nameLength = nameLength;
+      o.totalRam = totalRam;
+      o.latencyMs = latencyMs;
+      o.jitterMs = jitterMs;
+      o.errorRate = errorRate;
+      o.dropRate = dropRate;
+      o.flapUpMs = flapUpMs;
+      o.flapDownMs = flapDownMs;
+      o.seed = seed;
+      o.threads = threads;
+      o.source = source;
+      o.allowKill = allowKill;
+      o.streamIntervalMs = streamIntervalMs;
+      return o;
+    }
+
+    /**
+     * Apply {@code --name value} pairs. Returns the index of the first
+     * argument that is not an option of this class, so callers can parse
+     * their own options after or around these.
+     */
+    public int parse(String[] args, int from) {
+      int i = from;
+      while (i + 1 < args.length && apply(args[i], args[i + 1]))
+        i += 2;
+      return i;
+    }
+
+    /** Set one option; false if {@code name} is not one of ours. */
+    public boolean apply(String name, String value) {
+      switch (name) {
+        case "--port":
+          port = Integer.parseInt(value);
+          return true;
+        case "--bind":
+          bind = value;
+          return true;
+        case "--processes":
+          processes = Integer.parseInt(value);
+          return true;
+        case "--churn":
+          churnPerSec = Double.parseDouble(value);
+          return true;
+        case "--volatility":
+          volatility = Double.parseDouble(value);
+          return true;
+        case "--name-length":
+          nameLength = Integer.parseInt(value);
+          return true;
+        case "--total-ram-mb":
+          totalRam = Long.parseLong(value) << 20;
+          return true;
+        case "--latency":
+          latencyMs = Long.parseLong(value);
+          return true;
+        case "--jitter":
+          jitterMs = Long.parseLong(value);
+          return true;
+        case "--error-rate":
+          errorRate = Double.parseDouble(value);
+          return true;
+        case "--drop-rate":
+          dropRate = Double.parseDouble(value);
+          return true;
+        case "--flap": {
+          // up/down in seconds, e.g. 10/5
+          int slash = value.indexOf('/');
+          if (slash < 0)
+            throw new IllegalArgumentException("--flap expects UP/DOWN seconds, e.g. 10/5");
+          flapUpMs = (long) (Double.parseDouble(value.substring(0, slash)) * 1000);
+          flapDownMs = (long) (Double.parseDouble(value.substring(slash + 1)) * 1000);
+          return true;
+        }
+        case "--seed":
+          seed = Long.parseLong(value);
+          return true;
+        case "--threads":
+          threads = Integer.parseInt(value);
+          return true;
+        case "--source":
+          if (!value.equals("synthetic") && !value.equals("proc"))
+            throw new IllegalArgumentException("--source must be synthetic or proc");
+          source = value;
+          return true;
+        case "--allow-kill":
+          if (!value.equals("true") && !value.equals("false"))
+            throw new IllegalArgumentException("--allow-kill must be true or false");
+          allowKill = value.equals("true");
+          return true;
+        case "--stream-interval":
+          streamIntervalMs = Math.max(1, Long.parseLong(value));
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return (source.equals("proc") ? "/proc" : processes + " processes, churn " + churnPerSec + "/s")
+          + ", latency " + latencyMs + "+" + jitterMs + " ms, errors " + errorRate + ", drops " + dropRate
+          + (flapUpMs > 0 ? ", flapping " + flapUpMs + "/" + flapDownMs + " ms" : "");
+    }
+  }
+
+  private final Options options;
+  private final SimulatedHost host;
+  /** Set with --source proc; replaces the simulated host for stats, and for kills with --allow-kill. */
+  private final ProcStatsCollector collector;
+  private final Object cacheLock = new Object();
+  private CacheSimulationEngine cache = new CacheSimulationEngine(1024 * 1024, 64, "LRU");
+
+  /** Streamed samples kept for replay to reconnecting clients. */
+  private static final int STREAM_HISTORY = 64;
+  private final StatsStream stream = new StatsStream(STREAM_HISTORY);
+
+  /** Versions kept for delta replies; a client further behind gets a full body. */
+  private static final int STATS_HISTORY = 32;
+  private final StatsHistory history = new StatsHistory(STATS_HISTORY);
+  /** Bodies smaller than this are sent uncompressed even to gzip clients. */
+  private static final int GZIP_MIN_BYTES = 1024;
+  private final AtomicBoolean streamStarted = new AtomicBoolean();
+
+  private final SplittableRandom faults;
+  private final ExecutorService workers;
+  private final ScheduledExecutorService scheduler;
+  private final Object serverLock = new Object();
+  private HttpServer server;
+  private InetAddress bindAddress;
+  private int port;
+  private volatile boolean running;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong injectedErrors = new AtomicLong();
+  private final AtomicLong injectedDrops = new AtomicLong();
+
+  static {
+    // Streamed frames span several TCP segments; without this, Nagle holds the
+    // last one until the client's delayed ACK, adding ~40 ms to some samples.
+    // Read once by the JDK server, so it must be set before the first bind.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  public StandInAgent(Options options) {
+    this.options = options.copy();
+    this.host = new SimulatedHost(options.processes, options.churnPerSec, options.volatility, options.nameLength,
+        options.totalRam, options.seed);
+    if (options.source.equals("proc") && !ProcStatsCollector.isSupported())
+      throw new IllegalArgumentException("--source proc needs a readable /proc");
+    this.collector = options.source.equals("proc") ? new ProcStatsCollector() : null;
+    this.faults = new SplittableRandom(options.seed ^ 0x5DEECE66DL);
+    AtomicInteger seq = new AtomicInteger();
+    ThreadFactory factory = r -> {
+      Thread t = new Thread(r, "SMCMAP-StandIn-" + seq.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+    workers = Executors.newFixedThreadPool(Math.max(1, options.threads), factory);
+    scheduler = Executors.newScheduledThreadPool(Math.max(1, options.threads), factory);
+  }
+
+  /**
+   * Bind and start serving; with port 0 an ephemeral port is chosen (see
+   * {@link #getPort}). Only loopback is served unless {@code --bind} says
+   * otherwise, since kill and simulate are unauthenticated.
+   */
+  public void start() throws IOException {
+    synchronized (serverLock) {
+      if (running)
+        return;
+      bindAddress = options.bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(options.bind);
+      running = true;
+      bind(options.port);
+    }
+    if (options.flapUpMs > 0 && options.flapDownMs > 0)
+      scheduler.schedule(this::flapDown, options.flapUpMs, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    synchronized (serverLock) {
+      running = false;
+      if (server != null)
+        server.stop(0);
+      server = null;
+    }
+    stream.closeAll();
+    scheduler.shutdownNow();
+    workers.shutdownNow();
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  /** Where this agent can be reached; loopback when bound to the wildcard address. */
+  public String getUrl() {
+    InetAddress a = bindAddress;
+    if (a == null || a.isAnyLocalAddress())
+      return "http://127.0.0.1:" + port;
+    String host = a.getHostAddress();
+    return "http://" + (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port;
+  }
+
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  public long getInjectedErrors() {
+    return injectedErrors.get();
+  }
+
+  public long getInjectedDrops() {
+    return injectedDrops.get();
+  }
+
+  public int getProcessCount() {
+    return host.getProcessCount();
+  }
+
+  public int getStreamSubscriberCount() {
+    return stream.getSubscriberCount();
+  }
+
+  private void bind(int requestedPort) throws IOException {
+    HttpServer s = HttpServer.create(new InetSocketAddress(bindAddress, requestedPort), 256);
+    s.setExecutor(workers);
+    s.createContext("/api/stats", exchange -> handle(exchange, this::stats));
+    s.createContext("/api/stats/stream", this::handleStream);
+    s.createContext("/api/cache/config", exchange -> handle(exchange, this::cacheConfig));
+    s.createContext("/api/cache/simulate/trace", exchange -> handle(exchange, this::simulateTrace));
+    s.createContext("/api/cache/simulate", exchange -> handle(exchange, this::simulate));
+    s.createContext("/api/process/kill", exchange -> handle(exchange, this::kill));
+    s.start();
+    server = s;
+    port = s.getAddress().getPort();
+  }
+
+  private void flapDown() {
+    synchronized (serverLock) {
+      if (!running || server == null)
+        return;
+      server.stop(0);
+      server = null;
+    }
+    stream.closeAll();
+    System.out.println("[SMCMAP] Stand-in agent down for " + options.flapDownMs + " ms");
+    scheduler.schedule(this::flapUp, options.flapDownMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void flapUp() {
+    synchronized (serverLock) {
+      if (!running)
+        return;
+      try {
+        // Rebind the same port, including an ephemeral one picked at start
+        bind(port);
+      } catch (IOException e) {
+        System.err.println("[SMCMAP] Stand-in agent could not rebind port " + port + ": " + e.getMessage());
+      }
+    }
+    System.out.println("[SMCMAP] Stand-in agent up on port " + port);
+    scheduler.schedule(this::flapDown, options.flapUpMs, TimeUnit.MILLISECONDS);
+  }
+
+  // ---- Request handling ----
+
+  /** A response body and status, computed on a server thread and sent after the injected delay. */
+  private static final class Reply {
+    final int status;
+    final byte[] body;
+    /** Version of a stats reply, sent as its ETag; null for other endpoints. */
+    final String etag;
+
+    Reply(int status, String body) {
+      this(status, body, null);
+    }
+
+    Reply(int status, String body, String etag) {
+      this.status = status;
+      this.body = body.getBytes(StandardCharsets.UTF_8);
+      this.etag = etag;
+    }
+  }
+
+  @FunctionalInterface
+  private interface Endpoint {
+    Reply serve(HttpExchange exchange) throws IOException;
+  }
+
+  private void handle(HttpExchange exchange, Endpoint endpoint) {
+    requests.incrementAndGet();
+    double roll;
+    long delay;
+    synchronized (faults) {
+      roll = faults.nextDouble();
+      delay = options.latencyMs + (options.jitterMs > 0 ? faults.nextLong(options.jitterMs + 1) : 0);
+    }
+    if (roll < options.dropRate) {
+      injectedDrops.incrementAndGet();
+      exchange.close();
+      return;
+    }
+    Reply reply;
+    if (roll < options.dropRate + options.errorRate) {
+      injectedErrors.incrementAndGet();
+      reply = new Reply(500, "{\"status\":\"error\",\"message\":\"Injected failure\"}");
+    } else {
+      try {
+        reply = endpoint.serve(exchange);
+      } catch (Exception e) {
+        reply = new Reply(400, "{\"status\":\"error\",\"message\":\"Invalid request\"}");
+      }
+    }
+    if (delay <= 0) {
+      send(exchange, reply);
+      return;
+    }
+    Reply r = reply;
+    try {
+      scheduler.schedule(() -> send(exchange, r), delay, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      // Stopped while the request was in flight
+      exchange.close();
+    }
+  }
+
+  private static void send(HttpExchange exchange, Reply reply) {
+    try {
+      Headers headers = exchange.getResponseHeaders();
+      headers.set("Content-Type", "application/json");
+      headers.set("Access-Control-Allow-Origin", "*");
+      if (reply.etag != null)
+        headers.set("ETag", reply.etag);
+      if (reply.status == 304) {
+        exchange.sendResponseHeaders(304, -1);
+        return;
+      }
+      byte[] body = reply.body;
+      if (body.length >= GZIP_MIN_BYTES && acceptsGzip(exchange)) {
+        ByteArrayOutputStream gz = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(gz, 8192)) {
+          out.write(body);
+        }
+        body = gz.toByteArray();
+        headers.set("Content-Encoding", "gzip");
+        headers.set("Vary", "Accept-Encoding");
+      }
+      exchange.sendResponseHeaders(reply.status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } catch (IOException e) {
+      // Client went away; nothing to answer
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Full body, 304 or delta, depending on the version the client holds
+   * (If-None-Match). Clients that send none get the full body, as from the
+   * native agent.
+   */
+  private Reply stats(HttpExchange exchange) throws IOException {
+    StatsHistory.Table t = sample();
+    String etag = "\"" + t.version + "\"";
+    long since = parseEtag(exchange.getRequestHeaders().getFirst("If-None-Match"));
+    if (since == t.version)
+      return new Reply(304, "", etag);
+    StatsHistory.Table base = since >= 0 ? history.find(since) : null;
+    StringBuilder sb = new StringBuilder(256 + t.pids.length * (base != null ? 8 : 64 + options.nameLength));
+    sb.append('{');
+    if (base != null)
+      StatsHistory.appendDelta(sb, base, t);
+    else
+      StatsHistory.appendFull(sb, t);
+    return new Reply(200, sb.append('}').toString(), etag);
+  }
+
+  /** Take a sample and version it. */
+  private StatsHistory.Table sample() throws IOException {
+    String cacheJson;
+    synchronized (cacheLock) {
+      cacheJson = cache.getResult().toJson();
+    }
+    StatsHistory.Table t;
+    if (collector != null) {
+      t = StatsHistory.Table.of(collector.fetchStats(), cacheJson);
+    } else {
+      host.advance(System.currentTimeMillis());
+      t = host.table(cacheJson);
+    }
+    return history.add(t);
+  }
+
+  /** The version in an If-None-Match value such as "17" or W/"17"; -1 if absent or not ours. */
+  static long parseEtag(String value) {
+    if (value == null)
+      return -1;
+    String v = value.trim();
+    if (v.startsWith("W/"))
+      v = v.substring(2);
+    if (v.length() < 3 || v.charAt(0) != '"' || v.charAt(v.length() - 1) != '"')
+      return -1;
+    try {
+      return Long.parseLong(v.substring(1, v.length() - 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static boolean acceptsGzip(HttpExchange exchange) {
+    for (String value : exchange.getRequestHeaders().getOrDefault("Accept-Encoding", List.of())) {
+      for (String coding : value.split(",")) {
+        String[] parts = coding.split(";");
+        if (!parts[0].trim().equalsIgnoreCase("gzip"))
+          continue;
+        double q = 1;
+        for (int i = 1; i < parts.length; i++) {
+          String param = parts[i].trim();
+          if (param.startsWith("q=")) {
+            try {
+              q = Double.parseDouble(param.substring(2));
+            } catch (NumberFormatException e) {
+              q = 0;
+            }
+          }
+        }
+        return q > 0;
+      }
+    }
+    return false;
+  }
+
+  // ---- Streaming ----
+
+  private void handleStream(HttpExchange exchange) {
+    requests.incrementAndGet();
+    double roll;
+    synchronized (faults) {
+      roll = faults.nextDouble();
+    }
+    if (roll < options.dropRate) {
+      injectedDrops.incrementAndGet();
+      exchange.close();
+      return;
+    }
+    if (roll < options.dropRate + options.errorRate) {
+      injectedErrors.incrementAndGet();
+      send(exchange, new Reply(500, "{\"status\":\"error\",\"message\":\"Injected failure\"}"));
+      return;
+    }
+    long lastSeq = -1;
+    String header = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+    if (header != null) {
+      try {
+        lastSeq = Long.parseLong(header.trim());
+      } catch (NumberFormatException e) {
+        // Not one of ours; start fresh
+      }
+    }
+    try {
+      stream.subscribe(exchange, lastSeq);
+    } catch (IOException e) {
+      return;
+    }
+    if (streamStarted.compareAndSet(false, true)) {
+      try {
+        scheduler.scheduleAtFixedRate(this::publishSample, 0, options.streamIntervalMs, TimeUnit.MILLISECONDS);
+      } catch (RuntimeException e) {
+        // Stopped meanwhile
+      }
+    }
+  }
+
+  private void publishSample() {
+    try {
+      StatsHistory.Table t = sample();
+      StringBuilder sb = new StringBuilder(256 + t.pids.length * (64 + options.nameLength)).append('{');
+      StatsHistory.appendFull(sb, t);
+      String json = sb.append(",\"timestampMs\":").append(System.currentTimeMillis()).append('}').toString();
+      stream.publish(json, () -> {
+        if (options.dropRate <= 0)
+          return false;
+        boolean drop;
+        synchronized (faults) {
+          drop = faults.nextDouble() < options.dropRate;
+        }
+        if (drop)
+          injectedDrops.incrementAndGet();
+        return drop;
+      });
+    } catch (Exception e) {
+      // A failed sample must not cancel the schedule
+      System.err.println("[SMCMAP] Stand-in stream sample failed: " + e.getMessage());
+    }
+  }
+
+  private Reply cacheConfig(HttpExchange exchange) throws IOException {
+    CacheSimulationEngine engine;
+    try (InputStream in = exchange.getRequestBody()) {
+      JsonObject config = JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8))
+          .getAsJsonObject();
+      long size = config.has("size") ? config.get("size").getAsLong() : 1024 * 1024;
+      long blockSize = config.has("blockSize") ? config.get("blockSize").getAsLong() : 64;
+      String policy = config.has("policy") ? config.get("policy").getAsString() : "LRU";
+      engine = new CacheSimulationEngine(size, blockSize, policy);
+    } catch (RuntimeException e) {
+      return new Reply(400, "{\"status\":\"error\",\"message\":\"Invalid JSON\"}");
+    }
+    synchronized (cacheLock) {
+      cache = engine;
+    }
+    return new Reply(200, "{\"status\":\"success\"}");
+  }
+
+  /** JSON {"accesses":[...]}; streamed, so a large array never becomes a tree. */
+  private Reply simulate(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody();
+        JsonReader r = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      synchronized (cacheLock) {
+        r.beginObject();
+        while (r.hasNext()) {
+          if (!"accesses".equals(r.nextName())) {
+            r.skipValue();
+            continue;
+          }
+          r.beginArray();
+          while (r.hasNext())
+            cache.access(r.nextLong());
+          r.endArray();
+        }
+        r.endObject();
+        return new Reply(200, cache.getResult().toJson());
+      }
+    } catch (IOException | RuntimeException e) {
+      return new Reply(400, "{\"status\":\"error\"}");
+    }
+  }
+
+  private Reply simulateTrace(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod()))
+      return new Reply(404, "{\"status\":\"error\"}");
+    try (InputStream in = exchange.getRequestBody()) {
+      synchronized (cacheLock) {
+        CacheSimulationEngine engine = cache;
+        long decoded = TraceFormat.decode(in, engine::access);
+        String result = engine.getResult().toJson();
+        return new Reply(200, result.substring(0, result.length() - 1) + ",\"accesses\":" + decoded + "}");
+      }
+    } catch (IOException e) {
+      return new Reply(400, "{\"status\":\"error\",\"message\":\"Malformed trace\"}");
+    }
+  }
+
+  private Reply kill(HttpExchange exchange) throws IOException {
+    int pid;
+    try (InputStream in = exchange.getRequestBody()) {
+      JsonObject body = JsonParser.parseReader(new InputStreamReader(in, StandardCharsets.UTF_8)).getAsJsonObject();
+      pid = body.has("pid") ? body.get("pid").getAsInt() : 0;
+    } catch (RuntimeException e) {
+      return new Reply(400, "{\"status\":\"error\",\"message\":\"Invalid request\"}");
+    }
+    if (pid == 0)
+      return new Reply(400, "{\"status\":\"error\",\"message\":\"Missing PID\"}");
+    if (collector != null) {
+      // The endpoint is unauthenticated; real processes are only killed when asked for at startup
+      if (!options.allowKill)
+        return new Reply(403, "{\"status\":\"error\",\"message\":\"Killing host processes is disabled; "
+            + "start the stand-in with --allow-kill true\"}");
+      String message = collector.killProcess(pid);
+      if (!message.equals("Process terminated"))
+        return new Reply(403, "{\"status\":\"error\",\"message\":\"" + message + "\"}");
+    } else if (!host.kill(pid))
+      return new Reply(403,
+          "{\"status\":\"error\",\"message\":\"Cannot open process. Access denied or invalid PID.\"}");
+    return new Reply(200, "{\"status\":\"success\",\"message\":\"Process terminated\",\"pid\":" + pid + "}");
+  }
+
+  // ---- Command line ----
+
+  static String usage() {
+    return "Usage: StandInAgent [--port 8080] [--bind 127.0.0.1] [--processes 200] [--churn 2] [--volatility 0.1]\n"
+        + "                    [--name-length 0] [--total-ram-mb 16384] [--latency 0] [--jitter 0] [--error-rate 0]\n"
+        + "                    [--drop-rate 0] [--flap UP/DOWN] [--seed 42] [--threads 4]\n"
+        + "                    [--source synthetic|proc] [--allow-kill false] [--stream-interval 1000]\n"
+        + "  --bind         address to listen on; loopback only by default, 0.0.0.0 for remote clients\n"
+        + "  --churn        processes replaced (and killed ones respawned) per second\n"
+        + "  --volatility   fraction of processes whose memory changes per second\n"
+        + "  --name-length  pad process names to this many characters to grow the payload\n"
+        + "  --latency      fixed response delay in ms, plus uniform 0..--jitter ms\n"
+        + "  --error-rate   fraction of requests answered with HTTP 500\n"
+        + "  --drop-rate    fraction of requests whose connection is closed unanswered\n"
+        + "  --flap         seconds up / seconds down, e.g. 10/5; down means connection refused\n"
+        + "  --source       proc serves this Linux host's real memory and processes instead\n"
+        + "  --allow-kill   with --source proc, let /api/process/kill terminate real processes\n"
+        + "  --stream-interval  ms between samples pushed on /api/stats/stream";
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new Options();
+    try {
+      int next = options.parse(args, 0);
+      if (next < args.length)
+        throw new IllegalArgumentException("Unknown option: " + args[next]);
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(usage());
+      System.exit(2);
+    }
+    StandInAgent agent = new StandInAgent(options);
+    agent.start();
+    System.out.println("[SMCMAP] Stand-in agent on " + agent.getUrl() + " (" + options + ")");
+    Runtime.getRuntime().addShutdownHook(new Thread(agent::stop));
+    Thread.currentThread().join();
+  }
+}
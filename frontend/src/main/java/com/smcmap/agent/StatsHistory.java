@@ -0,0 +1,188 @@
+package com.smcmap.agent;
+
+import com.smcmap.model.ProcessSnapshot;
+import com.smcmap.service.SystemStatsService;
+
+import java.util.Arrays;
+
+/**
+ * Versioned samples behind the stand-in's conditional /api/stats.
+ *
+ * Every sample is offered to {@link #add}; one identical to the latest keeps
+ * that version, anything else gets the next one. The last {@code capacity}
+ * versions are kept, so a client that reports the version it holds (as its
+ * ETag) can be answered with 304 Not Modified or with only the processes
+ * added, changed and removed since then. Tables are sorted by pid, which
+ * turns the delta into one merge pass over two arrays.
+ */
+final class StatsHistory {
+
+  /** One sample: memory totals, the process table sorted by pid, and the cache section. */
+  static final class Table {
+    final long totalRam;
+    final long usedRam;
+    final long freeRam;
+    final int[] pids;
+    final String[] names;
+    final long[] memory;
+    final String cacheJson;
+    long version;
+
+    /** Copies the first {@code size} entries of the parallel arrays, in pid order. */
+    Table(long totalRam, long usedRam, long freeRam, int[] pids, String[] names, long[] memory, int size,
+        String cacheJson) {
+      this.totalRam = totalRam;
+      this.usedRam = usedRam;
+      this.freeRam = freeRam;
+      this.cacheJson = cacheJson;
+      long[] order = new long[size];
+      for (int i = 0; i < size; i++)
+        order[i] = ((long) pids[i] << 32) | i;
+      Arrays.sort(order);
+      this.pids = new int[size];
+      this.names = new String[size];
+      this.memory = new long[size];
+      for (int i = 0; i < size; i++) {
+        int from = (int) order[i];
+        this.pids[i] = pids[from];
+        this.names[i] = names[from];
+        this.memory[i] = memory[from];
+      }
+    }
+
+    static Table of(SystemStatsService.SystemDataResult sample, String cacheJson) {
+      int n = sample.processes.size();
+      int[] pids = new int[n];
+      String[] names = new String[n];
+      long[] memory = new long[n];
+      for (int i = 0; i < n; i++) {
+        ProcessSnapshot p = sample.processes.get(i);
+        pids[i] = p.getPid();
+        names[i] = p.getName();
+        memory[i] = p.getMemoryUsed();
+      }
+      return new Table(sample.systemSnapshot.getTotalRam(), sample.systemSnapshot.getUsedRam(),
+          sample.systemSnapshot.getFreeRam(), pids, names, memory, n, cacheJson);
+    }
+
+    boolean sameAs(Table o) {
+      return totalRam == o.totalRam && usedRam == o.usedRam && freeRam == o.freeRam
+          && cacheJson.equals(o.cacheJson) && Arrays.equals(pids, o.pids) && Arrays.equals(memory, o.memory)
+          && Arrays.equals(names, o.names);
+    }
+  }
+
+  private final Table[] ring;
+  // Guarded by this
+  private int head;
+  private int size;
+  private long version;
+
+  StatsHistory(int capacity) {
+    ring = new Table[Math.max(1, capacity)];
+  }
+
+  /** Version {@code t}, or return the latest table if {@code t} does not differ from it. */
+  synchronized Table add(Table t) {
+    if (size > 0) {
+      Table latest = ring[(head - 1 + ring.length) % ring.length];
+      if (latest.sameAs(t))
+        return latest;
+    }
+    t.version = ++version;
+    ring[head] = t;
+    head = (head + 1) % ring.length;
+    size = Math.min(size + 1, ring.length);
+    return t;
+  }
+
+  /** The table of {@code version}, or null if it is unknown or no longer kept. */
+  synchronized Table find(long version) {
+    for (int i = 0; i < size; i++) {
+      Table t = ring[(head - 1 - i + ring.length) % ring.length];
+      if (t.version == version)
+        return t;
+    }
+    return null;
+  }
+
+  // ---- Encoding ----
+
+  /** Members of a full /api/stats body, without braces around them. */
+  static void appendFull(StringBuilder sb, Table t) {
+    sb.append("\"seq\":").append(t.version).append(',');
+    appendMemory(sb, t);
+    sb.append(",\"processes\":[");
+    for (int i = 0; i < t.pids.length; i++) {
+      if (i > 0)
+        sb.append(',');
+      appendProcess(sb, t, i);
+    }
+    sb.append("],\"cache\":").append(t.cacheJson);
+  }
+
+  /**
+   * Members of a delta body taking a client from {@code base} to {@code t}:
+   * "added" holds new processes (and reused pids under a new name) in full,
+   * "changed" only pid and memory, "removed" bare pids.
+   */
+  static void appendDelta(StringBuilder sb, Table base, Table t) {
+    sb.append("\"seq\":").append(t.version).append(",\"base\":").append(base.version).append(',');
+    appendMemory(sb, t);
+    StringBuilder changed = new StringBuilder();
+    StringBuilder removed = new StringBuilder();
+    sb.append(",\"added\":[");
+    boolean firstAdded = true;
+    int i = 0, j = 0;
+    while (i < base.pids.length || j < t.pids.length) {
+      int cmp = i == base.pids.length ? 1 : j == t.pids.length ? -1 : Integer.compare(base.pids[i], t.pids[j]);
+      if (cmp < 0) {
+        if (removed.length() > 0)
+          removed.append(',');
+        removed.append(base.pids[i++]);
+      } else if (cmp > 0 || !base.names[i].equals(t.names[j])) {
+        if (!firstAdded)
+          sb.append(',');
+        firstAdded = false;
+        appendProcess(sb, t, j++);
+        if (cmp == 0)
+          i++;
+      } else {
+        if (base.memory[i] != t.memory[j]) {
+          if (changed.length() > 0)
+            changed.append(',');
+          changed.append("{\"pid\":").append(t.pids[j]).append(",\"memoryUsed\":").append(t.memory[j]).append('}');
+        }
+        i++;
+        j++;
+      }
+    }
+    sb.append("],\"changed\":[").append(changed).append("],\"removed\":[").append(removed).append(']');
+    sb.append(",\"cache\":").append(t.cacheJson);
+  }
+
+  private static void appendMemory(StringBuilder sb, Table t) {
+    sb.append("\"memory\":{\"totalRam\":").append(t.totalRam)
+        .append(",\"usedRam\":").append(t.usedRam)
+        .append(",\"freeRam\":").append(t.freeRam).append('}');
+  }
+
+  private static void appendProcess(StringBuilder sb, Table t, int i) {
+    sb.append("{\"pid\":").append(t.pids[i]).append(",\"name\":\"");
+    appendEscaped(sb, t.names[i]);
+    sb.append("\",\"memoryUsed\":").append(t.memory[i]).append('}');
+  }
+
+  /** Process names are arbitrary bytes on Linux; escape what JSON requires. */
+  private static void appendEscaped(StringBuilder sb, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\')
+        sb.append('\\').append(c);
+      else if (c < 0x20)
+        sb.append(String.format("\\u%04x", (int) c));
+      else
+        sb.append(c);
+    }
+  }
+}
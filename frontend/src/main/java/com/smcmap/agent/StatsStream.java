@@ -0,0 +1,123 @@
+package com.smcmap.agent;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Server-Sent Events broadcaster behind the stand-in's /api/stats/stream.
+ *
+ * {@link #publish} numbers each sample, encodes it once as an SSE frame and
+ * writes it to every open subscriber. The last {@code history} frames are
+ * kept in a ring, so a client reconnecting with Last-Event-ID gets the
+ * samples it missed replayed before live ones; one that fell further behind
+ * gets what is left and sees the gap in the ids. Replay and publish hold the
+ * same lock, so a subscriber never sees ids out of order.
+ *
+ * Frames are written on the publishing thread. A subscriber whose write fails
+ * (or that a drop fault severs) is closed and forgotten.
+ */
+final class StatsStream {
+
+  /** Reconnect delay suggested to clients in the stream's first frame. */
+  static final long RETRY_MS = 1000;
+
+  private final byte[][] ring;
+  private final long[] ringSeq;
+  private final List<Subscriber> subscribers = new ArrayList<>();
+  // Guarded by this
+  private long seq;
+  private int ringSize;
+  private int ringHead;
+
+  private static final class Subscriber {
+    final HttpExchange exchange;
+    final OutputStream out;
+
+    Subscriber(HttpExchange exchange) {
+      this.exchange = exchange;
+      this.out = exchange.getResponseBody();
+    }
+  }
+
+  StatsStream(int history) {
+    ring = new byte[Math.max(1, history)][];
+    ringSeq = new long[ring.length];
+  }
+
+  /**
+   * Start streaming to {@code exchange}, replaying buffered frames after
+   * {@code lastSeq} (-1 for none). The exchange stays open until the client
+   * leaves or {@link #closeAll} is called.
+   */
+  synchronized void subscribe(HttpExchange exchange, long lastSeq) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+    exchange.sendResponseHeaders(200, 0);
+    Subscriber s = new Subscriber(exchange);
+    try {
+      s.out.write(("retry: " + RETRY_MS + "\n\n").getBytes(StandardCharsets.US_ASCII));
+      if (lastSeq >= 0) {
+        int start = (ringHead - ringSize + ring.length) % ring.length;
+        for (int i = 0; i < ringSize; i++) {
+          int slot = (start + i) % ring.length;
+          if (ringSeq[slot] > lastSeq)
+            s.out.write(ring[slot]);
+        }
+      }
+      s.out.flush();
+    } catch (IOException e) {
+      exchange.close();
+      throw e;
+    }
+    subscribers.add(s);
+  }
+
+  /**
+   * Number {@code statsJson}, buffer it and send it to every subscriber.
+   * {@code drop} decides per subscriber whether this frame severs its stream
+   * instead (fault injection). Returns the sample's sequence number.
+   */
+  synchronized long publish(String statsJson, BooleanSupplier drop) {
+    long id = ++seq;
+    byte[] frame = ("id: " + id + "\ndata: " + statsJson + "\n\n").getBytes(StandardCharsets.UTF_8);
+    ring[ringHead] = frame;
+    ringSeq[ringHead] = id;
+    ringHead = (ringHead + 1) % ring.length;
+    ringSize = Math.min(ringSize + 1, ring.length);
+    for (Iterator<Subscriber> it = subscribers.iterator(); it.hasNext();) {
+      Subscriber s = it.next();
+      if (drop.getAsBoolean()) {
+        s.exchange.close();
+        it.remove();
+        continue;
+      }
+      try {
+        s.out.write(frame);
+        s.out.flush();
+      } catch (IOException e) {
+        s.exchange.close();
+        it.remove();
+      }
+    }
+    return id;
+  }
+
+  synchronized int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  /** End every open stream; clients reconnect and resume. */
+  synchronized void closeAll() {
+    for (Subscriber s : subscribers)
+      s.exchange.close();
+    subscribers.clear();
+  }
+}
@@ -0,0 +1,20 @@
+package com.smcmap.model;
+
+public class CacheStats {
+    private String algorithm = "";
+    private long hits;
+    private long misses;
+    private double hitRatio;
+
+    public String getAlgorithm() { return algorithm; }
+    public void setAlgorithm(String algorithm) { this.algorithm = algorithm; }
+
+    public long getHits() { return hits; }
+    public void setHits(long hits) { this.hits = hits; }
+
+    public long getMisses() { return misses; }
+    public void setMisses(long misses) { this.misses = misses; }
+
+    public double getHitRatio() { return hitRatio; }
+    public void setHitRatio(double hitRatio) { this.hitRatio = hitRatio; }
+}
@@ -0,0 +1,44 @@
+package com.smcmap.model;
+
+import java.util.Arrays;
+
+/**
+ * Memory history of one process: parallel primitive arrays of epoch millis
+ * and resident bytes, oldest first.
+ */
+public final class ProcessSeries {
+    private final int pid;
+    private final String name;
+    private long[] timestamps;
+    private long[] memory;
+    private int size;
+
+    public ProcessSeries(int pid, String name) {
+        this.pid = pid;
+        this.name = name;
+        timestamps = new long[64];
+        memory = new long[64];
+    }
+
+    public void add(long timestampMs, long memoryUsed) {
+        if (size == timestamps.length) {
+            int cap = size * 2;
+            timestamps = Arrays.copyOf(timestamps, cap);
+            memory = Arrays.copyOf(memory, cap);
+        }
+        timestamps[size] = timestampMs;
+        memory[size] = memoryUsed;
+        size++;
+    }
+
+    public int getPid() { return pid; }
+
+    /** Name the process had in the most recent sample, or null if there are none. */
+    public String getName() { return name; }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public long getTimestamp(int i) { return timestamps[i]; }
+    public long getMemoryUsed(int i) { return memory[i]; }
+}
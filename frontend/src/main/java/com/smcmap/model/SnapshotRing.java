@@ -0,0 +1,104 @@
+package com.smcmap.model;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Fixed-capacity ring of the most recent snapshots in parallel primitive
+ * arrays (epoch millis, total, used and free RAM in bytes).
+ *
+ * Appends are serialized among writers; reads take no lock. A reader copies
+ * what it wants and then discards any entry a concurrent append may have
+ * overwritten meanwhile (seqlock-style validation against {@code claimed}),
+ * so a read never blocks a writer and never returns a torn row.
+ *
+ * {@link #coverageStartMs()} is the time from which the ring holds every
+ * sample appended: its creation time until it first wraps, then the oldest
+ * retained timestamp. Anything older has to come from the database.
+ */
+public final class SnapshotRing {
+    private final int capacity;
+    private final long[] timestamps;
+    private final long[] totalRam;
+    private final long[] usedRam;
+    private final long[] freeRam;
+    private final long createdAtMs;
+
+    /** Number of appends started; slot (claimed - 1) % capacity may be mid-write. */
+    private volatile long claimed;
+    /** Number of appends completed; entries below this index are readable. */
+    private volatile long published;
+
+    public SnapshotRing(int capacity) {
+        this(capacity, System.currentTimeMillis());
+    }
+
+    public SnapshotRing(int capacity, long createdAtMs) {
+        this.capacity = Math.max(1, capacity);
+        this.createdAtMs = createdAtMs;
+        timestamps = new long[this.capacity];
+        totalRam = new long[this.capacity];
+        usedRam = new long[this.capacity];
+        freeRam = new long[this.capacity];
+    }
+
+    public synchronized void add(long timestampMs, long total, long used, long free) {
+        long index = published;
+        claimed = index + 1;
+        // Slot stores must not become visible before the claim
+        VarHandle.storeStoreFence();
+        int slot = (int) (index % capacity);
+        timestamps[slot] = timestampMs;
+        totalRam[slot] = total;
+        usedRam[slot] = used;
+        freeRam[slot] = free;
+        published = index + 1;
+    }
+
+    public int capacity() { return capacity; }
+
+    /** Samples currently held (at most capacity). */
+    public int size() {
+        return (int) Math.min(published, capacity);
+    }
+
+    public long coverageStartMs() {
+        while (true) {
+            long p = published;
+            if (p <= capacity)
+                return createdAtMs;
+            long ts = timestamps[(int) ((p - capacity) % capacity)];
+            VarHandle.acquireFence();
+            if (claimed == p)
+                return ts;
+        }
+    }
+
+    /** The newest {@code limit} samples, oldest first, appended to {@code out}. */
+    public void copyRecent(int limit, SnapshotSeries out) {
+        copy(Math.min(limit, capacity), Long.MIN_VALUE, Long.MAX_VALUE, out);
+    }
+
+    /** Samples with {@code fromMs <= timestamp < toMs}, oldest first, appended to {@code out}. */
+    public void copyRange(long fromMs, long toMs, SnapshotSeries out) {
+        copy(capacity, fromMs, toMs, out);
+    }
+
+    private void copy(int count, long fromMs, long toMs, SnapshotSeries out) {
+        int start = out.size();
+        while (true) {
+            long p = published;
+            long from = Math.max(0, p - count);
+            for (long i = from; i < p; i++) {
+                int slot = (int) (i % capacity);
+                long ts = timestamps[slot];
+                if (ts >= fromMs && ts < toMs)
+                    out.add(ts, totalRam[slot], usedRam[slot], freeRam[slot]);
+            }
+            // Entries below claimed - capacity may have been overwritten while we copied
+            VarHandle.acquireFence();
+            if (claimed - capacity <= from)
+                return;
+            out.truncate(start);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.smcmap.model;
+
+/** Aggregated memory figures for one time bucket of a rollup tier (or a single raw sample). */
+public class SnapshotRollup {
+    private long bucketStart;
+    private long sampleCount;
+    private long totalRam;
+    private long minUsedRam;
+    private long maxUsedRam;
+    private long avgUsedRam;
+    private long minFreeRam;
+    private long maxFreeRam;
+    private long avgFreeRam;
+
+    public long getBucketStart() { return bucketStart; }
+    public void setBucketStart(long bucketStart) { this.bucketStart = bucketStart; }
+
+    public long getSampleCount() { return sampleCount; }
+    public void setSampleCount(long sampleCount) { this.sampleCount = sampleCount; }
+
+    public long getTotalRam() { return totalRam; }
+    public void setTotalRam(long totalRam) { this.totalRam = totalRam; }
+
+    public long getMinUsedRam() { return minUsedRam; }
+    public void setMinUsedRam(long minUsedRam) { this.minUsedRam = minUsedRam; }
+
+    public long getMaxUsedRam() { return maxUsedRam; }
+    public void setMaxUsedRam(long maxUsedRam) { this.maxUsedRam = maxUsedRam; }
+
+    public long getAvgUsedRam() { return avgUsedRam; }
+    public void setAvgUsedRam(long avgUsedRam) { this.avgUsedRam = avgUsedRam; }
+
+    public long getMinFreeRam() { return minFreeRam; }
+    public void setMinFreeRam(long minFreeRam) { this.minFreeRam = minFreeRam; }
+
+    public long getMaxFreeRam() { return maxFreeRam; }
+    public void setMaxFreeRam(long maxFreeRam) { this.maxFreeRam = maxFreeRam; }
+
+    public long getAvgFreeRam() { return avgFreeRam; }
+    public void setAvgFreeRam(long avgFreeRam) { this.avgFreeRam = avgFreeRam; }
+}
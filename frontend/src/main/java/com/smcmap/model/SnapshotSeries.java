@@ -0,0 +1,78 @@
+package com.smcmap.model;
+
+import java.util.Arrays;
+
+/**
+ * Columnar snapshot history: parallel primitive arrays (epoch millis, total,
+ * used and free RAM in bytes) instead of one object or String[] per row.
+ */
+public final class SnapshotSeries {
+    private long[] timestamps;
+    private long[] totalRam;
+    private long[] usedRam;
+    private long[] freeRam;
+    private int size;
+
+    public SnapshotSeries() {
+        this(64);
+    }
+
+    public SnapshotSeries(int initialCapacity) {
+        int cap = Math.max(1, initialCapacity);
+        timestamps = new long[cap];
+        totalRam = new long[cap];
+        usedRam = new long[cap];
+        freeRam = new long[cap];
+    }
+
+    public void add(long timestampMs, long total, long used, long free) {
+        if (size == timestamps.length) {
+            int cap = size * 2;
+            timestamps = Arrays.copyOf(timestamps, cap);
+            totalRam = Arrays.copyOf(totalRam, cap);
+            usedRam = Arrays.copyOf(usedRam, cap);
+            freeRam = Arrays.copyOf(freeRam, cap);
+        }
+        timestamps[size] = timestampMs;
+        totalRam[size] = total;
+        usedRam[size] = used;
+        freeRam[size] = free;
+        size++;
+    }
+
+    /** Drop every row from index {@code newSize} on. */
+    public void truncate(int newSize) {
+        if (newSize < size)
+            size = Math.max(0, newSize);
+    }
+
+    /** Append every row of {@code other}. */
+    public void addAll(SnapshotSeries other) {
+        for (int i = 0; i < other.size; i++)
+            add(other.timestamps[i], other.totalRam[i], other.usedRam[i], other.freeRam[i]);
+    }
+
+    /** Reverse row order in place (for queries read newest-first). */
+    public void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            swap(timestamps, i, j);
+            swap(totalRam, i, j);
+            swap(usedRam, i, j);
+            swap(freeRam, i, j);
+        }
+    }
+
+    private static void swap(long[] a, int i, int j) {
+        long t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public long getTimestamp(int i) { return timestamps[i]; }
+    public long getTotalRam(int i) { return totalRam[i]; }
+    public long getUsedRam(int i) { return usedRam[i]; }
+    public long getFreeRam(int i) { return freeRam[i]; }
+}
@@ -0,0 +1,86 @@
+package com.smcmap.service;
+
+import com.smcmap.model.SystemSnapshot;
+
+/**
+ * One monitored agent: its id (the {@code node_id} its history is stored
+ * under), endpoint, per-node request timeout and live health.
+ *
+ * Health is derived from consecutive failures: UNKNOWN until the first poll,
+ * UP after a success, DEGRADED after one or two failures in a row, DOWN from
+ * the third.
+ */
+public class AgentNode {
+
+  public enum Health {
+    UNKNOWN, UP, DEGRADED, DOWN
+  }
+
+  private static final int DOWN_AFTER_FAILURES = 3;
+
+  private final String id;
+  private final String url;
+  private final long timeoutMs;
+  private final SystemStatsService stats;
+
+  private int consecutiveFailures;
+  private boolean polled;
+  private long lastRttNanos = -1;
+  private long lastSeenMs = -1;
+  private String lastError;
+  private SystemSnapshot lastSnapshot;
+
+  /** Poll bookkeeping owned by MultiNodePoller. */
+  volatile boolean inFlight;
+  volatile long nextDueMs;
+
+  AgentNode(String id, String url, long timeoutMs, SystemStatsService stats) {
+    this.id = id;
+    this.url = url;
+    this.timeoutMs = timeoutMs;
+    this.stats = stats;
+  }
+
+  public String getId() { return id; }
+  public String getUrl() { return url; }
+  public long getTimeoutMs() { return timeoutMs; }
+  public SystemStatsService getStats() { return stats; }
+
+  public synchronized void recordSuccess(long rttNanos, SystemSnapshot snapshot) {
+    polled = true;
+    consecutiveFailures = 0;
+    lastRttNanos = rttNanos;
+    lastSeenMs = System.currentTimeMillis();
+    lastError = null;
+    lastSnapshot = snapshot;
+  }
+
+  public synchronized void recordFailure(Throwable error) {
+    polled = true;
+    consecutiveFailures++;
+    lastError = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+  }
+
+  public synchronized Health getHealth() {
+    if (!polled)
+      return Health.UNKNOWN;
+    if (consecutiveFailures == 0)
+      return Health.UP;
+    return consecutiveFailures < DOWN_AFTER_FAILURES ? Health.DEGRADED : Health.DOWN;
+  }
+
+  public synchronized int getConsecutiveFailures() { return consecutiveFailures; }
+
+  /** Round trip of the last successful poll in milliseconds, -1 if none. */
+  public synchronized double getLastRttMs() {
+    return lastRttNanos < 0 ? -1 : lastRttNanos / 1e6;
+  }
+
+  /** Epoch millis of the last successful poll, -1 if none. */
+  public synchronized long getLastSeenMs() { return lastSeenMs; }
+
+  public synchronized String getLastError() { return lastError; }
+
+  /** Memory figures from the last successful poll, or null. */
+  public synchronized SystemSnapshot getLastSnapshot() { return lastSnapshot; }
+}
@@ -1,136 +1,1166 @@
 package com.smcmap.service;
 
+import com.smcmap.model.ProcessSeries;
+import com.smcmap.model.ProcessSnapshot;
+import com.smcmap.model.SnapshotRing;
+import com.smcmap.model.SnapshotRollup;
+import com.smcmap.model.SnapshotSeries;
 import com.smcmap.model.SystemSnapshot;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * SQLite-backed snapshot history.
+ *
+ * Writes are write-behind: {@link #saveSystemSnapshot} only enqueues the sample
+ * and a single writer thread drains the queue into the database in batched
+ * transactions over one long-lived connection. Reads use a second long-lived
+ * connection so they never wait on a batch in progress (the database runs in
+ * WAL mode).
+ *
+ * The writer also maintains 1-minute, 1-hour and 1-day rollup tables
+ * (min/max/avg of used and free RAM) in the same transaction as the raw rows,
+ * and periodically prunes every tier to its own retention window. Range
+ * queries go through {@link #getRollupHistory} which reads the coarsest tier
+ * that still satisfies the requested resolution.
+ *
+ * Sample time is stored as indexed epoch millis ({@code ts_ms}); raw range
+ * reads bind their bounds as parameters and return a columnar
+ * {@link SnapshotSeries}.
+ *
+ * Every row carries the {@code node_id} of the agent it came from, and raw
+ * rows and rollups are keyed by (node_id, time), so each node's history is a
+ * contiguous index range that can be queried on its own. Overloads without a
+ * node id read the primary agent ({@link NodeRegistry#LOCAL_NODE_ID}).
+ *
+ * Every saved sample is also appended to a per-node {@link SnapshotRing} of
+ * the last RING_CAPACITY samples. Raw reads are answered from the ring for
+ * the span it covers and only go to SQLite for anything older, so recent
+ * windows (analytics, export) never touch disk; the row count is kept in
+ * memory for the same reason.
+ *
+ * Raw rows are not thrown away when they age past RAW_RETENTION_MS: the
+ * retention pass first moves them, a whole hour at a time, into the
+ * compressed {@link SnapshotArchive} next to the database
+ * ({@code <db>.archive/}). Raw reads stitch archive, SQLite and ring together,
+ * so callers see one continuous history.
+ *
+ * Samples saved with their process list also record one {@code process_sample}
+ * row (pid, name id, resident bytes) per process, written in the same batch
+ * transaction. Process names are interned once into {@code process_name} and
+ * referenced by id. Process rows are kept for PROCESS_RETENTION_MS.
+ */
 public class AnalysisPersistenceService {
 
-  private static final String DB_URL = "jdbc:sqlite:smcmap.db";
+  private static final String DEFAULT_DB_PATH = "smcmap.db";
+
+  /** Maximum samples held in memory waiting for the writer. */
+  private static final int QUEUE_CAPACITY = 4096;
+  /** A batch is committed once it holds this many rows... */
+  private static final int MAX_BATCH_SIZE = 256;
+  /** ...or once its oldest row has waited this long. */
+  private static final long MAX_BATCH_AGE_MS = 2000;
+  /** Pause before the one retry of a failed batch, long enough for another process's lock to clear. */
+  private static final long RETRY_DELAY_MS = 1000;
+
+  private static final long MINUTE_MS = 60_000L;
+  private static final long HOUR_MS = 60 * MINUTE_MS;
+  private static final long DAY_MS = 24 * HOUR_MS;
+
+  /** Raw 1 Hz rows stay in SQLite this long before moving to the archive. */
+  private static final long RAW_RETENTION_MS = 7 * DAY_MS;
+  /** Per-process rows are far more numerous than snapshots; keep a day of them. */
+  private static final long PROCESS_RETENTION_MS = DAY_MS;
+  /** How often the writer enforces retention. */
+  private static final long PRUNE_INTERVAL_MS = 10 * MINUTE_MS;
+
+  private static final RollupTier[] TIERS = {
+      new RollupTier("1m", "snapshot_rollup_1m", MINUTE_MS, 30 * DAY_MS),
+      new RollupTier("1h", "snapshot_rollup_1h", HOUR_MS, 365 * DAY_MS),
+      new RollupTier("1d", "snapshot_rollup_1d", DAY_MS, -1),
+  };
+
+  /** Samples kept in memory per node: one hour at the default 1 Hz poll. */
+  private static final int RING_CAPACITY = 3600;
+
+  /** Rows the driver pulls per step when {@link #streamSeries} walks a cursor. */
+  private static final int STREAM_FETCH_SIZE = 512;
+  /** Rows per node moved to the archive per query, bounding memory after a long downtime. */
+  private static final int ARCHIVE_CHUNK = 86_400;
+
+  /** Bumped whenever initializeDatabase() learns a new migration step. */
+  private static final int SCHEMA_VERSION = 2;
+
+  private static final LatencyHistogram WRITE_TIME = MetricsRegistry.global().histogram("sqlite.write");
+  private static final MetricsRegistry.Counter WRITE_ROWS = MetricsRegistry.global().counter("sqlite.rows");
+  private static final MetricsRegistry.Counter WRITE_FAILURES = MetricsRegistry.global().counter("sqlite.failures");
+
+  private static final String INSERT_SQL = "INSERT INTO system_snapshot(node_id, ts_ms, total_ram, used_ram, free_ram) "
+      + "VALUES(?,?,?,?,?)";
+  private static final String PROCESS_INSERT_SQL = "INSERT OR IGNORE INTO process_sample(node_id, ts_ms, pid, name_id, "
+      + "memory) VALUES(?,?,?,?,?)";
+
+  /** Batch order for writing: by node, then time, so rollups fold into one upsert per node and bucket. */
+  private static final Comparator<PendingSnapshot> NODE_TIME_ORDER = Comparator
+      .comparing((PendingSnapshot p) -> p.nodeId)
+      .thenComparingLong(p -> p.timestampMs);
+
+  private final BlockingQueue<PendingSnapshot> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final AtomicLong droppedCount = new AtomicLong();
+  private final Map<String, SnapshotRing> rings = new ConcurrentHashMap<>();
+  /** Rows in system_snapshot: counted once at startup, then tracked by the writer and the pruner. */
+  private final AtomicLong rowCount = new AtomicLong();
+  /** The same, per node id. */
+  private final Map<String, AtomicLong> nodeRowCounts = new ConcurrentHashMap<>();
+  /** Samples accepted by saveSystemSnapshot, and samples since written or dropped; see flush(). */
+  private final AtomicLong enqueuedCount = new AtomicLong();
+  private final AtomicLong settledCount = new AtomicLong();
+  private final Object flushLock = new Object();
+  private final String dbPath;
+  private final Object readLock = new Object();
+  /** Cold raw history; null if the archive directory could not be opened. */
+  private final SnapshotArchive archive;
+
+  private Connection writeConn;
+  private Connection readConn;
+  private PreparedStatement insertStmt;
+  private PreparedStatement processStmt;
+  private PreparedStatement processNameStmt;
+  /** process_name contents; owned by the writer thread once it is running. */
+  private final Map<String, Integer> processNameIds = new HashMap<>();
+  private final PreparedStatement[] rollupStmts = new PreparedStatement[TIERS.length];
+  private long lastPruneMs;
+  private Thread writerThread;
+  private volatile boolean running;
 
   public AnalysisPersistenceService() {
+    this(DEFAULT_DB_PATH);
+  }
+
+  /** Use the SQLite database at {@code dbPath} (created if missing). */
+  public AnalysisPersistenceService(String dbPath) {
+    this.dbPath = dbPath;
+    archive = openArchive(new File(dbPath + ".archive"));
     initializeDatabase();
+    startWriter();
+  }
+
+  private static SnapshotArchive openArchive(File dir) {
+    try {
+      return new SnapshotArchive(dir);
+    } catch (IOException e) {
+      System.err.println("[SMCMAP] Snapshot archive unavailable, old raw rows will be dropped: " + e.getMessage());
+      return null;
+    }
   }
 
   private void initializeDatabase() {
-    try (Connection conn = DriverManager.getConnection(DB_URL)) {
-      if (conn != null) {
-        try (Statement stmt = conn.createStatement()) {
-          stmt.execute("CREATE TABLE IF NOT EXISTS system_snapshot (" +
-              "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-              "total_ram BIGINT, " +
-              "used_ram BIGINT, " +
-              "free_ram BIGINT, " +
-              "timestamp DATETIME DEFAULT CURRENT_TIMESTAMP" +
-              ");");
+    String url = "jdbc:sqlite:" + dbPath;
+    try {
+      writeConn = DriverManager.getConnection(url);
+      try (Statement stmt = writeConn.createStatement()) {
+        stmt.execute("PRAGMA journal_mode=WAL");
+        stmt.execute("PRAGMA synchronous=NORMAL");
+        stmt.execute("CREATE TABLE IF NOT EXISTS system_snapshot (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "node_id TEXT NOT NULL DEFAULT '" + NodeRegistry.LOCAL_NODE_ID + "', " +
+            "ts_ms INTEGER NOT NULL, " +
+            "total_ram BIGINT, " +
+            "used_ram BIGINT, " +
+            "free_ram BIGINT" +
+            ");");
+        migrateSchema(stmt);
+        // Per-node range reads; the ts-only index serves retention deletes
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_system_snapshot_node_ts ON system_snapshot(node_id, ts_ms)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_system_snapshot_ts ON system_snapshot(ts_ms)");
+        for (RollupTier tier : TIERS) {
+          stmt.execute("CREATE TABLE IF NOT EXISTS " + tier.table + " (" + rollupColumns() + ");");
+          backfillRollup(stmt, tier);
         }
+        stmt.execute("CREATE TABLE IF NOT EXISTS process_name (" +
+            "id INTEGER PRIMARY KEY, " +
+            "name TEXT NOT NULL UNIQUE" +
+            ");");
+        // Clustered by (node, time): top-N at an instant or over a range reads one contiguous key range
+        stmt.execute("CREATE TABLE IF NOT EXISTS process_sample (" +
+            "node_id TEXT NOT NULL, " +
+            "ts_ms INTEGER NOT NULL, " +
+            "pid INTEGER NOT NULL, " +
+            "name_id INTEGER NOT NULL REFERENCES process_name(id), " +
+            "memory BIGINT NOT NULL, " +
+            "PRIMARY KEY (node_id, ts_ms, pid)" +
+            ") WITHOUT ROWID;");
+        // One process's history over time; carries memory so series reads never touch the table
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_process_sample_pid ON process_sample(node_id, pid, ts_ms, memory)");
       }
+      loadProcessNames();
+      try (Statement stmt = writeConn.createStatement();
+          ResultSet rs = stmt.executeQuery("SELECT node_id, COUNT(*) FROM system_snapshot GROUP BY node_id")) {
+        while (rs.next()) {
+          nodeRowCount(rs.getString(1)).set(rs.getLong(2));
+          rowCount.addAndGet(rs.getLong(2));
+        }
+      }
+      insertStmt = writeConn.prepareStatement(INSERT_SQL);
+      processStmt = writeConn.prepareStatement(PROCESS_INSERT_SQL);
+      processNameStmt = writeConn.prepareStatement("INSERT INTO process_name(name) VALUES(?)",
+          Statement.RETURN_GENERATED_KEYS);
+      for (int i = 0; i < TIERS.length; i++) {
+        String t = TIERS[i].table;
+        rollupStmts[i] = writeConn.prepareStatement("INSERT INTO " + t + "(bucket_start, sample_count, total_ram, "
+            + "min_used, max_used, sum_used, min_free, max_free, sum_free, node_id) VALUES(?,?,?,?,?,?,?,?,?,?) "
+            + "ON CONFLICT(node_id, bucket_start) DO UPDATE SET "
+            + "sample_count = sample_count + excluded.sample_count, "
+            + "total_ram = excluded.total_ram, "
+            + "min_used = MIN(min_used, excluded.min_used), "
+            + "max_used = MAX(max_used, excluded.max_used), "
+            + "sum_used = sum_used + excluded.sum_used, "
+            + "min_free = MIN(min_free, excluded.min_free), "
+            + "max_free = MAX(max_free, excluded.max_free), "
+            + "sum_free = sum_free + excluded.sum_free");
+      }
+      readConn = DriverManager.getConnection(url);
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
 
+  private void loadProcessNames() throws SQLException {
+    processNameIds.clear();
+    try (Statement stmt = writeConn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT id, name FROM process_name")) {
+      while (rs.next())
+        processNameIds.put(rs.getString(2), rs.getInt(1));
+    }
+  }
+
+  /** Id of {@code name} in process_name, inserting it on first sight. Writer thread only. */
+  private int processNameId(String name) throws SQLException {
+    Integer id = processNameIds.get(name);
+    if (id != null)
+      return id;
+    processNameStmt.setString(1, name);
+    processNameStmt.executeUpdate();
+    try (ResultSet keys = processNameStmt.getGeneratedKeys()) {
+      if (!keys.next())
+        throw new SQLException("No id returned for process name " + name);
+      id = keys.getInt(1);
+    }
+    processNameIds.put(name, id);
+    return id;
+  }
+
+  private static String rollupColumns() {
+    return "node_id TEXT NOT NULL DEFAULT '" + NodeRegistry.LOCAL_NODE_ID + "', " +
+        "bucket_start INTEGER NOT NULL, " +
+        "sample_count INTEGER, " +
+        "total_ram BIGINT, " +
+        "min_used BIGINT, max_used BIGINT, sum_used BIGINT, " +
+        "min_free BIGINT, max_free BIGINT, sum_free BIGINT, " +
+        "PRIMARY KEY (node_id, bucket_start)";
+  }
+
+  /**
+   * Version 1: the text {@code timestamp DATETIME} column is replaced by an
+   * integer epoch-millis {@code ts_ms}. Older databases are rebuilt in place,
+   * converting the existing UTC text timestamps.
+   *
+   * Version 2: rows gain a {@code node_id}; existing history is attributed to
+   * the primary agent. Rollup tables are rebuilt keyed by (node_id,
+   * bucket_start) so rollups older than the raw retention survive.
+   */
+  private void migrateSchema(Statement stmt) throws SQLException {
+    int version;
+    try (ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+      version = rs.next() ? rs.getInt(1) : 0;
+    }
+    if (version >= SCHEMA_VERSION)
+      return;
+    if (!columnsOf(stmt, "system_snapshot").contains("ts_ms")) {
+      System.out.println("[SMCMAP] Migrating system_snapshot to epoch-millis timestamps...");
+      writeConn.setAutoCommit(false);
+      try {
+        stmt.execute("CREATE TABLE system_snapshot_v1 (" +
+            "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "ts_ms INTEGER NOT NULL, " +
+            "total_ram BIGINT, " +
+            "used_ram BIGINT, " +
+            "free_ram BIGINT" +
+            ");");
+        stmt.execute("INSERT INTO system_snapshot_v1(id, ts_ms, total_ram, used_ram, free_ram) "
+            + "SELECT id, CAST(strftime('%s', timestamp) AS INTEGER) * 1000, total_ram, used_ram, free_ram "
+            + "FROM system_snapshot WHERE timestamp IS NOT NULL");
+        stmt.execute("DROP TABLE system_snapshot");
+        stmt.execute("ALTER TABLE system_snapshot_v1 RENAME TO system_snapshot");
+        writeConn.commit();
+      } catch (SQLException e) {
+        writeConn.rollback();
+        throw e;
+      } finally {
+        writeConn.setAutoCommit(true);
+      }
+    }
+    if (!columnsOf(stmt, "system_snapshot").contains("node_id")) {
+      System.out.println("[SMCMAP] Adding node ids to snapshot history...");
+      stmt.execute("ALTER TABLE system_snapshot ADD COLUMN node_id TEXT NOT NULL DEFAULT '"
+          + NodeRegistry.LOCAL_NODE_ID + "'");
+    }
+    for (RollupTier tier : TIERS) {
+      Set<String> cols = columnsOf(stmt, tier.table);
+      if (cols.isEmpty() || cols.contains("node_id"))
+        continue;
+      writeConn.setAutoCommit(false);
+      try {
+        stmt.execute("CREATE TABLE " + tier.table + "_v2 (" + rollupColumns() + ");");
+        stmt.execute("INSERT INTO " + tier.table + "_v2(node_id, bucket_start, sample_count, total_ram, "
+            + "min_used, max_used, sum_used, min_free, max_free, sum_free) SELECT '" + NodeRegistry.LOCAL_NODE_ID
+            + "', bucket_start, sample_count, total_ram, min_used, max_used, sum_used, min_free, max_free, sum_free "
+            + "FROM " + tier.table);
+        stmt.execute("DROP TABLE " + tier.table);
+        stmt.execute("ALTER TABLE " + tier.table + "_v2 RENAME TO " + tier.table);
+        writeConn.commit();
+      } catch (SQLException e) {
+        writeConn.rollback();
+        throw e;
+      } finally {
+        writeConn.setAutoCommit(true);
+      }
+    }
+    stmt.execute("PRAGMA user_version = " + SCHEMA_VERSION);
+  }
+
+  /** Column names of {@code table}; empty if it does not exist. */
+  private static Set<String> columnsOf(Statement stmt, String table) throws SQLException {
+    Set<String> cols = new HashSet<>();
+    try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+      while (rs.next())
+        cols.add(rs.getString("name"));
+    }
+    return cols;
+  }
+
+  /** Seed an empty rollup tier from raw rows written before rollups existed. */
+  private void backfillRollup(Statement stmt, RollupTier tier) throws SQLException {
+    try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tier.table)) {
+      if (rs.next() && rs.getLong(1) > 0)
+        return;
+    }
+    stmt.executeUpdate("INSERT INTO " + tier.table + " SELECT node_id, "
+        + "(ts_ms / " + tier.bucketMs + ") * " + tier.bucketMs + " AS b, "
+        + "COUNT(*), MAX(total_ram), MIN(used_ram), MAX(used_ram), CAST(TOTAL(used_ram) AS INTEGER), "
+        + "MIN(free_ram), MAX(free_ram), CAST(TOTAL(free_ram) AS INTEGER) "
+        + "FROM system_snapshot GROUP BY node_id, b");
+  }
+
+  private void startWriter() {
+    running = true;
+    writerThread = new Thread(this::writerLoop, "SMCMAP-DbWriter");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Queue a snapshot for persistence. Never blocks: when the queue is full the
+   * oldest pending sample is discarded (and counted) to make room.
+   */
   public void saveSystemSnapshot(SystemSnapshot snapshot) {
-    String sql = "INSERT INTO system_snapshot(total_ram, used_ram, free_ram) VALUES(?,?,?)";
-
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-      pstmt.setLong(1, snapshot.getTotalRam());
-      pstmt.setLong(2, snapshot.getUsedRam());
-      pstmt.setLong(3, snapshot.getFreeRam());
-      pstmt.executeUpdate();
-    } catch (Exception e) {
-      e.printStackTrace();
+    saveSystemSnapshot(NodeRegistry.LOCAL_NODE_ID, snapshot);
+  }
+
+  /** Queue a snapshot taken from agent {@code nodeId}; same drop-oldest policy. */
+  public void saveSystemSnapshot(String nodeId, SystemSnapshot snapshot) {
+    saveSystemSnapshot(nodeId, snapshot, null);
+  }
+
+  /**
+   * Queue {@code snapshot} of {@code nodeId} together with its process list
+   * (may be null). Only copies the pids, names and sizes; never blocks on I/O.
+   */
+  public void saveSystemSnapshot(String nodeId, SystemSnapshot snapshot, List<ProcessSnapshot> processes) {
+    long now = System.currentTimeMillis();
+    PendingSnapshot pending = new PendingSnapshot(nodeId, snapshot.getTotalRam(), snapshot.getUsedRam(),
+        snapshot.getFreeRam(), now);
+    if (processes != null && !processes.isEmpty()) {
+      int n = processes.size();
+      pending.pids = new int[n];
+      pending.names = new String[n];
+      pending.memory = new long[n];
+      for (int i = 0; i < n; i++) {
+        ProcessSnapshot p = processes.get(i);
+        pending.pids[i] = p.getPid();
+        pending.names[i] = p.getName() != null ? p.getName() : "";
+        pending.memory[i] = p.getMemoryUsed();
+      }
+    }
+    rings.computeIfAbsent(nodeId, id -> new SnapshotRing(RING_CAPACITY, now))
+        .add(now, pending.totalRam, pending.usedRam, pending.freeRam);
+    enqueuedCount.incrementAndGet();
+    while (!queue.offer(pending)) {
+      if (queue.poll() != null) {
+        droppedCount.incrementAndGet();
+        settledCount.incrementAndGet();
+      }
     }
   }
 
-  public List<String[]> getHistoricalSnapshotsWithTime(int limit) {
-    List<String[]> list = new ArrayList<>();
-    String sql = "SELECT total_ram, used_ram, free_ram, timestamp FROM system_snapshot ORDER BY id DESC LIMIT ?";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-      pstmt.setInt(1, limit);
-      ResultSet rs = pstmt.executeQuery();
-      while (rs.next()) {
-        String tr = String.valueOf(rs.getLong("total_ram") / (1024 * 1024));
-        String ur = String.valueOf(rs.getLong("used_ram") / (1024 * 1024));
-        String fr = String.valueOf(rs.getLong("free_ram") / (1024 * 1024));
-        String ts = rs.getString("timestamp");
-        list.add(0, new String[] { tr, ur, fr, ts }); // Reverse so oldest is first
+  /**
+   * Block until every sample queued before this call has been committed (or
+   * dropped), or until {@code timeoutMs} elapses. Returns true if caught up.
+   */
+  public boolean flush(long timeoutMs) {
+    long target = enqueuedCount.get();
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (flushLock) {
+      while (settledCount.get() < target) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0)
+          return false;
+        try {
+          // Bounded wait: a drop settles a sample without the writer notifying
+          flushLock.wait(Math.min(wait, 50));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
       }
-    } catch (Exception e) {
+    }
+    return true;
+  }
+
+  /** Number of samples discarded because the write queue was full or their batch failed twice. */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /** Number of samples waiting to be written. */
+  public int getPendingCount() {
+    return queue.size();
+  }
+
+  private void writerLoop() {
+    List<PendingSnapshot> batch = new ArrayList<>(MAX_BATCH_SIZE);
+    try {
+      while (running || !queue.isEmpty()) {
+        try {
+          fillBatch(batch);
+        } catch (InterruptedException e) {
+          // close() interrupts to cut the batch wait short; whatever was collected is still written
+        }
+        if (!writeBatch(batch) && !retryBatch(batch)) {
+          droppedCount.addAndGet(batch.size());
+          System.err.println("[SMCMAP] Dropped " + batch.size() + " snapshots after a failed retry");
+        }
+        if (!batch.isEmpty()) {
+          settledCount.addAndGet(batch.size());
+          synchronized (flushLock) {
+            flushLock.notifyAll();
+          }
+        }
+        batch.clear();
+        if (System.currentTimeMillis() - lastPruneMs >= PRUNE_INTERVAL_MS)
+          pruneExpired();
+      }
+    } finally {
+      closeWriter();
+    }
+  }
+
+  /**
+   * Write a batch again after it was rolled back. Failures are mostly
+   * SQLITE_BUSY while another process holds the file, so wait a moment
+   * first; new samples keep queueing meanwhile under the drop-oldest policy.
+   */
+  private boolean retryBatch(List<PendingSnapshot> batch) {
+    try {
+      Thread.sleep(RETRY_DELAY_MS);
+    } catch (InterruptedException e) {
+      // close() is waiting; retry at once
+    }
+    return writeBatch(batch);
+  }
+
+  /** Collect rows until the batch is full or its first row is MAX_BATCH_AGE_MS old. */
+  private void fillBatch(List<PendingSnapshot> batch) throws InterruptedException {
+    PendingSnapshot first = queue.poll(250, TimeUnit.MILLISECONDS);
+    if (first == null)
+      return;
+    batch.add(first);
+    long deadline = System.currentTimeMillis() + MAX_BATCH_AGE_MS;
+    while (batch.size() < MAX_BATCH_SIZE) {
+      queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+      long wait = deadline - System.currentTimeMillis();
+      if (!running || wait <= 0 || batch.size() >= MAX_BATCH_SIZE)
+        return;
+      PendingSnapshot next = queue.poll(wait, TimeUnit.MILLISECONDS);
+      if (next == null)
+        return;
+      batch.add(next);
+    }
+  }
+
+  /** Write {@code batch} in one transaction; false if it failed and was rolled back. */
+  private boolean writeBatch(List<PendingSnapshot> batch) {
+    if (batch.isEmpty() || insertStmt == null)
+      return true;
+    batch.sort(NODE_TIME_ORDER);
+    long start = System.nanoTime();
+    try {
+      writeConn.setAutoCommit(false);
+      for (PendingSnapshot p : batch) {
+        insertStmt.setString(1, p.nodeId);
+        insertStmt.setLong(2, p.timestampMs);
+        insertStmt.setLong(3, p.totalRam);
+        insertStmt.setLong(4, p.usedRam);
+        insertStmt.setLong(5, p.freeRam);
+        insertStmt.addBatch();
+      }
+      insertStmt.executeBatch();
+      boolean anyProcesses = false;
+      for (PendingSnapshot p : batch) {
+        if (p.pids == null)
+          continue;
+        for (int i = 0; i < p.pids.length; i++) {
+          processStmt.setString(1, p.nodeId);
+          processStmt.setLong(2, p.timestampMs);
+          processStmt.setInt(3, p.pids[i]);
+          processStmt.setInt(4, processNameId(p.names[i]));
+          processStmt.setLong(5, p.memory[i]);
+          processStmt.addBatch();
+        }
+        anyProcesses = true;
+      }
+      if (anyProcesses)
+        processStmt.executeBatch();
+      for (int i = 0; i < TIERS.length; i++) {
+        addRollupBatch(rollupStmts[i], TIERS[i].bucketMs, batch);
+        rollupStmts[i].executeBatch();
+      }
+      writeConn.commit();
+      rowCount.addAndGet(batch.size());
+      for (PendingSnapshot p : batch)
+        nodeRowCount(p.nodeId).incrementAndGet();
+      WRITE_TIME.recordSince(start);
+      WRITE_ROWS.add(batch.size());
+      return true;
+    } catch (SQLException e) {
+      WRITE_FAILURES.increment();
+      System.err.println("[SMCMAP] Failed to write " + batch.size() + " snapshots: " + e.getMessage());
+      try {
+        writeConn.rollback();
+        // Statements may still hold rows of the failed attempt; names it inserted are gone again
+        insertStmt.clearBatch();
+        processStmt.clearBatch();
+        for (PreparedStatement ps : rollupStmts)
+          ps.clearBatch();
+        loadProcessNames();
+      } catch (SQLException ignored) {
+      }
+      return false;
+    } finally {
+      try {
+        writeConn.setAutoCommit(true);
+      } catch (SQLException ignored) {
+      }
+    }
+  }
+
+  /**
+   * Fold a (node, time)-ordered batch into per-node, per-bucket aggregates and
+   * queue one upsert each, so a batch of 256 one-second samples costs a
+   * handful of rollup writes rather than one per sample.
+   */
+  private static void addRollupBatch(PreparedStatement stmt, long bucketMs, List<PendingSnapshot> batch)
+      throws SQLException {
+    String node = null;
+    long bucket = -1;
+    long count = 0, total = 0, minUsed = 0, maxUsed = 0, sumUsed = 0, minFree = 0, maxFree = 0, sumFree = 0;
+    for (PendingSnapshot p : batch) {
+      long b = p.timestampMs - Math.floorMod(p.timestampMs, bucketMs);
+      if (b != bucket || !p.nodeId.equals(node)) {
+        if (count > 0)
+          addRollupRow(stmt, node, bucket, count, total, minUsed, maxUsed, sumUsed, minFree, maxFree, sumFree);
+        node = p.nodeId;
+        bucket = b;
+        count = 0;
+        minUsed = minFree = Long.MAX_VALUE;
+        maxUsed = maxFree = Long.MIN_VALUE;
+        sumUsed = sumFree = 0;
+      }
+      count++;
+      total = p.totalRam;
+      minUsed = Math.min(minUsed, p.usedRam);
+      maxUsed = Math.max(maxUsed, p.usedRam);
+      sumUsed += p.usedRam;
+      minFree = Math.min(minFree, p.freeRam);
+      maxFree = Math.max(maxFree, p.freeRam);
+      sumFree += p.freeRam;
+    }
+    if (count > 0)
+      addRollupRow(stmt, node, bucket, count, total, minUsed, maxUsed, sumUsed, minFree, maxFree, sumFree);
+  }
+
+  private static void addRollupRow(PreparedStatement stmt, String node, long bucket, long count, long total, long minUsed,
+      long maxUsed, long sumUsed, long minFree, long maxFree, long sumFree) throws SQLException {
+    stmt.setLong(1, bucket);
+    stmt.setLong(2, count);
+    stmt.setLong(3, total);
+    stmt.setLong(4, minUsed);
+    stmt.setLong(5, maxUsed);
+    stmt.setLong(6, sumUsed);
+    stmt.setLong(7, minFree);
+    stmt.setLong(8, maxFree);
+    stmt.setLong(9, sumFree);
+    stmt.setString(10, node);
+    stmt.addBatch();
+  }
+
+  /** Apply each tier's retention policy. Runs on the writer thread. */
+  private void pruneExpired() {
+    lastPruneMs = System.currentTimeMillis();
+    // Hour-aligned so every archive block covers a whole hour
+    long rawCutoff = Math.floorDiv(lastPruneMs - RAW_RETENTION_MS, HOUR_MS) * HOUR_MS;
+    boolean archived = archive == null || archiveBefore(rawCutoff);
+    try (PreparedStatement raw = writeConn.prepareStatement(
+        "DELETE FROM system_snapshot WHERE ts_ms < ?")) {
+      if (archived) {
+        // Only this thread writes, so the per-node counts still match when the rows go
+        try (PreparedStatement counts = writeConn.prepareStatement(
+            "SELECT node_id, COUNT(*) FROM system_snapshot WHERE ts_ms < ? GROUP BY node_id")) {
+          counts.setLong(1, rawCutoff);
+          try (ResultSet rs = counts.executeQuery()) {
+            while (rs.next())
+              nodeRowCount(rs.getString(1)).addAndGet(-rs.getLong(2));
+          }
+        }
+        raw.setLong(1, rawCutoff);
+        rowCount.addAndGet(-raw.executeUpdate());
+      }
+      pruneProcessSamples(lastPruneMs - PROCESS_RETENTION_MS);
+      for (RollupTier tier : TIERS) {
+        if (tier.retentionMs < 0)
+          continue;
+        try (PreparedStatement del = writeConn.prepareStatement(
+            "DELETE FROM " + tier.table + " WHERE bucket_start < ?")) {
+          del.setLong(1, lastPruneMs - tier.retentionMs);
+          del.executeUpdate();
+        }
+      }
+    } catch (SQLException e) {
+      System.err.println("[SMCMAP] Retention pass failed: " + e.getMessage());
+    }
+  }
+
+  /** Per node, so each delete is a prefix range of the (node_id, ts_ms, pid) key. */
+  private void pruneProcessSamples(long cutoffMs) throws SQLException {
+    List<String> nodeIds = new ArrayList<>();
+    // Every node that ever saved a sample has a daily rollup row; that table stays tiny
+    try (Statement stmt = writeConn.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT DISTINCT node_id FROM " + TIERS[TIERS.length - 1].table)) {
+      while (rs.next())
+        nodeIds.add(rs.getString(1));
+    }
+    try (PreparedStatement del = writeConn.prepareStatement(
+        "DELETE FROM process_sample WHERE node_id = ? AND ts_ms < ?")) {
+      for (String nodeId : nodeIds) {
+        del.setString(1, nodeId);
+        del.setLong(2, cutoffMs);
+        del.executeUpdate();
+      }
+    }
+  }
+
+  /**
+   * Copy every raw row older than {@code cutoffMs} that is not archived yet
+   * into the archive. Returns false, leaving the rows in SQLite for the next
+   * pass, if anything failed.
+   */
+  private boolean archiveBefore(long cutoffMs) {
+    List<String> nodeIds = new ArrayList<>();
+    try (PreparedStatement pstmt = writeConn.prepareStatement(
+        "SELECT DISTINCT node_id FROM system_snapshot WHERE ts_ms < ?")) {
+      pstmt.setLong(1, cutoffMs);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next())
+          nodeIds.add(rs.getString(1));
+      }
+      String sql = "SELECT ts_ms, total_ram, used_ram, free_ram FROM system_snapshot "
+          + "WHERE node_id = ? AND ts_ms >= ? AND ts_ms < ? ORDER BY ts_ms ASC LIMIT " + ARCHIVE_CHUNK;
+      for (String nodeId : nodeIds) {
+        while (true) {
+          SnapshotSeries rows = new SnapshotSeries();
+          try (PreparedStatement read = writeConn.prepareStatement(sql)) {
+            read.setString(1, nodeId);
+            read.setLong(2, archive.endMs(nodeId));
+            read.setLong(3, cutoffMs);
+            readSeries(read, rows);
+          }
+          if (rows.isEmpty())
+            break;
+          archive.append(nodeId, rows);
+          if (rows.size() < ARCHIVE_CHUNK)
+            break;
+        }
+      }
+      return true;
+    } catch (SQLException | IOException e) {
+      System.err.println("[SMCMAP] Archiving old snapshots failed: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Stop the writer, write everything still queued and close both
+   * connections. The writer closes its own connection, statements and the
+   * archive when it exits, so if it is still busy after the wait they are
+   * left to it rather than closed under it.
+   */
+  public void close() {
+    if (!running)
+      return;
+    running = false;
+    writerThread.interrupt();
+    try {
+      writerThread.join(10_000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writerThread.isAlive())
+      System.err.println("[SMCMAP] Database writer still busy after 10 s; it will close the database when done");
+    try {
+      synchronized (readLock) {
+        if (readConn != null)
+          readConn.close();
+      }
+    } catch (SQLException e) {
       e.printStackTrace();
     }
-    return list;
   }
 
-  public List<String[]> getSnapshotsLastMinutes(int minutes) {
-    List<String[]> list = new ArrayList<>();
-    String sql = "SELECT total_ram, used_ram, free_ram, timestamp FROM system_snapshot WHERE timestamp >= datetime('now', '-"
-        + minutes + " minutes') ORDER BY id ASC";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-        Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery(sql)) {
-      while (rs.next()) {
-        String tr = String.valueOf(rs.getLong("total_ram") / (1024 * 1024));
-        String ur = String.valueOf(rs.getLong("used_ram") / (1024 * 1024));
-        String fr = String.valueOf(rs.getLong("free_ram") / (1024 * 1024));
-        String ts = rs.getString("timestamp");
-        list.add(new String[] { tr, ur, fr, ts });
+  /** Close everything the writer owns. Runs on the writer thread as it exits. */
+  private void closeWriter() {
+    try {
+      if (insertStmt != null)
+        insertStmt.close();
+      if (processStmt != null)
+        processStmt.close();
+      if (processNameStmt != null)
+        processNameStmt.close();
+      for (PreparedStatement ps : rollupStmts) {
+        if (ps != null)
+          ps.close();
       }
-    } catch (Exception e) {
+      if (writeConn != null)
+        writeConn.close();
+      if (archive != null)
+        archive.close();
+    } catch (SQLException | IOException e) {
       e.printStackTrace();
     }
+  }
+
+  /** The most recent {@code limit} raw samples of the primary agent, oldest first. */
+  public SnapshotSeries getRecentSeries(int limit) {
+    return getRecentSeries(NodeRegistry.LOCAL_NODE_ID, limit);
+  }
+
+  /** The most recent {@code limit} raw samples of {@code nodeId}, oldest first. */
+  public SnapshotSeries getRecentSeries(String nodeId, int limit) {
+    SnapshotSeries series = new SnapshotSeries(limit);
+    SnapshotRing ring = rings.get(nodeId);
+    if (ring != null && ring.size() >= limit) {
+      ring.copyRecent(limit, series);
+      return series;
+    }
+    // Older rows from disk, then everything the ring holds
+    long before = ring != null ? ring.coverageStartMs() : Long.MAX_VALUE;
+    int fromDb = ring != null ? limit - ring.size() : limit;
+    String sql = "SELECT ts_ms, total_ram, used_ram, free_ram FROM system_snapshot WHERE node_id = ? AND ts_ms < ? "
+        + "ORDER BY ts_ms DESC LIMIT ?";
+    synchronized (readLock) {
+      try (PreparedStatement pstmt = readConn.prepareStatement(sql)) {
+        pstmt.setString(1, nodeId);
+        pstmt.setLong(2, before);
+        pstmt.setInt(3, fromDb);
+        readSeries(pstmt, series);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+    series.reverse();
+    if (ring != null)
+      ring.copyRange(before, Long.MAX_VALUE, series);
+    return series;
+  }
+
+  /** Raw samples of the primary agent with {@code fromMs <= ts_ms < toMs}, oldest first. */
+  public SnapshotSeries getSeries(long fromMs, long toMs) {
+    return getSeries(NodeRegistry.LOCAL_NODE_ID, fromMs, toMs);
+  }
+
+  /** Raw samples of {@code nodeId} with {@code fromMs <= ts_ms < toMs}, oldest first. */
+  public SnapshotSeries getSeries(String nodeId, long fromMs, long toMs) {
+    SnapshotSeries series = new SnapshotSeries();
+    SnapshotRing ring = rings.get(nodeId);
+    long covered = ring != null ? ring.coverageStartMs() : Long.MAX_VALUE;
+    long archived = archive != null ? archive.endMs(nodeId) : Long.MIN_VALUE;
+    if (fromMs < archived) {
+      try {
+        archive.read(nodeId, fromMs, Math.min(toMs, archived), series);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      fromMs = archived;
+    }
+    if (fromMs < covered && fromMs < toMs) {
+      String sql = "SELECT ts_ms, total_ram, used_ram, free_ram FROM system_snapshot "
+          + "WHERE node_id = ? AND ts_ms >= ? AND ts_ms < ? ORDER BY ts_ms ASC";
+      synchronized (readLock) {
+        try (PreparedStatement pstmt = readConn.prepareStatement(sql)) {
+          pstmt.setString(1, nodeId);
+          pstmt.setLong(2, fromMs);
+          pstmt.setLong(3, Math.min(toMs, covered));
+          readSeries(pstmt, series);
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+    }
+    if (ring != null && toMs > covered)
+      ring.copyRange(Math.max(fromMs, covered), toMs, series);
+    return series;
+  }
+
+  private static void readSeries(PreparedStatement pstmt, SnapshotSeries series) throws SQLException {
+    try (ResultSet rs = pstmt.executeQuery()) {
+      while (rs.next())
+        series.add(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4));
+    }
+  }
+
+  /** Receives rows from {@link #streamSeries}; returning false stops the scan. */
+  public interface RowVisitor {
+    boolean visit(long timestampMs, long totalRam, long usedRam, long freeRam) throws IOException;
+  }
+
+  /**
+   * Feed every raw sample of {@code nodeId} with {@code fromMs <= ts_ms < toMs}
+   * to {@code visitor}, oldest first, without collecting them. Disk rows come
+   * from a forward-only cursor on a connection of its own, so a long scan
+   * neither holds the whole range in memory nor blocks other readers; archived
+   * history is decoded one mapped block at a time, and the span the ring
+   * covers is copied from memory (at most RING_CAPACITY rows).
+   *
+   * @return rows visited, including the one that stopped the scan
+   */
+  public long streamSeries(String nodeId, long fromMs, long toMs, RowVisitor visitor) throws IOException {
+    SnapshotRing ring = rings.get(nodeId);
+    long covered = ring != null ? ring.coverageStartMs() : Long.MAX_VALUE;
+    long archived = archive != null ? archive.endMs(nodeId) : Long.MIN_VALUE;
+    long visited = 0;
+    if (fromMs < archived) {
+      boolean[] stopped = { false };
+      visited = archive.scan(nodeId, fromMs, Math.min(toMs, archived), (ts, total, used, free) -> {
+        if (visitor.visit(ts, total, used, free))
+          return true;
+        stopped[0] = true;
+        return false;
+      });
+      if (stopped[0])
+        return visited;
+      fromMs = archived;
+    }
+    if (fromMs < covered && fromMs < toMs) {
+      String sql = "SELECT ts_ms, total_ram, used_ram, free_ram FROM system_snapshot "
+          + "WHERE node_id = ? AND ts_ms >= ? AND ts_ms < ? ORDER BY ts_ms ASC";
+      try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+          PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+              ResultSet.CONCUR_READ_ONLY)) {
+        pstmt.setFetchSize(STREAM_FETCH_SIZE);
+        pstmt.setString(1, nodeId);
+        pstmt.setLong(2, fromMs);
+        pstmt.setLong(3, Math.min(toMs, covered));
+        try (ResultSet rs = pstmt.executeQuery()) {
+          while (rs.next()) {
+            visited++;
+            if (!visitor.visit(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)))
+              return visited;
+          }
+        }
+      } catch (SQLException e) {
+        throw new IOException("Could not read snapshot history: " + e.getMessage(), e);
+      }
+    }
+    if (ring != null && toMs > covered) {
+      SnapshotSeries recent = new SnapshotSeries();
+      ring.copyRange(Math.max(fromMs, covered), toMs, recent);
+      for (int i = 0; i < recent.size(); i++) {
+        visited++;
+        if (!visitor.visit(recent.getTimestamp(i), recent.getTotalRam(i), recent.getUsedRam(i), recent.getFreeRam(i)))
+          break;
+      }
+    }
+    return visited;
+  }
+
+  /**
+   * The {@code limit} processes of {@code nodeId} with the highest peak
+   * memory in {@code fromMs <= ts_ms < toMs}, largest first. Each entry's
+   * memoryUsed is that peak; a pid that changed name appears once per name.
+   */
+  public List<ProcessSnapshot> getTopProcesses(String nodeId, long fromMs, long toMs, int limit) {
+    List<ProcessSnapshot> top = new ArrayList<>(limit);
+    // Group on ids first and resolve names only for the rows that make the cut
+    String sql = "SELECT t.pid, n.name, t.peak FROM (SELECT pid, name_id, MAX(memory) AS peak FROM process_sample "
+        + "WHERE node_id = ? AND ts_ms >= ? AND ts_ms < ? GROUP BY pid, name_id ORDER BY peak DESC LIMIT ?) t "
+        + "JOIN process_name n ON n.id = t.name_id ORDER BY t.peak DESC";
+    synchronized (readLock) {
+      try (PreparedStatement pstmt = readConn.prepareStatement(sql)) {
+        pstmt.setString(1, nodeId);
+        pstmt.setLong(2, fromMs);
+        pstmt.setLong(3, toMs);
+        pstmt.setInt(4, limit);
+        try (ResultSet rs = pstmt.executeQuery()) {
+          while (rs.next()) {
+            ProcessSnapshot p = new ProcessSnapshot();
+            p.setPid(rs.getInt(1));
+            p.setName(rs.getString(2));
+            p.setMemoryUsed(rs.getLong(3));
+            top.add(p);
+          }
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+    return top;
+  }
+
+  /** Memory of process {@code pid} on {@code nodeId} with {@code fromMs <= ts_ms < toMs}, oldest first. */
+  public ProcessSeries getProcessSeries(String nodeId, int pid, long fromMs, long toMs) {
+    String name = null;
+    String nameSql = "SELECT n.name FROM process_sample s JOIN process_name n ON n.id = s.name_id "
+        + "WHERE s.node_id = ? AND s.pid = ? AND s.ts_ms >= ? AND s.ts_ms < ? ORDER BY s.ts_ms DESC LIMIT 1";
+    String sql = "SELECT ts_ms, memory FROM process_sample WHERE node_id = ? AND pid = ? AND ts_ms >= ? AND ts_ms < ? "
+        + "ORDER BY ts_ms ASC";
+    synchronized (readLock) {
+      try (PreparedStatement pstmt = readConn.prepareStatement(nameSql)) {
+        bindProcessRange(pstmt, nodeId, pid, fromMs, toMs);
+        try (ResultSet rs = pstmt.executeQuery()) {
+          if (rs.next())
+            name = rs.getString(1);
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      ProcessSeries series = new ProcessSeries(pid, name);
+      if (name == null)
+        return series;
+      try (PreparedStatement pstmt = readConn.prepareStatement(sql)) {
+        bindProcessRange(pstmt, nodeId, pid, fromMs, toMs);
+        try (ResultSet rs = pstmt.executeQuery()) {
+          while (rs.next())
+            series.add(rs.getLong(1), rs.getLong(2));
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      return series;
+    }
+  }
+
+  private static void bindProcessRange(PreparedStatement pstmt, String nodeId, int pid, long fromMs, long toMs)
+      throws SQLException {
+    pstmt.setString(1, nodeId);
+    pstmt.setInt(2, pid);
+    pstmt.setLong(3, fromMs);
+    pstmt.setLong(4, toMs);
+  }
+
+  /**
+   * Name of the tier {@link #getRollupHistory} reads for the given resolution:
+   * the coarsest rollup whose bucket is no wider than {@code resolutionMs}, or
+   * "raw" below one minute.
+   */
+  public String tierFor(long resolutionMs) {
+    RollupTier tier = selectTier(resolutionMs);
+    return tier == null ? "raw" : tier.name;
+  }
+
+  private static RollupTier selectTier(long resolutionMs) {
+    RollupTier chosen = null;
+    for (RollupTier tier : TIERS) {
+      if (tier.bucketMs <= resolutionMs)
+        chosen = tier;
+    }
+    return chosen;
+  }
+
+  /**
+   * History between {@code fromMs} and {@code toMs} (epoch millis, oldest
+   * first) at no finer than {@code resolutionMs} per point. Raw samples are
+   * returned as single-sample buckets.
+   */
+  public List<SnapshotRollup> getRollupHistory(long fromMs, long toMs, long resolutionMs) {
+    return getRollupHistory(NodeRegistry.LOCAL_NODE_ID, fromMs, toMs, resolutionMs);
+  }
+
+  /** {@link #getRollupHistory(long, long, long)} for agent {@code nodeId}. */
+  public List<SnapshotRollup> getRollupHistory(String nodeId, long fromMs, long toMs, long resolutionMs) {
+    RollupTier tier = selectTier(resolutionMs);
+    if (tier == null)
+      return toSingleSampleBuckets(getSeries(nodeId, fromMs, toMs));
+    String sql = "SELECT bucket_start, sample_count, total_ram, min_used, max_used, sum_used, "
+        + "min_free, max_free, sum_free FROM " + tier.table
+        + " WHERE node_id = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start ASC";
+    fromMs -= Math.floorMod(fromMs, tier.bucketMs);
+    List<SnapshotRollup> list = new ArrayList<>();
+    synchronized (readLock) {
+      try (PreparedStatement pstmt = readConn.prepareStatement(sql)) {
+        pstmt.setString(1, nodeId);
+        pstmt.setLong(2, fromMs);
+        pstmt.setLong(3, toMs);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+          long count = rs.getLong(2);
+          SnapshotRollup r = new SnapshotRollup();
+          r.setBucketStart(rs.getLong(1));
+          r.setSampleCount(count);
+          r.setTotalRam(rs.getLong(3));
+          r.setMinUsedRam(rs.getLong(4));
+          r.setMaxUsedRam(rs.getLong(5));
+          r.setAvgUsedRam(rs.getLong(6) / count);
+          r.setMinFreeRam(rs.getLong(7));
+          r.setMaxFreeRam(rs.getLong(8));
+          r.setAvgFreeRam(rs.getLong(9) / count);
+          list.add(r);
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+    return list;
+  }
+
+  private static List<SnapshotRollup> toSingleSampleBuckets(SnapshotSeries series) {
+    List<SnapshotRollup> list = new ArrayList<>(series.size());
+    for (int i = 0; i < series.size(); i++) {
+      SnapshotRollup r = new SnapshotRollup();
+      r.setBucketStart(series.getTimestamp(i));
+      r.setSampleCount(1);
+      r.setTotalRam(series.getTotalRam(i));
+      r.setMinUsedRam(series.getUsedRam(i));
+      r.setMaxUsedRam(series.getUsedRam(i));
+      r.setAvgUsedRam(series.getUsedRam(i));
+      r.setMinFreeRam(series.getFreeRam(i));
+      r.setMaxFreeRam(series.getFreeRam(i));
+      r.setAvgFreeRam(series.getFreeRam(i));
+      list.add(r);
+    }
     return list;
   }
 
   public List<SystemSnapshot> getHistoricalSnapshots(int limit) {
     List<SystemSnapshot> list = new ArrayList<>();
-    String sql = "SELECT total_ram, used_ram, free_ram FROM system_snapshot ORDER BY id DESC LIMIT ?";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-        PreparedStatement pstmt = conn.prepareStatement(sql)) {
-      pstmt.setInt(1, limit);
-      ResultSet rs = pstmt.executeQuery();
-      while (rs.next()) {
-        SystemSnapshot s = new SystemSnapshot();
-        s.setTotalRam(rs.getLong("total_ram"));
-        s.setUsedRam(rs.getLong("used_ram"));
-        s.setFreeRam(rs.getLong("free_ram"));
-        list.add(s);
+    String sql = "SELECT total_ram, used_ram, free_ram FROM system_snapshot WHERE node_id = ? "
+        + "ORDER BY ts_ms DESC LIMIT ?";
+    synchronized (readLock) {
+      try (PreparedStatement pstmt = readConn.prepareStatement(sql)) {
+        pstmt.setString(1, NodeRegistry.LOCAL_NODE_ID);
+        pstmt.setInt(2, limit);
+        ResultSet rs = pstmt.executeQuery();
+        while (rs.next()) {
+          SystemSnapshot s = new SystemSnapshot();
+          s.setTotalRam(rs.getLong("total_ram"));
+          s.setUsedRam(rs.getLong("used_ram"));
+          s.setFreeRam(rs.getLong("free_ram"));
+          list.add(s);
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
       }
-    } catch (Exception e) {
-      e.printStackTrace();
     }
     return list;
   }
 
+  /** Rows persisted so far (from memory; no query). */
   public int getSnapshotCount() {
-    String sql = "SELECT COUNT(*) FROM system_snapshot";
-    try (Connection conn = DriverManager.getConnection(DB_URL);
-        Statement stmt = conn.createStatement();
-        ResultSet rs = stmt.executeQuery(sql)) {
-      if (rs.next())
-        return rs.getInt(1);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-    return 0;
+    return (int) Math.min(Integer.MAX_VALUE, rowCount.get());
+  }
+
+  /** Rows persisted so far for agent {@code nodeId} (from memory; no query). */
+  public int getSnapshotCount(String nodeId) {
+    AtomicLong n = nodeRowCounts.get(nodeId);
+    return n == null ? 0 : (int) Math.min(Integer.MAX_VALUE, n.get());
+  }
+
+  private AtomicLong nodeRowCount(String nodeId) {
+    return nodeRowCounts.computeIfAbsent(nodeId, id -> new AtomicLong());
   }
 
   public long getDbSizeKB() {
     try {
-      java.io.File f = new java.io.File("smcmap.db");
-      if (f.exists())
-        return f.length() / 1024;
+      java.io.File f = new java.io.File(dbPath);
+      java.io.File wal = new java.io.File(dbPath + "-wal");
+      long bytes = (f.exists() ? f.length() : 0) + (wal.exists() ? wal.length() : 0);
+      return bytes / 1024;
     } catch (Exception e) {
       e.printStackTrace();
     }
     return 0;
   }
+
+  /** One rollup table: bucket width and retention (-1 keeps rows forever). */
+  private static final class RollupTier {
+    final String name;
+    final String table;
+    final long bucketMs;
+    final long retentionMs;
+
+    RollupTier(String name, String table, long bucketMs, long retentionMs) {
+      this.name = name;
+      this.table = table;
+      this.bucketMs = bucketMs;
+      this.retentionMs = retentionMs;
+    }
+  }
+
+  /** A sample captured at enqueue time, so the row keeps its real timestamp. */
+  private static final class PendingSnapshot {
+    final String nodeId;
+    final long totalRam;
+    final long usedRam;
+    final long freeRam;
+    final long timestampMs;
+    /** Process list of this sample as parallel arrays; null when none was saved. */
+    int[] pids;
+    String[] names;
+    long[] memory;
+
+    PendingSnapshot(String nodeId, long totalRam, long usedRam, long freeRam, long timestampMs) {
+      this.nodeId = nodeId;
+      this.totalRam = totalRam;
+      this.usedRam = usedRam;
+      this.freeRam = freeRam;
+      this.timestampMs = timestampMs;
+    }
+  }
 }
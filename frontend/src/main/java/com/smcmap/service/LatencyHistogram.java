@@ -0,0 +1,118 @@
+package com.smcmap.service;
+
+import com.smcmap.sim.LogLinearBuckets;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram over nanoseconds.
+ *
+ * Buckets are log-linear: exact below 8 ns, then 8 sub-buckets per power of
+ * two, so any value lands in a bucket at most 12.5% wide and the whole
+ * positive long range fits in 488 counters (4 KB). Recording is one bucket
+ * computation and a few uncontended atomic adds, cheap enough to leave on
+ * every hot path;
+ * percentiles are read from a copy of the counters and are never more than
+ * one bucket width off.
+ */
+public final class LatencyHistogram {
+
+  private static final LogLinearBuckets SCALE = new LogLinearBuckets(3);
+  static final int BUCKETS = SCALE.count();
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /** Record one duration; negative values count as 0. */
+  public void record(long nanos) {
+    if (nanos < 0)
+      nanos = 0;
+    counts.incrementAndGet(SCALE.bucket(nanos));
+    count.increment();
+    sum.add(nanos);
+    long m = max.get();
+    while (nanos > m && !max.compareAndSet(m, nanos))
+      m = max.get();
+  }
+
+  /** Record the time elapsed since {@code startNanos}, a {@link System#nanoTime} reading. */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMaxNanos() {
+    return max.get();
+  }
+
+  public double getMeanNanos() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Value at quantile {@code q} (0..1) in nanoseconds: the upper edge of the
+   * bucket holding it, capped at the largest recorded value. 0 when empty.
+   */
+  public long percentile(double q) {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++)
+      total += snapshot[i] = counts.get(i);
+    return percentile(snapshot, total, q);
+  }
+
+  private long percentile(long[] snapshot, long total, double q) {
+    if (total == 0)
+      return 0;
+    long rank = Math.max(1, (long) Math.ceil(q * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank)
+        return Math.min(SCALE.upper(i) - 1, max.get());
+    }
+    return max.get();
+  }
+
+  /**
+   * Summary as JSON: count, mean, p50/p90/p99/max in milliseconds, and the
+   * non-empty buckets as [upperNanos, count] pairs so dumps can be merged.
+   */
+  public String toJson() {
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++)
+      total += snapshot[i] = counts.get(i);
+    StringBuilder sb = new StringBuilder(256);
+    sb.append("{\"count\":").append(total)
+        .append(",\"meanMs\":").append(ms((long) getMeanNanos()))
+        .append(",\"p50Ms\":").append(ms(percentile(snapshot, total, 0.50)))
+        .append(",\"p90Ms\":").append(ms(percentile(snapshot, total, 0.90)))
+        .append(",\"p99Ms\":").append(ms(percentile(snapshot, total, 0.99)))
+        .append(",\"maxMs\":").append(ms(max.get()))
+        .append(",\"buckets\":[");
+    boolean first = true;
+    for (int i = 0; i < BUCKETS; i++) {
+      if (snapshot[i] == 0)
+        continue;
+      if (!first)
+        sb.append(',');
+      first = false;
+      sb.append('[').append(SCALE.upper(i)).append(',').append(snapshot[i]).append(']');
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static String ms(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+}
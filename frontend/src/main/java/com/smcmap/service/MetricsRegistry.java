@@ -0,0 +1,113 @@
+package com.smcmap.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and {@link LatencyHistogram}s for the frontend's own hot
+ * paths. Instruments are created on first use and live for the process;
+ * callers look them up once and keep the reference, so recording never
+ * touches the map. Everything is lock-free, so the registry stays on in
+ * production.
+ *
+ * Names in use:
+ * <ul>
+ * <li>agent.rtt: /api/stats request to decoded result, every agent;</li>
+ * <li>agent.decode: parsing the stats body (for the primary agent this
+ * includes reading it off the socket, since it is decoded as it streams);</li>
+ * <li>proc.collect: one /proc sample in agentless mode;</li>
+ * <li>stream.lag: agent timestamp of a streamed sample until it is decoded;</li>
+ * <li>sqlite.write: one write-behind batch transaction;</li>
+ * <li>fx.runLater.lag: bridge task posted to the FX thread until it starts;</li>
+ * <li>fx.executeScript: one WebView script call;</li>
+ * <li>counters agent.errors, agent.bytes (stats bytes on the wire),
+ * agent.notModified (304 replies), agent.deltas (delta replies merged),
+ * stream.reconnects, stream.gaps (events skipped by sequence number),
+ * sqlite.rows and sqlite.failures.</li>
+ * </ul>
+ */
+public final class MetricsRegistry {
+
+  private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+  private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+  private final long startMs = System.currentTimeMillis();
+
+  /** The process-wide registry. */
+  public static MetricsRegistry global() {
+    return GLOBAL;
+  }
+
+  public LatencyHistogram histogram(String name) {
+    return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+  }
+
+  public Counter counter(String name) {
+    return counters.computeIfAbsent(name, n -> new Counter());
+  }
+
+  /** Monotonic event count. */
+  public static final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+      value.increment();
+    }
+
+    public void add(long n) {
+      value.add(n);
+    }
+
+    public long get() {
+      return value.sum();
+    }
+  }
+
+  /** Every instrument as one JSON object, names sorted. */
+  public String toJson() {
+    StringBuilder sb = new StringBuilder(1024);
+    sb.append("{\"startMs\":").append(startMs)
+        .append(",\"timestampMs\":").append(System.currentTimeMillis())
+        .append(",\"counters\":{");
+    boolean first = true;
+    for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+      if (!first)
+        sb.append(',');
+      first = false;
+      sb.append('"').append(e.getKey()).append("\":").append(e.getValue().get());
+    }
+    sb.append("},\"histograms\":{");
+    first = true;
+    for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(histograms).entrySet()) {
+      if (!first)
+        sb.append(',');
+      first = false;
+      sb.append('"').append(e.getKey()).append("\":").append(e.getValue().toJson());
+    }
+    return sb.append("}}").toString();
+  }
+
+  /** Write {@link #toJson} to {@code file}, replacing it atomically so readers never see half a dump. */
+  public void dump(Path file) throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+    try {
+      try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        w.write(toJson());
+        w.write('\n');
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.smcmap.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polls every remote node of a {@link NodeRegistry} with
+ * {@link SystemStatsService#fetchStatsAsync} and stores each sample under the
+ * node's id.
+ *
+ * Each node runs on its own clock: it becomes due INTERVAL_MS after its
+ * previous poll started (or, while failing, after an exponential backoff
+ * capped at MAX_BACKOFF_MS), and a request is bounded by the node's own
+ * timeout. A slow or dead node therefore only ever holds one of the
+ * {@code maxConcurrent} request slots and never delays the others. A single
+ * dispatcher thread hands out slots round-robin; no thread blocks on I/O.
+ */
+public class MultiNodePoller {
+
+  public static final int DEFAULT_MAX_CONCURRENT = 32;
+  static final long INTERVAL_MS = 1000;
+  static final long MAX_BACKOFF_MS = 30_000;
+  /** Dispatcher period; completions also trigger a dispatch immediately. */
+  private static final long DISPATCH_MS = 50;
+
+  private final NodeRegistry registry;
+  private final AnalysisPersistenceService persistence;
+  private final int maxConcurrent;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "SMCMAP-NodePoller");
+    t.setDaemon(true);
+    return t;
+  });
+  private int cursor;
+  private volatile boolean running;
+
+  public MultiNodePoller(NodeRegistry registry, AnalysisPersistenceService persistence) {
+    this(registry, persistence, DEFAULT_MAX_CONCURRENT);
+  }
+
+  public MultiNodePoller(NodeRegistry registry, AnalysisPersistenceService persistence, int maxConcurrent) {
+    this.registry = registry;
+    this.persistence = persistence;
+    this.maxConcurrent = Math.max(1, maxConcurrent);
+  }
+
+  public synchronized void start() {
+    if (running)
+      return;
+    running = true;
+    dispatcher.scheduleWithFixedDelay(this::dispatch, 0, DISPATCH_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /** Stop issuing requests; ones already in flight finish or time out on their own. */
+  public synchronized void stop() {
+    running = false;
+    dispatcher.shutdownNow();
+  }
+
+  /** Requests currently outstanding across all nodes. */
+  public int getInFlightCount() {
+    return inFlight.get();
+  }
+
+  /**
+   * Start every due node that fits under the concurrency cap. Dispatcher
+   * thread only; must not throw, or the scheduled executor stops running it.
+   */
+  private void dispatch() {
+    try {
+      dispatchDue();
+    } catch (RuntimeException e) {
+      System.err.println("[SMCMAP] Node dispatch failed: " + e);
+    }
+  }
+
+  private void dispatchDue() {
+    if (!running)
+      return;
+    List<AgentNode> nodes = registry.getRemoteNodes();
+    int n = nodes.size();
+    if (n == 0)
+      return;
+    long now = System.currentTimeMillis();
+    int start = cursor % n;
+    for (int i = 0; i < n && inFlight.get() < maxConcurrent; i++) {
+      AgentNode node = nodes.get((start + i) % n);
+      if (!node.inFlight && node.nextDueMs <= now) {
+        poll(node, now);
+        cursor = start + i + 1;
+      }
+    }
+  }
+
+  private void poll(AgentNode node, long now) {
+    node.inFlight = true;
+    inFlight.incrementAndGet();
+    long t0 = System.nanoTime();
+    CompletableFuture<SystemStatsService.SystemDataResult> future;
+    try {
+      future = node.getStats().fetchStatsAsync(Duration.ofMillis(node.getTimeoutMs()));
+    } catch (RuntimeException e) {
+      // Thrown before any request went out; fail the node like an I/O error would
+      completed(node, now, t0, null, e);
+      return;
+    }
+    future.whenComplete((result, error) -> completed(node, now, t0, result, error));
+  }
+
+  private void completed(AgentNode node, long now, long t0, SystemStatsService.SystemDataResult result,
+      Throwable error) {
+    long delay;
+    try {
+      if (error == null) {
+        node.recordSuccess(System.nanoTime() - t0, result.systemSnapshot);
+        persistence.saveSystemSnapshot(node.getId(), result.systemSnapshot, result.processes);
+        delay = INTERVAL_MS;
+      } else {
+        node.recordFailure(error.getCause() != null ? error.getCause() : error);
+        delay = Math.min(MAX_BACKOFF_MS, INTERVAL_MS << Math.min(node.getConsecutiveFailures(), 16));
+      }
+    } catch (RuntimeException e) {
+      System.err.println("[SMCMAP] Node " + node.getId() + ": " + e);
+      delay = INTERVAL_MS;
+    }
+    node.nextDueMs = now + delay;
+    node.inFlight = false;
+    inFlight.decrementAndGet();
+    if (running) {
+      try {
+        dispatcher.execute(this::dispatch);
+      } catch (RuntimeException ignored) {
+        // Shut down between the check and the submit
+      }
+    }
+  }
+}
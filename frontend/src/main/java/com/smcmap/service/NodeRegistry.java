@@ -0,0 +1,165 @@
+package com.smcmap.service;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The set of agents this dashboard watches. The primary agent (the one the
+ * dashboard view polls) is always present as {@link #LOCAL_NODE_ID}; further
+ * agents come from {@code smcmap-nodes.properties} in the working directory
+ * and/or the {@code smcmap.nodes} system property:
+ *
+ * <pre>
+ * # node id = agent base URL, optional per-node timeout in ms
+ * lab-01 = http://10.0.0.11:8080
+ * lab-01.timeout = 1500
+ *
+ * -Dsmcmap.nodes=lab-01=http://10.0.0.11:8080,lab-02=http://10.0.0.12:8080
+ * </pre>
+ *
+ * A URL without a scheme is taken as http; entries that still do not parse
+ * are skipped with a log line. Remote nodes share one HttpClient so 200 agents do not mean 200 selector
+ * threads.
+ */
+public class NodeRegistry {
+
+  public static final String LOCAL_NODE_ID = "local";
+  public static final String CONFIG_FILE = "smcmap-nodes.properties";
+  public static final long DEFAULT_TIMEOUT_MS = 2000;
+
+  private static final String TIMEOUT_SUFFIX = ".timeout";
+
+  private final HttpClient client = HttpClient.newBuilder()
+      .connectTimeout(Duration.ofMillis(DEFAULT_TIMEOUT_MS))
+      .build();
+  private final Map<String, AgentNode> byId = new ConcurrentHashMap<>();
+  private final List<AgentNode> nodes = new CopyOnWriteArrayList<>();
+  private final AgentNode local;
+
+  public NodeRegistry(SystemStatsService primary) {
+    local = new AgentNode(LOCAL_NODE_ID, primary.getBackendUrl(), DEFAULT_TIMEOUT_MS, primary);
+    byId.put(LOCAL_NODE_ID, local);
+    nodes.add(local);
+  }
+
+  /** Registry with the primary agent plus every node configured in CONFIG_FILE and -Dsmcmap.nodes. */
+  public static NodeRegistry load(SystemStatsService primary) {
+    NodeRegistry registry = new NodeRegistry(primary);
+    Properties props = new Properties();
+    File file = new File(CONFIG_FILE);
+    if (file.isFile()) {
+      try (Reader in = new FileReader(file)) {
+        props.load(in);
+      } catch (IOException e) {
+        System.err.println("[SMCMAP] Could not read " + file.getAbsolutePath() + ": " + e.getMessage());
+      }
+    }
+    String inline = System.getProperty("smcmap.nodes", "");
+    for (String entry : inline.split(",")) {
+      int eq = entry.indexOf('=');
+      if (eq > 0)
+        props.setProperty(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+    }
+    for (String key : props.stringPropertyNames()) {
+      if (key.endsWith(TIMEOUT_SUFFIX))
+        continue;
+      long timeout = DEFAULT_TIMEOUT_MS;
+      String t = props.getProperty(key + TIMEOUT_SUFFIX);
+      if (t != null) {
+        try {
+          timeout = Long.parseLong(t.trim());
+        } catch (NumberFormatException e) {
+          System.err.println("[SMCMAP] Ignoring bad timeout for node " + key + ": " + t);
+        }
+      }
+      registry.add(key, props.getProperty(key), timeout);
+    }
+    if (registry.size() > 1)
+      System.out.println("[SMCMAP] Watching " + registry.size() + " agent nodes.");
+    return registry;
+  }
+
+  /** Register a remote agent; returns false if the id is taken or the URL is unusable. */
+  public boolean add(String id, String url, long timeoutMs) {
+    String base = normalizeUrl(url);
+    if (base == null) {
+      System.err.println("[SMCMAP] Ignoring node " + id + ": bad agent URL '" + url + "'");
+      return false;
+    }
+    AgentNode node = new AgentNode(id, base, timeoutMs, new SystemStatsService(base, client));
+    if (byId.putIfAbsent(id, node) != null)
+      return false;
+    nodes.add(node);
+    return true;
+  }
+
+  /**
+   * Agent base URL as requests are built from it: "http://" is assumed when
+   * no scheme is given (so "10.0.0.11:8080" works) and a trailing slash is
+   * dropped. Null if the result is not an http(s) URL with a host.
+   */
+  static String normalizeUrl(String url) {
+    if (url == null)
+      return null;
+    String base = url.trim();
+    if (!base.contains("://"))
+      base = "http://" + base;
+    while (base.endsWith("/"))
+      base = base.substring(0, base.length() - 1);
+    try {
+      URI uri = new URI(base + "/api/stats");
+      String scheme = uri.getScheme();
+      if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme) || uri.getHost() == null)
+        return null;
+    } catch (URISyntaxException e) {
+      return null;
+    }
+    return base;
+  }
+
+  public boolean remove(String id) {
+    if (LOCAL_NODE_ID.equals(id))
+      return false;
+    AgentNode node = byId.remove(id);
+    return node != null && nodes.remove(node);
+  }
+
+  public AgentNode get(String id) {
+    return byId.get(id);
+  }
+
+  public AgentNode getLocal() {
+    return local;
+  }
+
+  /** All nodes, primary first, in registration order. */
+  public List<AgentNode> getNodes() {
+    return nodes;
+  }
+
+  /** Every node except the primary one. */
+  public List<AgentNode> getRemoteNodes() {
+    List<AgentNode> remote = new ArrayList<>(nodes.size());
+    for (AgentNode n : nodes) {
+      if (n != local)
+        remote.add(n);
+    }
+    return remote;
+  }
+
+  public int size() {
+    return nodes.size();
+  }
+}
@@ -0,0 +1,336 @@
+package com.smcmap.service;
+
+import com.smcmap.model.CacheStats;
+import com.smcmap.model.ProcessSnapshot;
+import com.smcmap.model.SystemSnapshot;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Agentless {@link StatsSource} for Linux: reads /proc in-process instead of
+ * asking the agent over HTTP.
+ *
+ * One sample reads /proc/meminfo, lists /proc, and reads the resident page
+ * count from every /proc/[pid]/statm into a bounded min-heap of the
+ * {@code top} largest, so selection is O(pids log top) with no sort and no
+ * per-process objects. Only the survivors have /proc/[pid]/status opened for
+ * their names. Every file goes through one reusable byte buffer and numbers
+ * are parsed by hand, with no regex, split or per-line Strings. What is left
+ * is one open/read/close per PID, which the kernel makes the floor.
+ *
+ * Figures match the agent's: free RAM is MemAvailable (what Windows calls
+ * available physical memory), used is total minus that, and a process's
+ * memory is its resident set in bytes (the working set on Windows).
+ */
+public final class ProcStatsCollector implements StatsSource {
+
+  public static final int DEFAULT_TOP = 20;
+
+  private static final LatencyHistogram COLLECT = MetricsRegistry.global().histogram("proc.collect");
+
+  private static final byte[] MEM_TOTAL = ascii("MemTotal:");
+  private static final byte[] MEM_AVAILABLE = ascii("MemAvailable:");
+  private static final byte[] MEM_FREE = ascii("MemFree:");
+  private static final byte[] BUFFERS = ascii("Buffers:");
+  private static final byte[] CACHED = ascii("Cached:");
+  private static final byte[] NAME = ascii("Name:");
+  /** status is a few KB, but Name is its first line. */
+  private static final int STATUS_PREFIX = 256;
+
+  private final String root;
+  private final File rootDir;
+  private final int top;
+  private final long pageSize;
+
+  // Guarded by this; reused across samples
+  private final byte[] buf = new byte[8192];
+  private final int[] heapPid;
+  private final long[] heapRss;
+  private int heapSize;
+
+  private volatile long lastCollectNanos = -1;
+
+  public ProcStatsCollector() {
+    this("/proc", DEFAULT_TOP);
+  }
+
+  /** Collector over a proc filesystem mounted at {@code root}, keeping the {@code top} largest processes. */
+  public ProcStatsCollector(String root, int top) {
+    this.root = root.endsWith("/") ? root.substring(0, root.length() - 1) : root;
+    this.rootDir = new File(this.root);
+    this.top = Math.max(1, top);
+    this.heapPid = new int[this.top];
+    this.heapRss = new long[this.top];
+    this.pageSize = detectPageSize();
+  }
+
+  /** True if this host has a readable /proc with memory figures. */
+  public static boolean isSupported() {
+    return new File("/proc/meminfo").canRead() && new File("/proc/self/statm").canRead();
+  }
+
+  @Override
+  public synchronized SystemStatsService.SystemDataResult fetchStats() throws IOException {
+    long start = System.nanoTime();
+    SystemSnapshot memory = readMeminfo();
+    String[] entries = rootDir.list();
+    if (entries == null)
+      throw new IOException("Cannot list " + root);
+    heapSize = 0;
+    for (String entry : entries) {
+      int pid = parsePid(entry);
+      if (pid <= 0)
+        continue;
+      long pages = readResidentPages(entry);
+      if (pages > 0)
+        offer(pid, pages);
+    }
+    // Drain the min-heap back to front so the list comes out largest first
+    ProcessSnapshot[] sorted = new ProcessSnapshot[heapSize];
+    for (int i = heapSize - 1; i >= 0; i--) {
+      ProcessSnapshot p = new ProcessSnapshot();
+      p.setPid(heapPid[0]);
+      p.setMemoryUsed(heapRss[0] * pageSize);
+      sorted[i] = p;
+      poll();
+    }
+    List<ProcessSnapshot> processes = new ArrayList<>(sorted.length);
+    for (ProcessSnapshot p : sorted) {
+      String name = readName(p.getPid());
+      // Exited since its statm was read
+      if (name == null)
+        continue;
+      p.setName(name);
+      processes.add(p);
+    }
+    long elapsed = System.nanoTime() - start;
+    lastCollectNanos = elapsed;
+    COLLECT.record(elapsed);
+    return new SystemStatsService.SystemDataResult(memory, processes, new CacheStats());
+  }
+
+  @Override
+  public String killProcess(int pid) {
+    Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+    if (handle.isEmpty())
+      return "Cannot open process. Access denied or invalid PID.";
+    try {
+      return handle.get().destroy() ? "Process terminated" : "Failed to terminate process";
+    } catch (SecurityException | IllegalStateException e) {
+      return "Cannot open process. Access denied or invalid PID.";
+    }
+  }
+
+  @Override
+  public double getLastRoundTripMs() {
+    long nanos = lastCollectNanos;
+    return nanos < 0 ? -1 : nanos / 1e6;
+  }
+
+  @Override
+  public String getEndpoint() {
+    return "in-process " + root;
+  }
+
+  @Override
+  public String getLatencyMetric() {
+    return "proc.collect";
+  }
+
+  // ---- Files ----
+
+  private SystemSnapshot readMeminfo() throws IOException {
+    int len = read(root + "/meminfo", buf.length);
+    if (len <= 0)
+      throw new IOException("Cannot read " + root + "/meminfo");
+    long total = -1, available = -1, free = 0, buffers = 0, cached = 0;
+    for (int pos = 0; pos < len;) {
+      if (startsWith(pos, len, MEM_TOTAL))
+        total = parseLong(pos + MEM_TOTAL.length, len);
+      else if (startsWith(pos, len, MEM_AVAILABLE))
+        available = parseLong(pos + MEM_AVAILABLE.length, len);
+      else if (startsWith(pos, len, MEM_FREE))
+        free = parseLong(pos + MEM_FREE.length, len);
+      else if (startsWith(pos, len, BUFFERS))
+        buffers = parseLong(pos + BUFFERS.length, len);
+      else if (startsWith(pos, len, CACHED))
+        cached = parseLong(pos + CACHED.length, len);
+      while (pos < len && buf[pos] != '\n')
+        pos++;
+      pos++;
+    }
+    if (total < 0)
+      throw new IOException("No MemTotal in " + root + "/meminfo");
+    // Kernels before 3.14 have no MemAvailable; this is its classic approximation
+    if (available < 0)
+      available = free + buffers + cached;
+    SystemSnapshot s = new SystemSnapshot();
+    s.setTotalRam(total * 1024);
+    s.setFreeRam(Math.min(total, available) * 1024);
+    s.setUsedRam((total - Math.min(total, available)) * 1024);
+    return s;
+  }
+
+  /** Second field of /proc/[pid]/statm (resident pages), or -1 if the process is gone. */
+  private long readResidentPages(String pid) {
+    int len = read(root + "/" + pid + "/statm", 128);
+    if (len <= 0)
+      return -1;
+    int pos = 0;
+    while (pos < len && buf[pos] != ' ')
+      pos++;
+    return parseLong(pos, len);
+  }
+
+  /** Name line of /proc/[pid]/status, or null if the process is gone. */
+  private String readName(int pid) {
+    int len = read(root + "/" + pid + "/status", STATUS_PREFIX);
+    if (len <= 0 || !startsWith(0, len, NAME))
+      return null;
+    int pos = NAME.length;
+    while (pos < len && (buf[pos] == '\t' || buf[pos] == ' '))
+      pos++;
+    int end = pos;
+    while (end < len && buf[end] != '\n')
+      end++;
+    return new String(buf, pos, end - pos, StandardCharsets.UTF_8);
+  }
+
+  /** Read up to {@code limit} bytes of {@code path} into buf; -1 if it cannot be opened. */
+  private int read(String path, int limit) {
+    try (FileInputStream in = new FileInputStream(path)) {
+      int n = 0;
+      while (n < limit) {
+        int r = in.read(buf, n, limit - n);
+        if (r < 0)
+          break;
+        n += r;
+      }
+      return n;
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  // ---- Parsing ----
+
+  private boolean startsWith(int pos, int len, byte[] key) {
+    if (pos + key.length > len)
+      return false;
+    for (int i = 0; i < key.length; i++) {
+      if (buf[pos + i] != key[i])
+        return false;
+    }
+    return true;
+  }
+
+  /** Skip blanks from {@code pos}, then parse decimal digits; -1 if there are none. */
+  private long parseLong(int pos, int len) {
+    while (pos < len && (buf[pos] == ' ' || buf[pos] == '\t'))
+      pos++;
+    if (pos >= len || buf[pos] < '0' || buf[pos] > '9')
+      return -1;
+    long v = 0;
+    while (pos < len && buf[pos] >= '0' && buf[pos] <= '9')
+      v = v * 10 + (buf[pos++] - '0');
+    return v;
+  }
+
+  /** The PID a /proc entry names, or -1 for non-process entries. */
+  static int parsePid(String entry) {
+    int n = entry.length();
+    if (n == 0 || n > 9)
+      return -1;
+    int v = 0;
+    for (int i = 0; i < n; i++) {
+      char c = entry.charAt(i);
+      if (c < '0' || c > '9')
+        return -1;
+      v = v * 10 + (c - '0');
+    }
+    return v;
+  }
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Bytes per statm page: this process's VmRSS (kB, from status) over its
+   * resident pages, rounded to a power of two. 4096 if either is unreadable.
+   */
+  private long detectPageSize() {
+    synchronized (this) {
+      long pages = readResidentPages("self");
+      int len = read(root + "/self/status", buf.length);
+      byte[] key = ascii("VmRSS:");
+      long rssKb = -1;
+      for (int pos = 0; pos < len;) {
+        if (startsWith(pos, len, key)) {
+          rssKb = parseLong(pos + key.length, len);
+          break;
+        }
+        while (pos < len && buf[pos] != '\n')
+          pos++;
+        pos++;
+      }
+      if (pages <= 0 || rssKb <= 0)
+        return 4096;
+      long estimate = rssKb * 1024 / pages;
+      long size = Long.highestOneBit(Math.max(1, estimate));
+      return estimate - size > size * 2 - estimate ? size * 2 : size;
+    }
+  }
+
+  // ---- Bounded min-heap on resident pages ----
+
+  private void offer(int pid, long rss) {
+    if (heapSize < top) {
+      int i = heapSize++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (heapRss[parent] <= rss)
+          break;
+        heapRss[i] = heapRss[parent];
+        heapPid[i] = heapPid[parent];
+        i = parent;
+      }
+      heapRss[i] = rss;
+      heapPid[i] = pid;
+    } else if (rss > heapRss[0]) {
+      siftDown(pid, rss);
+    }
+  }
+
+  /** Remove the smallest entry. */
+  private void poll() {
+    heapSize--;
+    if (heapSize > 0)
+      siftDown(heapPid[heapSize], heapRss[heapSize]);
+  }
+
+  /** Place (pid, rss) at the root and restore heap order. */
+  private void siftDown(int pid, long rss) {
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize)
+        break;
+      if (child + 1 < heapSize && heapRss[child + 1] < heapRss[child])
+        child++;
+      if (heapRss[child] >= rss)
+        break;
+      heapRss[i] = heapRss[child];
+      heapPid[i] = heapPid[child];
+      i = child;
+    }
+    heapRss[i] = rss;
+    heapPid[i] = pid;
+  }
+}
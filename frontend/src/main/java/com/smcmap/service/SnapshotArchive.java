@@ -0,0 +1,339 @@
+package com.smcmap.service;
+
+import com.smcmap.model.SnapshotSeries;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only, compressed archive of raw snapshots that have aged out of
+ * SQLite. Each node has two files in the archive directory:
+ *
+ * <pre>
+ * &lt;node&gt;.sma  "SMCMAR01", then blocks encoded by {@link SnapshotBlockCodec}
+ * &lt;node&gt;.smi  "SMCMIX01", then one 32-byte entry per block:
+ *              min ts, max ts, offset (longs), length, sample count (ints)
+ * </pre>
+ *
+ * A block holds at most BLOCK_SAMPLES samples and never spans an hour
+ * boundary. Blocks are written and forced before their index entries, so an
+ * entry never points at missing data; bytes past the last entry (a crash
+ * mid-append) are cut off when the archive is opened.
+ *
+ * Readers memory-map the index, binary search it for the first block that
+ * can overlap the query, then map and decode only the blocks whose span
+ * intersects it. Appends are serialized; reads take no lock and see the
+ * index as of the last completed append.
+ */
+public class SnapshotArchive implements Closeable {
+
+  private static final byte[] DATA_MAGIC = "SMCMAR01".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] INDEX_MAGIC = "SMCMIX01".getBytes(StandardCharsets.US_ASCII);
+  private static final int HEADER = 8;
+  private static final int ENTRY = 32;
+  private static final String DATA_SUFFIX = ".sma";
+  private static final String INDEX_SUFFIX = ".smi";
+
+  static final int BLOCK_SAMPLES = 3600;
+  private static final long BLOCK_SPAN_MS = 3_600_000L;
+  /** Largest data region mapped at once by a scan. */
+  private static final long MAP_WINDOW = 64L << 20;
+
+  private final File dir;
+  private final Map<String, NodeFiles> nodes = new ConcurrentHashMap<>();
+
+  /** Open (or create) the archive in {@code dir}, recovering every node found there. */
+  public SnapshotArchive(File dir) throws IOException {
+    this.dir = dir;
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Cannot create archive directory " + dir.getAbsolutePath());
+    File[] indexes = dir.listFiles((d, name) -> name.endsWith(INDEX_SUFFIX));
+    if (indexes != null) {
+      for (File f : indexes) {
+        String name = f.getName();
+        String nodeId = decodeName(name.substring(0, name.length() - INDEX_SUFFIX.length()));
+        nodes.put(nodeId, new NodeFiles(nodeId));
+      }
+    }
+  }
+
+  /**
+   * Append {@code rows} (oldest first) to {@code nodeId}'s archive. Rows not
+   * newer than what is already archived are skipped, so re-archiving after a
+   * crash between append and delete is harmless.
+   */
+  public synchronized void append(String nodeId, SnapshotSeries rows) throws IOException {
+    NodeFiles files = nodes.get(nodeId);
+    if (files == null) {
+      files = new NodeFiles(nodeId);
+      nodes.put(nodeId, files);
+    }
+    files.append(rows);
+  }
+
+  /** Exclusive end of {@code nodeId}'s archived span, or Long.MIN_VALUE if nothing is archived. */
+  public long endMs(String nodeId) {
+    NodeFiles files = nodes.get(nodeId);
+    return files == null ? Long.MIN_VALUE : files.view.endMs;
+  }
+
+  /**
+   * Pass archived samples of {@code nodeId} with {@code fromMs <= ts < toMs}
+   * to {@code visitor}, oldest first.
+   *
+   * @return samples visited, including the one that stopped the scan
+   */
+  public long scan(String nodeId, long fromMs, long toMs, AnalysisPersistenceService.RowVisitor visitor)
+      throws IOException {
+    NodeFiles files = nodes.get(nodeId);
+    return files == null || fromMs >= toMs ? 0 : files.scan(fromMs, toMs, visitor);
+  }
+
+  /** Archived samples of {@code nodeId} with {@code fromMs <= ts < toMs}, appended to {@code out}. */
+  public void read(String nodeId, long fromMs, long toMs, SnapshotSeries out) throws IOException {
+    scan(nodeId, fromMs, toMs, (ts, total, used, free) -> {
+      out.add(ts, total, used, free);
+      return true;
+    });
+  }
+
+  /** Samples archived across all nodes. */
+  public long getSampleCount() {
+    long n = 0;
+    for (NodeFiles f : nodes.values())
+      n += f.view.samples;
+    return n;
+  }
+
+  /** Bytes of block data (including file headers) across all nodes. */
+  public long getSizeBytes() {
+    long n = 0;
+    for (NodeFiles f : nodes.values())
+      n += f.view.dataEnd;
+    return n;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    IOException first = null;
+    for (NodeFiles f : nodes.values()) {
+      try {
+        f.close();
+      } catch (IOException e) {
+        if (first == null)
+          first = e;
+      }
+    }
+    nodes.clear();
+    if (first != null)
+      throw first;
+  }
+
+  /** Node ids are user supplied; anything but [A-Za-z0-9._-] is %-escaped in file names. */
+  static String encodeName(String nodeId) {
+    StringBuilder sb = new StringBuilder(nodeId.length());
+    for (byte b : nodeId.getBytes(StandardCharsets.UTF_8)) {
+      char c = (char) (b & 0xFF);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '_'
+          || c == '-')
+        sb.append(c);
+      else
+        sb.append('%').append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 15, 16));
+    }
+    return sb.toString();
+  }
+
+  static String decodeName(String name) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '%' && i + 2 < name.length()) {
+        bytes.write(Integer.parseInt(name.substring(i + 1, i + 3), 16));
+        i += 2;
+      } else {
+        bytes.write(c);
+      }
+    }
+    return bytes.toString(StandardCharsets.UTF_8);
+  }
+
+  /** Index state as of the last completed append; replaced, never mutated. */
+  private static final class IndexView {
+    final ByteBuffer index;
+    final int blocks;
+    final long dataEnd;
+    final long endMs;
+    final long samples;
+
+    IndexView(ByteBuffer index, int blocks, long dataEnd, long endMs, long samples) {
+      this.index = index;
+      this.blocks = blocks;
+      this.dataEnd = dataEnd;
+      this.endMs = endMs;
+      this.samples = samples;
+    }
+
+    long minTs(int i) { return index.getLong(HEADER + i * ENTRY); }
+    long maxTs(int i) { return index.getLong(HEADER + i * ENTRY + 8); }
+    long offset(int i) { return index.getLong(HEADER + i * ENTRY + 16); }
+    int length(int i) { return index.getInt(HEADER + i * ENTRY + 24); }
+    int count(int i) { return index.getInt(HEADER + i * ENTRY + 28); }
+
+    /** First block whose max timestamp is at least {@code ts}. */
+    int firstEndingAtOrAfter(long ts) {
+      int lo = 0, hi = blocks;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (maxTs(mid) < ts)
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+      return lo;
+    }
+  }
+
+  private final class NodeFiles {
+    private final FileChannel data;
+    private final FileChannel index;
+    private volatile IndexView view;
+
+    NodeFiles(String nodeId) throws IOException {
+      String base = encodeName(nodeId);
+      data = open(new File(dir, base + DATA_SUFFIX), DATA_MAGIC);
+      index = open(new File(dir, base + INDEX_SUFFIX), INDEX_MAGIC);
+      recover();
+    }
+
+    private FileChannel open(File file, byte[] magic) throws IOException {
+      FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      if (ch.size() < HEADER) {
+        ch.truncate(0);
+        ch.write(ByteBuffer.wrap(magic), 0);
+        ch.force(true);
+      } else {
+        ByteBuffer head = ByteBuffer.allocate(HEADER);
+        ch.read(head, 0);
+        if (!ByteBuffer.wrap(magic).equals(head.flip())) {
+          ch.close();
+          throw new IOException(file.getAbsolutePath() + " is not an SMCMAP archive file");
+        }
+      }
+      return ch;
+    }
+
+    /** Drop index entries pointing past the data and data past the last entry, then publish the index. */
+    private void recover() throws IOException {
+      int blocks = (int) ((index.size() - HEADER) / ENTRY);
+      long dataSize = data.size();
+      long end = HEADER;
+      ByteBuffer entry = ByteBuffer.allocate(ENTRY);
+      while (blocks > 0) {
+        entry.clear();
+        index.read(entry, HEADER + (long) (blocks - 1) * ENTRY);
+        end = entry.getLong(16) + entry.getInt(24);
+        if (end <= dataSize)
+          break;
+        blocks--;
+        end = HEADER;
+      }
+      if (index.size() != HEADER + (long) blocks * ENTRY)
+        index.truncate(HEADER + (long) blocks * ENTRY);
+      if (dataSize != end)
+        data.truncate(end);
+      view = map(blocks, end);
+    }
+
+    private IndexView map(int blocks, long dataEnd) throws IOException {
+      MappedByteBuffer m = index.map(FileChannel.MapMode.READ_ONLY, 0, HEADER + (long) blocks * ENTRY);
+      long samples = 0;
+      for (int i = 0; i < blocks; i++)
+        samples += m.getInt(HEADER + i * ENTRY + 28);
+      long endMs = blocks == 0 ? Long.MIN_VALUE : m.getLong(HEADER + (blocks - 1) * ENTRY + 8) + 1;
+      return new IndexView(m, blocks, dataEnd, endMs, samples);
+    }
+
+    void append(SnapshotSeries rows) throws IOException {
+      IndexView v = view;
+      int start = 0;
+      while (start < rows.size() && rows.getTimestamp(start) < v.endMs)
+        start++;
+      if (start == rows.size())
+        return;
+      ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+      DataOutputStream entries = new DataOutputStream(entryBytes);
+      long offset = v.dataEnd;
+      while (start < rows.size()) {
+        long hour = Math.floorDiv(rows.getTimestamp(start), BLOCK_SPAN_MS);
+        int end = start + 1;
+        while (end < rows.size() && end - start < BLOCK_SAMPLES
+            && Math.floorDiv(rows.getTimestamp(end), BLOCK_SPAN_MS) == hour)
+          end++;
+        byte[] block = SnapshotBlockCodec.encode(rows, start, end);
+        ByteBuffer b = ByteBuffer.wrap(block);
+        while (b.hasRemaining())
+          data.write(b, offset + b.position());
+        entries.writeLong(rows.getTimestamp(start));
+        entries.writeLong(rows.getTimestamp(end - 1));
+        entries.writeLong(offset);
+        entries.writeInt(block.length);
+        entries.writeInt(end - start);
+        offset += block.length;
+        start = end;
+      }
+      data.force(false);
+      ByteBuffer added = ByteBuffer.wrap(entryBytes.toByteArray());
+      long indexEnd = HEADER + (long) v.blocks * ENTRY;
+      int blocks = v.blocks + added.remaining() / ENTRY;
+      while (added.hasRemaining())
+        index.write(added, indexEnd + added.position());
+      index.force(false);
+      view = map(blocks, offset);
+    }
+
+    long scan(long fromMs, long toMs, AnalysisPersistenceService.RowVisitor visitor) throws IOException {
+      IndexView v = view;
+      long[] visited = { 0 };
+      AnalysisPersistenceService.RowVisitor counting = (ts, total, used, free) -> {
+        visited[0]++;
+        return visitor.visit(ts, total, used, free);
+      };
+      int i = v.firstEndingAtOrAfter(fromMs);
+      while (i < v.blocks && v.minTs(i) < toMs) {
+        // Map a run of consecutive blocks that overlap the range, bounded by MAP_WINDOW
+        long windowStart = v.offset(i);
+        int j = i + 1;
+        while (j < v.blocks && v.minTs(j) < toMs && v.offset(j) + v.length(j) - windowStart <= MAP_WINDOW)
+          j++;
+        long windowEnd = v.offset(j - 1) + v.length(j - 1);
+        MappedByteBuffer window = data.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+        for (int k = i; k < j; k++) {
+          if (!SnapshotBlockCodec.decode(window, (int) (v.offset(k) - windowStart), v.count(k), fromMs, toMs,
+              counting))
+            return visited[0];
+        }
+        i = j;
+      }
+      return visited[0];
+    }
+
+    void close() throws IOException {
+      try {
+        data.close();
+      } finally {
+        index.close();
+      }
+    }
+  }
+}
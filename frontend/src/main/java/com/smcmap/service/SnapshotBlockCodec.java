@@ -0,0 +1,261 @@
+package com.smcmap.service;
+
+import com.smcmap.model.SnapshotSeries;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style encoding of one block of (timestamp, total, used, free)
+ * samples, as stored in {@link SnapshotArchive}.
+ *
+ * The first sample is written as four raw 64-bit words. After that every
+ * sample is one bit stream entry per column:
+ * <ul>
+ * <li>timestamp: delta-of-delta against the previous interval, '0' when the
+ * cadence is unchanged, otherwise a 2-4 bit prefix and a 7, 9, 12 or 64 bit
+ * two's-complement value;</li>
+ * <li>total RAM: XOR with the previous total;</li>
+ * <li>used RAM: zigzag delta from the previous value;</li>
+ * <li>free RAM: zigzag of its delta plus used RAM's delta, which is zero
+ * whenever memory only moved between used and free;</li>
+ * </ul>
+ * Each RAM residual is written with Gorilla's leading/trailing-zero window
+ * (see {@link Window}). A steady 1 Hz poll with an unchanged total and
+ * used + free costs three bits for time, total and free, so a sample is
+ * dominated by how far used RAM moved.
+ */
+public final class SnapshotBlockCodec {
+
+  private SnapshotBlockCodec() {
+  }
+
+  /** Encode rows {@code from} (inclusive) to {@code to} (exclusive) of {@code series}. */
+  public static byte[] encode(SnapshotSeries series, int from, int to) {
+    BitWriter out = new BitWriter(Math.max(64, (to - from) * 6));
+    long ts = series.getTimestamp(from);
+    long total = series.getTotalRam(from);
+    long used = series.getUsedRam(from);
+    long free = series.getFreeRam(from);
+    out.write(ts, 64);
+    out.write(total, 64);
+    out.write(used, 64);
+    out.write(free, 64);
+    Window totalBits = new Window();
+    Window usedBits = new Window();
+    Window freeBits = new Window();
+    long prevDelta = 0;
+    for (int i = from + 1; i < to; i++) {
+      long t = series.getTimestamp(i);
+      long delta = t - ts;
+      writeDeltaOfDelta(out, delta - prevDelta);
+      prevDelta = delta;
+      ts = t;
+      long tot = series.getTotalRam(i);
+      long u = series.getUsedRam(i);
+      long f = series.getFreeRam(i);
+      totalBits.write(out, tot ^ total);
+      usedBits.write(out, zigzag(u - used));
+      // Free RAM mostly moves opposite to used RAM; store only the part that does not
+      freeBits.write(out, zigzag((f - free) + (u - used)));
+      total = tot;
+      used = u;
+      free = f;
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode the {@code count} samples of the block at {@code offset} in
+   * {@code buf} and pass those with {@code fromMs <= ts < toMs} to
+   * {@code visitor}. Stops at the first sample at or past {@code toMs}.
+   *
+   * @return false if the visitor asked to stop
+   */
+  public static boolean decode(ByteBuffer buf, int offset, int count, long fromMs, long toMs,
+      AnalysisPersistenceService.RowVisitor visitor) throws IOException {
+    BitReader in = new BitReader(buf, offset);
+    long ts = in.read(64);
+    long total = in.read(64);
+    long used = in.read(64);
+    long free = in.read(64);
+    Window totalBits = new Window();
+    Window usedBits = new Window();
+    Window freeBits = new Window();
+    long delta = 0;
+    for (int i = 0;; i++) {
+      if (ts >= toMs)
+        return true;
+      if (ts >= fromMs && !visitor.visit(ts, total, used, free))
+        return false;
+      if (i + 1 == count)
+        return true;
+      delta += readDeltaOfDelta(in);
+      ts += delta;
+      total ^= totalBits.read(in);
+      long usedDelta = unzigzag(usedBits.read(in));
+      used += usedDelta;
+      free += unzigzag(freeBits.read(in)) - usedDelta;
+    }
+  }
+
+  private static void writeDeltaOfDelta(BitWriter out, long dod) {
+    if (dod == 0) {
+      out.write(0, 1);
+    } else if (fits(dod, 7)) {
+      out.write(0b10, 2);
+      out.write(dod, 7);
+    } else if (fits(dod, 9)) {
+      out.write(0b110, 3);
+      out.write(dod, 9);
+    } else if (fits(dod, 12)) {
+      out.write(0b1110, 4);
+      out.write(dod, 12);
+    } else {
+      out.write(0b1111, 4);
+      out.write(dod, 64);
+    }
+  }
+
+  private static long readDeltaOfDelta(BitReader in) {
+    if (!in.bit())
+      return 0;
+    if (!in.bit())
+      return signed(in.read(7), 7);
+    if (!in.bit())
+      return signed(in.read(9), 9);
+    if (!in.bit())
+      return signed(in.read(12), 12);
+    return in.read(64);
+  }
+
+  private static boolean fits(long v, int bits) {
+    return v >= -(1L << (bits - 1)) && v < (1L << (bits - 1));
+  }
+
+  private static long signed(long v, int bits) {
+    return (v << (64 - bits)) >> (64 - bits);
+  }
+
+  private static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  private static long unzigzag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /**
+   * Gorilla's leading/trailing-zero window for one column's residuals (XOR
+   * or zigzag delta): '0' for zero, '10' plus the bits inside the previous
+   * window when they fit, '11' plus a new window otherwise.
+   */
+  private static final class Window {
+    int leading = -1;
+    int trailing;
+
+    void write(BitWriter out, long r) {
+      if (r == 0) {
+        out.write(0, 1);
+        return;
+      }
+      int lz = Long.numberOfLeadingZeros(r);
+      int tz = Long.numberOfTrailingZeros(r);
+      if (leading >= 0 && lz >= leading && tz >= trailing) {
+        out.write(0b10, 2);
+        out.write(r >>> trailing, 64 - leading - trailing);
+      } else {
+        leading = lz;
+        trailing = tz;
+        int len = 64 - lz - tz;
+        out.write(0b11, 2);
+        out.write(lz, 6);
+        out.write(len - 1, 6);
+        out.write(r >>> tz, len);
+      }
+    }
+
+    long read(BitReader in) {
+      if (!in.bit())
+        return 0;
+      if (in.bit()) {
+        leading = (int) in.read(6);
+        trailing = 64 - leading - ((int) in.read(6) + 1);
+      }
+      return in.read(64 - leading - trailing) << trailing;
+    }
+  }
+
+  private static final class BitWriter {
+    private byte[] buf;
+    private int size;
+    private int cur;
+    private int used;
+
+    BitWriter(int capacity) {
+      buf = new byte[capacity];
+    }
+
+    /** Append the low {@code n} bits of {@code v}, most significant first. */
+    void write(long v, int n) {
+      while (n > 0) {
+        int room = 8 - used;
+        int take = Math.min(n, room);
+        int bits = (int) (v >>> (n - take)) & ((1 << take) - 1);
+        cur |= bits << (room - take);
+        used += take;
+        n -= take;
+        if (used == 8) {
+          if (size == buf.length)
+            buf = Arrays.copyOf(buf, size * 2);
+          buf[size++] = (byte) cur;
+          cur = 0;
+          used = 0;
+        }
+      }
+    }
+
+    byte[] toByteArray() {
+      byte[] out = Arrays.copyOf(buf, size + (used > 0 ? 1 : 0));
+      if (used > 0)
+        out[size] = (byte) cur;
+      return out;
+    }
+  }
+
+  private static final class BitReader {
+    private final ByteBuffer buf;
+    private int pos;
+    private int cur;
+    private int avail;
+
+    BitReader(ByteBuffer buf, int offset) {
+      this.buf = buf;
+      this.pos = offset;
+    }
+
+    boolean bit() {
+      if (avail == 0) {
+        cur = buf.get(pos++) & 0xFF;
+        avail = 8;
+      }
+      return ((cur >>> --avail) & 1) != 0;
+    }
+
+    long read(int n) {
+      long v = 0;
+      while (n > 0) {
+        if (avail == 0) {
+          cur = buf.get(pos++) & 0xFF;
+          avail = 8;
+        }
+        int take = Math.min(n, avail);
+        v = (v << take) | ((cur >>> (avail - take)) & ((1 << take) - 1));
+        avail -= take;
+        n -= take;
+      }
+      return v;
+    }
+  }
+}
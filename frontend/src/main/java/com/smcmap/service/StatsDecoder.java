@@ -0,0 +1,208 @@
+package com.smcmap.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.smcmap.model.CacheStats;
+import com.smcmap.model.ProcessSnapshot;
+import com.smcmap.model.SystemSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder for the agent's /api/stats payload. Binds fields straight
+ * into the model objects as tokens arrive, with no intermediate String body or
+ * JsonObject tree. Field order does not matter and unknown fields are skipped.
+ *
+ * Agents that version their samples may answer a conditional fetch with a
+ * delta instead (see {@link #decodeUpdate}); {@link StatsState} merges those.
+ */
+public final class StatsDecoder {
+
+  private StatsDecoder() {
+  }
+
+  public static SystemStatsService.SystemDataResult decode(InputStream in) throws IOException {
+    return decode(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  public static SystemStatsService.SystemDataResult decode(Reader reader) throws IOException {
+    Update u = decodeUpdate(reader);
+    if (u.isDelta())
+      throw new IOException("Stats payload is a delta against version " + u.base);
+    return new SystemStatsService.SystemDataResult(u.memory, u.processes, u.cache);
+  }
+
+  /**
+   * An /api/stats body: a full sample, or the changes since version
+   * {@code base} ("added" processes in full, "changed" pid and memory only,
+   * "removed" pids). {@code seq} is the sample's version, -1 from agents that
+   * do not version.
+   */
+  static final class Update {
+    long seq = -1;
+    long base = -1;
+    SystemSnapshot memory;
+    /** The whole table, or in a delta the added processes (and reused pids under a new name). */
+    List<ProcessSnapshot> processes;
+    List<ProcessSnapshot> changed;
+    int[] removed;
+    CacheStats cache;
+
+    boolean isDelta() {
+      return base >= 0;
+    }
+  }
+
+  static Update decodeUpdate(InputStream in) throws IOException {
+    return decodeUpdate(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  static Update decodeUpdate(Reader reader) throws IOException {
+    Update u = new Update();
+    JsonReader r = new JsonReader(reader);
+    r.beginObject();
+    while (r.hasNext()) {
+      switch (r.nextName()) {
+        case "seq":
+          u.seq = r.nextLong();
+          break;
+        case "base":
+          u.base = r.nextLong();
+          break;
+        case "memory":
+          u.memory = readMemory(r);
+          break;
+        case "processes":
+        case "added":
+          u.processes = readProcesses(r);
+          break;
+        case "changed":
+          u.changed = readProcesses(r);
+          break;
+        case "removed":
+          u.removed = readPids(r);
+          break;
+        case "cache":
+          u.cache = readCache(r);
+          break;
+        default:
+          r.skipValue();
+      }
+    }
+    r.endObject();
+
+    if (u.memory == null)
+      throw new IOException("Stats payload has no memory section");
+    if (u.processes == null)
+      u.processes = new ArrayList<>();
+    if (u.changed == null)
+      u.changed = new ArrayList<>();
+    if (u.removed == null)
+      u.removed = new int[0];
+    if (u.cache == null)
+      u.cache = new CacheStats();
+    return u;
+  }
+
+  private static SystemSnapshot readMemory(JsonReader r) throws IOException {
+    SystemSnapshot s = new SystemSnapshot();
+    r.beginObject();
+    while (r.hasNext()) {
+      switch (r.nextName()) {
+        case "totalRam":
+          s.setTotalRam(r.nextLong());
+          break;
+        case "usedRam":
+          s.setUsedRam(r.nextLong());
+          break;
+        case "freeRam":
+          s.setFreeRam(r.nextLong());
+          break;
+        default:
+          r.skipValue();
+      }
+    }
+    r.endObject();
+    return s;
+  }
+
+  private static List<ProcessSnapshot> readProcesses(JsonReader r) throws IOException {
+    List<ProcessSnapshot> list = new ArrayList<>();
+    r.beginArray();
+    while (r.hasNext()) {
+      ProcessSnapshot p = new ProcessSnapshot();
+      r.beginObject();
+      while (r.hasNext()) {
+        switch (r.nextName()) {
+          case "pid":
+            p.setPid(r.nextInt());
+            break;
+          case "name":
+            p.setName(r.peek() == JsonToken.NULL ? skipNull(r) : r.nextString());
+            break;
+          case "memoryUsed":
+            p.setMemoryUsed(r.nextLong());
+            break;
+          default:
+            r.skipValue();
+        }
+      }
+      r.endObject();
+      if (p.getName() == null)
+        p.setName("");
+      list.add(p);
+    }
+    r.endArray();
+    return list;
+  }
+
+  private static int[] readPids(JsonReader r) throws IOException {
+    int[] pids = new int[16];
+    int n = 0;
+    r.beginArray();
+    while (r.hasNext()) {
+      if (n == pids.length)
+        pids = Arrays.copyOf(pids, n * 2);
+      pids[n++] = r.nextInt();
+    }
+    r.endArray();
+    return Arrays.copyOf(pids, n);
+  }
+
+  private static CacheStats readCache(JsonReader r) throws IOException {
+    CacheStats c = new CacheStats();
+    r.beginObject();
+    while (r.hasNext()) {
+      switch (r.nextName()) {
+        case "algorithm":
+          c.setAlgorithm(r.nextString());
+          break;
+        case "hits":
+          c.setHits(r.nextLong());
+          break;
+        case "misses":
+          c.setMisses(r.nextLong());
+          break;
+        case "hitRatio":
+          c.setHitRatio(r.nextDouble());
+          break;
+        default:
+          r.skipValue();
+      }
+    }
+    r.endObject();
+    return c;
+  }
+
+  private static String skipNull(JsonReader r) throws IOException {
+    r.nextNull();
+    return null;
+  }
+}
@@ -0,0 +1,24 @@
+package com.smcmap.service;
+
+/**
+ * Where the dashboard's samples come from: the agent over HTTP
+ * ({@link SystemStatsService}) or an in-process collector such as
+ * {@link ProcStatsCollector}.
+ */
+public interface StatsSource {
+
+  /** One sample: memory totals, top processes and cache counters. */
+  SystemStatsService.SystemDataResult fetchStats() throws Exception;
+
+  /** Terminate {@code pid}; returns the message shown to the user. */
+  String killProcess(int pid) throws Exception;
+
+  /** Duration of the last successful fetchStats in milliseconds, or -1 if none yet. */
+  double getLastRoundTripMs();
+
+  /** Human-readable origin for the node view: an agent URL or a local source. */
+  String getEndpoint();
+
+  /** Name of the {@link MetricsRegistry} histogram timing fetchStats. */
+  String getLatencyMetric();
+}
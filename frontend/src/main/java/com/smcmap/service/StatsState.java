@@ -0,0 +1,78 @@
+package com.smcmap.service;
+
+import com.smcmap.model.ProcessSnapshot;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One agent's sample as last seen by {@link SystemStatsService}, kept so
+ * conditional fetches can be answered with 304 or a delta.
+ *
+ * Deltas are merged into the process map without touching snapshots already
+ * handed out: a changed process is replaced by a new ProcessSnapshot, so a
+ * previous result stays valid for whoever still holds it. Results list
+ * processes by memory, largest first, as the agent's top-N list is.
+ */
+final class StatsState {
+
+  private static final Comparator<ProcessSnapshot> BY_MEMORY = Comparator
+      .comparingLong(ProcessSnapshot::getMemoryUsed).reversed();
+
+  // Guarded by this
+  private long version = -1;
+  private final Map<Integer, ProcessSnapshot> processes = new HashMap<>();
+  private SystemStatsService.SystemDataResult current;
+
+  /** Version to send as If-None-Match, or -1 if there is nothing to be conditional on. */
+  synchronized long getVersion() {
+    return current != null ? version : -1;
+  }
+
+  /** The last merged sample, or null before the first. */
+  synchronized SystemStatsService.SystemDataResult current() {
+    return current;
+  }
+
+  /**
+   * Merge {@code u} and return the resulting sample, or null if it is a delta
+   * against a version other than the one held (the caller then fetches the
+   * full sample).
+   */
+  synchronized SystemStatsService.SystemDataResult apply(StatsDecoder.Update u) {
+    if (u.isDelta()) {
+      if (current == null || u.base != version)
+        return null;
+      // Check before merging, so a bad delta leaves the held sample intact
+      for (ProcessSnapshot c : u.changed) {
+        if (!processes.containsKey(c.getPid()))
+          return null;
+      }
+      for (int pid : u.removed)
+        processes.remove(pid);
+      for (ProcessSnapshot p : u.processes)
+        processes.put(p.getPid(), p);
+      for (ProcessSnapshot c : u.changed) {
+        ProcessSnapshot old = processes.get(c.getPid());
+        ProcessSnapshot p = new ProcessSnapshot();
+        p.setPid(old.getPid());
+        p.setName(old.getName());
+        p.setMemoryUsed(c.getMemoryUsed());
+        processes.put(p.getPid(), p);
+      }
+    } else {
+      // Also after an agent restart, whose versions start over
+      processes.clear();
+      for (ProcessSnapshot p : u.processes)
+        processes.put(p.getPid(), p);
+    }
+    List<ProcessSnapshot> list = new ArrayList<>(processes.values());
+    list.sort(BY_MEMORY);
+    version = u.seq;
+    current = new SystemStatsService.SystemDataResult(u.memory, list, u.cache);
+    return current;
+  }
+}
@@ -0,0 +1,348 @@
+package com.smcmap.service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Push subscription to an agent's /api/stats/stream (Server-Sent Events):
+ * one long-lived connection over which the agent sends a sample at its own
+ * cadence, instead of one request per sample.
+ *
+ * Lines are pushed by the HttpClient through a line subscriber, so no thread
+ * blocks on the socket; each event is decoded with {@link StatsDecoder} and
+ * handed to the {@link Listener} on the client's executor, in order. When the
+ * stream ends, fails or goes quiet for IDLE_TIMEOUT_MS, it is reopened with
+ * Last-Event-ID set to the last sequence number seen, after the agent's
+ * suggested retry delay, doubling on consecutive failures up to
+ * MAX_BACKOFF_MS. Samples the agent no longer has show up as a jump in
+ * sequence numbers and are counted as stream.gaps. An agent without the
+ * endpoint (HTTP 404) ends the subscription with {@link Listener#onUnsupported}.
+ *
+ * Delivery lag (agent timestamp to decoded sample) is recorded as
+ * stream.lag; it assumes the agent's clock agrees with ours, as it does for
+ * the local agent.
+ */
+public final class StatsSubscription implements AutoCloseable {
+
+  public interface Listener {
+    void onSample(long seq, SystemStatsService.SystemDataResult result);
+
+    /** The stream broke; the subscription is already reconnecting. */
+    default void onDisconnect(Throwable error) {
+    }
+
+    /** The agent has no stream endpoint; nothing more will be delivered. */
+    default void onUnsupported() {
+    }
+  }
+
+  static final long DEFAULT_RETRY_MS = 1000;
+  static final long MAX_BACKOFF_MS = 30_000;
+  /** No bytes for this long and the connection is presumed dead. Agent intervals must be shorter. */
+  static final long IDLE_TIMEOUT_MS = 15_000;
+
+  private static final LatencyHistogram LAG = MetricsRegistry.global().histogram("stream.lag");
+  private static final LatencyHistogram DECODE = MetricsRegistry.global().histogram("agent.decode");
+  private static final MetricsRegistry.Counter ERRORS = MetricsRegistry.global().counter("agent.errors");
+  private static final MetricsRegistry.Counter RECONNECTS = MetricsRegistry.global().counter("stream.reconnects");
+  private static final MetricsRegistry.Counter GAPS = MetricsRegistry.global().counter("stream.gaps");
+
+  private final HttpClient client;
+  private final URI uri;
+  private final Listener listener;
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "SMCMAP-Stream");
+    t.setDaemon(true);
+    return t;
+  });
+
+  // Guarded by this
+  private boolean started;
+  private boolean closed;
+  private int generation;
+  /** A connection of the current generation is being made or is streaming. */
+  private boolean open;
+  private Flow.Subscription current;
+  private int failures;
+
+  private volatile long lastSeq = -1;
+  private volatile long retryMs = DEFAULT_RETRY_MS;
+  private volatile long lastActivityNanos;
+  private volatile boolean connected;
+  private volatile long lastLagNanos = -1;
+
+  StatsSubscription(HttpClient client, URI uri, Listener listener) {
+    this.client = client;
+    this.uri = uri;
+    this.listener = listener;
+  }
+
+  /** Open the stream; no-op if already started. */
+  public synchronized void start() {
+    if (started || closed)
+      return;
+    started = true;
+    timer.execute(this::connect);
+    timer.scheduleWithFixedDelay(this::checkIdle, 1, 1, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      generation++;
+      if (current != null)
+        current.cancel();
+      current = null;
+    }
+    connected = false;
+    timer.shutdownNow();
+  }
+
+  /** Sequence number of the last sample delivered, -1 before the first. */
+  public long getLastSeq() {
+    return lastSeq;
+  }
+
+  /** True while a stream is open and has delivered at least one sample. */
+  public boolean isConnected() {
+    return connected;
+  }
+
+  public synchronized int getConsecutiveFailures() {
+    return failures;
+  }
+
+  /** Delivery lag of the last sample in milliseconds, -1 if none or the agent sent no timestamp. */
+  public double getLastLagMs() {
+    long nanos = lastLagNanos;
+    return nanos < 0 ? -1 : nanos / 1e6;
+  }
+
+  private void connect() {
+    int gen;
+    EventParser parser;
+    synchronized (this) {
+      if (closed)
+        return;
+      gen = ++generation;
+      open = true;
+      current = null;
+      parser = new EventParser(gen);
+    }
+    lastActivityNanos = System.nanoTime();
+    HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+        .header("Accept", "text/event-stream")
+        .header("Cache-Control", "no-cache")
+        .GET();
+    long seq = lastSeq;
+    if (seq >= 0)
+      request.header("Last-Event-ID", Long.toString(seq));
+    int[] status = new int[1];
+    client.sendAsync(request.build(), info -> {
+      status[0] = info.statusCode();
+      return info.statusCode() == 200
+          ? HttpResponse.BodySubscribers.fromLineSubscriber(parser)
+          : HttpResponse.BodySubscribers.discarding();
+    }).whenComplete((response, error) -> ended(gen, status[0], error));
+  }
+
+  /** The exchange of connection {@code gen} completed: the stream ended, failed or was refused. */
+  private void ended(int gen, int status, Throwable error) {
+    Throwable cause;
+    long delay;
+    synchronized (this) {
+      if (closed || !open || gen != generation)
+        return;
+      generation++;
+      open = false;
+      current = null;
+      if (status == 404)
+        closed = true;
+      failures++;
+      delay = Math.min(MAX_BACKOFF_MS, retryMs << Math.min(failures - 1, 16));
+      cause = error != null ? error
+          : new IOException(status == 200 ? "Stream closed by agent" : "Stream refused: HTTP " + status);
+    }
+    connected = false;
+    if (status == 404) {
+      timer.shutdownNow();
+      System.out.println("[SMCMAP] " + uri + " not found; agent does not stream.");
+      listener.onUnsupported();
+      return;
+    }
+    ERRORS.increment();
+    RECONNECTS.increment();
+    try {
+      listener.onDisconnect(cause);
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+    }
+    schedule(delay);
+  }
+
+  private void schedule(long delayMs) {
+    try {
+      timer.schedule(this::connect, delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // Closed meanwhile
+    }
+  }
+
+  /** Abandon a connection that has gone silent; its callbacks are ignored from here on. */
+  private void checkIdle() {
+    if (System.nanoTime() - lastActivityNanos < TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS))
+      return;
+    Flow.Subscription stale;
+    int gen;
+    synchronized (this) {
+      if (closed || !open)
+        return;
+      stale = current;
+      gen = generation;
+    }
+    if (stale != null)
+      stale.cancel();
+    // Cancelling leaves the exchange's future pending, so end it here
+    ended(gen, 200, new IOException("No data for " + IDLE_TIMEOUT_MS + " ms"));
+  }
+
+  private void deliver(int gen, String id, String data) {
+    long seq;
+    try {
+      seq = id != null ? Long.parseLong(id.trim()) : lastSeq + 1;
+    } catch (NumberFormatException e) {
+      seq = lastSeq + 1;
+    }
+    SystemStatsService.SystemDataResult result;
+    long decodeStart = System.nanoTime();
+    try {
+      result = StatsDecoder.decode(new StringReader(data));
+    } catch (IOException | RuntimeException e) {
+      ERRORS.increment();
+      System.err.println("[SMCMAP] Bad stream event " + seq + ": " + e.getMessage());
+      return;
+    }
+    DECODE.recordSince(decodeStart);
+    long timestampMs = timestampOf(data);
+    if (timestampMs > 0) {
+      long lag = Math.max(0, System.currentTimeMillis() - timestampMs) * 1_000_000;
+      lastLagNanos = lag;
+      LAG.record(lag);
+    }
+    synchronized (this) {
+      if (closed || gen != generation)
+        return;
+      failures = 0;
+    }
+    long previous = lastSeq;
+    // A lower id means the agent restarted and numbers afresh
+    if (previous >= 0 && seq > previous + 1)
+      GAPS.add(seq - previous - 1);
+    lastSeq = seq;
+    connected = true;
+    try {
+      listener.onSample(seq, result);
+    } catch (RuntimeException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /** The "timestampMs" member the agents append last to each event, or -1. */
+  static long timestampOf(String data) {
+    int i = data.lastIndexOf("\"timestampMs\":");
+    if (i < 0)
+      return -1;
+    i += "\"timestampMs\":".length();
+    while (i < data.length() && data.charAt(i) == ' ')
+      i++;
+    long v = 0;
+    int start = i;
+    while (i < data.length() && data.charAt(i) >= '0' && data.charAt(i) <= '9')
+      v = v * 10 + (data.charAt(i++) - '0');
+    return i > start ? v : -1;
+  }
+
+  /** Assembles SSE fields into events for one connection. */
+  private final class EventParser implements Flow.Subscriber<String> {
+    private final int gen;
+    private final StringBuilder data = new StringBuilder();
+    private boolean hasData;
+    private String id;
+
+    EventParser(int gen) {
+      this.gen = gen;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      synchronized (StatsSubscription.this) {
+        if (closed || gen != generation) {
+          subscription.cancel();
+          return;
+        }
+        current = subscription;
+      }
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+      lastActivityNanos = System.nanoTime();
+      if (line.isEmpty()) {
+        if (hasData)
+          deliver(gen, id, data.toString());
+        data.setLength(0);
+        hasData = false;
+        id = null;
+        return;
+      }
+      if (line.charAt(0) == ':')
+        return;
+      int colon = line.indexOf(':');
+      String field = colon < 0 ? line : line.substring(0, colon);
+      int from = colon < 0 ? line.length() : colon + 1;
+      if (from < line.length() && line.charAt(from) == ' ')
+        from++;
+      switch (field) {
+        case "data":
+          if (hasData)
+            data.append('\n');
+          data.append(line, from, line.length());
+          hasData = true;
+          break;
+        case "id":
+          id = line.substring(from);
+          break;
+        case "retry":
+          try {
+            retryMs = Math.max(100, Long.parseLong(line.substring(from).trim()));
+          } catch (NumberFormatException e) {
+            // Ignored, as the SSE spec asks
+          }
+          break;
+        default:
+          // "event" and unknown fields: every event here is a stats sample
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      // Reported through the exchange's future
+    }
+
+    @Override
+    public void onComplete() {
+      // Reported through the exchange's future
+    }
+  }
+}
@@ -2,77 +2,254 @@ package com.smcmap.service;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.smcmap.model.CacheStats;
 import com.smcmap.model.SystemSnapshot;
 import com.smcmap.model.ProcessSnapshot;
+import com.smcmap.sim.TraceFormat;
+import com.smcmap.sim.TraceInputStream;
+import com.smcmap.sim.Workload;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
-public class SystemStatsService {
+public class SystemStatsService implements StatsSource {
 
   private final HttpClient client;
   private final Gson gson;
   private final String backendUrl;
+  /** Cleared the first time the agent answers 404 to a binary trace upload. */
+  private volatile boolean binaryTraceSupported = true;
+  /** Duration of the last successful /api/stats request, body decode included; -1 before the first. */
+  private volatile long lastRoundTripNanos = -1;
+  /** Last sample, merged from deltas; its version is sent as If-None-Match. */
+  private final StatsState state = new StatsState();
+  private volatile boolean conditionalFetch = true;
+
+  private static final LatencyHistogram RTT = MetricsRegistry.global().histogram("agent.rtt");
+  private static final LatencyHistogram DECODE = MetricsRegistry.global().histogram("agent.decode");
+  private static final MetricsRegistry.Counter ERRORS = MetricsRegistry.global().counter("agent.errors");
+  private static final MetricsRegistry.Counter BYTES = MetricsRegistry.global().counter("agent.bytes");
+  private static final MetricsRegistry.Counter NOT_MODIFIED = MetricsRegistry.global().counter("agent.notModified");
+  private static final MetricsRegistry.Counter DELTAS = MetricsRegistry.global().counter("agent.deltas");
 
   public SystemStatsService(String backendUrl) {
-    this.backendUrl = backendUrl;
-    this.client = HttpClient.newBuilder()
+    this(backendUrl, HttpClient.newBuilder()
         .connectTimeout(Duration.ofSeconds(2))
-        .build();
+        .build());
+  }
+
+  /** Talk to {@code backendUrl} over a client shared with other agents (see NodeRegistry). */
+  public SystemStatsService(String backendUrl, HttpClient client) {
+    this.backendUrl = backendUrl;
+    this.client = client;
     this.gson = new Gson();
   }
 
+  public String getBackendUrl() {
+    return backendUrl;
+  }
+
+  @Override
+  public String getEndpoint() {
+    return backendUrl;
+  }
+
+  @Override
+  public String getLatencyMetric() {
+    return "agent.rtt";
+  }
+
+  /**
+   * Ask for "changes since the sample held" (default): the agent's ETag is
+   * sent back as If-None-Match and the answer may be 304 or a delta. Off,
+   * every fetch downloads the whole table.
+   */
+  public void setConditionalFetch(boolean enabled) {
+    conditionalFetch = enabled;
+  }
+
+  /**
+   * One sample. Agents that version their samples answer with 304 or with
+   * the processes added, changed and removed since the one held, which are
+   * merged into it; bodies may come gzip-compressed. Others send the full
+   * sample every time.
+   */
+  @Override
   public SystemDataResult fetchStats() throws Exception {
-    HttpRequest request = HttpRequest.newBuilder()
+    long start = System.nanoTime();
+    SystemDataResult result;
+    try {
+      result = fetchStats(conditionalFetch);
+      // Base no longer held (a concurrent fetch moved it on); take the whole sample instead
+      if (result == null)
+        result = fetchStats(false);
+      if (result == null)
+        throw new IOException("Agent sent a delta to an unconditional request");
+    } catch (Exception e) {
+      ERRORS.increment();
+      throw e;
+    }
+    recordRoundTrip(System.nanoTime() - start);
+    return result;
+  }
+
+  private SystemDataResult fetchStats(boolean conditional) throws Exception {
+    HttpResponse<InputStream> response = client.send(statsRequest(conditional, null),
+        HttpResponse.BodyHandlers.ofInputStream());
+    try (InputStream body = response.body()) {
+      return accept(response, body);
+    }
+  }
+
+  private HttpRequest statsRequest(boolean conditional, Duration timeout) {
+    HttpRequest.Builder request = HttpRequest.newBuilder()
         .uri(URI.create(backendUrl + "/api/stats"))
         .header("Accept", "application/json")
-        .GET()
-        .build();
-
-    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        .header("Accept-Encoding", "gzip")
+        .GET();
+    long version = conditional ? state.getVersion() : -1;
+    if (version >= 0)
+      request.header("If-None-Match", "\"" + version + "\"");
+    if (timeout != null)
+      request.timeout(timeout);
+    return request.build();
+  }
 
-    if (response.statusCode() == 200) {
-      JsonObject jsonResponse = gson.fromJson(response.body(), JsonObject.class);
-
-      SystemSnapshot sysSnap = new SystemSnapshot();
-      JsonObject memObj = jsonResponse.getAsJsonObject("memory");
-      sysSnap.setTotalRam(memObj.get("totalRam").getAsLong());
-      sysSnap.setUsedRam(memObj.get("usedRam").getAsLong());
-      sysSnap.setFreeRam(memObj.get("freeRam").getAsLong());
-
-      List<ProcessSnapshot> processes = new ArrayList<>();
-      jsonResponse.getAsJsonArray("processes").forEach(element -> {
-        JsonObject procObj = element.getAsJsonObject();
-        ProcessSnapshot ps = new ProcessSnapshot();
-        ps.setPid(procObj.get("pid").getAsInt());
-        ps.setName(procObj.get("name").getAsString());
-        ps.setMemoryUsed(procObj.get("memoryUsed").getAsLong());
-        processes.add(ps);
-      });
-
-      return new SystemDataResult(sysSnap, processes, jsonResponse.getAsJsonObject("cache"));
-    } else {
+  /** Decode and merge a stats response; null if it was a delta the held sample cannot take. */
+  private SystemDataResult accept(HttpResponse<?> response, InputStream body) throws IOException {
+    if (response.statusCode() == 304) {
+      SystemDataResult current = state.current();
+      if (current != null)
+        NOT_MODIFIED.increment();
+      return current;
+    }
+    if (response.statusCode() != 200)
       throw new RuntimeException("Failed to fetch stats: HTTP " + response.statusCode());
+    CountingInputStream counted = new CountingInputStream(body);
+    boolean gzip = response.headers().firstValue("Content-Encoding").map(e -> e.equalsIgnoreCase("gzip"))
+        .orElse(false);
+    long decodeStart = System.nanoTime();
+    StatsDecoder.Update update;
+    try {
+      update = StatsDecoder.decodeUpdate(gzip ? new GZIPInputStream(counted, 8192) : counted);
+    } finally {
+      BYTES.add(counted.count);
+    }
+    SystemDataResult result = state.apply(update);
+    DECODE.recordSince(decodeStart);
+    if (result != null && update.isDelta())
+      DELTAS.increment();
+    return result;
+  }
+
+  /** Counts compressed bytes as they come off the wire. */
+  private static final class CountingInputStream extends FilterInputStream {
+    long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0)
+        count++;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0)
+        count += n;
+      return n;
     }
   }
 
+  private void recordRoundTrip(long nanos) {
+    lastRoundTripNanos = nanos;
+    RTT.record(nanos);
+  }
+
+  /**
+   * Non-blocking fetchStats for polling many agents: no thread waits on the
+   * request, and {@code timeout} bounds the whole exchange for this agent only.
+   */
+  public CompletableFuture<SystemDataResult> fetchStatsAsync(Duration timeout) {
+    long start = System.nanoTime();
+    return fetchStatsAsync(timeout, conditionalFetch)
+        .thenCompose(result -> result != null ? CompletableFuture.completedFuture(result)
+            : fetchStatsAsync(timeout, false))
+        .thenApply(result -> {
+          if (result == null)
+            throw new UncheckedIOException(new IOException("Agent sent a delta to an unconditional request"));
+          recordRoundTrip(System.nanoTime() - start);
+          return result;
+        })
+        .whenComplete((result, error) -> {
+          if (error != null)
+            ERRORS.increment();
+        });
+  }
+
+  private CompletableFuture<SystemDataResult> fetchStatsAsync(Duration timeout, boolean conditional) {
+    return client.sendAsync(statsRequest(conditional, timeout), HttpResponse.BodyHandlers.ofByteArray())
+        .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+        .thenApply(response -> {
+          try {
+            return accept(response, new ByteArrayInputStream(response.body()));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+  }
+
+  /**
+   * Subscribe to samples pushed by the agent over /api/stats/stream instead
+   * of polling fetchStats. The subscription reconnects and resumes by itself
+   * until closed; see {@link StatsSubscription}.
+   */
+  public StatsSubscription subscribe(StatsSubscription.Listener listener) {
+    StatsSubscription subscription = new StatsSubscription(client, URI.create(backendUrl + "/api/stats/stream"),
+        listener);
+    subscription.start();
+    return subscription;
+  }
+
+  /** Round trip of the last successful fetchStats in milliseconds, or -1 if none yet. */
+  @Override
+  public double getLastRoundTripMs() {
+    long nanos = lastRoundTripNanos;
+    return nanos < 0 ? -1 : nanos / 1e6;
+  }
+
   public static class SystemDataResult {
     public final SystemSnapshot systemSnapshot;
     public final List<ProcessSnapshot> processes;
-    public final JsonObject cacheData;
+    public final CacheStats cacheStats;
 
-    public SystemDataResult(SystemSnapshot systemSnapshot, List<ProcessSnapshot> processes, JsonObject cacheData) {
+    public SystemDataResult(SystemSnapshot systemSnapshot, List<ProcessSnapshot> processes, CacheStats cacheStats) {
       this.systemSnapshot = systemSnapshot;
       this.processes = processes;
-      this.cacheData = cacheData;
+      this.cacheStats = cacheStats;
     }
   }
 
+  @Override
   public String killProcess(int pid) throws Exception {
     String jsonBody = "{\"pid\":" + pid + "}";
     HttpRequest request = HttpRequest.newBuilder()
@@ -99,13 +276,56 @@ public class SystemStatsService {
     return result.get("status").getAsString();
   }
 
+  /**
+   * Simulate {@code count} uniformly random accesses over 4096 blocks on the
+   * agent, the historical default workload, now seeded so runs repeat.
+   */
   public String simulateCacheAccesses(int count) throws Exception {
+    return simulateCacheAccesses(Workload.uniform(4096, 64, 42), count);
+  }
+
+  /**
+   * Simulate the first {@code count} accesses of {@code workload} on the
+   * agent. Uses the streamed binary trace upload, falling back to the JSON
+   * array body for agents that predate it.
+   */
+  public String simulateCacheAccesses(Workload workload, int count) throws Exception {
+    if (binaryTraceSupported) {
+      HttpResponse<String> response = postTrace(workload.iterator(count));
+      if (response.statusCode() != 404)
+        return response.body();
+      binaryTraceSupported = false;
+    }
+    return simulateCacheAccessesJson(workload.iterator(count));
+  }
+
+  /**
+   * Stream an arbitrary address sequence to the agent as a chunked SMT1 trace.
+   * The sender holds only a small encode buffer, so trace length is bounded by
+   * throughput rather than heap.
+   */
+  public String simulateCacheTrace(PrimitiveIterator.OfLong addresses) throws Exception {
+    HttpResponse<String> response = postTrace(addresses);
+    if (response.statusCode() != 200)
+      throw new RuntimeException("Trace upload failed: HTTP " + response.statusCode());
+    return response.body();
+  }
+
+  private HttpResponse<String> postTrace(PrimitiveIterator.OfLong addresses) throws Exception {
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(URI.create(backendUrl + "/api/cache/simulate/trace"))
+        .header("Content-Type", TraceFormat.CONTENT_TYPE)
+        .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new TraceInputStream(addresses)))
+        .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  private String simulateCacheAccessesJson(PrimitiveIterator.OfLong addresses) throws Exception {
     StringBuilder sb = new StringBuilder("{\"accesses\":[");
-    java.util.Random rand = new java.util.Random();
-    for (int i = 0; i < count; i++) {
+    for (int i = 0; addresses.hasNext(); i++) {
       if (i > 0)
         sb.append(",");
-      sb.append(rand.nextInt(4096) * 64); // random block-aligned addresses
+      sb.append(addresses.nextLong());
     }
     sb.append("]}");
 
@@ -118,17 +338,4 @@ public class SystemStatsService {
     HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
     return response.body();
   }
-
-  public long measureLatency() {
-    try {
-      long start = System.nanoTime();
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(backendUrl + "/api/stats"))
-          .GET().build();
-      client.send(request, HttpResponse.BodyHandlers.ofString());
-      return (System.nanoTime() - start) / 1_000_000;
-    } catch (Exception e) {
-      return -1;
-    }
-  }
 }
@@ -0,0 +1,187 @@
+package com.smcmap.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Stacked set-associative cache levels (L1, L2, L3, ...) sharing one block
+ * size, in front of main memory.
+ *
+ * An access probes the levels in order until one hits; every probed level
+ * adds its hit latency and a miss in all of them adds the memory latency, so
+ * average memory access time is total cycles over accesses. On the way back
+ * the block is filled according to the {@link Inclusion} policy:
+ * <ul>
+ * <li>INCLUSIVE: filled into every level above the hit; a block evicted from
+ * a level is also invalidated in the levels above it (back-invalidation);</li>
+ * <li>NON_INCLUSIVE: filled into every level above the hit, with no
+ * back-invalidation;</li>
+ * <li>EXCLUSIVE: a block lives in one level at a time. It moves from the
+ * level that hit into L1, and each level's victim drops into the level
+ * below; the last level's victims leave the hierarchy.</li>
+ * </ul>
+ * Not thread-safe.
+ */
+public final class CacheHierarchy {
+
+  public enum Inclusion {
+    INCLUSIVE, NON_INCLUSIVE, EXCLUSIVE
+  }
+
+  private final long blockSize;
+  private final int blockShift;
+  private final Inclusion inclusion;
+  private final int memoryLatency;
+
+  private final List<String> names = new ArrayList<>();
+  private final List<String> policies = new ArrayList<>();
+  private SetAssociativeCache[] levels = new SetAssociativeCache[0];
+  private int[] latencies = new int[0];
+  private long[] hits = new long[0];
+  private long[] misses = new long[0];
+  private long accesses;
+  private long cycles;
+
+  public CacheHierarchy(long blockSize, Inclusion inclusion, int memoryLatency) {
+    if (blockSize <= 0)
+      throw new IllegalArgumentException("blockSize must be positive");
+    this.blockSize = blockSize;
+    this.blockShift = Long.bitCount(blockSize) == 1 ? Long.numberOfTrailingZeros(blockSize) : -1;
+    this.inclusion = inclusion;
+    this.memoryLatency = memoryLatency;
+  }
+
+  /**
+   * Add the next level below the existing ones.
+   *
+   * @param size       capacity in bytes; must be a multiple of blockSize * ways
+   * @param ways       associativity; size / blockSize for fully associative
+   * @param policy     per-set replacement: "FIFO", "LRU" or "LFU"
+   * @param hitLatency cycles to probe this level
+   */
+  public CacheHierarchy addLevel(String name, long size, int ways, String policy, int hitLatency) {
+    SetAssociativeCache cache = new SetAssociativeCache(size / blockSize, ways,
+        SetAssociativeCache.policyOf(policy));
+    int n = levels.length;
+    levels = Arrays.copyOf(levels, n + 1);
+    latencies = Arrays.copyOf(latencies, n + 1);
+    hits = Arrays.copyOf(hits, n + 1);
+    misses = Arrays.copyOf(misses, n + 1);
+    levels[n] = cache;
+    latencies[n] = hitLatency;
+    names.add(name);
+    policies.add(policy.toUpperCase(Locale.ROOT));
+    return this;
+  }
+
+  /** Simulate one access to a byte address. */
+  public void access(long address) {
+    long block = blockShift >= 0 ? address >>> blockShift : Long.divideUnsigned(address, blockSize);
+    SetAssociativeCache[] caches = levels;
+    int n = caches.length;
+    int hit = n;
+    long cost = 0;
+    for (int i = 0; i < n; i++) {
+      cost += latencies[i];
+      if (caches[i].lookup(block)) {
+        hits[i]++;
+        hit = i;
+        break;
+      }
+      misses[i]++;
+    }
+    accesses++;
+    cycles += hit == n ? cost + memoryLatency : cost;
+    if (hit == 0)
+      return;
+    if (inclusion == Inclusion.EXCLUSIVE) {
+      if (hit < n)
+        caches[hit].remove(block);
+      // Insert at the top and let each victim drop one level
+      long moving = block;
+      for (int j = 0; j < n && caches[j].insert(moving); j++)
+        moving = caches[j].victim();
+      return;
+    }
+    // Fill bottom-up so a back-invalidation from a lower level lands before the upper fill
+    for (int j = hit - 1; j >= 0; j--) {
+      if (caches[j].insert(block) && inclusion == Inclusion.INCLUSIVE) {
+        long victim = caches[j].victim();
+        for (int k = 0; k < j; k++)
+          caches[k].remove(victim);
+      }
+    }
+  }
+
+  /** Simulate {@code length} accesses from {@code addresses} starting at {@code offset}. */
+  public void accessAll(long[] addresses, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++)
+      access(addresses[i]);
+  }
+
+  /** Empty every level and zero the counters. */
+  public void reset() {
+    for (SetAssociativeCache cache : levels)
+      cache.clear();
+    Arrays.fill(hits, 0);
+    Arrays.fill(misses, 0);
+    accesses = 0;
+    cycles = 0;
+  }
+
+  public int getLevelCount() {
+    return levels.length;
+  }
+
+  public long getHits(int level) {
+    return hits[level];
+  }
+
+  public long getMisses(int level) {
+    return misses[level];
+  }
+
+  public long getAccesses() {
+    return accesses;
+  }
+
+  /** Accesses that missed every level. */
+  public long getMemoryAccesses() {
+    return levels.length == 0 ? accesses : misses[levels.length - 1];
+  }
+
+  /** Average memory access time in cycles. */
+  public double getAmat() {
+    return accesses == 0 ? 0 : (double) cycles / accesses;
+  }
+
+  /** Per-level hits, misses and local hit ratio, plus memory accesses and AMAT. */
+  public String toJson() {
+    StringBuilder sb = new StringBuilder(256 + levels.length * 192);
+    sb.append("{\"inclusion\":\"").append(inclusion).append('"')
+        .append(",\"blockSize\":").append(blockSize)
+        .append(",\"accesses\":").append(accesses)
+        .append(",\"levels\":[");
+    for (int i = 0; i < levels.length; i++) {
+      long probes = hits[i] + misses[i];
+      if (i > 0)
+        sb.append(',');
+      sb.append("{\"name\":\"").append(names.get(i).replace("\\", "\\\\").replace("\"", "\\\"")).append('"')
+          .append(",\"size\":").append((long) levels[i].getSets() * levels[i].getWays() * blockSize)
+          .append(",\"ways\":").append(levels[i].getWays())
+          .append(",\"sets\":").append(levels[i].getSets())
+          .append(",\"policy\":\"").append(policies.get(i)).append('"')
+          .append(",\"latency\":").append(latencies[i])
+          .append(",\"hits\":").append(hits[i])
+          .append(",\"misses\":").append(misses[i])
+          .append(",\"hitRatio\":").append(probes == 0 ? 0.0 : (double) hits[i] / probes)
+          .append('}');
+    }
+    return sb.append("],\"memoryAccesses\":").append(getMemoryAccesses())
+        .append(",\"memoryLatency\":").append(memoryLatency)
+        .append(",\"amat\":").append(String.format(Locale.ROOT, "%.3f", getAmat()))
+        .append('}').toString();
+  }
+}
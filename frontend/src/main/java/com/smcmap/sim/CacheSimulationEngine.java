@@ -0,0 +1,83 @@
+package com.smcmap.sim;
+
+/**
+ * Pure-Java counterpart of the agent's CacheSimulationEngine: a single
+ * fully-associative cache of {@code cacheSize / blockSize} blocks with FIFO,
+ * LRU or LFU replacement. Unknown policy names behave as LRU but keep their
+ * name in the result, as the agent does.
+ *
+ * All bookkeeping is primitive (open-addressing map plus array-backed
+ * intrusive lists), so every access is O(1) and allocation-free once the
+ * arrays have grown to the working set. Not thread-safe.
+ */
+public class CacheSimulationEngine {
+
+  private final long cacheSize;
+  private final long blockSize;
+  private final int blockShift;
+  private final String policy;
+  private final ReplacementPolicy store;
+
+  private long hits;
+  private long misses;
+
+  public CacheSimulationEngine(long cacheSize, long blockSize, String policy) {
+    if (blockSize <= 0)
+      throw new IllegalArgumentException("blockSize must be positive");
+    this.cacheSize = cacheSize;
+    this.blockSize = blockSize;
+    this.policy = policy;
+    this.blockShift = Long.bitCount(blockSize) == 1 ? Long.numberOfTrailingZeros(blockSize) : -1;
+    long numBlocks = Math.max(1, cacheSize / blockSize);
+    int capacity = (int) Math.min(numBlocks, Integer.MAX_VALUE - 8);
+    if ("FIFO".equals(policy))
+      store = new ListPolicy(capacity, false);
+    else if ("LFU".equals(policy))
+      store = new LfuPolicy(capacity);
+    else
+      store = new ListPolicy(capacity, true);
+  }
+
+  /** Simulate one access to a byte address. */
+  public void access(long address) {
+    long block = blockShift >= 0 ? address >>> blockShift : Long.divideUnsigned(address, blockSize);
+    if (store.access(block))
+      hits++;
+    else
+      misses++;
+  }
+
+  /** Simulate {@code length} accesses from {@code addresses} starting at {@code offset}. */
+  public void accessAll(long[] addresses, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++)
+      access(addresses[i]);
+  }
+
+  /** Drop all cached blocks and zero the counters. */
+  public void reset() {
+    store.clear();
+    hits = 0;
+    misses = 0;
+  }
+
+  public long getCacheSize() {
+    return cacheSize;
+  }
+
+  public long getBlockSize() {
+    return blockSize;
+  }
+
+  public String getPolicy() {
+    return policy;
+  }
+
+  /** Number of blocks currently resident. */
+  public int getResidentBlocks() {
+    return store.size();
+  }
+
+  public CacheSimulationResult getResult() {
+    return new CacheSimulationResult(hits, misses, policy);
+  }
+}
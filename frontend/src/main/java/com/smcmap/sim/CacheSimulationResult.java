@@ -0,0 +1,38 @@
+package com.smcmap.sim;
+
+/** Hit/miss totals of a simulation run, in the same shape the agent reports. */
+public class CacheSimulationResult {
+  private final long hits;
+  private final long misses;
+  private final String algorithm;
+
+  public CacheSimulationResult(long hits, long misses, String algorithm) {
+    this.hits = hits;
+    this.misses = misses;
+    this.algorithm = algorithm;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public double getHitRatio() {
+    return (hits + misses) == 0 ? 0.0 : (double) hits / (hits + misses);
+  }
+
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  /** Same fields as the agent's /api/cache/simulate response. */
+  public String toJson() {
+    return "{\"algorithm\":\"" + algorithm.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+        + ",\"hits\":" + hits
+        + ",\"misses\":" + misses
+        + ",\"hitRatio\":" + getHitRatio() + "}";
+  }
+}
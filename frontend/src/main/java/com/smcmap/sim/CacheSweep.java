@@ -0,0 +1,192 @@
+package com.smcmap.sim;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs many (policy, cache size, block size) configurations over the same
+ * access stream at once, instead of one reconfigure-and-replay cycle each.
+ *
+ * The trace is decoded once, a block at a time, into a shared read-only
+ * {@code long[]}; every block is then handed to all engines in parallel on a
+ * fork-join pool sized to the machine, while the next block is decoded into a
+ * second buffer. Engines share nothing mutable, so the only coordination is
+ * one join per block, and with enough cores a sweep takes about as long as
+ * its slowest configuration plus a single decode of the trace. Memory is two
+ * blocks regardless of trace length. Engines keep their state, so each sweep is
+ * run once.
+ */
+public final class CacheSweep {
+
+  /** Fills {@code dst} with the next addresses; same contract as {@link TraceFileReader#read}. */
+  @FunctionalInterface
+  public interface TraceSource {
+    int read(long[] dst, int off, int len) throws IOException;
+  }
+
+  /** Addresses per shared block: large enough that the per-block join is noise, small enough to stay in L2/L3. */
+  private static final int BLOCK = 1 << 16;
+
+  private final List<CacheSimulationEngine> engines = new ArrayList<>();
+  private volatile long accesses;
+
+  /** Add one configuration to the sweep. */
+  public CacheSweep add(long cacheSize, long blockSize, String policy) {
+    engines.add(new CacheSimulationEngine(cacheSize, blockSize, policy));
+    return this;
+  }
+
+  /** Add the cross product of {@code policies}, {@code cacheSizes} and {@code blockSizes}. */
+  public CacheSweep addAll(List<String> policies, List<Long> cacheSizes, List<Long> blockSizes) {
+    for (String policy : policies)
+      for (long size : cacheSizes)
+        for (long block : blockSizes)
+          add(size, block, policy);
+    return this;
+  }
+
+  public int size() {
+    return engines.size();
+  }
+
+  /** Trace addresses replayed so far (each one into every configuration). */
+  public long getAccesses() {
+    return accesses;
+  }
+
+  /**
+   * Replay {@code source} into every configuration and wait for all of them.
+   * Stops after the current block once {@code cancelled} returns true.
+   *
+   * @return one row per configuration, in the order they were added
+   */
+  public List<Row> run(TraceSource source, BooleanSupplier cancelled) throws IOException {
+    int n = engines.size();
+    if (n == 0)
+      return new ArrayList<>();
+    long[] elapsedNs = new long[n];
+    int threads = Math.max(1, Math.min(n, Runtime.getRuntime().availableProcessors()));
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      long[] current = new long[BLOCK];
+      long[] next = new long[BLOCK];
+      int len = source.read(current, 0, BLOCK);
+      while (len > 0 && !cancelled.getAsBoolean()) {
+        long[] block = current;
+        int blockLen = len;
+        long[] target = next;
+        ForkJoinTask<Integer> decode = pool.submit(() -> {
+          try {
+            return source.read(target, 0, BLOCK);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        pool.invoke(new Replay(block, blockLen, elapsedNs, 0, n));
+        accesses += blockLen;
+        len = join(decode);
+        current = next;
+        next = block;
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    List<Row> rows = new ArrayList<>(n);
+    for (int i = 0; i < n; i++)
+      rows.add(new Row(engines.get(i), elapsedNs[i]));
+    return rows;
+  }
+
+  private static int join(ForkJoinTask<Integer> decode) throws IOException {
+    try {
+      return decode.join();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Feeds one block to engines [from, to), splitting the range until each task owns one engine. */
+  private final class Replay extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] block;
+    private final int len;
+    private final long[] elapsedNs;
+    private final int from;
+    private final int to;
+
+    Replay(long[] block, int len, long[] elapsedNs, int from, int to) {
+      this.block = block;
+      this.len = len;
+      this.elapsedNs = elapsedNs;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Replay(block, len, elapsedNs, from, mid), new Replay(block, len, elapsedNs, mid, to));
+        return;
+      }
+      long start = System.nanoTime();
+      engines.get(from).accessAll(block, 0, len);
+      elapsedNs[from] += System.nanoTime() - start;
+    }
+  }
+
+  /** Outcome of one configuration. */
+  public static final class Row {
+    private final long cacheSize;
+    private final long blockSize;
+    private final CacheSimulationResult result;
+    private final long elapsedNs;
+
+    Row(CacheSimulationEngine engine, long elapsedNs) {
+      this.cacheSize = engine.getCacheSize();
+      this.blockSize = engine.getBlockSize();
+      this.result = engine.getResult();
+      this.elapsedNs = elapsedNs;
+    }
+
+    public long getCacheSize() {
+      return cacheSize;
+    }
+
+    public long getBlockSize() {
+      return blockSize;
+    }
+
+    public CacheSimulationResult getResult() {
+      return result;
+    }
+
+    /** Time spent simulating this configuration, excluding trace decoding. */
+    public long getElapsedNs() {
+      return elapsedNs;
+    }
+  }
+
+  /** The comparison table as a JSON array, one object per configuration. */
+  public static String toJson(List<Row> rows) {
+    StringBuilder sb = new StringBuilder(64 + rows.size() * 128).append('[');
+    for (int i = 0; i < rows.size(); i++) {
+      Row row = rows.get(i);
+      String result = row.result.toJson();
+      if (i > 0)
+        sb.append(',');
+      sb.append("{\"cacheSize\":").append(row.cacheSize)
+          .append(",\"blockSize\":").append(row.blockSize)
+          .append(",\"elapsedMs\":").append(row.elapsedNs / 1_000_000)
+          .append(',').append(result, 1, result.length());
+    }
+    return sb.append(']').toString();
+  }
+}
@@ -0,0 +1,179 @@
+package com.smcmap.sim;
+
+import java.util.Arrays;
+
+/**
+ * O(1) LFU. Blocks with equal access counts share a frequency group; groups
+ * form a list in ascending frequency, so the eviction victim is always the
+ * head block of the first group. Within a group blocks are kept in the order
+ * they reached that frequency, which makes ties deterministic: the block that
+ * has sat at the lowest count the longest is evicted.
+ */
+final class LfuPolicy extends ReplacementPolicy {
+
+  private static final int NIL = -1;
+
+  private final LongIntHashMap index;
+
+  // Per-block intrusive list links within a group
+  private long[] blocks;
+  private int[] prev;
+  private int[] next;
+  private int[] groupOf;
+  private int size;
+
+  // Frequency groups: a list of lists. There are never more groups than blocks.
+  private long[] groupFreq;
+  private int[] groupHead;
+  private int[] groupTail;
+  private int[] groupPrev;
+  private int[] groupNext;
+  private int firstGroup = NIL;
+  private int freeGroup = NIL;
+  private int groupsUsed;
+
+  LfuPolicy(int capacity) {
+    super(capacity);
+    int slots = Math.min(capacity, INITIAL_SLOTS);
+    this.index = new LongIntHashMap(slots);
+    this.blocks = new long[slots];
+    this.prev = new int[slots];
+    this.next = new int[slots];
+    this.groupOf = new int[slots];
+    int groups = slots + 1;
+    this.groupFreq = new long[groups];
+    this.groupHead = new int[groups];
+    this.groupTail = new int[groups];
+    this.groupPrev = new int[groups];
+    this.groupNext = new int[groups];
+  }
+
+  @Override
+  boolean access(long block) {
+    int node = index.get(block);
+    if (node >= 0) {
+      promote(node);
+      return true;
+    }
+    if (size >= capacity) {
+      node = groupHead[firstGroup];
+      index.remove(blocks[node]);
+      detach(node);
+    } else {
+      node = size++;
+      if (node == blocks.length)
+        growBlocks();
+    }
+    blocks[node] = block;
+    int g = firstGroup;
+    if (g == NIL || groupFreq[g] != 1)
+      g = newGroup(1, NIL, firstGroup);
+    attach(node, g);
+    index.put(block, node);
+    return false;
+  }
+
+  /** Move a block from its group (frequency f) to the f+1 group, creating it if needed. */
+  private void promote(int node) {
+    int g = groupOf[node];
+    long freq = groupFreq[g] + 1;
+    int target = groupNext[g];
+    if (target == NIL || groupFreq[target] != freq)
+      target = newGroup(freq, g, target);
+    detach(node);
+    attach(node, target);
+  }
+
+  private void attach(int node, int g) {
+    groupOf[node] = g;
+    int t = groupTail[g];
+    prev[node] = t;
+    next[node] = NIL;
+    if (t == NIL)
+      groupHead[g] = node;
+    else
+      next[t] = node;
+    groupTail[g] = node;
+  }
+
+  /** Unlink a block from its group, releasing the group if it becomes empty. */
+  private void detach(int node) {
+    int g = groupOf[node];
+    int p = prev[node], n = next[node];
+    if (p == NIL)
+      groupHead[g] = n;
+    else
+      next[p] = n;
+    if (n == NIL)
+      groupTail[g] = p;
+    else
+      prev[n] = p;
+    if (groupHead[g] == NIL)
+      releaseGroup(g);
+  }
+
+  private int newGroup(long freq, int after, int before) {
+    int g;
+    if (freeGroup != NIL) {
+      g = freeGroup;
+      freeGroup = groupNext[g];
+    } else {
+      g = groupsUsed++;
+      if (g == groupFreq.length)
+        growGroups();
+    }
+    groupFreq[g] = freq;
+    groupHead[g] = groupTail[g] = NIL;
+    groupPrev[g] = after;
+    groupNext[g] = before;
+    if (after == NIL)
+      firstGroup = g;
+    else
+      groupNext[after] = g;
+    if (before != NIL)
+      groupPrev[before] = g;
+    return g;
+  }
+
+  private void releaseGroup(int g) {
+    int p = groupPrev[g], n = groupNext[g];
+    if (p == NIL)
+      firstGroup = n;
+    else
+      groupNext[p] = n;
+    if (n != NIL)
+      groupPrev[n] = p;
+    groupNext[g] = freeGroup;
+    freeGroup = g;
+  }
+
+  private void growBlocks() {
+    int n = grow(blocks.length, capacity);
+    blocks = Arrays.copyOf(blocks, n);
+    prev = Arrays.copyOf(prev, n);
+    next = Arrays.copyOf(next, n);
+    groupOf = Arrays.copyOf(groupOf, n);
+  }
+
+  private void growGroups() {
+    int n = grow(groupFreq.length, capacity + 1);
+    groupFreq = Arrays.copyOf(groupFreq, n);
+    groupHead = Arrays.copyOf(groupHead, n);
+    groupTail = Arrays.copyOf(groupTail, n);
+    groupPrev = Arrays.copyOf(groupPrev, n);
+    groupNext = Arrays.copyOf(groupNext, n);
+  }
+
+  @Override
+  int size() {
+    return size;
+  }
+
+  @Override
+  void clear() {
+    index.clear();
+    size = 0;
+    firstGroup = freeGroup = NIL;
+    groupsUsed = 0;
+  }
+}
@@ -0,0 +1,97 @@
+package com.smcmap.sim;
+
+import java.util.Arrays;
+
+/**
+ * FIFO and LRU over one intrusive doubly-linked list held in parallel arrays.
+ * The head is the eviction end; LRU moves a hit block to the tail, FIFO leaves
+ * it where it was inserted.
+ */
+final class ListPolicy extends ReplacementPolicy {
+
+  private static final int NIL = -1;
+
+  private final boolean promoteOnHit;
+  private final LongIntHashMap index;
+
+  private long[] blocks;
+  private int[] prev;
+  private int[] next;
+  private int head = NIL;
+  private int tail = NIL;
+  private int size;
+
+  ListPolicy(int capacity, boolean promoteOnHit) {
+    super(capacity);
+    this.promoteOnHit = promoteOnHit;
+    int slots = Math.min(capacity, INITIAL_SLOTS);
+    this.index = new LongIntHashMap(slots);
+    this.blocks = new long[slots];
+    this.prev = new int[slots];
+    this.next = new int[slots];
+  }
+
+  @Override
+  boolean access(long block) {
+    int node = index.get(block);
+    if (node >= 0) {
+      if (promoteOnHit && node != tail) {
+        unlink(node);
+        append(node);
+      }
+      return true;
+    }
+    if (size >= capacity) {
+      // Reuse the evicted node for the incoming block
+      node = head;
+      index.remove(blocks[node]);
+      unlink(node);
+    } else {
+      node = size++;
+      if (node == blocks.length) {
+        int n = grow(blocks.length, capacity);
+        blocks = Arrays.copyOf(blocks, n);
+        prev = Arrays.copyOf(prev, n);
+        next = Arrays.copyOf(next, n);
+      }
+    }
+    blocks[node] = block;
+    append(node);
+    index.put(block, node);
+    return false;
+  }
+
+  private void unlink(int node) {
+    int p = prev[node], n = next[node];
+    if (p == NIL)
+      head = n;
+    else
+      next[p] = n;
+    if (n == NIL)
+      tail = p;
+    else
+      prev[n] = p;
+  }
+
+  private void append(int node) {
+    prev[node] = tail;
+    next[node] = NIL;
+    if (tail == NIL)
+      head = node;
+    else
+      next[tail] = node;
+    tail = node;
+  }
+
+  @Override
+  int size() {
+    return size;
+  }
+
+  @Override
+  void clear() {
+    index.clear();
+    head = tail = NIL;
+    size = 0;
+  }
+}
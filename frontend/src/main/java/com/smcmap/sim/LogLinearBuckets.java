@@ -0,0 +1,48 @@
+package com.smcmap.sim;
+
+/**
+ * Log-linear bucketing of non-negative longs, as used by the miss-ratio
+ * curve's reuse distances and the metrics latency histograms.
+ *
+ * Values below 2^subBits get a bucket each; above that every power of two
+ * is split into 2^subBits equal sub-buckets, so a bucket is never wider than
+ * 1/2^subBits of its lower edge and the whole long range needs only
+ * (64 - subBits) * 2^subBits buckets. Immutable.
+ */
+public final class LogLinearBuckets {
+
+  private final int subBits;
+  private final int sub;
+  private final int count;
+
+  public LogLinearBuckets(int subBits) {
+    if (subBits < 1 || subBits > 16)
+      throw new IllegalArgumentException("subBits must be in [1, 16]: " + subBits);
+    this.subBits = subBits;
+    this.sub = 1 << subBits;
+    this.count = (64 - subBits) * sub;
+  }
+
+  /** Number of buckets; {@link #bucket} of any non-negative long is below it. */
+  public int count() {
+    return count;
+  }
+
+  /** Bucket of {@code value}, which must not be negative. */
+  public int bucket(long value) {
+    if (value < sub)
+      return (int) value;
+    int e = 63 - Long.numberOfLeadingZeros(value);
+    return (e - subBits + 1) * sub + (int) ((value >>> (e - subBits)) & (sub - 1));
+  }
+
+  /** Smallest value in bucket {@code i}. */
+  public long lower(int i) {
+    return i < sub ? i : (long) (sub + (i & (sub - 1))) << ((i >>> subBits) - 1);
+  }
+
+  /** Exclusive upper edge of bucket {@code i}; Long.MAX_VALUE for the last. */
+  public long upper(int i) {
+    return i + 1 < count ? lower(i + 1) : Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,126 @@
+package com.smcmap.sim;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing {@code long -> int} map with linear probing and
+ * backward-shift deletion (no tombstones). Values must be non-negative;
+ * {@link #get} returns -1 for a missing key. Nothing is boxed.
+ */
+final class LongIntHashMap {
+
+  private static final int EMPTY = -1;
+  private static final long PHI = 0x9E3779B97F4A7C15L;
+
+  private long[] keys;
+  private int[] values;
+  private int mask;
+  private int shift;
+  private int size;
+  private int resizeAt;
+
+  LongIntHashMap(int expectedSize) {
+    int cap = Integer.highestOneBit(Math.max(4, (int) Math.min(1 << 30, expectedSize * 2L)) - 1) << 1;
+    allocate(cap);
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, EMPTY);
+    mask = capacity - 1;
+    shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    resizeAt = (int) (capacity * 0.75);
+  }
+
+  private int slot(long key) {
+    return (int) ((key * PHI) >>> shift);
+  }
+
+  int size() {
+    return size;
+  }
+
+  int get(long key) {
+    int i = slot(key);
+    int v;
+    while ((v = values[i]) != EMPTY) {
+      if (keys[i] == key)
+        return v;
+      i = (i + 1) & mask;
+    }
+    return EMPTY;
+  }
+
+  void put(long key, int value) {
+    int i = slot(key);
+    while (values[i] != EMPTY) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size >= resizeAt)
+      rehash(keys.length << 1);
+  }
+
+  void remove(long key) {
+    int i = slot(key);
+    while (values[i] != EMPTY) {
+      if (keys[i] == key) {
+        shiftBack(i);
+        size--;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  /** Close the gap at {@code gap} by pulling later entries of the probe run back. */
+  private void shiftBack(int gap) {
+    int i = gap;
+    while (true) {
+      i = (i + 1) & mask;
+      if (values[i] == EMPTY)
+        break;
+      int home = slot(keys[i]);
+      // Move the entry if its home slot is not cyclically within (gap, i]
+      if (((i - home) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+    }
+    values[gap] = EMPTY;
+  }
+
+  /** Replace every value v with {@code mapping[v]}. */
+  void remapValues(int[] mapping) {
+    for (int i = 0; i < values.length; i++)
+      if (values[i] != EMPTY)
+        values[i] = mapping[values[i]];
+  }
+
+  void clear() {
+    Arrays.fill(values, EMPTY);
+    size = 0;
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldValues[i] != EMPTY) {
+        int j = slot(oldKeys[i]);
+        while (values[j] != EMPTY)
+          j = (j + 1) & mask;
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,339 @@
+package com.smcmap.sim;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * LRU miss-ratio curve for every cache size from a single pass over a trace.
+ *
+ * An LRU cache of {@code c} blocks hits exactly the accesses whose reuse
+ * (stack) distance, the number of distinct blocks touched since the previous
+ * access to the same block, is below {@code c}. Each block's last access time
+ * is kept in a {@link LongIntHashMap}, and a Fenwick tree over access times
+ * holds a 1 at every time that is still some block's most recent access, so
+ * the distance is a prefix-sum query: O(log n) per access. Times are
+ * renumbered (compacted) whenever the tree fills, so memory follows the
+ * number of distinct blocks, not trace length.
+ *
+ * {@link #sampled} adds SHARDS spatial sampling (Waldspurger et al., FAST '15):
+ * only blocks whose hash falls below a threshold are tracked and their
+ * distances are scaled by 1/rate. The fixed-size variant lowers the
+ * threshold, evicting the highest-hash blocks, whenever more than
+ * {@code maxBlocks} are tracked, so memory stays bounded whatever the trace;
+ * everything counted so far is rescaled by new rate / old rate at each drop,
+ * so samples taken at the earlier, higher rate do not outweigh later ones.
+ * The SHARDS-adj correction moves the difference between expected and actual
+ * sampled references into the smallest distance bucket.
+ *
+ * Distances are counted in a log-linear histogram (32 sub-buckets per power
+ * of two, about 3% relative width), so the curve has a few hundred points.
+ * Not thread-safe.
+ */
+public final class MissRatioCurve {
+
+  private static final LogLinearBuckets SCALE = new LogLinearBuckets(5);
+  private static final int BUCKETS = SCALE.count();
+  /** Hash space of the SHARDS threshold; sampling rate is threshold / MODULUS. */
+  private static final long MODULUS = 1L << 24;
+  private static final int INITIAL_TIMES = 1 << 16;
+
+  private final long blockSize;
+  private final int blockShift;
+  private final boolean sampling;
+  private final int maxBlocks;
+
+  private final LongIntHashMap lastAccess = new LongIntHashMap(1024);
+  private int[] tree;
+  private long[] marks;
+  private int clock;
+
+  /** Sampled references per distance bucket, in units of the current rate. */
+  private final double[] histogram = new double[BUCKETS];
+  private long accesses;
+  private long sampledAccesses;
+  /** Sampled references and their expected number, both in units of the current rate. */
+  private double samples;
+  private double expectedSamples;
+  private double coldMisses;
+
+  // SHARDS state: threshold plus a max-heap of (hash, block) for fixed-size eviction
+  private long threshold = MODULUS;
+  private double rate = 1.0;
+  private long[] heapHash;
+  private long[] heapBlock;
+  private int heapSize;
+
+  private MissRatioCurve(long blockSize, boolean sampling, double initialRate, int maxBlocks) {
+    if (blockSize <= 0)
+      throw new IllegalArgumentException("blockSize must be positive");
+    this.blockSize = blockSize;
+    this.blockShift = Long.bitCount(blockSize) == 1 ? Long.numberOfTrailingZeros(blockSize) : -1;
+    this.sampling = sampling;
+    this.maxBlocks = maxBlocks;
+    if (sampling) {
+      threshold = Math.max(1, Math.min(MODULUS, (long) (initialRate * MODULUS)));
+      rate = (double) threshold / MODULUS;
+      heapHash = new long[1024];
+      heapBlock = new long[1024];
+    }
+    tree = new int[INITIAL_TIMES + 1];
+    marks = new long[INITIAL_TIMES / 64];
+  }
+
+  /** Exact analysis: memory grows with the number of distinct blocks. */
+  public static MissRatioCurve exact(long blockSize) {
+    return new MissRatioCurve(blockSize, false, 1.0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * SHARDS: start sampling at {@code rate} (0 < rate <= 1) and never track
+   * more than {@code maxBlocks} blocks, lowering the rate as needed.
+   */
+  public static MissRatioCurve sampled(long blockSize, double rate, int maxBlocks) {
+    if (!(rate > 0 && rate <= 1) || maxBlocks < 1)
+      throw new IllegalArgumentException("rate must be in (0, 1] and maxBlocks positive");
+    return new MissRatioCurve(blockSize, true, rate, maxBlocks);
+  }
+
+  /** Record one access to a byte address. */
+  public void access(long address) {
+    long block = blockShift >= 0 ? address >>> blockShift : Long.divideUnsigned(address, blockSize);
+    accesses++;
+    long hash = 0;
+    if (sampling) {
+      hash = mix(block) & (MODULUS - 1);
+      expectedSamples += rate;
+      if (hash >= threshold)
+        return;
+    }
+    sampledAccesses++;
+    samples++;
+    int last = lastAccess.get(block);
+    if (last < 0) {
+      coldMisses += 1 / rate;
+      if (sampling)
+        heapPush(hash, block);
+    } else {
+      // Every tracked block has exactly one marked time, all before clock
+      long distance = lastAccess.size() - prefix(last + 1);
+      unmark(last);
+      histogram[SCALE.bucket(sampling ? (long) (distance / rate) : distance)]++;
+    }
+    if (clock == marks.length * 64)
+      compact();
+    mark(clock);
+    lastAccess.put(block, clock++);
+    if (sampling && lastAccess.size() > maxBlocks)
+      evict();
+  }
+
+  public void accessAll(long[] addresses, int offset, int length) {
+    for (int i = offset, end = offset + length; i < end; i++)
+      access(addresses[i]);
+  }
+
+  /** Estimated LRU miss ratio of a cache of {@code cacheBytes}. */
+  public double missRatio(long cacheBytes) {
+    long blocks = cacheBytes / blockSize;
+    double hits = sampling ? expectedSamples - samples : 0;
+    for (int i = 0; i < BUCKETS && SCALE.upper(i) <= blocks; i++)
+      hits += histogram[i];
+    return clampedMiss(hits);
+  }
+
+  public long getBlockSize() {
+    return blockSize;
+  }
+
+  public long getAccesses() {
+    return accesses;
+  }
+
+  /** Accesses that were tracked; equal to {@link #getAccesses} unless sampling. */
+  public long getSampledAccesses() {
+    return sampledAccesses;
+  }
+
+  /** Current sampling rate; 1 for exact analysis. */
+  public double getSampleRate() {
+    return rate;
+  }
+
+  /** Estimated number of distinct blocks in the trace (every one is a cold miss). */
+  public long getDistinctBlocks() {
+    return Math.round(coldMisses);
+  }
+
+  /** Blocks currently tracked, which bounds memory use. */
+  public int getTrackedBlocks() {
+    return lastAccess.size();
+  }
+
+  /**
+   * The curve as JSON: summary fields plus {@code curve}, a list of
+   * [cacheBytes, missRatio] points at histogram bucket edges, from an empty
+   * cache up to the size where only cold misses remain.
+   */
+  public String toJson() {
+    int last = BUCKETS - 1;
+    while (last > 0 && histogram[last] == 0)
+      last--;
+    StringBuilder sb = new StringBuilder(256 + (last + 2) * 32);
+    sb.append("{\"mode\":\"").append(sampling ? "shards" : "exact").append('"')
+        .append(",\"blockSize\":").append(blockSize)
+        .append(",\"accesses\":").append(accesses)
+        .append(",\"sampledAccesses\":").append(sampledAccesses)
+        .append(",\"sampleRate\":").append(String.format(Locale.ROOT, "%.6f", rate))
+        .append(",\"distinctBlocks\":").append(getDistinctBlocks())
+        .append(",\"curve\":[");
+    sb.append("[0,1.0]");
+    double hits = sampling ? expectedSamples - samples : 0;
+    double prevMiss = 1;
+    for (int i = 0; i <= last; i++) {
+      hits += histogram[i];
+      double miss = clampedMiss(hits);
+      // Flat stretches add nothing to the plot; keep the final point regardless
+      if (miss == prevMiss && i < last)
+        continue;
+      sb.append(",[").append(SCALE.upper(i) * blockSize).append(',')
+          .append(String.format(Locale.ROOT, "%.6f", miss)).append(']');
+      prevMiss = miss;
+    }
+    return sb.append("]}").toString();
+  }
+
+  private double clampedMiss(double hits) {
+    double total = sampling ? expectedSamples : accesses;
+    if (total <= 0)
+      return 0;
+    return Math.min(1, Math.max(0, 1 - hits / total));
+  }
+
+  // ---- Fenwick tree over access times ----
+
+  private long prefix(int end) {
+    long sum = 0;
+    for (int i = end; i > 0; i -= i & -i)
+      sum += tree[i];
+    return sum;
+  }
+
+  private void add(int pos, int delta) {
+    for (int i = pos + 1; i < tree.length; i += i & -i)
+      tree[i] += delta;
+  }
+
+  private void mark(int pos) {
+    marks[pos >>> 6] |= 1L << pos;
+    add(pos, 1);
+  }
+
+  private void unmark(int pos) {
+    marks[pos >>> 6] &= ~(1L << pos);
+    add(pos, -1);
+  }
+
+  /** Renumber live times to 0..live-1, growing the tree if it would be more than half full. */
+  private void compact() {
+    // The block being accessed is already unmarked and gets a new time right after
+    int[] rank = new int[marks.length * 64];
+    int live = 0;
+    for (int w = 0; w < marks.length; w++) {
+      long bits = marks[w];
+      while (bits != 0) {
+        int bit = Long.numberOfTrailingZeros(bits);
+        rank[(w << 6) + bit] = live++;
+        bits &= bits - 1;
+      }
+    }
+    lastAccess.remapValues(rank);
+    int capacity = marks.length * 64;
+    while (live * 2L > capacity)
+      capacity *= 2;
+    marks = new long[capacity / 64];
+    tree = new int[capacity + 1];
+    for (int i = 0; i < live; i++) {
+      marks[i >>> 6] |= 1L << i;
+      tree[i + 1] = 1;
+    }
+    // Linear-time Fenwick build: push each node's sum to its parent
+    for (int i = 1; i <= capacity; i++) {
+      int parent = i + (i & -i);
+      if (parent <= capacity)
+        tree[parent] += tree[i];
+    }
+    clock = live;
+  }
+
+  // ---- SHARDS fixed-size eviction ----
+
+  /**
+   * Lower the threshold to the largest tracked hash and drop every block at
+   * or above it. What was counted at the old rate is scaled down to the new
+   * one, as in the SHARDS paper, so each part of the trace weighs the same.
+   */
+  private void evict() {
+    long top = heapHash[0];
+    double scale = (double) top / threshold;
+    threshold = top;
+    rate = (double) threshold / MODULUS;
+    for (int i = 0; i < BUCKETS; i++)
+      histogram[i] *= scale;
+    samples *= scale;
+    expectedSamples *= scale;
+    while (heapSize > 0 && heapHash[0] >= top) {
+      long block = heapBlock[0];
+      heapPop();
+      int last = lastAccess.get(block);
+      unmark(last);
+      lastAccess.remove(block);
+    }
+  }
+
+  private void heapPush(long hash, long block) {
+    if (heapSize == heapHash.length) {
+      heapHash = Arrays.copyOf(heapHash, heapSize * 2);
+      heapBlock = Arrays.copyOf(heapBlock, heapSize * 2);
+    }
+    int i = heapSize++;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (heapHash[parent] >= hash)
+        break;
+      heapHash[i] = heapHash[parent];
+      heapBlock[i] = heapBlock[parent];
+      i = parent;
+    }
+    heapHash[i] = hash;
+    heapBlock[i] = block;
+  }
+
+  private void heapPop() {
+    long hash = heapHash[--heapSize];
+    long block = heapBlock[heapSize];
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize)
+        break;
+      if (child + 1 < heapSize && heapHash[child + 1] > heapHash[child])
+        child++;
+      if (heapHash[child] <= hash)
+        break;
+      heapHash[i] = heapHash[child];
+      heapBlock[i] = heapBlock[child];
+      i = child;
+    }
+    heapHash[i] = hash;
+    heapBlock[i] = block;
+  }
+
+  /** MurmurHash3 finalizer: spreads block numbers so spatial sampling is unbiased. */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  }
+}
@@ -0,0 +1,25 @@
+package com.smcmap.sim;
+
+/** Fully-associative block store with a fixed capacity in blocks. */
+abstract class ReplacementPolicy {
+
+  /** Starting size of the per-block arrays; they grow on demand up to the capacity. */
+  static final int INITIAL_SLOTS = 1024;
+
+  final int capacity;
+
+  ReplacementPolicy(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /** Touch {@code block}, inserting it (and evicting if full) on a miss. Returns true on a hit. */
+  abstract boolean access(long block);
+
+  abstract int size();
+
+  abstract void clear();
+
+  static int grow(int current, int capacity) {
+    return (int) Math.min(capacity, Math.max(current * 2L, 16));
+  }
+}
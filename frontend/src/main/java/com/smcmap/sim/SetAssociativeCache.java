@@ -0,0 +1,134 @@
+package com.smcmap.sim;
+
+/**
+ * One {@code ways}-way set-associative cache level holding block numbers.
+ *
+ * Lines live in flat arrays indexed by {@code set * ways + way}, so a lookup
+ * is one index computation plus a scan of at most {@code ways} tags, with no
+ * hashing or allocation. Replacement is per set: every line carries a stamp
+ * from a per-level clock (last use for LRU and LFU, insertion for FIFO)
+ * and, for LFU, a use count with the stamp breaking ties, so the least
+ * recently used of the least used lines goes, as in {@link LfuPolicy}. A
+ * stamp of 0 marks an empty line. Not thread-safe.
+ */
+final class SetAssociativeCache {
+
+  static final int FIFO = 0, LRU = 1, LFU = 2;
+
+  private final int sets;
+  private final int ways;
+  private final int setMask;
+  private final int policy;
+
+  private final long[] tags;
+  private final long[] stamps;
+  private final int[] uses;
+  private long clock;
+
+  /** Block evicted by the last {@link #insert}; only meaningful when it returned true. */
+  private long victim;
+
+  SetAssociativeCache(long numBlocks, int ways, int policy) {
+    if (ways <= 0 || numBlocks < ways || numBlocks % ways != 0)
+      throw new IllegalArgumentException("Cache of " + numBlocks + " blocks cannot be " + ways + "-way");
+    long setCount = numBlocks / ways;
+    if (numBlocks > Integer.MAX_VALUE - 8)
+      throw new IllegalArgumentException("Cache too large: " + numBlocks + " blocks");
+    this.sets = (int) setCount;
+    this.ways = ways;
+    this.setMask = Integer.bitCount(sets) == 1 ? sets - 1 : -1;
+    this.policy = policy;
+    this.tags = new long[(int) numBlocks];
+    this.stamps = new long[(int) numBlocks];
+    this.uses = policy == LFU ? new int[(int) numBlocks] : null;
+  }
+
+  static int policyOf(String name) {
+    if ("FIFO".equalsIgnoreCase(name))
+      return FIFO;
+    if ("LFU".equalsIgnoreCase(name))
+      return LFU;
+    return LRU;
+  }
+
+  private int setBase(long block) {
+    int set = setMask >= 0 ? (int) block & setMask : (int) Long.remainderUnsigned(block, sets);
+    return set * ways;
+  }
+
+  /** Look up {@code block}, updating its replacement state on a hit. */
+  boolean lookup(long block) {
+    int base = setBase(block);
+    for (int i = base, end = base + ways; i < end; i++) {
+      if (tags[i] == block && stamps[i] != 0) {
+        if (policy != FIFO)
+          stamps[i] = ++clock;
+        if (policy == LFU)
+          uses[i]++;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Place {@code block}, which must not be present, in its set.
+   *
+   * @return true if a valid block was evicted to make room; it is then
+   *         available from {@link #victim()}
+   */
+  boolean insert(long block) {
+    int base = setBase(block);
+    int slot = base;
+    boolean evicted = true;
+    for (int i = base, end = base + ways; i < end; i++) {
+      if (stamps[i] == 0) {
+        slot = i;
+        evicted = false;
+        break;
+      }
+      if (policy == LFU) {
+        if (uses[i] < uses[slot] || (uses[i] == uses[slot] && stamps[i] < stamps[slot]))
+          slot = i;
+      } else if (stamps[i] < stamps[slot]) {
+        slot = i;
+      }
+    }
+    if (evicted)
+      victim = tags[slot];
+    tags[slot] = block;
+    stamps[slot] = ++clock;
+    if (uses != null)
+      uses[slot] = 1;
+    return evicted;
+  }
+
+  long victim() {
+    return victim;
+  }
+
+  /** Drop {@code block} if present. Returns true if it was. */
+  boolean remove(long block) {
+    int base = setBase(block);
+    for (int i = base, end = base + ways; i < end; i++) {
+      if (tags[i] == block && stamps[i] != 0) {
+        stamps[i] = 0;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void clear() {
+    java.util.Arrays.fill(stamps, 0);
+    clock = 0;
+  }
+
+  int getSets() {
+    return sets;
+  }
+
+  int getWays() {
+    return ways;
+  }
+}
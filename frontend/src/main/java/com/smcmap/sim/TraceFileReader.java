@@ -0,0 +1,335 @@
+package com.smcmap.sim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Reads an address trace file through read-only memory-mapped windows and
+ * decodes it straight into caller-supplied {@code long[]} batches. Neither
+ * the file nor the decoded trace is ever held on the heap, so a multi-GB trace
+ * replays in constant memory at roughly the speed the page cache can supply it.
+ *
+ * Supported formats:
+ * <ul>
+ * <li>{@link Format#HEX}: one hexadecimal address per line, optional
+ * {@code 0x} prefix; anything after the address, blank lines and {@code #}
+ * comments are ignored;</li>
+ * <li>{@link Format#DIN}: Dinero III {@code label address [size]} lines, where
+ * labels 0 (read), 1 (write) and 2 (instruction fetch) are accesses and the
+ * rest (3 escape, 4 flush) are skipped;</li>
+ * <li>{@link Format#SMT1}: the compact binary {@link TraceFormat}.</li>
+ * </ul>
+ *
+ * Decoder state is carried across window boundaries, so a line or varint may
+ * straddle two windows. Also usable as a {@link PrimitiveIterator.OfLong}, e.g.
+ * to upload the file to the agent through {@link TraceInputStream}. Not
+ * thread-safe.
+ */
+public final class TraceFileReader implements PrimitiveIterator.OfLong, Closeable {
+
+  public enum Format {
+    HEX, DIN, SMT1
+  }
+
+  /** Called after every decoded batch; returning false stops the replay as if the file had ended. */
+  @FunctionalInterface
+  public interface ProgressListener {
+    boolean onProgress(TraceFileReader reader);
+  }
+
+  private static final long WINDOW = 64L * 1024 * 1024;
+  private static final int BATCH = 8192;
+  /** Value of each byte as a hex digit, -1 if it is not one. */
+  private static final byte[] HEX_DIGIT = new byte[256];
+
+  static {
+    Arrays.fill(HEX_DIGIT, (byte) -1);
+    for (int c = '0'; c <= '9'; c++)
+      HEX_DIGIT[c] = (byte) (c - '0');
+    for (int c = 'a'; c <= 'f'; c++) {
+      HEX_DIGIT[c] = (byte) (c - 'a' + 10);
+      HEX_DIGIT[c - 32] = (byte) (c - 'a' + 10);
+    }
+  }
+
+  private final FileChannel channel;
+  private final Format format;
+  private final long size;
+  private final long windowSize;
+  private ProgressListener listener;
+  private boolean cancelled;
+
+  /** Current mapped window and the file offset it starts at. */
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long position;
+  private long count;
+  private long line = 1;
+
+  // SMT1 state
+  private long prev;
+  private long acc;
+  private int shift;
+
+  // Text state: field index on the current line, the token being parsed and the line's label
+  private int field;
+  private int digits;
+  private long value;
+  private long label;
+  private boolean skipLine;
+
+  // Iterator view
+  private long[] batch;
+  private int batchPos;
+  private int batchLen;
+
+  /** Open {@code path}, picking the format with {@link #detect}. */
+  public static TraceFileReader open(Path path) throws IOException {
+    return new TraceFileReader(path, detect(path));
+  }
+
+  public TraceFileReader(Path path, Format format) throws IOException {
+    this(path, format, WINDOW);
+  }
+
+  /** Reader mapping {@code windowSize} bytes at a time; small windows exercise the boundary handling. */
+  TraceFileReader(Path path, Format format, long windowSize) throws IOException {
+    if (windowSize <= 0)
+      throw new IllegalArgumentException("windowSize must be positive");
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.format = format;
+    this.windowSize = windowSize;
+    try {
+      this.size = channel.size();
+      if (format == Format.SMT1) {
+        if (!hasMagic(channel))
+          throw new IOException("Not an SMT1 trace: " + path);
+        position = TraceFormat.MAGIC.length;
+      }
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** SMT1 if the file starts with its magic, DIN for a {@code .din} name, HEX otherwise. */
+  public static Format detect(Path path) throws IOException {
+    try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (hasMagic(ch))
+        return Format.SMT1;
+    }
+    String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+    return name.endsWith(".din") ? Format.DIN : Format.HEX;
+  }
+
+  private static boolean hasMagic(FileChannel ch) throws IOException {
+    ByteBuffer head = ByteBuffer.allocate(TraceFormat.MAGIC.length);
+    while (head.hasRemaining()) {
+      if (ch.read(head, head.position()) < 0)
+        return false;
+    }
+    return Arrays.equals(head.array(), TraceFormat.MAGIC);
+  }
+
+  public void setProgressListener(ProgressListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Decode up to {@code len} addresses into {@code dst} starting at {@code off}.
+   *
+   * @return number of addresses decoded, or -1 at end of file or once the
+   *         progress listener has asked to stop
+   */
+  public int read(long[] dst, int off, int len) throws IOException {
+    if (cancelled)
+      return -1;
+    int n = 0;
+    while (n < len && position < size) {
+      if (window == null || position >= windowStart + window.capacity()) {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, size - windowStart));
+      }
+      n += format == Format.SMT1 ? decodeVarints(dst, off + n, len - n) : decodeText(dst, off + n, len - n);
+    }
+    if (position >= size && n < len)
+      n += finish(dst, off + n);
+    if (n == 0)
+      return -1;
+    count += n;
+    if (listener != null && !listener.onProgress(this))
+      cancelled = true;
+    return n;
+  }
+
+  private int decodeVarints(long[] dst, int off, int len) throws IOException {
+    MappedByteBuffer buf = window;
+    int i = (int) (position - windowStart);
+    int end = buf.capacity();
+    int n = 0;
+    long a = acc;
+    int s = shift;
+    long p = prev;
+    while (i < end && n < len) {
+      byte b = buf.get(i++);
+      a |= (long) (b & 0x7F) << s;
+      if (b >= 0) {
+        p += TraceFormat.unzigzag(a);
+        dst[off + n++] = p;
+        a = 0;
+        s = 0;
+      } else if ((s += 7) > 63) {
+        throw new IOException("Malformed varint at address " + (count + n));
+      }
+    }
+    acc = a;
+    shift = s;
+    prev = p;
+    position = windowStart + i;
+    return n;
+  }
+
+  private int decodeText(long[] dst, int off, int len) throws IOException {
+    MappedByteBuffer buf = window;
+    int i = (int) (position - windowStart);
+    int end = buf.capacity();
+    int n = 0;
+    while (i < end && n < len) {
+      int c = buf.get(i++);
+      int d = HEX_DIGIT[c & 0xFF];
+      if (d >= 0) {
+        if (skipLine)
+          continue;
+        // Digits are the common case: take the rest of the token in one go
+        long v = digits > 0 ? (value << 4) | d : d;
+        int k = digits > 0 ? digits + 1 : 1;
+        while (i < end && (d = HEX_DIGIT[buf.get(i) & 0xFF]) >= 0) {
+          v = (v << 4) | d;
+          k++;
+          i++;
+        }
+        value = v;
+        digits = k;
+      } else if (c == '\n' || c == '\r') {
+        if (endToken())
+          dst[off + n++] = value;
+        if (c == '\n')
+          line++;
+        field = 0;
+        skipLine = false;
+      } else if (skipLine) {
+        continue;
+      } else if (c == ' ' || c == '\t' || c == ',') {
+        if (endToken())
+          dst[off + n++] = value;
+      } else if (c == '#') {
+        if (endToken())
+          dst[off + n++] = value;
+        skipLine = true;
+      } else if ((c == 'x' || c == 'X') && digits == 1 && value == 0) {
+        digits = -1; // "0x" prefix; the next digit starts the value
+      } else {
+        throw new IOException("Malformed trace at line " + line);
+      }
+    }
+    position = windowStart + i;
+    return n;
+  }
+
+  /**
+   * Close the token being parsed, if any.
+   *
+   * @return true if it was the line's address and the line is an access
+   */
+  private boolean endToken() throws IOException {
+    if (digits == 0)
+      return false;
+    if (digits < 0)
+      throw new IOException("Malformed trace at line " + line);
+    digits = 0;
+    int addressField = format == Format.DIN ? 1 : 0;
+    if (field < addressField) {
+      label = value;
+      field++;
+      return false;
+    }
+    skipLine = true;
+    return format != Format.DIN || label <= 2;
+  }
+
+  /** Flush a final line with no trailing newline, and reject a truncated varint. */
+  private int finish(long[] dst, int off) throws IOException {
+    if (format == Format.SMT1) {
+      if (shift != 0)
+        throw new IOException("Trace ends inside a varint");
+      return 0;
+    }
+    if (!skipLine && endToken()) {
+      dst[off] = value;
+      return 1;
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (batchPos < batchLen)
+      return true;
+    if (batch == null)
+      batch = new long[BATCH];
+    try {
+      batchLen = Math.max(0, read(batch, 0, BATCH));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    batchPos = 0;
+    return batchLen > 0;
+  }
+
+  @Override
+  public long nextLong() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    return batch[batchPos++];
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  /** File size in bytes. */
+  public long getSize() {
+    return size;
+  }
+
+  /** Bytes decoded so far. */
+  public long getPosition() {
+    return position;
+  }
+
+  /** Addresses decoded so far. */
+  public long getCount() {
+    return count;
+  }
+
+  /** True if the progress listener stopped the replay before the end of the file. */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+}
@@ -0,0 +1,79 @@
+package com.smcmap.sim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Compact binary address trace ("SMT1").
+ *
+ * <pre>
+ *   'S' 'M' 'T' '1'                   4-byte header
+ *   varint(zigzag(addr[i] - addr[i-1]))  repeated until end of stream, addr[-1] = 0
+ * </pre>
+ *
+ * Varints are unsigned LEB128 (7 bits per byte, high bit = more). Block-aligned
+ * addresses with locality typically take 1-3 bytes each, against 7+ for a
+ * JSON decimal. Written by {@link TraceInputStream}, read by {@link #decode}
+ * and by the agent's /api/cache/simulate/trace endpoint.
+ */
+public final class TraceFormat {
+
+  public static final String CONTENT_TYPE = "application/x-smcmap-trace";
+  static final byte[] MAGIC = { 'S', 'M', 'T', '1' };
+
+  private TraceFormat() {
+  }
+
+  static long zigzag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  static long unzigzag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  /**
+   * Stream-decode a trace, handing each address to {@code sink}. Reads through
+   * a fixed buffer, so memory use does not depend on trace length.
+   *
+   * @return number of addresses decoded
+   */
+  public static long decode(InputStream in, LongConsumer sink) throws IOException {
+    byte[] buf = new byte[64 * 1024];
+    int len = 0, pos = 0;
+    for (int i = 0; i < MAGIC.length; i++) {
+      int b = in.read();
+      if (b != MAGIC[i])
+        throw new IOException("Not an SMT1 trace");
+    }
+    long count = 0, prev = 0, acc = 0;
+    int shift = 0;
+    while (true) {
+      if (pos == len) {
+        len = in.read(buf);
+        pos = 0;
+        if (len < 0)
+          break;
+        continue;
+      }
+      byte b = buf[pos++];
+      acc |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        prev += unzigzag(acc);
+        sink.accept(prev);
+        count++;
+        acc = 0;
+        shift = 0;
+      } else {
+        shift += 7;
+        if (shift > 63)
+          throw new IOException("Malformed varint at address " + count);
+      }
+    }
+    if (shift != 0)
+      throw new EOFException("Trace ends inside a varint");
+    return count;
+  }
+}
@@ -0,0 +1,62 @@
+package com.smcmap.sim;
+
+import java.io.InputStream;
+import java.util.PrimitiveIterator;
+
+/**
+ * Encodes addresses into the {@link TraceFormat} byte stream lazily as it is
+ * read. Only a small fixed buffer is held, so handing this to
+ * {@code BodyPublishers.ofInputStream} uploads an arbitrarily long trace as a
+ * chunked body in constant memory.
+ */
+public class TraceInputStream extends InputStream {
+
+  private static final int MAX_VARINT = 10;
+
+  private final PrimitiveIterator.OfLong addresses;
+  private final byte[] buf = new byte[16 * 1024];
+  private int pos;
+  private int len;
+  private long prev;
+
+  public TraceInputStream(PrimitiveIterator.OfLong addresses) {
+    this.addresses = addresses;
+    System.arraycopy(TraceFormat.MAGIC, 0, buf, 0, TraceFormat.MAGIC.length);
+    len = TraceFormat.MAGIC.length;
+  }
+
+  private boolean fill() {
+    pos = 0;
+    len = 0;
+    while (len <= buf.length - MAX_VARINT && addresses.hasNext()) {
+      long addr = addresses.nextLong();
+      long v = TraceFormat.zigzag(addr - prev);
+      prev = addr;
+      while ((v & ~0x7FL) != 0) {
+        buf[len++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      buf[len++] = (byte) v;
+    }
+    return len > 0;
+  }
+
+  @Override
+  public int read() {
+    if (pos == len && !fill())
+      return -1;
+    return buf[pos++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int n) {
+    if (n == 0)
+      return 0;
+    if (pos == len && !fill())
+      return -1;
+    int k = Math.min(n, len - pos);
+    System.arraycopy(buf, pos, b, off, k);
+    pos += k;
+    return k;
+  }
+}
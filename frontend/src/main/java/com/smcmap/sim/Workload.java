@@ -0,0 +1,355 @@
+package com.smcmap.sim;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Seeded synthetic address streams for the cache simulators.
+ *
+ * A workload is only a description; {@link #iterator}, {@link #stream} and
+ * {@link #source} each start a fresh generator that produces addresses on
+ * demand, so a billion-access run holds nothing but the generator's few
+ * fields, and every pass over the same workload yields the same sequence.
+ * Addresses are block-aligned byte addresses ({@code block * blockSize}).
+ *
+ * Patterns:
+ * <ul>
+ * <li>{@link #uniform}: every block equally likely (the agent's historical
+ * workload);</li>
+ * <li>{@link #zipf}: block {@code k} with probability proportional to
+ * {@code 1 / (k + 1)^theta}, block 0 hottest;</li>
+ * <li>{@link #scan}: ever-increasing sequential blocks, no reuse;</li>
+ * <li>{@link #strided}: every {@code stride}-th block, wrapping within a
+ * region;</li>
+ * <li>{@link #loop}: sequential passes over a fixed working set;</li>
+ * <li>{@link #hotCold}: a small hot set hit with a given probability, a large
+ * cold set otherwise;</li>
+ * <li>{@link #phased}: cycles through other workloads, each in its own
+ * address region, switching every {@code phaseLength} accesses.</li>
+ * </ul>
+ */
+public abstract class Workload {
+
+  /** Distance between the address regions of {@link #phased} children. */
+  static final long PHASE_REGION = 1L << 40;
+
+  private final String description;
+
+  Workload(String description) {
+    this.description = description;
+  }
+
+  /** A fresh, infinite generator positioned at the start of the sequence. */
+  abstract Generator generator();
+
+  abstract static class Generator {
+    abstract long next();
+  }
+
+  /** The first {@code count} addresses as an iterator. */
+  public PrimitiveIterator.OfLong iterator(long count) {
+    Generator g = generator();
+    return new PrimitiveIterator.OfLong() {
+      private long left = count;
+
+      @Override
+      public boolean hasNext() {
+        return left > 0;
+      }
+
+      @Override
+      public long nextLong() {
+        if (left <= 0)
+          throw new NoSuchElementException();
+        left--;
+        return g.next();
+      }
+    };
+  }
+
+  /** The first {@code count} addresses as a sequential, ordered stream. */
+  public LongStream stream(long count) {
+    return StreamSupport.longStream(Spliterators.spliterator(iterator(count), count,
+        Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+  }
+
+  /** The first {@code count} addresses as batches, for {@link CacheSweep} and batch replay loops. */
+  public CacheSweep.TraceSource source(long count) {
+    Generator g = generator();
+    long[] left = { count };
+    return (dst, off, len) -> {
+      int n = (int) Math.min(len, left[0]);
+      for (int i = 0; i < n; i++)
+        dst[off + i] = g.next();
+      left[0] -= n;
+      return n > 0 ? n : -1;
+    };
+  }
+
+  @Override
+  public String toString() {
+    return description;
+  }
+
+  // ---- Patterns ----
+
+  public static Workload uniform(long blocks, long blockSize, long seed) {
+    requirePositive(blocks, blockSize);
+    return new Workload("uniform(blocks=" + blocks + ", seed=" + seed + ")") {
+      @Override
+      Generator generator() {
+        SplittableRandom rand = new SplittableRandom(seed);
+        return new Generator() {
+          @Override
+          long next() {
+            return rand.nextLong(blocks) * blockSize;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Zipfian over {@code blocks} blocks with skew {@code 0 < theta < 1}
+   * (0.99 is the usual "hot" setting), using the constant-time inversion of
+   * Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+   * The zeta normalizer is computed once, exactly for the first 2^20 terms
+   * and by the Euler-Maclaurin integral beyond.
+   */
+  public static Workload zipf(long blocks, double theta, long blockSize, long seed) {
+    requirePositive(blocks, blockSize);
+    if (!(theta > 0 && theta < 1))
+      throw new IllegalArgumentException("theta must be in (0, 1)");
+    double zetaN = zeta(blocks, theta);
+    double zeta2 = zeta(2, theta);
+    double alpha = 1 / (1 - theta);
+    double eta = (1 - Math.pow(2.0 / blocks, 1 - theta)) / (1 - zeta2 / zetaN);
+    double second = 1 + Math.pow(0.5, theta);
+    return new Workload("zipf(blocks=" + blocks + ", theta=" + theta + ", seed=" + seed + ")") {
+      @Override
+      Generator generator() {
+        SplittableRandom rand = new SplittableRandom(seed);
+        return new Generator() {
+          @Override
+          long next() {
+            double u = rand.nextDouble();
+            double uz = u * zetaN;
+            long rank;
+            if (uz < 1)
+              rank = 0;
+            else if (uz < second)
+              rank = 1;
+            else
+              rank = Math.min(blocks - 1, (long) (blocks * Math.pow(eta * u - eta + 1, alpha)));
+            return rank * blockSize;
+          }
+        };
+      }
+    };
+  }
+
+  static double zeta(long n, double theta) {
+    long exact = Math.min(n, 1 << 20);
+    double sum = 0;
+    for (long i = 1; i <= exact; i++)
+      sum += 1 / Math.pow(i, theta);
+    if (n > exact)
+      sum += (Math.pow(n + 0.5, 1 - theta) - Math.pow(exact + 0.5, 1 - theta)) / (1 - theta);
+    return sum;
+  }
+
+  /** Blocks 0, 1, 2, ... with no reuse: a streaming read of unbounded size. */
+  public static Workload scan(long blockSize) {
+    requirePositive(1, blockSize);
+    return new Workload("scan") {
+      @Override
+      Generator generator() {
+        return new Generator() {
+          private long block;
+
+          @Override
+          long next() {
+            return block++ * blockSize;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Every {@code stride}-th block of a {@code blocks}-block region, wrapping
+   * around; when the stride and region share a factor only part of the region
+   * is touched, which is what makes strides interesting for set mapping.
+   */
+  public static Workload strided(long blocks, long stride, long blockSize) {
+    requirePositive(blocks, blockSize);
+    if (stride <= 0)
+      throw new IllegalArgumentException("stride must be positive");
+    return new Workload("strided(blocks=" + blocks + ", stride=" + stride + ")") {
+      @Override
+      Generator generator() {
+        return new Generator() {
+          private long block;
+
+          @Override
+          long next() {
+            long b = block;
+            block = (block + stride) % blocks;
+            return b * blockSize;
+          }
+        };
+      }
+    };
+  }
+
+  /** Repeated sequential passes over a {@code blocks}-block working set. */
+  public static Workload loop(long blocks, long blockSize) {
+    requirePositive(blocks, blockSize);
+    return new Workload("loop(blocks=" + blocks + ")") {
+      @Override
+      Generator generator() {
+        return new Generator() {
+          private long block;
+
+          @Override
+          long next() {
+            long b = block;
+            if (++block == blocks)
+              block = 0;
+            return b * blockSize;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * With probability {@code hotProbability} a uniform block of the
+   * {@code hotBlocks}-block hot set, otherwise one of the
+   * {@code coldBlocks}-block cold set placed right after it.
+   */
+  public static Workload hotCold(long hotBlocks, long coldBlocks, double hotProbability, long blockSize,
+      long seed) {
+    requirePositive(hotBlocks, blockSize);
+    requirePositive(coldBlocks, blockSize);
+    if (!(hotProbability >= 0 && hotProbability <= 1))
+      throw new IllegalArgumentException("hotProbability must be in [0, 1]");
+    return new Workload("hotcold(hot=" + hotBlocks + ", cold=" + coldBlocks + ", p=" + hotProbability
+        + ", seed=" + seed + ")") {
+      @Override
+      Generator generator() {
+        SplittableRandom rand = new SplittableRandom(seed);
+        return new Generator() {
+          @Override
+          long next() {
+            long block = rand.nextDouble() < hotProbability ? rand.nextLong(hotBlocks)
+                : hotBlocks + rand.nextLong(coldBlocks);
+            return block * blockSize;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Run {@code phases} in turn for {@code phaseLength} accesses each, then
+   * start over. Phase {@code k} is shifted into its own address region, so
+   * every switch is a working-set change; each phase resumes where it left
+   * off.
+   */
+  public static Workload phased(long phaseLength, Workload... phases) {
+    if (phaseLength <= 0 || phases.length == 0)
+      throw new IllegalArgumentException("phased needs a positive length and at least one phase");
+    StringBuilder desc = new StringBuilder("phased(length=").append(phaseLength);
+    for (Workload w : phases)
+      desc.append(", ").append(w);
+    return new Workload(desc.append(')').toString()) {
+      @Override
+      Generator generator() {
+        Generator[] children = new Generator[phases.length];
+        for (int i = 0; i < phases.length; i++)
+          children[i] = phases[i].generator();
+        return new Generator() {
+          private int phase;
+          private long left = phaseLength;
+
+          @Override
+          long next() {
+            if (left == 0) {
+              phase = (phase + 1) % children.length;
+              left = phaseLength;
+            }
+            left--;
+            return children[phase].next() + phase * PHASE_REGION;
+          }
+        };
+      }
+    };
+  }
+
+  private static void requirePositive(long blocks, long blockSize) {
+    if (blocks <= 0 || blockSize <= 0)
+      throw new IllegalArgumentException("blocks and blockSize must be positive");
+  }
+
+  // ---- Spec strings ----
+
+  /**
+   * Build a workload from {@code name[:key=value,...]}, as picked in the
+   * cache view. Names are uniform, zipf, scan, strided, loop, hotcold and
+   * phased; keys are blocks (4096), blockSize (64), seed (42), theta (0.99),
+   * stride (16), hot (hot set as a fraction of blocks, 0.1), p (hot-set
+   * probability, 0.9) and length (phase length, 100000). phased cycles a
+   * loop over blocks/4, a zipf over blocks and a scan.
+   */
+  public static Workload parse(String spec) {
+    String s = spec.trim();
+    int colon = s.indexOf(':');
+    String name = (colon < 0 ? s : s.substring(0, colon)).trim().toLowerCase(Locale.ROOT);
+    Map<String, String> args = new HashMap<>();
+    if (colon >= 0) {
+      for (String part : s.substring(colon + 1).split(",")) {
+        if (part.isBlank())
+          continue;
+        int eq = part.indexOf('=');
+        if (eq < 0)
+          throw new IllegalArgumentException("Expected key=value in workload spec: " + part.trim());
+        args.put(part.substring(0, eq).trim(), part.substring(eq + 1).trim());
+      }
+    }
+    long blocks = Long.parseLong(args.getOrDefault("blocks", "4096"));
+    long blockSize = Long.parseLong(args.getOrDefault("blockSize", "64"));
+    long seed = Long.parseLong(args.getOrDefault("seed", "42"));
+    double theta = Double.parseDouble(args.getOrDefault("theta", "0.99"));
+    switch (name) {
+      case "uniform":
+        return uniform(blocks, blockSize, seed);
+      case "zipf":
+        return zipf(blocks, theta, blockSize, seed);
+      case "scan":
+        return scan(blockSize);
+      case "strided":
+        return strided(blocks, Long.parseLong(args.getOrDefault("stride", "16")), blockSize);
+      case "loop":
+        return loop(blocks, blockSize);
+      case "hotcold": {
+        long hot = Math.max(1, (long) (blocks * Double.parseDouble(args.getOrDefault("hot", "0.1"))));
+        return hotCold(hot, Math.max(1, blocks - hot), Double.parseDouble(args.getOrDefault("p", "0.9")),
+            blockSize, seed);
+      }
+      case "phased":
+        return phased(Long.parseLong(args.getOrDefault("length", "100000")),
+            loop(Math.max(1, blocks / 4), blockSize), zipf(blocks, theta, blockSize, seed), scan(blockSize));
+      default:
+        throw new IllegalArgumentException("Unknown workload: " + name);
+    }
+  }
+}
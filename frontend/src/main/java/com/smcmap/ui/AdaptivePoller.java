@@ -0,0 +1,161 @@
+package com.smcmap.ui;
+
+import com.smcmap.service.SystemStatsService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Self-rescheduling dashboard poller. The next cycle is only scheduled once
+ * the previous one has completed, so cycles never overlap, and its delay is
+ * picked from the outcome:
+ * <ul>
+ * <li>agent unreachable: exponential backoff from BASE_INTERVAL_MS up to MAX_BACKOFF_MS;</li>
+ * <li>used RAM moving by at least FAST_CHANGE_FRACTION of total per second: FAST_INTERVAL_MS;</li>
+ * <li>otherwise BASE_INTERVAL_MS,</li>
+ * </ul>
+ * then stretched to at least UNFOCUSED_INTERVAL_MS / MINIMIZED_INTERVAL_MS
+ * while the window is unfocused / minimized. Intervals are start-to-start.
+ * Ticks that a fixed-rate timer would have fired during an overrunning cycle
+ * are counted as skipped.
+ */
+final class AdaptivePoller {
+
+  static final long BASE_INTERVAL_MS = 1000;
+  static final long FAST_INTERVAL_MS = 250;
+  static final long MAX_BACKOFF_MS = 30_000;
+  static final long UNFOCUSED_INTERVAL_MS = 2000;
+  static final long MINIMIZED_INTERVAL_MS = 10_000;
+  static final double FAST_CHANGE_FRACTION = 0.01;
+
+  private final Supplier<CompletableFuture<SystemStatsService.SystemDataResult>> poll;
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "SMCMAP-Poller");
+    t.setDaemon(true);
+    return t;
+  });
+
+  // Guarded by this
+  private ScheduledFuture<?> pending;
+  private boolean running;
+  private boolean inFlight;
+  private int failures;
+  private long lastUsedRam = -1;
+  private long lastSampleNanos;
+  private boolean minimized;
+  private boolean focused = true;
+
+  private volatile long intervalMs = BASE_INTERVAL_MS;
+  private volatile long skippedTicks;
+  private volatile long lastCycleMs = -1;
+
+  AdaptivePoller(Supplier<CompletableFuture<SystemStatsService.SystemDataResult>> poll) {
+    this.poll = poll;
+  }
+
+  /** Start polling immediately; no-op if already running. */
+  synchronized void start() {
+    if (running)
+      return;
+    running = true;
+    schedule(0);
+  }
+
+  synchronized void stop() {
+    running = false;
+    if (pending != null)
+      pending.cancel(false);
+    timer.shutdownNow();
+  }
+
+  /** Window state from the stage; coming back into view triggers a poll right away. */
+  synchronized void setWindowState(boolean minimized, boolean focused) {
+    boolean wasSlowed = this.minimized || !this.focused;
+    this.minimized = minimized;
+    this.focused = focused;
+    if (wasSlowed && !minimized && focused && !inFlight)
+      schedule(0);
+  }
+
+  /** Delay currently applied between cycle starts. */
+  long getIntervalMs() {
+    return intervalMs;
+  }
+
+  long getSkippedTicks() {
+    return skippedTicks;
+  }
+
+  /** Duration of the last completed cycle (fetch, persist, diff), -1 before the first. */
+  long getLastCycleMs() {
+    return lastCycleMs;
+  }
+
+  synchronized int getConsecutiveFailures() {
+    return failures;
+  }
+
+  private void schedule(long delayMs) {
+    if (!running)
+      return;
+    if (pending != null)
+      pending.cancel(false);
+    pending = timer.schedule(this::tick, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void tick() {
+    synchronized (this) {
+      if (!running || inFlight)
+        return;
+      inFlight = true;
+      pending = null;
+    }
+    long start = System.nanoTime();
+    CompletableFuture<SystemStatsService.SystemDataResult> f;
+    try {
+      f = poll.get();
+    } catch (RuntimeException e) {
+      f = CompletableFuture.failedFuture(e);
+    }
+    f.whenComplete((result, error) -> completed(result, error, start));
+  }
+
+  private synchronized void completed(SystemStatsService.SystemDataResult result, Throwable error, long startNanos) {
+    inFlight = false;
+    long elapsed = (System.nanoTime() - startNanos) / 1_000_000;
+    lastCycleMs = elapsed;
+    long previous = intervalMs;
+    if (elapsed >= previous)
+      skippedTicks += elapsed / previous;
+
+    long next;
+    if (error != null) {
+      failures++;
+      next = Math.min(MAX_BACKOFF_MS, BASE_INTERVAL_MS << Math.min(failures, 16));
+      lastUsedRam = -1;
+    } else {
+      failures = 0;
+      next = BASE_INTERVAL_MS;
+      long used = result.systemSnapshot.getUsedRam();
+      long total = result.systemSnapshot.getTotalRam();
+      long now = System.nanoTime();
+      if (lastUsedRam >= 0 && total > 0 && now > lastSampleNanos) {
+        double perSecond = Math.abs(used - lastUsedRam) * 1e9 / (now - lastSampleNanos);
+        if (perSecond >= total * FAST_CHANGE_FRACTION)
+          next = FAST_INTERVAL_MS;
+      }
+      lastUsedRam = used;
+      lastSampleNanos = now;
+    }
+    if (minimized)
+      next = Math.max(next, MINIMIZED_INTERVAL_MS);
+    else if (!focused)
+      next = Math.max(next, UNFOCUSED_INTERVAL_MS);
+    intervalMs = next;
+    schedule(Math.max(0, next - elapsed));
+  }
+}
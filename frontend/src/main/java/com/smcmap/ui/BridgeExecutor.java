@@ -0,0 +1,123 @@
+package com.smcmap.ui;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded worker pool behind the JS bridge. A fixed set of daemon threads and
+ * a bounded queue replace the thread-per-call pattern, and {@link #coalesce}
+ * collapses identical requests while one is still in flight so every caller
+ * shares the same future instead of issuing another agent or SQLite call.
+ */
+final class BridgeExecutor {
+
+  private final ThreadPoolExecutor pool;
+  private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong coalescedCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  BridgeExecutor(String name, int threads, int queueCapacity) {
+    AtomicInteger seq = new AtomicInteger();
+    ThreadFactory factory = r -> {
+      Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+    pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+    pool.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Run {@code task} unless a task with the same key is already queued or
+   * running, in which case that task's future is returned. The key is
+   * released before the future completes, so a call arriving after completion
+   * always starts fresh work.
+   */
+  @SuppressWarnings("unchecked")
+  <T> CompletableFuture<T> coalesce(String key, Callable<T> task) {
+    CompletableFuture<T> fresh = new CompletableFuture<>();
+    CompletableFuture<?> existing = inFlight.putIfAbsent(key, fresh);
+    if (existing != null) {
+      coalescedCount.incrementAndGet();
+      return (CompletableFuture<T>) existing;
+    }
+    try {
+      pool.execute(() -> {
+        T value = null;
+        Throwable failure = null;
+        try {
+          value = task.call();
+        } catch (Throwable t) {
+          failure = t;
+        }
+        inFlight.remove(key, fresh);
+        if (failure != null)
+          fresh.completeExceptionally(failure);
+        else
+          fresh.complete(value);
+      });
+    } catch (RejectedExecutionException e) {
+      rejectedCount.incrementAndGet();
+      inFlight.remove(key, fresh);
+      fresh.completeExceptionally(e);
+    }
+    return fresh;
+  }
+
+  CompletableFuture<Void> coalesce(String key, Runnable task) {
+    return coalesce(key, () -> {
+      task.run();
+      return null;
+    });
+  }
+
+  /** Run {@code task} without deduplication (still bounded by the pool and queue). */
+  CompletableFuture<Void> submit(Runnable task) {
+    try {
+      return CompletableFuture.runAsync(task, pool);
+    } catch (RejectedExecutionException e) {
+      rejectedCount.incrementAndGet();
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  /** Calls answered by an already in-flight task. */
+  long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /** Calls refused because the queue was full or the pool was shut down. */
+  long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  /**
+   * Stop accepting work, give queued and running tasks up to
+   * {@code timeoutMs} to finish, then interrupt whatever is left.
+   */
+  void shutdown(long timeoutMs) {
+    pool.shutdown();
+    try {
+      if (!pool.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+        System.err.println("[SMCMAP] Bridge tasks still running after " + timeoutMs + " ms, interrupting.");
+        pool.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      pool.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -3,7 +3,9 @@ package com.smcmap.ui;
 import com.smcmap.model.ProcessSnapshot;
 import com.smcmap.model.SystemSnapshot;
 import com.smcmap.service.SystemStatsService;
+import com.smcmap.service.AgentNode;
 import com.smcmap.service.AnalysisPersistenceService;
+import com.smcmap.service.NodeRegistry;
 
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
@@ -94,6 +96,7 @@ public class DashboardController {
 
   private SystemStatsService statsService;
   private AnalysisPersistenceService persistenceService;
+  private NodeRegistry nodeRegistry;
   private Timer timer;
   private XYChart.Series<String, Number> memorySeries;
   private long startTime;
@@ -104,6 +107,7 @@ public class DashboardController {
   public void initialize() {
     statsService = new SystemStatsService("http://127.0.0.1:8080");
     persistenceService = new AnalysisPersistenceService();
+    nodeRegistry = NodeRegistry.load(statsService);
     startTime = System.currentTimeMillis();
 
     // Setup Table Columns
@@ -174,11 +178,14 @@ public class DashboardController {
     timer.scheduleAtFixedRate(new TimerTask() {
       @Override
       public void run() {
+        long start = System.nanoTime();
         try {
           SystemStatsService.SystemDataResult result = statsService.fetchStats();
-          persistenceService.saveSystemSnapshot(result.systemSnapshot);
+          nodeRegistry.getLocal().recordSuccess(System.nanoTime() - start, result.systemSnapshot);
+          persistenceService.saveSystemSnapshot(NodeRegistry.LOCAL_NODE_ID, result.systemSnapshot, result.processes);
           Platform.runLater(() -> updateUI(result));
         } catch (Exception e) {
+          nodeRegistry.getLocal().recordFailure(e);
           Platform.runLater(() -> statusLabel.setText("Agent Disconnected"));
         }
       }
@@ -217,8 +224,8 @@ public class DashboardController {
     }
 
     // Cache info
-    double ratio = result.cacheData.get("hitRatio").getAsDouble() * 100.0;
-    String algo = result.cacheData.get("algorithm").getAsString();
+    double ratio = result.cacheStats.getHitRatio() * 100.0;
+    String algo = result.cacheStats.getAlgorithm();
     hitRatioLabel.setText(String.format("%.1f", ratio));
     cacheAlgoLabel.setText(String.format("DELTA: Algo %s", algo));
 
@@ -337,12 +344,18 @@ public class DashboardController {
 
     Label title = new Label("CONNECTED NODES");
     title.getStyleClass().add("topbar-title");
-    Label node1 = new Label("SM-01 (Localhost) -- ACTIVE");
-    node1.setStyle("-fx-text-fill: #10B981; -fx-font-size: 13px; -fx-font-weight: bold;");
-    Label details = new Label("Agent: http://127.0.0.1:8080 | Protocol: REST/JSON | Latency: <5ms");
-    details.setStyle("-fx-text-fill: #64748b; -fx-font-size: 11px;");
-
-    nodesView.getChildren().addAll(title, node1, details);
+    nodesView.getChildren().add(title);
+    for (AgentNode node : nodeRegistry.getNodes()) {
+      AgentNode.Health health = node.getHealth();
+      Label name = new Label(node.getId() + " -- " + health);
+      name.setStyle("-fx-text-fill: " + (health == AgentNode.Health.UP ? "#10B981"
+          : health == AgentNode.Health.UNKNOWN ? "#64748b" : "#EF4444") + "; -fx-font-size: 13px; -fx-font-weight: bold;");
+      double rtt = node.getLastRttMs();
+      Label details = new Label("Agent: " + node.getUrl() + " | Protocol: REST/JSON | Latency: "
+          + (rtt >= 0 ? String.format("%.1fms", rtt) : "--"));
+      details.setStyle("-fx-text-fill: #64748b; -fx-font-size: 11px;");
+      nodesView.getChildren().addAll(name, details);
+    }
     mainScroll.setContent(nodesView);
   }
 
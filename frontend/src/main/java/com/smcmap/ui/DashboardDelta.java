@@ -0,0 +1,113 @@
+package com.smcmap.ui;
+
+import com.smcmap.model.ProcessSnapshot;
+import com.smcmap.service.SystemStatsService;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Remembers the process table last sent to the WebView and turns each new
+ * poll into a keyed (by pid) diff for the JS updateDashboard() function:
+ *
+ * <pre>
+ * {"memory":{..},"cache":{..},"seq":n,"base":n-1,"full":false,"count":k,
+ *  "added":[{pid,name,memoryUsed}..],"updated":[{pid,[name],memoryUsed}..],
+ *  "removed":[pid..],"order":[pid..]}
+ * </pre>
+ *
+ * A row counts as updated only when its name or its displayed (rounded MB)
+ * memory changed, and "order" is only sent when the pid sequence changed.
+ * The first payload, and the first after {@link #reset}, is a full one
+ * ("full":true, everything in "added"). The JS side asks for a reset when its
+ * last applied seq is not the delta's base.
+ */
+final class DashboardDelta {
+
+  private HashMap<Integer, ProcessSnapshot> last = new HashMap<>();
+  private HashMap<Integer, ProcessSnapshot> next = new HashMap<>();
+  private int[] lastOrder = new int[0];
+  private long seq;
+  private boolean full = true;
+
+  /** Forget the rendered state so the next payload is a full one. */
+  synchronized void reset() {
+    full = true;
+  }
+
+  synchronized String next(SystemStatsService.SystemDataResult result) {
+    List<ProcessSnapshot> procs = result.processes;
+    boolean sendAll = full;
+    if (sendAll)
+      last.clear();
+
+    StringBuilder sb = new StringBuilder(256 + (sendAll ? procs.size() * 64 : 64));
+    sb.append("{");
+    DashboardJson.appendSummary(sb, result);
+    sb.append(",\"seq\":").append(seq + 1);
+    sb.append(",\"base\":").append(seq);
+    sb.append(",\"full\":").append(sendAll);
+    sb.append(",\"count\":").append(procs.size());
+
+    int[] order = new int[procs.size()];
+    StringBuilder updated = new StringBuilder();
+    sb.append(",\"added\":[");
+    boolean firstAdded = true;
+    next.clear();
+    for (int i = 0; i < procs.size(); i++) {
+      ProcessSnapshot p = procs.get(i);
+      order[i] = p.getPid();
+      next.put(p.getPid(), p);
+      ProcessSnapshot prev = last.remove(p.getPid());
+      if (prev == null) {
+        if (!firstAdded)
+          sb.append(",");
+        DashboardJson.appendProcess(sb, p, true);
+        firstAdded = false;
+      } else {
+        boolean renamed = !Objects.equals(prev.getName(), p.getName());
+        if (renamed || displayMb(prev.getMemoryUsed()) != displayMb(p.getMemoryUsed())) {
+          if (updated.length() > 0)
+            updated.append(",");
+          DashboardJson.appendProcess(updated, p, renamed);
+        }
+      }
+    }
+    sb.append("],\"updated\":[").append(updated);
+    // Whatever is left in the previous map has disappeared
+    sb.append("],\"removed\":[");
+    boolean firstRemoved = true;
+    for (Integer pid : last.keySet()) {
+      if (!firstRemoved)
+        sb.append(",");
+      sb.append(pid);
+      firstRemoved = false;
+    }
+    sb.append("]");
+    if (sendAll || !Arrays.equals(order, lastOrder)) {
+      sb.append(",\"order\":[");
+      for (int i = 0; i < order.length; i++) {
+        if (i > 0)
+          sb.append(",");
+        sb.append(order[i]);
+      }
+      sb.append("]");
+    }
+    sb.append("}");
+
+    HashMap<Integer, ProcessSnapshot> swap = last;
+    last = next;
+    next = swap;
+    lastOrder = order;
+    seq++;
+    full = false;
+    return sb.toString();
+  }
+
+  /** Memory as the process table shows it (whole MB, rounded). */
+  private static long displayMb(long bytes) {
+    return (bytes + (1 << 19)) >> 20;
+  }
+}
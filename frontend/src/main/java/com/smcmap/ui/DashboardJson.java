@@ -0,0 +1,65 @@
+package com.smcmap.ui;
+
+import com.smcmap.model.ProcessSnapshot;
+import com.smcmap.service.SystemStatsService;
+
+/** JSON payload builders and string escaping shared by the poller and the JS bridge. */
+public final class DashboardJson {
+
+  private DashboardJson() {
+  }
+
+  /** Payload for the JS updateDashboard() function. */
+  public static String build(SystemStatsService.SystemDataResult result) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{");
+    appendSummary(sb, result);
+    sb.append(",\"processes\":[");
+    for (int i = 0; i < result.processes.size(); i++) {
+      if (i > 0)
+        sb.append(",");
+      appendProcess(sb, result.processes.get(i), true);
+    }
+    sb.append("]}");
+    return sb.toString();
+  }
+
+  /** The "memory" and "cache" members, without braces around them. */
+  static void appendSummary(StringBuilder sb, SystemStatsService.SystemDataResult result) {
+    sb.append("\"memory\":{");
+    sb.append("\"totalRam\":").append(result.systemSnapshot.getTotalRam()).append(",");
+    sb.append("\"usedRam\":").append(result.systemSnapshot.getUsedRam()).append(",");
+    sb.append("\"freeRam\":").append(result.systemSnapshot.getFreeRam());
+    sb.append("},");
+    sb.append("\"cache\":{");
+    sb.append("\"algorithm\":\"").append(result.cacheStats.getAlgorithm()).append("\",");
+    sb.append("\"hits\":").append(result.cacheStats.getHits()).append(",");
+    sb.append("\"misses\":").append(result.cacheStats.getMisses()).append(",");
+    sb.append("\"hitRatio\":").append(result.cacheStats.getHitRatio());
+    sb.append("}");
+  }
+
+  /** One process row object; the name is left out when the receiver already has it. */
+  static void appendProcess(StringBuilder sb, ProcessSnapshot p, boolean withName) {
+    sb.append("{\"pid\":").append(p.getPid());
+    if (withName)
+      sb.append(",\"name\":\"").append(escJsonStr(p.getName())).append("\"");
+    sb.append(",\"memoryUsed\":").append(p.getMemoryUsed()).append("}");
+  }
+
+  /** Escape a string for embedding in a single-quoted JS literal passed to executeScript. */
+  public static String escJs(String s) {
+    return s.replace("\\", "\\\\").replace("'", "\\'").replace("\n", "\\n").replace("\r", "");
+  }
+
+  /** Escape a value for both a JSON string and a single-quoted JS literal. */
+  public static String esc(String s) {
+    if (s == null)
+      return "null";
+    return s.replace("\\", "\\\\").replace("'", "\\'").replace("\"", "\\\"");
+  }
+
+  public static String escJsonStr(String s) {
+    return s.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
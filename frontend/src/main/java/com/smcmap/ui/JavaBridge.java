@@ -1,26 +1,39 @@
 package com.smcmap.ui;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.smcmap.model.SnapshotRollup;
+import com.smcmap.model.SnapshotSeries;
+import com.smcmap.model.SystemSnapshot;
+import com.smcmap.service.AgentNode;
 import com.smcmap.service.AnalysisPersistenceService;
+import com.smcmap.service.LatencyHistogram;
+import com.smcmap.service.MetricsRegistry;
+import com.smcmap.service.NodeRegistry;
+import com.smcmap.service.StatsSource;
+import com.smcmap.service.StatsSubscription;
 import com.smcmap.service.SystemStatsService;
+import com.smcmap.sim.CacheHierarchy;
+import com.smcmap.sim.CacheSimulationEngine;
+import com.smcmap.sim.CacheSweep;
+import com.smcmap.sim.MissRatioCurve;
+import com.smcmap.sim.TraceFileReader;
+import com.smcmap.sim.Workload;
 
 import javafx.application.Platform;
 import javafx.scene.web.WebEngine;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import javafx.stage.FileChooser;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
 
 /**
  * Java bridge exposed to JavaScript in the WebView.
@@ -29,17 +42,144 @@ import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
 public class JavaBridge {
 
   private final SystemStatsService statsService;
+  /** Dashboard samples and kills; the agent itself unless an in-process collector was chosen. */
+  private final StatsSource statsSource;
   private final AnalysisPersistenceService persistenceService;
+  private final NodeRegistry nodeRegistry;
   private final WebEngine webEngine;
   private final long startTimeMs = System.currentTimeMillis();
 
+  /**
+   * In-process simulator; configured alongside the agent's and used when the
+   * UI picks the local engine. Replaced whole on reconfiguration; a run holds
+   * the engine's own monitor, never the bridge's.
+   */
+  private volatile CacheSimulationEngine localEngine = new CacheSimulationEngine(1024 * 1024, 64, "LRU");
+  /** Set by shutdown; local runs stop at their next batch. */
+  private volatile boolean closing;
+
+  /** Target number of points for ranged analytics views. */
+  private static final int ANALYTICS_POINTS = 720;
+
+  /**
+   * Worker threads shared by bridge actions other than long simulations; calls
+   * beyond this queue up instead of spawning threads.
+   */
+  private static final int WORKER_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private static final int WORKER_QUEUE = 64;
+  private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+  /** Process table state last sent to updateDashboard(); turns each poll into a diff. */
+  private final DashboardDelta dashboardDelta = new DashboardDelta();
+
+  private final BridgeExecutor executor = new BridgeExecutor("SMCMAP-Bridge", WORKER_THREADS, WORKER_QUEUE);
+  private final AdaptivePoller poller = new AdaptivePoller(this::poll);
+  private volatile boolean agentReachable = true;
+
+  /** Take agent samples from its push stream rather than the poller; cleared when the agent has no stream. */
+  private volatile boolean streamingEnabled = true;
+  /** Written under this. */
+  private volatile StatsSubscription subscription;
+  /** Set while the window is minimized; streamed samples are still persisted but not drawn. */
+  private volatile boolean minimized;
+
+  /** Minimum gap between onExportProgress() updates. */
+  private static final long EXPORT_PROGRESS_MS = 100;
+  private volatile boolean exportCancelled;
+  /** Set from the moment an export is accepted until its file is finished or deleted. */
+  private final AtomicBoolean exportRunning = new AtomicBoolean();
+
+  /** Minimum gap between onTraceProgress() updates, and addresses handed to the local engine per call. */
+  private static final long TRACE_PROGRESS_MS = 100;
+  private static final int TRACE_BATCH = 8192;
+
+  /** Threads for long simulations; one per job kind, so no kind waits on another. */
+  private static final int SIM_THREADS = 4;
+  /** Trace replays and other long simulations, kept off the pool that serves dashboard refreshes. */
+  private final BridgeExecutor simExecutor = new BridgeExecutor("SMCMAP-Sim", SIM_THREADS, SIM_THREADS);
+  private final SimJob traceJob = new SimJob("trace", "A trace replay", "onSimulationResult");
+  private final SimJob sweepJob = new SimJob("sweep", "A configuration comparison", "onSweepResult");
+  private final SimJob curveJob = new SimJob("mrc", "A miss-ratio curve", "onMissRatioCurve");
+  private final SimJob hierarchyJob = new SimJob("hierarchy", "A hierarchy simulation", "onHierarchyResult");
+
+  /** Upper bound on configurations in one comparison sweep. */
+  private static final int MAX_SWEEP_CONFIGS = 64;
+
+  /** Synthetic access stream behind every simulation that is not replaying a trace file. */
+  private volatile Workload workload = Workload.parse("uniform");
+
+  private static final LatencyHistogram FX_LAG = MetricsRegistry.global().histogram("fx.runLater.lag");
+  private static final LatencyHistogram SCRIPT_TIME = MetricsRegistry.global().histogram("fx.executeScript");
+  /** Where dumpMetrics() and shutdown write the registry, next to the database. */
+  private static final String METRICS_FILE = "smcmap-metrics.json";
+
+  /** SHARDS starting rate and tracked-block bound: a few MB of state, within a few percent of exact. */
+  private static final double MRC_SAMPLE_RATE = 0.1;
+  private static final int MRC_MAX_BLOCKS = 65536;
+
+  /**
+   * One kind of long simulation. At most one of each kind runs at a time; a
+   * request while it does is refused on the kind's result callback rather
+   * than merged into the running one. Each kind is cancelled on its own.
+   */
+  private static final class SimJob {
+    /** Sent as "job" in onTraceProgress() so the page cancels the right one. */
+    final String kind;
+    final String label;
+    final String callback;
+    final AtomicBoolean running = new AtomicBoolean();
+    volatile boolean cancelled;
+
+    SimJob(String kind, String label, String callback) {
+      this.kind = kind;
+      this.label = label;
+      this.callback = callback;
+    }
+  }
+
   public JavaBridge(SystemStatsService statsService, AnalysisPersistenceService persistenceService,
       WebEngine webEngine) {
+    this(statsService, persistenceService, new NodeRegistry(statsService), webEngine);
+  }
+
+  public JavaBridge(SystemStatsService statsService, AnalysisPersistenceService persistenceService,
+      NodeRegistry nodeRegistry, WebEngine webEngine) {
+    this(statsService, statsService, persistenceService, nodeRegistry, webEngine);
+  }
+
+  /**
+   * Bridge whose dashboard samples come from {@code statsSource} (for example
+   * a {@link com.smcmap.service.ProcStatsCollector}); cache configuration and
+   * agent-side simulations still go to {@code statsService}.
+   */
+  public JavaBridge(SystemStatsService statsService, StatsSource statsSource,
+      AnalysisPersistenceService persistenceService, NodeRegistry nodeRegistry, WebEngine webEngine) {
     this.statsService = statsService;
+    this.statsSource = statsSource;
     this.persistenceService = persistenceService;
+    this.nodeRegistry = nodeRegistry;
     this.webEngine = webEngine;
   }
 
+  /** Platform.runLater, recording how long the task waited for the FX thread. */
+  private static void runOnFx(Runnable task) {
+    long queued = System.nanoTime();
+    Platform.runLater(() -> {
+      FX_LAG.recordSince(queued);
+      task.run();
+    });
+  }
+
+  /** WebEngine.executeScript, timed. FX thread only. */
+  private Object executeScript(String script) {
+    long start = System.nanoTime();
+    try {
+      return webEngine.executeScript(script);
+    } finally {
+      SCRIPT_TIME.recordSince(start);
+    }
+  }
+
   /** Return real system info: OS, kernel, hostname, arch, java, cpu cores. */
   public void loadSystemInfo() {
     String osName = System.getProperty("os.name", "Unknown");
@@ -55,90 +195,249 @@ public class JavaBridge {
     }
     String userName = System.getProperty("user.name", "admin");
 
-    String json = "{\"osName\":\"" + esc(osName) + "\""
-        + ",\"kernel\":\"" + esc(osVersion) + "\""
-        + ",\"arch\":\"" + esc(arch) + "\""
-        + ",\"hostname\":\"" + esc(hostname) + "\""
-        + ",\"javaVersion\":\"" + esc(javaVersion) + "\""
+    String json = "{\"osName\":\"" + DashboardJson.esc(osName) + "\""
+        + ",\"kernel\":\"" + DashboardJson.esc(osVersion) + "\""
+        + ",\"arch\":\"" + DashboardJson.esc(arch) + "\""
+        + ",\"hostname\":\"" + DashboardJson.esc(hostname) + "\""
+        + ",\"javaVersion\":\"" + DashboardJson.esc(javaVersion) + "\""
         + ",\"cpuCores\":" + cpuCores
-        + ",\"userName\":\"" + esc(userName) + "\""
+        + ",\"userName\":\"" + DashboardJson.esc(userName) + "\""
+        + ",\"nodes\":" + nodeIdsJson()
         + "}";
-    Platform.runLater(() -> {
-      webEngine.executeScript("onSystemInfo('" + escJs(json) + "')");
+    runOnFx(() -> {
+      executeScript("onSystemInfo('" + DashboardJson.escJs(json) + "')");
     });
   }
 
   /** Kill a process by PID. Called from JS. */
   public void killProcess(int pid, String name) {
     System.out.println("[SMCMAP] Kill request: PID=" + pid + " Name=" + name);
-    new Thread(() -> {
+    executor.coalesce("kill:" + pid, () -> {
       try {
-        String msg = statsService.killProcess(pid);
-        Platform.runLater(() -> {
-          webEngine.executeScript(
-              "document.getElementById('proc-status').textContent='KILLED PID " + pid + ": " + esc(msg) + "';");
+        String msg = statsSource.killProcess(pid);
+        runOnFx(() -> {
+          executeScript(
+              "document.getElementById('proc-status').textContent='KILLED PID " + pid + ": " + DashboardJson.esc(msg) + "';");
           refresh();
         });
       } catch (Exception e) {
-        Platform.runLater(() -> {
-          webEngine.executeScript(
-              "document.getElementById('proc-status').textContent='KILL FAILED: " + esc(e.getMessage()) + "';");
+        runOnFx(() -> {
+          executeScript(
+              "document.getElementById('proc-status').textContent='KILL FAILED: " + DashboardJson.esc(e.getMessage()) + "';");
         });
       }
-    }).start();
+    });
   }
 
   /** Manual refresh trigger from JS. */
   public void refresh() {
-    new Thread(() -> {
+    poll();
+  }
+
+  /**
+   * One dashboard cycle: fetch, persist, and send the change since the last
+   * update. Shared by the poller and manual refreshes (concurrent calls join
+   * the one in flight); completes exceptionally when the agent is unreachable.
+   */
+  CompletableFuture<SystemStatsService.SystemDataResult> poll() {
+    return executor.coalesce("refresh", () -> {
+      SystemStatsService.SystemDataResult result;
+      long start = System.nanoTime();
       try {
-        SystemStatsService.SystemDataResult result = statsService.fetchStats();
-        persistenceService.saveSystemSnapshot(result.systemSnapshot);
-        Platform.runLater(() -> {
-          try {
-            String json = buildJson(result);
-            webEngine.executeScript("updateDashboard('" + escJs(json) + "')");
-          } catch (Exception ex) {
-            System.err.println("[SMCMAP] Refresh JS error: " + ex.getMessage());
-          }
-        });
+        result = statsSource.fetchStats();
       } catch (Exception e) {
-        System.err.println("[SMCMAP] Refresh failed: " + e.getMessage());
+        agentFailed(e);
+        throw e;
       }
-    }).start();
+      deliver(result, System.nanoTime() - start, true);
+      return result;
+    });
+  }
+
+  /**
+   * Record a sample, persist it and, if {@code draw}, send the dashboard the
+   * change since the last one. Shared by polls and streamed samples, which
+   * arrive on different threads.
+   */
+  private void deliver(SystemStatsService.SystemDataResult result, long latencyNanos, boolean draw) {
+    agentReachable = true;
+    nodeRegistry.getLocal().recordSuccess(latencyNanos, result.systemSnapshot);
+    persistenceService.saveSystemSnapshot(NodeRegistry.LOCAL_NODE_ID, result.systemSnapshot, result.processes);
+    if (!draw)
+      return;
+    // Deltas chain, so they must reach the FX queue in the order they were computed
+    synchronized (dashboardDelta) {
+      String script = "updateDashboard('" + DashboardJson.escJs(dashboardDelta.next(result)) + "')";
+      runOnFx(() -> {
+        try {
+          executeScript(script);
+        } catch (Exception ex) {
+          dashboardDelta.reset();
+          System.err.println("[SMCMAP] Refresh JS error: " + ex.getMessage());
+        }
+      });
+    }
+  }
+
+  private void agentFailed(Throwable error) {
+    nodeRegistry.getLocal().recordFailure(error);
+    // Only the transition is posted; repeated failures while backing off stay off the FX thread
+    if (agentReachable) {
+      agentReachable = false;
+      runOnFx(() -> {
+        try {
+          executeScript("document.getElementById('proc-status').textContent='AGENT DISCONNECTED'");
+        } catch (Exception ignored) {
+        }
+      });
+    }
+  }
+
+  /** Choose between the agent's push stream (the default) and polling. Call before startPolling(). */
+  public void setStreamingEnabled(boolean enabled) {
+    streamingEnabled = enabled;
+  }
+
+  /**
+   * Start dashboard updates (idempotent, so page reloads do not stack them):
+   * a subscription to the agent's stream when the agent is the source and
+   * streaming is enabled, else the adaptive poller.
+   */
+  public void startPolling() {
+    if (!streamingEnabled || statsSource != statsService) {
+      poller.start();
+      return;
+    }
+    synchronized (this) {
+      if (subscription != null)
+        return;
+      subscription = statsService.subscribe(new StatsSubscription.Listener() {
+        @Override
+        public void onSample(long seq, SystemStatsService.SystemDataResult result) {
+          StatsSubscription s = subscription;
+          double lagMs = s != null ? s.getLastLagMs() : -1;
+          deliver(result, lagMs < 0 ? 0 : (long) (lagMs * 1e6), !minimized);
+        }
+
+        @Override
+        public void onDisconnect(Throwable error) {
+          agentFailed(error);
+        }
+
+        @Override
+        public void onUnsupported() {
+          System.out.println("[SMCMAP] Falling back to polling.");
+          streamingEnabled = false;
+          poller.start();
+        }
+      });
+    }
+  }
+
+  /** True while dashboard samples arrive over the agent's stream. */
+  private boolean isStreaming() {
+    return streamingEnabled && statsSource == statsService && subscription != null;
+  }
+
+  /** Window state from the stage: polling slows down while minimized or unfocused. */
+  public void setWindowState(boolean minimized, boolean focused) {
+    boolean wasMinimized = this.minimized;
+    this.minimized = minimized;
+    // The table was not drawn while minimized; start again from a full one
+    if (wasMinimized && !minimized)
+      dashboardDelta.reset();
+    poller.setWindowState(minimized, focused);
+  }
+
+  /** Called from JS when it lost track of the process table (page reload, missed delta). */
+  public void resyncDashboard() {
+    dashboardDelta.reset();
   }
 
   /** Fetch analytics history with timestamps and send to JS. */
   public void loadAnalytics() {
-    new Thread(() -> {
-      List<String[]> history = persistenceService.getHistoricalSnapshotsWithTime(100);
-      int count = persistenceService.getSnapshotCount();
+    loadNodeAnalytics(NodeRegistry.LOCAL_NODE_ID);
+  }
+
+  /** Recent history of one agent node. */
+  public void loadNodeAnalytics(String nodeId) {
+    executor.coalesce("analytics:" + nodeId, () -> {
+      SnapshotSeries history = persistenceService.getRecentSeries(nodeId, 100);
+      int count = persistenceService.getSnapshotCount(nodeId);
+      long dbSize = persistenceService.getDbSizeKB();
+
+      StringBuilder sb = new StringBuilder("{\"count\":").append(count);
+      sb.append(",\"dbSizeKB\":").append(dbSize);
+      sb.append(",\"records\":[");
+      for (int i = 0; i < history.size(); i++) {
+        if (i > 0)
+          sb.append(",");
+        sb.append("{\"totalRam\":").append(history.getTotalRam(i));
+        sb.append(",\"usedRam\":").append(history.getUsedRam(i));
+        sb.append(",\"freeRam\":").append(history.getFreeRam(i));
+        sb.append(",\"timestampMs\":").append(history.getTimestamp(i)).append("}");
+      }
+      sb.append("]}");
+      String json = sb.toString();
+      runOnFx(() -> {
+        executeScript("updateAnalytics('" + DashboardJson.escJs(json) + "')");
+      });
+    });
+  }
+
+  /**
+   * Fetch analytics history for the last N minutes at roughly ANALYTICS_POINTS
+   * points. Long ranges are served from the rollup tiers, not raw rows.
+   */
+  public void loadAnalyticsRange(int minutes) {
+    loadNodeAnalyticsRange(NodeRegistry.LOCAL_NODE_ID, minutes);
+  }
+
+  /** Ranged history of one agent node, read from that node's rows and rollups only. */
+  public void loadNodeAnalyticsRange(String nodeId, int minutes) {
+    executor.coalesce("analytics:" + nodeId + ":" + minutes, () -> {
+      long now = System.currentTimeMillis();
+      long rangeMs = minutes * 60_000L;
+      long resolutionMs = Math.max(1000, rangeMs / ANALYTICS_POINTS);
+      List<SnapshotRollup> history = persistenceService.getRollupHistory(nodeId, now - rangeMs, now,
+          resolutionMs);
+      int count = persistenceService.getSnapshotCount(nodeId);
       long dbSize = persistenceService.getDbSizeKB();
 
       StringBuilder sb = new StringBuilder("{\"count\":").append(count);
       sb.append(",\"dbSizeKB\":").append(dbSize);
+      sb.append(",\"tier\":\"").append(persistenceService.tierFor(resolutionMs)).append("\"");
       sb.append(",\"records\":[");
       for (int i = 0; i < history.size(); i++) {
-        String[] row = history.get(i);
+        SnapshotRollup r = history.get(i);
         if (i > 0)
           sb.append(",");
-        sb.append("{\"totalRam\":").append(row[0]);
-        sb.append(",\"usedRam\":").append(row[1]);
-        sb.append(",\"freeRam\":").append(row[2]);
-        sb.append(",\"timestamp\":\"").append(row[3] != null ? row[3] : "N/A").append("\"}");
+        sb.append("{\"totalRam\":").append(r.getTotalRam());
+        sb.append(",\"usedRam\":").append(r.getAvgUsedRam());
+        sb.append(",\"minUsedRam\":").append(r.getMinUsedRam());
+        sb.append(",\"maxUsedRam\":").append(r.getMaxUsedRam());
+        sb.append(",\"freeRam\":").append(r.getAvgFreeRam());
+        sb.append(",\"samples\":").append(r.getSampleCount());
+        sb.append(",\"timestampMs\":").append(r.getBucketStart()).append("}");
       }
       sb.append("]}");
       String json = sb.toString();
-      Platform.runLater(() -> {
-        webEngine.executeScript("updateAnalytics('" + escJs(json) + "')");
+      runOnFx(() -> {
+        executeScript("updateAnalytics('" + DashboardJson.escJs(json) + "')");
       });
-    }).start();
+    });
   }
 
   /** Load node info: latency, uptime, connection details. */
   public void loadNodeInfo() {
-    new Thread(() -> {
-      long latency = statsService.measureLatency();
+    executor.coalesce("nodeInfo", () -> {
+      // Every /api/stats call and streamed sample is already timed; no extra probe request
+      StatsSubscription stream = isStreaming() ? subscription : null;
+      double rtt = stream != null ? stream.getLastLagMs() : statsSource.getLastRoundTripMs();
+      String latencyMetric = stream != null ? "stream.lag" : statsSource.getLatencyMetric();
+      int failures = stream != null ? stream.getConsecutiveFailures() : poller.getConsecutiveFailures();
+      LatencyHistogram rtts = MetricsRegistry.global().histogram(latencyMetric);
+      long latency = failures > 0 || rtt < 0 ? -1 : Math.round(rtts.percentile(0.5) / 1e6);
       long uptimeSec = (System.currentTimeMillis() - startTimeMs) / 1000;
       int snapshots = persistenceService.getSnapshotCount();
       long dbSize = persistenceService.getDbSizeKB();
@@ -147,182 +446,614 @@ public class JavaBridge {
           + ",\"uptimeSec\":" + uptimeSec
           + ",\"totalSnapshots\":" + snapshots
           + ",\"dbSizeKB\":" + dbSize
-          + ",\"agentUrl\":\"http://127.0.0.1:8080\""
+          + ",\"rttMs\":" + String.format(java.util.Locale.ROOT, "%.2f", rtt)
+          + ",\"pollIntervalMs\":" + poller.getIntervalMs()
+          + ",\"skippedTicks\":" + poller.getSkippedTicks()
+          + ",\"pollFailures\":" + failures
+          + ",\"transport\":\"" + (stream != null ? "stream" : "poll") + "\""
+          + ",\"agentUrl\":\"" + DashboardJson.esc(statsSource.getEndpoint()) + "\""
+          + ",\"latencyMetric\":\"" + latencyMetric + "\""
+          + ",\"nodes\":" + nodesJson()
+          + ",\"metrics\":" + MetricsRegistry.global().toJson()
           + ",\"status\":\"" + (latency >= 0 ? "CONNECTED" : "DISCONNECTED") + "\""
           + "}";
-      Platform.runLater(() -> {
-        webEngine.executeScript("updateNodeInfo('" + escJs(json) + "')");
+      runOnFx(() -> {
+        executeScript("updateNodeInfo('" + DashboardJson.escJs(json) + "')");
       });
-    }).start();
+    });
+  }
+
+  /** Write the metrics registry to METRICS_FILE; returns its path, or an error message. */
+  public String dumpMetrics() {
+    Path file = Paths.get(METRICS_FILE);
+    try {
+      MetricsRegistry.global().dump(file);
+      return file.toAbsolutePath().toString();
+    } catch (IOException e) {
+      System.err.println("[SMCMAP] Failed to write metrics: " + e.getMessage());
+      return "error: " + e.getMessage();
+    }
+  }
+
+  /** Ids of all registered nodes as a JSON array, primary first. */
+  private String nodeIdsJson() {
+    StringBuilder sb = new StringBuilder("[");
+    for (AgentNode n : nodeRegistry.getNodes()) {
+      if (sb.length() > 1)
+        sb.append(",");
+      sb.append("\"").append(DashboardJson.esc(n.getId())).append("\"");
+    }
+    return sb.append("]").toString();
   }
 
-  /** Update cache config on the C++ agent. */
-  public void updateCacheConfig(int sizeKB, int blockSize, String policy) {
-    new Thread(() -> {
+  /** Health and last sample of every registered node. */
+  private String nodesJson() {
+    StringBuilder sb = new StringBuilder("[");
+    for (AgentNode n : nodeRegistry.getNodes()) {
+      if (sb.length() > 1)
+        sb.append(",");
+      SystemSnapshot last = n.getLastSnapshot();
+      sb.append("{\"id\":\"").append(DashboardJson.esc(n.getId())).append("\"");
+      sb.append(",\"url\":\"").append(DashboardJson.esc(n.getUrl())).append("\"");
+      sb.append(",\"health\":\"").append(n.getHealth()).append("\"");
+      sb.append(",\"rttMs\":").append(String.format(java.util.Locale.ROOT, "%.2f", n.getLastRttMs()));
+      sb.append(",\"failures\":").append(n.getConsecutiveFailures());
+      sb.append(",\"lastSeenMs\":").append(n.getLastSeenMs());
+      sb.append(",\"usedRam\":").append(last != null ? last.getUsedRam() : -1);
+      sb.append(",\"totalRam\":").append(last != null ? last.getTotalRam() : -1);
+      String err = n.getLastError();
+      if (err != null)
+        sb.append(",\"error\":\"").append(DashboardJson.esc(err)).append("\"");
+      sb.append("}");
+    }
+    return sb.append("]").toString();
+  }
+
+  /** Update cache config on the local engine and, unless engine is "local", on the C++ agent. */
+  public void updateCacheConfig(int sizeKB, int blockSize, String policy, String engine) {
+    executor.coalesce("config:" + sizeKB + ":" + blockSize + ":" + policy + ":" + engine, () -> {
       try {
-        String result = statsService.updateCacheConfig(sizeKB * 1024L, blockSize, policy);
-        Platform.runLater(() -> {
-          webEngine.executeScript("onConfigResult('" + esc(result) + "')");
+        localEngine = new CacheSimulationEngine(sizeKB * 1024L, blockSize, policy);
+        String result = "local".equalsIgnoreCase(engine) ? "success"
+            : statsService.updateCacheConfig(sizeKB * 1024L, blockSize, policy);
+        runOnFx(() -> {
+          executeScript("onConfigResult('" + DashboardJson.esc(result) + "')");
         });
       } catch (Exception e) {
-        Platform.runLater(() -> {
-          webEngine.executeScript("onConfigResult('error: " + esc(e.getMessage()) + "')");
+        runOnFx(() -> {
+          executeScript("onConfigResult('error: " + DashboardJson.esc(e.getMessage()) + "')");
         });
       }
-    }).start();
+    });
+  }
+
+  /**
+   * Pick the synthetic workload for simulations, sweeps, curves and hierarchy
+   * runs, as a {@link Workload#parse} spec such as "zipf:blocks=65536,theta=0.99".
+   *
+   * @return "success", or the reason the spec was rejected
+   */
+  public String setWorkload(String spec) {
+    try {
+      workload = Workload.parse(spec);
+      return "success";
+    } catch (RuntimeException e) {
+      return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
   }
 
-  /** Run cache simulation with N random accesses. */
-  public void runCacheSimulation(int count) {
-    new Thread(() -> {
+  /** Run cache simulation with N accesses of the workload on the agent or, for engine "local", in-process. */
+  public void runCacheSimulation(int count, String engine) {
+    Workload w = workload;
+    executor.coalesce("simulate:" + engine + ":" + count + ":" + w, () -> {
       try {
-        String result = statsService.simulateCacheAccesses(count);
-        Platform.runLater(() -> {
-          webEngine.executeScript("onSimulationResult('" + escJs(result) + "')");
+        String result = "local".equalsIgnoreCase(engine) ? runLocalSimulation(w, count)
+            : statsService.simulateCacheAccesses(w, count);
+        runOnFx(() -> {
+          executeScript("onSimulationResult('" + DashboardJson.escJs(result) + "')");
         });
       } catch (Exception e) {
-        Platform.runLater(() -> {
-          webEngine.executeScript("onSimulationResult('{\"error\":\"" + esc(e.getMessage()) + "\"}')");
+        runOnFx(() -> {
+          executeScript("onSimulationResult('{\"error\":\"" + DashboardJson.esc(e.getMessage()) + "\"}')");
         });
       }
-    }).start();
+    });
   }
 
-  public void exportStats(String format) {
-    new Thread(() -> {
+  /**
+   * Same access stream the agent path sends, fed straight into the Java
+   * engine. Runs on the same engine queue up behind each other; a
+   * reconfiguration meanwhile swaps in a new engine without waiting.
+   */
+  private String runLocalSimulation(Workload w, int count) throws IOException {
+    CacheSimulationEngine engine = localEngine;
+    CacheSweep.TraceSource addresses = w.source(count);
+    long[] batch = new long[TRACE_BATCH];
+    synchronized (engine) {
+      int n;
+      while (!closing && (n = addresses.read(batch, 0, batch.length)) > 0)
+        engine.accessAll(batch, 0, n);
+      return engine.getResult().toJson();
+    }
+  }
+
+  /**
+   * Ask for an address trace file (hex, Dinero .din or SMT1) and replay it on
+   * the agent or, for engine "local", into a fresh Java engine with the current
+   * cache config. The file is decoded through memory-mapped windows by
+   * {@link TraceFileReader}, so trace size is bounded by disk, not heap.
+   * Progress goes to onTraceProgress() and {@link #cancelTrace} stops it.
+   */
+  public void replayTrace(String engine) {
+    withTraceFile("Replay Address Trace", traceJob, file -> runTrace(file, engine));
+  }
+
+  /** Ask for a trace file, then run {@code task} on it as {@code job}. */
+  private void withTraceFile(String title, SimJob job, java.util.function.Consumer<File> task) {
+    runOnFx(() -> {
+      if (job.running.get()) {
+        postJobError(job, job.label + " is already running");
+        return;
+      }
+      FileChooser fileChooser = new FileChooser();
+      fileChooser.setTitle(title);
+      fileChooser.getExtensionFilters().addAll(
+          new FileChooser.ExtensionFilter("Address Traces", "*.txt", "*.hex", "*.trace", "*.din", "*.smt"),
+          new FileChooser.ExtensionFilter("All Files", "*.*"));
+
+      File file = fileChooser.showOpenDialog(null);
+      if (file != null)
+        startJob(job, () -> task.accept(file));
+    });
+  }
+
+  /** Run {@code task} as {@code job} on the simulation pool, or report that one is already running. */
+  private void startJob(SimJob job, Runnable task) {
+    if (!job.running.compareAndSet(false, true)) {
+      postJobError(job, job.label + " is already running");
+      return;
+    }
+    job.cancelled = false;
+    simExecutor.submit(() -> {
       try {
-        List<String[]> snapshots = persistenceService.getSnapshotsLastMinutes(3);
-        if (snapshots.isEmpty()) {
-          System.out.println("[SMCMAP] No data available for the last 3 minutes to export.");
-          return;
-        }
+        task.run();
+      } finally {
+        job.running.set(false);
+      }
+    }).exceptionally(e -> {
+      // Refused by a full or stopped pool; the task never ran
+      if (job.running.compareAndSet(true, false))
+        postJobError(job, e.getMessage() != null ? e.getMessage() : e.toString());
+      return null;
+    });
+  }
 
-        Platform.runLater(() -> {
-          FileChooser fileChooser = new FileChooser();
-          fileChooser.setTitle("Save Stats");
-          fileChooser.setInitialFileName("smcmap_stats_" + System.currentTimeMillis());
-
-          if ("json".equalsIgnoreCase(format)) {
-            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON Files", "*.json"));
-          } else if ("md".equalsIgnoreCase(format)) {
-            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Markdown Files", "*.md"));
-          } else if ("pdf".equalsIgnoreCase(format)) {
-            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PDF Documents", "*.pdf"));
-          }
-
-          File file = fileChooser.showSaveDialog(null);
-          if (file != null) {
-            new Thread(() -> saveToFile(file, format, snapshots)).start();
-          }
-        });
+  private void postJobError(SimJob job, String msg) {
+    runOnFx(() -> {
+      executeScript(job.callback + "('{\"error\":\"" + DashboardJson.esc(msg) + "\"}')");
+    });
+  }
 
-      } catch (Exception e) {
-        e.printStackTrace();
+  /** Stop the running trace replay at the next batch. */
+  public void cancelTrace() {
+    traceJob.cancelled = true;
+  }
+
+  private void runTrace(File file, String engine) {
+    long startNs = System.nanoTime();
+    String result;
+    try (TraceFileReader reader = TraceFileReader.open(file.toPath())) {
+      reader.setProgressListener(traceProgress(traceJob, file, startNs));
+      postTraceProgress(traceJob, "running", reader, startNs, file.getName());
+      if ("local".equalsIgnoreCase(engine)) {
+        CacheSimulationEngine config = localEngine;
+        CacheSimulationEngine sim = new CacheSimulationEngine(config.getCacheSize(), config.getBlockSize(),
+            config.getPolicy());
+        long[] batch = new long[TRACE_BATCH];
+        int n;
+        while ((n = reader.read(batch, 0, batch.length)) > 0)
+          sim.accessAll(batch, 0, n);
+        result = sim.getResult().toJson();
+      } else {
+        result = statsService.simulateCacheTrace(reader);
+      }
+      if (reader.isCancelled()) {
+        System.out.println("[SMCMAP] Trace replay cancelled.");
+        postTraceProgress(traceJob, "cancelled", reader, startNs, file.getName());
+        return;
+      }
+      System.out.println("[SMCMAP] Replayed " + reader.getCount() + " accesses from " + file.getAbsolutePath());
+      postTraceProgress(traceJob, "done", reader, startNs, file.getName());
+    } catch (Exception e) {
+      System.err.println("[SMCMAP] Error replaying trace: " + e.getMessage());
+      e.printStackTrace();
+      String msg = e.getMessage() != null ? e.getMessage() : e.toString();
+      runOnFx(() -> {
+        executeScript("onSimulationResult('{\"error\":\"" + DashboardJson.esc(msg) + "\"}')");
+      });
+      return;
+    }
+    runOnFx(() -> {
+      executeScript("onSimulationResult('" + DashboardJson.escJs(result) + "')");
+    });
+  }
+
+  /** Posts throttled onTraceProgress() updates and stops the reader once {@code job} is cancelled. */
+  private TraceFileReader.ProgressListener traceProgress(SimJob job, File file, long startNs) {
+    long[] lastPost = { 0 };
+    return r -> {
+      long now = System.currentTimeMillis();
+      if (now - lastPost[0] >= TRACE_PROGRESS_MS) {
+        lastPost[0] = now;
+        postTraceProgress(job, "running", r, startNs, file.getName());
       }
-    }).start();
+      return !job.cancelled;
+    };
   }
 
-  private void saveToFile(File file, String format, List<String[]> snapshots) {
+  private void postTraceProgress(SimJob job, String state, TraceFileReader reader, long startNs, String name) {
+    long size = reader.getSize();
+    double secs = Math.max(1e-9, (System.nanoTime() - startNs) / 1e9);
+    StringBuilder json = new StringBuilder(128);
+    json.append("{\"job\":\"").append(job.kind).append("\",\"state\":\"").append(state).append("\",\"pct\":")
+        .append(size > 0 ? (int) (100 * reader.getPosition() / size) : 100)
+        .append(",\"accesses\":").append(reader.getCount())
+        .append(",\"mbPerSec\":")
+        .append(String.format(java.util.Locale.ROOT, "%.1f", reader.getPosition() / secs / 1e6))
+        .append(",\"format\":\"").append(reader.getFormat()).append('"')
+        .append(",\"file\":\"").append(DashboardJson.escJsonStr(name)).append("\"}");
+    String script = "onTraceProgress('" + DashboardJson.escJs(json.toString()) + "')";
+    runOnFx(() -> {
+      try {
+        executeScript(script);
+      } catch (Exception ignored) {
+        // Page without the trace panel
+      }
+    });
+  }
+
+  /**
+   * Compare every combination of {@code policies}, cache sizes in KB and
+   * block sizes (each comma-separated, e.g. "FIFO,LRU,LFU", "64,256,1024",
+   * "32,64") on the first {@code count} accesses of the selected workload. All
+   * configurations run side by side on the local engine (see
+   * {@link CacheSweep}); the table goes to onSweepResult().
+   */
+  public void runCacheSweep(String policies, String sizesKB, String blockSizes, int count) {
+    startJob(sweepJob, () -> runSweep(policies, sizesKB, blockSizes, count, null));
+  }
+
+  /** Same comparison over a trace file picked by the user; progress goes to onTraceProgress(). */
+  public void runCacheSweepTrace(String policies, String sizesKB, String blockSizes) {
+    withTraceFile("Compare Configurations on Trace", sweepJob, file -> runSweep(policies, sizesKB, blockSizes, 0, file));
+  }
+
+  /** Stop the running configuration comparison at the next batch. */
+  public void cancelCacheSweep() {
+    sweepJob.cancelled = true;
+  }
+
+  private void runSweep(String policies, String sizesKB, String blockSizes, int count, File file) {
     try {
-      if ("json".equalsIgnoreCase(format)) {
-        JsonArray array = new JsonArray();
-        for (String[] snap : snapshots) {
-          JsonObject obj = new JsonObject();
-          obj.addProperty("totalRamMB", Long.parseLong(snap[0]));
-          obj.addProperty("usedRamMB", Long.parseLong(snap[1]));
-          obj.addProperty("freeRamMB", Long.parseLong(snap[2]));
-          obj.addProperty("timestamp", snap[3]);
-          array.add(obj);
+      CacheSweep sweep = new CacheSweep().addAll(parseList(policies, s -> s.toUpperCase(java.util.Locale.ROOT)),
+          parseList(sizesKB, s -> Long.parseLong(s) * 1024L), parseList(blockSizes, Long::parseLong));
+      if (sweep.size() == 0 || sweep.size() > MAX_SWEEP_CONFIGS)
+        throw new IllegalArgumentException("Pick between 1 and " + MAX_SWEEP_CONFIGS + " configurations");
+      long startNs = System.nanoTime();
+      List<CacheSweep.Row> rows;
+      if (file == null) {
+        rows = sweep.run(workload.source(count), () -> sweepJob.cancelled);
+      } else {
+        try (TraceFileReader reader = TraceFileReader.open(file.toPath())) {
+          reader.setProgressListener(traceProgress(sweepJob, file, startNs));
+          postTraceProgress(sweepJob, "running", reader, startNs, file.getName());
+          rows = sweep.run(reader::read, () -> sweepJob.cancelled);
+          postTraceProgress(sweepJob, sweepJob.cancelled ? "cancelled" : "done", reader, startNs, file.getName());
         }
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
-        try (FileWriter writer = new FileWriter(file)) {
-          writer.write(gson.toJson(array));
+      }
+      System.out.println("[SMCMAP] Compared " + sweep.size() + " cache configurations over " + sweep.getAccesses()
+          + " accesses in " + (System.nanoTime() - startNs) / 1_000_000 + " ms");
+      String result = CacheSweep.toJson(rows);
+      runOnFx(() -> {
+        executeScript("onSweepResult('" + DashboardJson.escJs(result) + "')");
+      });
+    } catch (Exception e) {
+      System.err.println("[SMCMAP] Error running cache sweep: " + e.getMessage());
+      e.printStackTrace();
+      String msg = e.getMessage() != null ? e.getMessage() : e.toString();
+      runOnFx(() -> {
+        executeScript("onSweepResult('{\"error\":\"" + DashboardJson.esc(msg) + "\"}')");
+      });
+    }
+  }
+
+  /**
+   * Compute the LRU miss-ratio curve of the first {@code count} workload accesses for
+   * every cache size in one pass (see {@link MissRatioCurve}). {@code mode}
+   * is "exact" or "shards" for bounded-memory sampling; the curve goes to
+   * onMissRatioCurve().
+   */
+  public void runMissRatioCurve(String mode, int blockSize, int count) {
+    startJob(curveJob, () -> runCurve(mode, blockSize, count, null));
+  }
+
+  /** Same curve over a trace file picked by the user; progress goes to onTraceProgress(). */
+  public void runMissRatioCurveTrace(String mode, int blockSize) {
+    withTraceFile("Miss-Ratio Curve of Trace", curveJob, file -> runCurve(mode, blockSize, 0, file));
+  }
+
+  /** Stop the running miss-ratio curve at the next batch. */
+  public void cancelMissRatioCurve() {
+    curveJob.cancelled = true;
+  }
+
+  private void runCurve(String mode, int blockSize, int count, File file) {
+    try {
+      MissRatioCurve curve = "shards".equalsIgnoreCase(mode)
+          ? MissRatioCurve.sampled(blockSize, MRC_SAMPLE_RATE, MRC_MAX_BLOCKS)
+          : MissRatioCurve.exact(blockSize);
+      long startNs = System.nanoTime();
+      long[] batch = new long[TRACE_BATCH];
+      int n;
+      if (file == null) {
+        CacheSweep.TraceSource source = workload.source(count);
+        while (!curveJob.cancelled && (n = source.read(batch, 0, batch.length)) > 0)
+          curve.accessAll(batch, 0, n);
+      } else {
+        try (TraceFileReader reader = TraceFileReader.open(file.toPath())) {
+          reader.setProgressListener(traceProgress(curveJob, file, startNs));
+          postTraceProgress(curveJob, "running", reader, startNs, file.getName());
+          while ((n = reader.read(batch, 0, batch.length)) > 0)
+            curve.accessAll(batch, 0, n);
+          postTraceProgress(curveJob, reader.isCancelled() ? "cancelled" : "done", reader, startNs, file.getName());
         }
-      } else if ("md".equalsIgnoreCase(format)) {
-        try (FileWriter writer = new FileWriter(file)) {
-          writer.write("# SMCMAP System Statistics (Last 3 Minutes)\n\n");
-          writer.write("| Timestamp | Total RAM (MB) | Used RAM (MB) | Free RAM (MB) |\n");
-          writer.write("|---|---|---|---|\n");
-          for (String[] snap : snapshots) {
-            writer.write(String.format("| %s | %s | %s | %s |\n", snap[3], snap[0], snap[1], snap[2]));
-          }
+      }
+      System.out.println("[SMCMAP] Miss-ratio curve over " + curve.getAccesses() + " accesses in "
+          + (System.nanoTime() - startNs) / 1_000_000 + " ms");
+      String result = curve.toJson();
+      runOnFx(() -> {
+        executeScript("onMissRatioCurve('" + DashboardJson.escJs(result) + "')");
+      });
+    } catch (Exception e) {
+      System.err.println("[SMCMAP] Error computing miss-ratio curve: " + e.getMessage());
+      e.printStackTrace();
+      String msg = e.getMessage() != null ? e.getMessage() : e.toString();
+      runOnFx(() -> {
+        executeScript("onMissRatioCurve('{\"error\":\"" + DashboardJson.esc(msg) + "\"}')");
+      });
+    }
+  }
+
+  /**
+   * Simulate {@code count} workload accesses through a set-associative cache
+   * hierarchy (see {@link CacheHierarchy}) described by {@code configJson}:
+   * <pre>
+   * {"blockSize":64,"inclusion":"INCLUSIVE","memoryLatency":200,
+   *  "levels":[{"name":"L1","sizeKB":32,"ways":8,"policy":"LRU","latency":4}, ...]}
+   * </pre>
+   * Per-level hits and misses plus AMAT go to onHierarchyResult().
+   */
+  public void runHierarchySimulation(String configJson, int count) {
+    startJob(hierarchyJob, () -> runHierarchy(configJson, count, null));
+  }
+
+  /** Same simulation over a trace file picked by the user; progress goes to onTraceProgress(). */
+  public void runHierarchySimulationTrace(String configJson) {
+    withTraceFile("Simulate Hierarchy on Trace", hierarchyJob, file -> runHierarchy(configJson, 0, file));
+  }
+
+  /** Stop the running hierarchy simulation at the next batch. */
+  public void cancelHierarchySimulation() {
+    hierarchyJob.cancelled = true;
+  }
+
+  private void runHierarchy(String configJson, int count, File file) {
+    try {
+      CacheHierarchy hierarchy = parseHierarchy(configJson);
+      long startNs = System.nanoTime();
+      long[] batch = new long[TRACE_BATCH];
+      int n;
+      if (file == null) {
+        CacheSweep.TraceSource source = workload.source(count);
+        while (!hierarchyJob.cancelled && (n = source.read(batch, 0, batch.length)) > 0)
+          hierarchy.accessAll(batch, 0, n);
+      } else {
+        try (TraceFileReader reader = TraceFileReader.open(file.toPath())) {
+          reader.setProgressListener(traceProgress(hierarchyJob, file, startNs));
+          postTraceProgress(hierarchyJob, "running", reader, startNs, file.getName());
+          while ((n = reader.read(batch, 0, batch.length)) > 0)
+            hierarchy.accessAll(batch, 0, n);
+          postTraceProgress(hierarchyJob, reader.isCancelled() ? "cancelled" : "done", reader, startNs, file.getName());
         }
+      }
+      String result = hierarchy.toJson();
+      runOnFx(() -> {
+        executeScript("onHierarchyResult('" + DashboardJson.escJs(result) + "')");
+      });
+    } catch (Exception e) {
+      System.err.println("[SMCMAP] Error simulating cache hierarchy: " + e.getMessage());
+      e.printStackTrace();
+      String msg = e.getMessage() != null ? e.getMessage() : e.toString();
+      runOnFx(() -> {
+        executeScript("onHierarchyResult('{\"error\":\"" + DashboardJson.esc(msg) + "\"}')");
+      });
+    }
+  }
+
+  private static CacheHierarchy parseHierarchy(String configJson) {
+    JsonObject config = JsonParser.parseString(configJson).getAsJsonObject();
+    CacheHierarchy hierarchy = new CacheHierarchy(
+        config.has("blockSize") ? config.get("blockSize").getAsLong() : 64,
+        CacheHierarchy.Inclusion.valueOf(config.get("inclusion").getAsString().toUpperCase(java.util.Locale.ROOT)),
+        config.get("memoryLatency").getAsInt());
+    JsonArray levels = config.getAsJsonArray("levels");
+    if (levels == null || levels.size() == 0)
+      throw new IllegalArgumentException("At least one cache level is required");
+    for (JsonElement e : levels) {
+      JsonObject level = e.getAsJsonObject();
+      hierarchy.addLevel(level.get("name").getAsString(), level.get("sizeKB").getAsLong() * 1024L,
+          level.get("ways").getAsInt(), level.get("policy").getAsString(), level.get("latency").getAsInt());
+    }
+    return hierarchy;
+  }
+
+  private static <T> List<T> parseList(String csv, java.util.function.Function<String, T> parse) {
+    List<T> values = new java.util.ArrayList<>();
+    for (String part : csv.split(",")) {
+      String s = part.trim();
+      if (!s.isEmpty())
+        values.add(parse.apply(s));
+    }
+    return values;
+  }
+
+  /** Export the primary agent's last three minutes. */
+  public void exportStats(String format) {
+    exportRange(format, NodeRegistry.LOCAL_NODE_ID, 3);
+  }
+
+  /**
+   * Ask for a target file, then stream the last {@code minutes} of raw samples
+   * of {@code nodeId} into it (see {@link #runExport}). One export runs at a
+   * time; a request while one is running gets the "busy" progress state.
+   * Progress goes to onExportProgress() and {@link #cancelExport} stops it.
+   */
+  public void exportRange(String format, String nodeId, int minutes) {
+    runOnFx(() -> {
+      if (exportRunning.get()) {
+        postExportProgress("busy", 0, 0, null);
+        return;
+      }
+      FileChooser fileChooser = new FileChooser();
+      fileChooser.setTitle("Save Stats");
+      fileChooser.setInitialFileName("smcmap_stats_" + System.currentTimeMillis());
+
+      if ("json".equalsIgnoreCase(format)) {
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSON Files", "*.json"));
+      } else if ("md".equalsIgnoreCase(format)) {
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Markdown Files", "*.md"));
+      } else if ("csv".equalsIgnoreCase(format)) {
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
       } else if ("pdf".equalsIgnoreCase(format)) {
-        try (PDDocument document = new PDDocument()) {
-          PDPage page = new PDPage();
-          document.addPage(page);
-
-          try (PDPageContentStream contentStream = new PDPageContentStream(document, page)) {
-            contentStream.beginText();
-            contentStream
-                .setFont(new org.apache.pdfbox.pdmodel.font.PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD), 12);
-            contentStream.setLeading(14.5f);
-            contentStream.newLineAtOffset(25, 750);
-
-            contentStream.showText("SMCMAP System Statistics (Last 3 Minutes)");
-            contentStream.newLine();
-            contentStream.newLine();
-
-            contentStream.setFont(new org.apache.pdfbox.pdmodel.font.PDType1Font(Standard14Fonts.FontName.HELVETICA),
-                10);
-            contentStream.showText("Timestamp               | Total RAM (MB) | Used RAM (MB) | Free RAM (MB)");
-            contentStream.newLine();
-            contentStream
-                .showText("-----------------------------------------------------------------------------------------");
-            contentStream.newLine();
-
-            for (String[] snap : snapshots) {
-              String row = String.format("%-25s | %-14s | %-13s | %-13s", snap[3], snap[0], snap[1], snap[2]);
-              contentStream.showText(row);
-              contentStream.newLine();
-            }
-            contentStream.endText();
-          }
-          document.save(file);
-        }
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PDF Documents", "*.pdf"));
+      }
+
+      File file = fileChooser.showSaveDialog(null);
+      if (file == null)
+        return;
+      // Another one may have started while the dialog was open
+      if (!exportRunning.compareAndSet(false, true)) {
+        postExportProgress("busy", 0, 0, null);
+        return;
       }
-      System.out.println("[SMCMAP] Successfully exported stats to " + file.getAbsolutePath());
+      exportCancelled = false;
+      long now = System.currentTimeMillis();
+      executor.submit(() -> {
+        try {
+          runExport(file, format, nodeId, now - minutes * 60_000L, now + 1, describeRange(nodeId, minutes));
+        } finally {
+          exportRunning.set(false);
+        }
+      }).exceptionally(e -> {
+        // Refused by a full or stopped pool; the task never ran
+        if (exportRunning.compareAndSet(true, false))
+          postExportProgress("error", 0, 0, e.getMessage());
+        return null;
+      });
+    });
+  }
+
+  /** Stop the running export at the next row; its partial file is deleted. */
+  public void cancelExport() {
+    exportCancelled = true;
+  }
+
+  private void runExport(File file, String format, String nodeId, long fromMs, long toMs, String title) {
+    long[] lastPost = { 0 };
+    postExportProgress("running", 0, 0, null);
+    long rows;
+    try (SnapshotExporter out = SnapshotExporter.open(file, format, title)) {
+      persistenceService.streamSeries(nodeId, fromMs, toMs, (ts, total, used, free) -> {
+        if (exportCancelled)
+          return false;
+        out.row(ts, total, used, free);
+        long now = System.currentTimeMillis();
+        if (now - lastPost[0] >= EXPORT_PROGRESS_MS) {
+          lastPost[0] = now;
+          postExportProgress("running", (int) (100 * (ts - fromMs) / (toMs - fromMs)), out.getRowCount(), null);
+        }
+        return true;
+      });
+      rows = out.getRowCount();
     } catch (IOException e) {
+      file.delete();
       System.err.println("[SMCMAP] Error exporting stats: " + e.getMessage());
       e.printStackTrace();
+      postExportProgress("error", 0, 0, e.getMessage());
+      return;
+    }
+    if (exportCancelled) {
+      file.delete();
+      System.out.println("[SMCMAP] Export cancelled.");
+      postExportProgress("cancelled", 0, rows, null);
+    } else if (rows == 0) {
+      file.delete();
+      System.out.println("[SMCMAP] No data available for " + title + " to export.");
+      postExportProgress("empty", 100, 0, null);
+    } else {
+      System.out.println("[SMCMAP] Successfully exported " + rows + " rows to " + file.getAbsolutePath());
+      postExportProgress("done", 100, rows, file.getAbsolutePath());
     }
   }
 
-  // --- JSON builders ---
-  private String buildJson(SystemStatsService.SystemDataResult result) {
-    StringBuilder sb = new StringBuilder();
-    sb.append("{");
-    sb.append("\"memory\":{");
-    sb.append("\"totalRam\":").append(result.systemSnapshot.getTotalRam()).append(",");
-    sb.append("\"usedRam\":").append(result.systemSnapshot.getUsedRam()).append(",");
-    sb.append("\"freeRam\":").append(result.systemSnapshot.getFreeRam());
-    sb.append("},");
-    sb.append("\"cache\":{");
-    sb.append("\"algorithm\":\"").append(result.cacheData.get("algorithm").getAsString()).append("\",");
-    sb.append("\"hits\":").append(result.cacheData.get("hits").getAsInt()).append(",");
-    sb.append("\"misses\":").append(result.cacheData.get("misses").getAsInt()).append(",");
-    sb.append("\"hitRatio\":").append(result.cacheData.get("hitRatio").getAsDouble());
-    sb.append("},");
-    sb.append("\"processes\":[");
-    for (int i = 0; i < result.processes.size(); i++) {
-      var p = result.processes.get(i);
-      if (i > 0)
-        sb.append(",");
-      sb.append("{\"pid\":").append(p.getPid());
-      sb.append(",\"name\":\"").append(p.getName().replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
-      sb.append(",\"memoryUsed\":").append(p.getMemoryUsed()).append("}");
-    }
-    sb.append("]}");
-    return sb.toString();
+  private void postExportProgress(String state, int pct, long rows, String detail) {
+    StringBuilder json = new StringBuilder(96);
+    json.append("{\"state\":\"").append(state).append("\",\"pct\":").append(pct)
+        .append(",\"rows\":").append(rows);
+    if (detail != null)
+      json.append(",\"detail\":\"").append(DashboardJson.escJsonStr(detail)).append('"');
+    json.append('}');
+    String script = "onExportProgress('" + DashboardJson.escJs(json.toString()) + "')";
+    runOnFx(() -> {
+      try {
+        executeScript(script);
+      } catch (Exception ignored) {
+        // Page without the progress panel
+      }
+    });
   }
 
-  private String escJs(String s) {
-    return s.replace("\\", "\\\\").replace("'", "\\'").replace("\n", "\\n").replace("\r", "");
+  private static String describeRange(String nodeId, int minutes) {
+    String range;
+    if (minutes % (24 * 60) == 0)
+      range = (minutes / (24 * 60)) + (minutes == 24 * 60 ? " Day" : " Days");
+    else if (minutes % 60 == 0)
+      range = (minutes / 60) + (minutes == 60 ? " Hour" : " Hours");
+    else
+      range = minutes + (minutes == 1 ? " Minute" : " Minutes");
+    String title = "SMCMAP System Statistics (Last " + range + ")";
+    return NodeRegistry.LOCAL_NODE_ID.equals(nodeId) ? title : title + " - " + nodeId;
   }
 
-  private String esc(String s) {
-    if (s == null)
-      return "null";
-    return s.replace("\\", "\\\\").replace("'", "\\'").replace("\"", "\\\"");
+  /**
+   * Stop accepting bridge calls and let in-flight ones finish (bounded by
+   * SHUTDOWN_TIMEOUT_MS) so nothing touches SQLite after it is closed.
+   */
+  public void shutdown() {
+    poller.stop();
+    synchronized (this) {
+      if (subscription != null)
+        subscription.close();
+    }
+    closing = true;
+    exportCancelled = true;
+    for (SimJob job : new SimJob[] { traceJob, sweepJob, curveJob, hierarchyJob })
+      job.cancelled = true;
+    simExecutor.shutdown(SHUTDOWN_TIMEOUT_MS);
+    executor.shutdown(SHUTDOWN_TIMEOUT_MS);
+    String dumped = dumpMetrics();
+    if (!dumped.startsWith("error"))
+      System.out.println("[SMCMAP] Metrics written to " + dumped);
   }
+
 }
@@ -0,0 +1,258 @@
+package com.smcmap.ui;
+
+import com.google.gson.stream.JsonWriter;
+import com.smcmap.model.SnapshotSeries;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+/**
+ * Writes snapshot history to JSON, Markdown, CSV or PDF files for "Save Stats".
+ *
+ * Rows are streamed: {@link #open} writes the header, each {@link #row} goes
+ * straight to the file, and {@link #close} writes the trailer. Nothing is
+ * buffered per row, so heap use does not depend on how many rows are
+ * exported. PDFs start a new page every ROWS_PER_PAGE rows and close each
+ * page's content stream as soon as it is full.
+ */
+public abstract class SnapshotExporter implements Closeable {
+
+  private static final long MB = 1024 * 1024;
+  private static final DateTimeFormatter EXPORT_TS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+      .withZone(ZoneId.systemDefault());
+
+  protected long rows;
+
+  /** Start an export of {@code format} ("json", "md", "csv" or "pdf") titled {@code title}. */
+  public static SnapshotExporter open(File file, String format, String title) throws IOException {
+    if ("json".equalsIgnoreCase(format))
+      return new JsonExporter(file);
+    if ("md".equalsIgnoreCase(format))
+      return new MarkdownExporter(file, title);
+    if ("csv".equalsIgnoreCase(format))
+      return new CsvExporter(file);
+    if ("pdf".equalsIgnoreCase(format))
+      return new PdfExporter(file, title);
+    throw new IOException("Unknown export format: " + format);
+  }
+
+  /** Write {@code snapshots} to {@code file} in one go. */
+  public static void write(File file, String format, SnapshotSeries snapshots) throws IOException {
+    try (SnapshotExporter out = open(file, format, "SMCMAP System Statistics (Last 3 Minutes)")) {
+      for (int i = 0; i < snapshots.size(); i++)
+        out.row(snapshots.getTimestamp(i), snapshots.getTotalRam(i), snapshots.getUsedRam(i),
+            snapshots.getFreeRam(i));
+    }
+  }
+
+  public abstract void row(long timestampMs, long totalRam, long usedRam, long freeRam) throws IOException;
+
+  /** Rows written so far. */
+  public long getRowCount() {
+    return rows;
+  }
+
+  private static String timestamp(long ms) {
+    return EXPORT_TS.format(Instant.ofEpochMilli(ms));
+  }
+
+  private static Writer textWriter(File file) throws IOException {
+    return Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  private static final class JsonExporter extends SnapshotExporter {
+    private final JsonWriter json;
+
+    JsonExporter(File file) throws IOException {
+      json = new JsonWriter(textWriter(file));
+      json.setIndent("  ");
+      json.beginArray();
+    }
+
+    @Override
+    public void row(long timestampMs, long totalRam, long usedRam, long freeRam) throws IOException {
+      json.beginObject();
+      json.name("totalRamMB").value(totalRam / MB);
+      json.name("usedRamMB").value(usedRam / MB);
+      json.name("freeRamMB").value(freeRam / MB);
+      json.name("timestamp").value(timestamp(timestampMs));
+      json.endObject();
+      rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        json.endArray();
+      } finally {
+        json.close();
+      }
+    }
+  }
+
+  private static final class MarkdownExporter extends SnapshotExporter {
+    private final Writer out;
+
+    MarkdownExporter(File file, String title) throws IOException {
+      out = textWriter(file);
+      out.write("# " + title + "\n\n");
+      out.write("| Timestamp | Total RAM (MB) | Used RAM (MB) | Free RAM (MB) |\n");
+      out.write("|---|---|---|---|\n");
+    }
+
+    @Override
+    public void row(long timestampMs, long totalRam, long usedRam, long freeRam) throws IOException {
+      out.write("| ");
+      out.write(timestamp(timestampMs));
+      out.write(" | ");
+      out.write(Long.toString(totalRam / MB));
+      out.write(" | ");
+      out.write(Long.toString(usedRam / MB));
+      out.write(" | ");
+      out.write(Long.toString(freeRam / MB));
+      out.write(" |\n");
+      rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  private static final class CsvExporter extends SnapshotExporter {
+    private final Writer out;
+
+    CsvExporter(File file) throws IOException {
+      out = new BufferedWriter(textWriter(file));
+      out.write("timestamp,timestamp_ms,total_ram_mb,used_ram_mb,free_ram_mb\n");
+    }
+
+    @Override
+    public void row(long timestampMs, long totalRam, long usedRam, long freeRam) throws IOException {
+      out.write(timestamp(timestampMs));
+      out.write(',');
+      out.write(Long.toString(timestampMs));
+      out.write(',');
+      out.write(Long.toString(totalRam / MB));
+      out.write(',');
+      out.write(Long.toString(usedRam / MB));
+      out.write(',');
+      out.write(Long.toString(freeRam / MB));
+      out.write('\n');
+      rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * One Helvetica text page per ROWS_PER_PAGE rows, built with PDFBox. Each
+   * page's content stream is closed as soon as the page fills, and the
+   * document caches closed streams in a temp file rather than on the heap,
+   * so only the current page is held in memory until {@link #close} saves.
+   */
+  private static final class PdfExporter extends SnapshotExporter {
+    private static final float TOP = 750;
+    private static final float BOTTOM = 40;
+    private static final float LEADING = 14.5f;
+    /** Lines per page minus the column header and rule repeated on every page. */
+    private static final int ROWS_PER_PAGE = (int) ((TOP - BOTTOM) / LEADING) - 2;
+
+    private final File file;
+    private final String title;
+    private final PDDocument document;
+    private final PDFont regular = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+    private final PDFont bold = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+    private PDPageContentStream page;
+    private int pageCount;
+    private int rowsLeft;
+
+    PdfExporter(File file, String title) {
+      this.file = file;
+      this.title = title;
+      document = new PDDocument(MemoryUsageSetting.setupTempFileOnly().streamCache);
+    }
+
+    private void newPage() throws IOException {
+      finishPage();
+      PDPage p = new PDPage();
+      document.addPage(p);
+      page = new PDPageContentStream(document, p);
+      page.beginText();
+      page.setLeading(LEADING);
+      page.newLineAtOffset(25, TOP);
+      rowsLeft = ROWS_PER_PAGE;
+      if (pageCount == 0) {
+        page.setFont(bold, 12);
+        line(title);
+        page.newLine();
+        rowsLeft -= 2;
+      }
+      page.setFont(regular, 10);
+      line("Timestamp               | Total RAM (MB) | Used RAM (MB) | Free RAM (MB)");
+      line("-----------------------------------------------------------------------------------------");
+    }
+
+    private void finishPage() throws IOException {
+      if (page == null)
+        return;
+      page.endText();
+      page.beginText();
+      page.setFont(regular, 8);
+      page.newLineAtOffset(25, BOTTOM - 20);
+      page.showText("Page " + (pageCount + 1));
+      page.endText();
+      page.close();
+      page = null;
+      pageCount++;
+    }
+
+    @Override
+    public void row(long timestampMs, long totalRam, long usedRam, long freeRam) throws IOException {
+      if (page == null || rowsLeft == 0)
+        newPage();
+      line(String.format("%-25s | %-14d | %-13d | %-13d",
+          timestamp(timestampMs), totalRam / MB, usedRam / MB, freeRam / MB));
+      rowsLeft--;
+      rows++;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        if (pageCount == 0 && page == null)
+          newPage();
+        finishPage();
+        document.save(file);
+      } finally {
+        document.close();
+      }
+    }
+
+    /** Show {@code s} and move to the next line. */
+    private void line(String s) throws IOException {
+      page.showText(s);
+      page.newLine();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.smcmap.agent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class StatsHistoryTest {
+
+  private static final String CACHE = "{\"algorithm\":\"LRU\",\"hits\":1,\"misses\":2,\"hitRatio\":0.33}";
+
+  /** pid -> name and memory, the way a client holds a table. */
+  private static Map<Integer, String> entries(StatsHistory.Table t) {
+    Map<Integer, String> m = new TreeMap<>();
+    for (int i = 0; i < t.pids.length; i++)
+      m.put(t.pids[i], t.names[i] + "=" + t.memory[i]);
+    return m;
+  }
+
+  private static StatsHistory.Table table(Map<Integer, String> m, long used) {
+    int n = m.size();
+    int[] pids = new int[n];
+    String[] names = new String[n];
+    long[] memory = new long[n];
+    int i = 0;
+    // Insert in reverse so the constructor's pid sort is exercised
+    for (Map.Entry<Integer, String> e : ((TreeMap<Integer, String>) m).descendingMap().entrySet()) {
+      String[] parts = e.getValue().split("=");
+      pids[i] = e.getKey();
+      names[i] = parts[0];
+      memory[i++] = Long.parseLong(parts[1]);
+    }
+    return new StatsHistory.Table(1000, used, 1000 - used, pids, names, memory, n, CACHE);
+  }
+
+  private static JsonObject parse(StringBuilder members) {
+    return JsonParser.parseString("{" + members + "}").getAsJsonObject();
+  }
+
+  /** Apply a delta body the way the dashboard does, by pid. */
+  private static Map<Integer, String> apply(Map<Integer, String> held, JsonObject delta) {
+    Map<Integer, String> m = new TreeMap<>(held);
+    for (JsonElement pid : delta.getAsJsonArray("removed"))
+      m.remove(pid.getAsInt());
+    for (JsonElement e : delta.getAsJsonArray("added")) {
+      JsonObject p = e.getAsJsonObject();
+      m.put(p.get("pid").getAsInt(), p.get("name").getAsString() + "=" + p.get("memoryUsed").getAsLong());
+    }
+    for (JsonElement e : delta.getAsJsonArray("changed")) {
+      JsonObject p = e.getAsJsonObject();
+      int pid = p.get("pid").getAsInt();
+      String name = m.get(pid).split("=")[0];
+      m.put(pid, name + "=" + p.get("memoryUsed").getAsLong());
+    }
+    return m;
+  }
+
+  @Test
+  void deltaFromAnyKeptVersionReproducesTheLatest() {
+    Random rnd = new Random(11);
+    StatsHistory history = new StatsHistory(8);
+    TreeMap<Integer, String> live = new TreeMap<>();
+    for (int pid = 1; pid <= 40; pid++)
+      live.put(pid, "p" + pid + "=" + rnd.nextInt(1000));
+    StatsHistory.Table[] seen = new StatsHistory.Table[200];
+    for (int step = 0; step < seen.length; step++) {
+      for (int k = rnd.nextInt(6); k > 0; k--) {
+        int pid = 1 + rnd.nextInt(60);
+        switch (rnd.nextInt(4)) {
+          case 0:
+            live.remove(pid);
+            break;
+          case 1:
+            live.put(pid, "q\"\\\u0001" + step + "=" + rnd.nextInt(1000));
+            break;
+          default:
+            if (live.containsKey(pid))
+              live.put(pid, live.get(pid).split("=")[0] + "=" + rnd.nextInt(1000));
+        }
+      }
+      seen[step] = history.add(table(live, step));
+
+      for (int back = 0; back <= Math.min(step, 7); back++) {
+        StatsHistory.Table base = seen[step - back];
+        if (base.version > seen[step].version - 8)
+          assertSame(base, history.find(base.version));
+        StringBuilder sb = new StringBuilder();
+        StatsHistory.appendDelta(sb, base, seen[step]);
+        JsonObject delta = parse(sb);
+        assertEquals(seen[step].version, delta.get("seq").getAsLong());
+        assertEquals(base.version, delta.get("base").getAsLong());
+        assertEquals(step, delta.getAsJsonObject("memory").get("usedRam").getAsLong());
+        assertEquals(entries(seen[step]), apply(entries(base), delta), "step " + step + " from " + back + " back");
+      }
+    }
+  }
+
+  @Test
+  void fullBodyListsEveryProcess() {
+    TreeMap<Integer, String> m = new TreeMap<>();
+    m.put(5, "five=50");
+    m.put(2, "two=20");
+    StatsHistory history = new StatsHistory(2);
+    StatsHistory.Table t = history.add(table(m, 3));
+    StringBuilder sb = new StringBuilder();
+    StatsHistory.appendFull(sb, t);
+    JsonObject full = parse(sb);
+    assertEquals(1, full.get("seq").getAsLong());
+    assertEquals(2, full.getAsJsonArray("processes").size());
+    assertEquals(2, full.getAsJsonArray("processes").get(0).getAsJsonObject().get("pid").getAsInt());
+    assertEquals("LRU", full.getAsJsonObject("cache").get("algorithm").getAsString());
+  }
+
+  @Test
+  void identicalSampleKeepsItsVersionAndOldOnesAge() {
+    TreeMap<Integer, String> m = new TreeMap<>();
+    m.put(1, "a=1");
+    StatsHistory history = new StatsHistory(2);
+    StatsHistory.Table first = history.add(table(m, 1));
+    assertSame(first, history.add(table(m, 1)));
+    StatsHistory.Table second = history.add(table(m, 2));
+    assertNotSame(first, second);
+    assertEquals(2, second.version);
+    history.add(table(m, 3));
+    assertNull(history.find(first.version), "capacity 2 keeps only the last two");
+    assertSame(second, history.find(2));
+  }
+}
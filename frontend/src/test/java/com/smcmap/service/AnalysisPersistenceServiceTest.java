@@ -0,0 +1,88 @@
+package com.smcmap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.smcmap.model.SystemSnapshot;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnalysisPersistenceServiceTest {
+
+  @TempDir
+  Path dir;
+
+  private static SystemSnapshot snapshot(long used) {
+    SystemSnapshot s = new SystemSnapshot();
+    s.setTotalRam(1000);
+    s.setUsedRam(used);
+    s.setFreeRam(1000 - used);
+    return s;
+  }
+
+  @Test
+  void batchBlockedByAnotherWriterIsRetried() throws Exception {
+    String db = dir.resolve("busy.db").toString();
+    AnalysisPersistenceService service = new AnalysisPersistenceService(db);
+    try (Connection other = DriverManager.getConnection("jdbc:sqlite:" + db);
+        Statement s = other.createStatement()) {
+      // Holds the write lock past the writer's first attempt (batch age plus busy timeout), not its retry
+      s.execute("BEGIN EXCLUSIVE");
+      service.saveSystemSnapshot(snapshot(10));
+      service.saveSystemSnapshot(snapshot(20));
+      Thread.sleep(5500);
+      s.execute("COMMIT");
+
+      assertTrue(service.flush(15_000), "the retried batch should settle");
+      assertEquals(0, service.getDroppedCount());
+      assertEquals(2, service.getSnapshotCount());
+      try (ResultSet rs = s.executeQuery("SELECT COUNT(*), SUM(used_ram) FROM system_snapshot")) {
+        assertEquals(2, rs.getLong(1));
+        assertEquals(30, rs.getLong(2));
+      }
+    } finally {
+      service.close();
+    }
+  }
+
+  @Test
+  void countsRowsPerNodeAcrossRestarts() throws Exception {
+    String db = dir.resolve("count.db").toString();
+    for (int open = 0; open < 2; open++) {
+      AnalysisPersistenceService service = new AnalysisPersistenceService(db);
+      try {
+        for (int i = 0; i < 100; i++)
+          service.saveSystemSnapshot("n" + (i % 3), snapshot(i));
+        assertTrue(service.flush(10_000));
+        int per = (open + 1) * 100;
+        assertEquals(per, service.getSnapshotCount());
+        assertEquals(per / 100 * 34, service.getSnapshotCount("n0"));
+        assertEquals(per / 100 * 33, service.getSnapshotCount("n2"));
+        assertEquals(0, service.getSnapshotCount("elsewhere"));
+      } finally {
+        service.close();
+      }
+    }
+  }
+
+  @Test
+  void closeWritesWhatIsQueued() throws Exception {
+    String db = dir.resolve("close.db").toString();
+    AnalysisPersistenceService service = new AnalysisPersistenceService(db);
+    for (int i = 0; i < 100; i++)
+      service.saveSystemSnapshot("n" + (i % 3), snapshot(i));
+    service.close();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db);
+        Statement s = c.createStatement();
+        ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM system_snapshot")) {
+      assertEquals(100, rs.getLong(1));
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package com.smcmap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.smcmap.model.SnapshotRollup;
+import com.smcmap.model.SnapshotSeries;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Databases written by earlier releases open with their history intact. */
+class SchemaMigrationTest {
+
+  private static final long MINUTE_MS = 60_000;
+  private static final long HOUR_MS = 60 * MINUTE_MS;
+  private static final DateTimeFormatter SQLITE_UTC = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+      .withZone(ZoneOffset.UTC);
+
+  @TempDir
+  Path dir;
+
+  /** Ten samples a minute apart, whole seconds, ending a few minutes ago. */
+  private static long[] recentTimestamps() {
+    long start = (System.currentTimeMillis() / 1000) * 1000 - 20 * MINUTE_MS;
+    long[] ts = new long[10];
+    for (int i = 0; i < ts.length; i++)
+      ts[i] = start + i * MINUTE_MS;
+    return ts;
+  }
+
+  private static int userVersion(String db) throws SQLException {
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db);
+        Statement s = c.createStatement();
+        ResultSet rs = s.executeQuery("PRAGMA user_version")) {
+      return rs.getInt(1);
+    }
+  }
+
+  private static void assertSeries(long[] ts, SnapshotSeries series) {
+    assertEquals(ts.length, series.size());
+    for (int i = 0; i < ts.length; i++) {
+      assertEquals(ts[i], series.getTimestamp(i), "ts " + i);
+      assertEquals(1000, series.getTotalRam(i));
+      assertEquals(100 + i, series.getUsedRam(i));
+      assertEquals(900 - i, series.getFreeRam(i));
+    }
+  }
+
+  private static long rollupSamples(List<SnapshotRollup> rollups) {
+    long n = 0;
+    for (SnapshotRollup r : rollups)
+      n += r.getSampleCount();
+    return n;
+  }
+
+  @Test
+  void migratesTextTimestampsFromTheFirstRelease() throws Exception {
+    String db = dir.resolve("v0.db").toString();
+    long[] ts = recentTimestamps();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db)) {
+      try (Statement s = c.createStatement()) {
+        s.execute("CREATE TABLE system_snapshot (id INTEGER PRIMARY KEY AUTOINCREMENT, total_ram BIGINT, "
+            + "used_ram BIGINT, free_ram BIGINT, timestamp DATETIME DEFAULT CURRENT_TIMESTAMP)");
+        // A row without a timestamp cannot be placed in time and is dropped
+        s.execute("INSERT INTO system_snapshot(total_ram, used_ram, free_ram, timestamp) VALUES(1, 1, 1, NULL)");
+      }
+      try (PreparedStatement p = c.prepareStatement(
+          "INSERT INTO system_snapshot(total_ram, used_ram, free_ram, timestamp) VALUES(1000, ?, ?, ?)")) {
+        for (int i = 0; i < ts.length; i++) {
+          p.setLong(1, 100 + i);
+          p.setLong(2, 900 - i);
+          p.setString(3, SQLITE_UTC.format(Instant.ofEpochMilli(ts[i])));
+          p.executeUpdate();
+        }
+      }
+    }
+
+    AnalysisPersistenceService service = new AnalysisPersistenceService(db);
+    try {
+      assertSeries(ts, service.getSeries(NodeRegistry.LOCAL_NODE_ID, 0, Long.MAX_VALUE));
+      assertEquals(ts.length, service.getSnapshotCount());
+      assertEquals(ts.length, service.getSnapshotCount(NodeRegistry.LOCAL_NODE_ID));
+      // Rollups are backfilled from the migrated rows
+      List<SnapshotRollup> minutes = service.getRollupHistory(NodeRegistry.LOCAL_NODE_ID, 0, Long.MAX_VALUE,
+          MINUTE_MS);
+      assertEquals(ts.length, minutes.size());
+      assertEquals(ts.length, rollupSamples(minutes));
+    } finally {
+      service.close();
+    }
+    assertEquals(2, userVersion(db));
+  }
+
+  @Test
+  void attributesEpochMillisHistoryToTheLocalNode() throws Exception {
+    String db = dir.resolve("v1.db").toString();
+    long[] ts = recentTimestamps();
+    // An hourly bucket from long before any raw row still on disk
+    long oldBucket = (ts[0] / HOUR_MS - 24 * 10) * HOUR_MS;
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + db)) {
+      try (Statement s = c.createStatement()) {
+        s.execute("CREATE TABLE system_snapshot (id INTEGER PRIMARY KEY AUTOINCREMENT, ts_ms INTEGER NOT NULL, "
+            + "total_ram BIGINT, used_ram BIGINT, free_ram BIGINT)");
+        for (String t : new String[] { "snapshot_rollup_1m", "snapshot_rollup_1h", "snapshot_rollup_1d" })
+          s.execute("CREATE TABLE " + t + " (bucket_start INTEGER PRIMARY KEY, sample_count INTEGER, "
+              + "total_ram BIGINT, min_used BIGINT, max_used BIGINT, sum_used BIGINT, "
+              + "min_free BIGINT, max_free BIGINT, sum_free BIGINT)");
+        s.execute("INSERT INTO snapshot_rollup_1h VALUES(" + oldBucket + ", 3600, 1000, 10, 30, 72000, "
+            + "970, 990, 3528000)");
+        s.execute("PRAGMA user_version = 1");
+      }
+      try (PreparedStatement p = c.prepareStatement(
+          "INSERT INTO system_snapshot(ts_ms, total_ram, used_ram, free_ram) VALUES(?, 1000, ?, ?)")) {
+        for (int i = 0; i < ts.length; i++) {
+          p.setLong(1, ts[i]);
+          p.setLong(2, 100 + i);
+          p.setLong(3, 900 - i);
+          p.executeUpdate();
+        }
+      }
+    }
+
+    for (int open = 0; open < 2; open++) {
+      // The second open finds the current version and must change nothing
+      AnalysisPersistenceService service = new AnalysisPersistenceService(db);
+      try {
+        assertSeries(ts, service.getSeries(NodeRegistry.LOCAL_NODE_ID, 0, Long.MAX_VALUE));
+        assertEquals(0, service.getSeries("elsewhere", 0, Long.MAX_VALUE).size());
+        List<SnapshotRollup> hours = service.getRollupHistory(NodeRegistry.LOCAL_NODE_ID, 0, Long.MAX_VALUE,
+            HOUR_MS);
+        assertEquals(1, hours.size());
+        SnapshotRollup r = hours.get(0);
+        assertEquals(oldBucket, r.getBucketStart());
+        assertEquals(3600, r.getSampleCount());
+        assertEquals(20, r.getAvgUsedRam());
+        assertEquals(980, r.getAvgFreeRam());
+      } finally {
+        service.close();
+      }
+      assertEquals(2, userVersion(db));
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.smcmap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.smcmap.model.SnapshotSeries;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SnapshotBlockCodecTest {
+
+  /** A 1 Hz poll with jitter, gaps, clock steps back and occasional total-RAM changes. */
+  private static SnapshotSeries series(long seed, int n) {
+    Random rnd = new Random(seed);
+    SnapshotSeries s = new SnapshotSeries(n);
+    long ts = 1_700_000_000_000L;
+    long total = 16L << 30;
+    long used = 6L << 30;
+    for (int i = 0; i < n; i++) {
+      int kind = rnd.nextInt(100);
+      if (kind < 80)
+        ts += 1000;
+      else if (kind < 90)
+        ts += 1000 + rnd.nextInt(200) - 100;
+      else if (kind < 96)
+        ts += rnd.nextInt(600_000);
+      else if (kind < 98)
+        ts -= rnd.nextInt(5000);
+      else
+        ts += rnd.nextLong() >>> 20;
+      if (rnd.nextInt(500) == 0)
+        total = (rnd.nextInt(64) + 1L) << 30;
+      used = Math.max(0, Math.min(total, used + (rnd.nextInt(1 << 24) - (1 << 23))));
+      long free = rnd.nextInt(10) == 0 ? rnd.nextLong() : total - used;
+      s.add(ts, total, used, free);
+    }
+    return s;
+  }
+
+  private static SnapshotSeries decode(byte[] block, int count, long fromMs, long toMs) throws IOException {
+    SnapshotSeries out = new SnapshotSeries();
+    SnapshotBlockCodec.decode(ByteBuffer.wrap(block), 0, count, fromMs, toMs, (t, total, used, free) -> {
+      out.add(t, total, used, free);
+      return true;
+    });
+    return out;
+  }
+
+  private static void assertRow(SnapshotSeries expected, int i, SnapshotSeries actual, int j) {
+    assertEquals(expected.getTimestamp(i), actual.getTimestamp(j), "ts " + i);
+    assertEquals(expected.getTotalRam(i), actual.getTotalRam(j), "total " + i);
+    assertEquals(expected.getUsedRam(i), actual.getUsedRam(j), "used " + i);
+    assertEquals(expected.getFreeRam(i), actual.getFreeRam(j), "free " + i);
+  }
+
+  @Test
+  void roundTripsIrregularSeries() throws IOException {
+    for (long seed = 1; seed <= 20; seed++) {
+      SnapshotSeries s = series(seed, 3000);
+      byte[] block = SnapshotBlockCodec.encode(s, 0, s.size());
+      SnapshotSeries back = decode(block, s.size(), Long.MIN_VALUE, Long.MAX_VALUE);
+      assertEquals(s.size(), back.size());
+      for (int i = 0; i < s.size(); i++)
+        assertRow(s, i, back, i);
+    }
+  }
+
+  @Test
+  void encodesASubRangeAtAnOffset() throws IOException {
+    SnapshotSeries s = series(42, 500);
+    byte[] block = SnapshotBlockCodec.encode(s, 100, 400);
+    // The archive stores blocks back to back; decode from a non-zero offset
+    byte[] file = new byte[block.length + 37];
+    System.arraycopy(block, 0, file, 37, block.length);
+    SnapshotSeries back = new SnapshotSeries();
+    SnapshotBlockCodec.decode(ByteBuffer.wrap(file), 37, 300, Long.MIN_VALUE, Long.MAX_VALUE, (t, a, b, c) -> {
+      back.add(t, a, b, c);
+      return true;
+    });
+    assertEquals(300, back.size());
+    for (int i = 0; i < 300; i++)
+      assertRow(s, 100 + i, back, i);
+  }
+
+  @Test
+  void singleSampleBlock() throws IOException {
+    SnapshotSeries s = new SnapshotSeries();
+    s.add(-5, Long.MAX_VALUE, Long.MIN_VALUE, 0);
+    SnapshotSeries back = decode(SnapshotBlockCodec.encode(s, 0, 1), 1, Long.MIN_VALUE, Long.MAX_VALUE);
+    assertEquals(1, back.size());
+    assertRow(s, 0, back, 0);
+  }
+
+  @Test
+  void steadyPollCostsAFewBitsPerSample() {
+    SnapshotSeries s = new SnapshotSeries();
+    for (int i = 0; i < 3600; i++)
+      s.add(1_000_000L + i * 1000L, 16L << 30, 8L << 30, 8L << 30);
+    // 32 bytes for the first sample, then three '0' bits plus used RAM's residual
+    assertTrue(SnapshotBlockCodec.encode(s, 0, s.size()).length < 32 + 3600, "steady samples should be tiny");
+  }
+
+  @Test
+  void filtersByTimeAndStopsWhenAsked() throws IOException {
+    SnapshotSeries s = new SnapshotSeries();
+    for (int i = 0; i < 100; i++)
+      s.add(i * 1000L, 100, i, 100 - i);
+    byte[] block = SnapshotBlockCodec.encode(s, 0, 100);
+    SnapshotSeries window = decode(block, 100, 10_000, 20_000);
+    assertEquals(10, window.size());
+    assertEquals(10_000, window.getTimestamp(0));
+    assertEquals(19_000, window.getTimestamp(9));
+
+    int[] seen = { 0 };
+    boolean completed = SnapshotBlockCodec.decode(ByteBuffer.wrap(block), 0, 100, 0, Long.MAX_VALUE,
+        (t, a, b, c) -> ++seen[0] < 5);
+    assertFalse(completed);
+    assertEquals(5, seen[0]);
+  }
+}
@@ -0,0 +1,111 @@
+package com.smcmap.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.smcmap.model.ProcessSnapshot;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class StatsStateTest {
+
+  private static final String FULL = "{\"seq\":7,\"memory\":{\"totalRam\":100,\"usedRam\":60,\"freeRam\":40},"
+      + "\"processes\":[{\"pid\":1,\"name\":\"init\",\"memoryUsed\":10},"
+      + "{\"pid\":2,\"name\":\"a\\\"b\",\"memoryUsed\":30},"
+      + "{\"pid\":3,\"name\":\"c\",\"memoryUsed\":20}],"
+      + "\"cache\":{\"algorithm\":\"LRU\",\"hits\":9,\"misses\":1,\"hitRatio\":0.9}}";
+
+  /** 7 -> 8: pid 1 removed, 2 grows, 3 is reused by a new program, 4 starts. */
+  private static final String DELTA = "{\"seq\":8,\"base\":7,"
+      + "\"memory\":{\"totalRam\":100,\"usedRam\":70,\"freeRam\":30},"
+      + "\"added\":[{\"pid\":3,\"name\":\"d\",\"memoryUsed\":5},{\"pid\":4,\"name\":\"e\",\"memoryUsed\":50}],"
+      + "\"changed\":[{\"pid\":2,\"memoryUsed\":35}],\"removed\":[1],\"cache\":{\"algorithm\":\"LRU\"}}";
+
+  private static StatsDecoder.Update update(String json) throws IOException {
+    return StatsDecoder.decodeUpdate(new StringReader(json));
+  }
+
+  private static String table(SystemStatsService.SystemDataResult r) {
+    StringBuilder sb = new StringBuilder();
+    for (ProcessSnapshot p : r.processes)
+      sb.append(p.getPid()).append(':').append(p.getName()).append(':').append(p.getMemoryUsed()).append(' ');
+    return sb.toString().trim();
+  }
+
+  @Test
+  void decodesAFullSample() throws IOException {
+    StatsDecoder.Update u = update(FULL);
+    assertEquals(7, u.seq);
+    assertFalse(u.isDelta());
+    SystemStatsService.SystemDataResult r = StatsDecoder.decode(new StringReader(FULL));
+    assertEquals(60, r.systemSnapshot.getUsedRam());
+    assertEquals("a\"b", r.processes.get(1).getName());
+    assertEquals(9, r.cacheStats.getHits());
+  }
+
+  @Test
+  void plainDecodeRefusesADelta() {
+    assertThrows(IOException.class, () -> StatsDecoder.decode(new StringReader(DELTA)));
+  }
+
+  @Test
+  void mergesADeltaWithoutTouchingTheHeldSample() throws IOException {
+    StatsState state = new StatsState();
+    assertEquals(-1, state.getVersion());
+    SystemStatsService.SystemDataResult first = state.apply(update(FULL));
+    assertEquals("2:a\"b:30 3:c:20 1:init:10", table(first));
+    assertEquals(7, state.getVersion());
+
+    SystemStatsService.SystemDataResult second = state.apply(update(DELTA));
+    assertEquals("4:e:50 2:a\"b:35 3:d:5", table(second));
+    assertEquals(70, second.systemSnapshot.getUsedRam());
+    assertEquals(8, state.getVersion());
+    assertSame(second, state.current());
+    // Whoever still holds the first result sees it unchanged
+    assertEquals("2:a\"b:30 3:c:20 1:init:10", table(first));
+  }
+
+  @Test
+  void rejectsADeltaAgainstAnotherVersion() throws IOException {
+    StatsState state = new StatsState();
+    assertNull(state.apply(update(DELTA)), "nothing held yet");
+    state.apply(update(FULL.replace("\"seq\":7", "\"seq\":6")));
+    assertNull(state.apply(update(DELTA)));
+    assertEquals(6, state.getVersion());
+  }
+
+  @Test
+  void rejectsAChangeToAnUnknownPidAndKeepsState() throws IOException {
+    StatsState state = new StatsState();
+    SystemStatsService.SystemDataResult first = state.apply(update(FULL));
+    String bad = DELTA.replace("\"changed\":[{\"pid\":2,", "\"changed\":[{\"pid\":99,");
+    assertNull(state.apply(update(bad)));
+    assertSame(first, state.current());
+    // Nothing of the rejected delta was merged: an empty delta still yields the first table
+    String empty = "{\"seq\":8,\"base\":7,\"memory\":{\"totalRam\":100,\"usedRam\":60,\"freeRam\":40}}";
+    SystemStatsService.SystemDataResult same = state.apply(update(empty));
+    assertNotNull(same);
+    assertEquals(table(first), table(same));
+  }
+
+  @Test
+  void fullSampleAfterAnAgentRestartReplacesEverything() throws IOException {
+    StatsState state = new StatsState();
+    state.apply(update(FULL));
+    state.apply(update(DELTA));
+    String restarted = "{\"seq\":1,\"memory\":{\"totalRam\":100,\"usedRam\":1,\"freeRam\":99},"
+        + "\"processes\":[{\"pid\":9,\"name\":\"z\",\"memoryUsed\":1}]}";
+    List<ProcessSnapshot> list = state.apply(update(restarted)).processes;
+    assertEquals(1, list.size());
+    assertEquals(9, list.get(0).getPid());
+    assertEquals(1, state.getVersion());
+  }
+}
@@ -0,0 +1,43 @@
+package com.smcmap.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LogLinearBucketsTest {
+
+  @Test
+  void bucketsAreContiguousAndCoverEveryLong() {
+    for (int subBits : new int[] { 1, 3, 5, 8 }) {
+      LogLinearBuckets b = new LogLinearBuckets(subBits);
+      long prevUpper = 0;
+      for (int i = 0; i < b.count(); i++) {
+        long lo = b.lower(i);
+        assertEquals(prevUpper, lo, "bucket " + i + " of " + subBits);
+        assertEquals(i, b.bucket(lo), "lower edge of " + i);
+        assertEquals(i, b.bucket(b.upper(i) - 1), "upper edge of " + i);
+        prevUpper = b.upper(i);
+      }
+      assertEquals(Long.MAX_VALUE, prevUpper);
+      assertEquals(b.count() - 1, b.bucket(Long.MAX_VALUE));
+    }
+  }
+
+  @Test
+  void relativeWidthIsBoundedBySubBits() {
+    Random rnd = new Random(9);
+    for (int subBits : new int[] { 3, 5 }) {
+      LogLinearBuckets b = new LogLinearBuckets(subBits);
+      for (int k = 0; k < 100_000; k++) {
+        long v = (rnd.nextLong() >>> 1) >>> rnd.nextInt(63);
+        int i = b.bucket(v);
+        assertTrue(b.lower(i) <= v && v < b.upper(i) || i == b.count() - 1, v + " outside bucket " + i);
+        if (b.lower(i) >= 1L << subBits && i < b.count() - 1)
+          assertTrue(b.upper(i) - b.lower(i) <= b.lower(i) >> subBits, "bucket " + i + " too wide");
+      }
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.smcmap.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.PrimitiveIterator;
+
+import org.junit.jupiter.api.Test;
+
+class MissRatioCurveTest {
+
+  private static final long BLOCK = 64;
+  /** Powers of two are bucket edges, where the exact curve has no rounding at all. */
+  private static final long[] CACHE_BLOCKS = { 1, 2, 8, 32, 64, 256, 1024, 4096 };
+
+  private static long[] addresses(Workload w, int count) {
+    long[] a = new long[count];
+    PrimitiveIterator.OfLong it = w.iterator(count);
+    for (int i = 0; i < count; i++)
+      a[i] = it.nextLong();
+    return a;
+  }
+
+  private static double lruMissRatio(long[] trace, long cacheBlocks) {
+    CacheSimulationEngine lru = new CacheSimulationEngine(cacheBlocks * BLOCK, BLOCK, "LRU");
+    lru.accessAll(trace, 0, trace.length);
+    return 1 - lru.getResult().getHitRatio();
+  }
+
+  private static void assertExactMatchesLru(Workload w, int count) {
+    long[] trace = addresses(w, count);
+    MissRatioCurve curve = MissRatioCurve.exact(BLOCK);
+    curve.accessAll(trace, 0, trace.length);
+    assertEquals(count, curve.getAccesses());
+    for (long blocks : CACHE_BLOCKS)
+      assertEquals(lruMissRatio(trace, blocks), curve.missRatio(blocks * BLOCK), 1e-12,
+          w + " at " + blocks + " blocks");
+  }
+
+  @Test
+  void exactCurveEqualsLruSimulation() {
+    // Long enough that the access-time tree is compacted several times
+    assertExactMatchesLru(Workload.parse("zipf:blocks=8192,theta=0.99,seed=1"), 300_000);
+    assertExactMatchesLru(Workload.parse("uniform:blocks=2048,seed=2"), 200_000);
+    assertExactMatchesLru(Workload.parse("loop:blocks=1000"), 100_000);
+  }
+
+  @Test
+  void exactCurveCountsDistinctBlocks() {
+    MissRatioCurve curve = MissRatioCurve.exact(BLOCK);
+    curve.accessAll(addresses(Workload.parse("loop:blocks=777"), 10_000), 0, 10_000);
+    assertEquals(777, curve.getDistinctBlocks());
+    assertEquals(777, curve.getTrackedBlocks());
+  }
+
+  @Test
+  void fixedSizeSamplingTracksAPhaseChange() {
+    // A small working set, then one far beyond maxBlocks: the rate drops mid-trace,
+    // and what was counted at the old rate must not outweigh the rest
+    Workload w = Workload.phased(200_000, Workload.uniform(256, BLOCK, 1), Workload.uniform(1 << 17, BLOCK, 2),
+        Workload.zipf(1 << 15, 0.9, BLOCK, 3));
+    long[] trace = addresses(w, 1_200_000);
+    MissRatioCurve exact = MissRatioCurve.exact(BLOCK);
+    MissRatioCurve sampled = MissRatioCurve.sampled(BLOCK, 0.1, 2048);
+    exact.accessAll(trace, 0, trace.length);
+    sampled.accessAll(trace, 0, trace.length);
+    assertTrue(sampled.getSampleRate() < 0.05, "the threshold should have dropped");
+    assertTrue(sampled.getTrackedBlocks() <= 2048);
+    // Below about 1/rate blocks the sampled distances are too coarse to compare
+    for (long blocks = 1024; blocks <= 1 << 18; blocks *= 2) {
+      double expected = exact.missRatio(blocks * BLOCK);
+      assertEquals(expected, sampled.missRatio(blocks * BLOCK), 0.03, blocks + " blocks");
+    }
+  }
+}
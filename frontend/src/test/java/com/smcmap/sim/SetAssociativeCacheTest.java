@@ -0,0 +1,51 @@
+package com.smcmap.sim;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.PrimitiveIterator;
+
+import org.junit.jupiter.api.Test;
+
+class SetAssociativeCacheTest {
+
+  private static final long BLOCK = 64;
+  private static final int BLOCKS = 64;
+
+  /** One fully associative set must evict exactly what the engine's policy does. */
+  private static void assertMatchesEngine(String policy, Workload w) {
+    SetAssociativeCache set = new SetAssociativeCache(BLOCKS, BLOCKS, SetAssociativeCache.policyOf(policy));
+    CacheSimulationEngine engine = new CacheSimulationEngine(BLOCKS * BLOCK, BLOCK, policy);
+    PrimitiveIterator.OfLong it = w.iterator(200_000);
+    long hits = 0;
+    for (int i = 0; it.hasNext(); i++) {
+      long address = it.nextLong();
+      engine.access(address);
+      if (set.lookup(address / BLOCK))
+        hits++;
+      else
+        set.insert(address / BLOCK);
+      assertEquals(engine.getResult().getHits(), hits, policy + " diverged at access " + i);
+    }
+  }
+
+  @Test
+  void fullyAssociativeSetMatchesTheEngine() {
+    for (String policy : new String[] { "FIFO", "LRU", "LFU" }) {
+      assertMatchesEngine(policy, Workload.parse("zipf:blocks=512,theta=0.8,seed=4"));
+      assertMatchesEngine(policy, Workload.parse("uniform:blocks=96,seed=5"));
+    }
+  }
+
+  @Test
+  void lfuTieGoesToTheLeastRecentlyUsed() {
+    SetAssociativeCache set = new SetAssociativeCache(2, 2, SetAssociativeCache.LFU);
+    set.insert(1);
+    set.insert(2);
+    set.lookup(2);
+    set.lookup(1);
+    // Both used twice; 2 was used less recently, though 1 was inserted first
+    assertTrue(set.insert(3));
+    assertEquals(2, set.victim());
+  }
+}
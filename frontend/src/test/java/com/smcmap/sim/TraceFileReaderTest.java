@@ -0,0 +1,165 @@
+package com.smcmap.sim;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Every format is read with windows of a few bytes as well as one large
+ * window, so lines, tokens and varints straddle window boundaries at every
+ * possible offset.
+ */
+class TraceFileReaderTest {
+
+  private static final long[] WINDOWS = { 1, 2, 3, 5, 7, 64, 1 << 20 };
+
+  @TempDir
+  Path dir;
+
+  private Path write(String name, byte[] content) throws IOException {
+    Path p = dir.resolve(name);
+    Files.write(p, content);
+    return p;
+  }
+
+  private Path write(String name, String content) throws IOException {
+    return write(name, content.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /** Everything in the file, read in batches of {@code batch}. */
+  private static long[] readAll(Path p, TraceFileReader.Format format, long window, int batch) throws IOException {
+    long[] out = new long[64];
+    int n = 0;
+    try (TraceFileReader r = new TraceFileReader(p, format, window)) {
+      long[] buf = new long[batch];
+      int k;
+      while ((k = r.read(buf, 0, batch)) > 0) {
+        if (n + k > out.length)
+          out = Arrays.copyOf(out, Math.max(out.length * 2, n + k));
+        System.arraycopy(buf, 0, out, n, k);
+        n += k;
+      }
+      assertEquals(n, r.getCount());
+      assertEquals(r.getSize(), r.getPosition());
+    }
+    return Arrays.copyOf(out, n);
+  }
+
+  private static void assertReadsEverywhere(long[] expected, Path p, TraceFileReader.Format format) throws IOException {
+    for (long window : WINDOWS) {
+      for (int batch : new int[] { 1, 3, 4096 })
+        assertArrayEquals(expected, readAll(p, format, window, batch), "window " + window + ", batch " + batch);
+    }
+  }
+
+  @Test
+  void smt1MatchesTheStreamEncoder() throws IOException {
+    Path p = write("t.smt", TraceFormatTest.encode(TraceFormatTest.EDGE_ADDRESSES));
+    assertEquals(TraceFileReader.Format.SMT1, TraceFileReader.detect(p));
+    assertReadsEverywhere(TraceFormatTest.EDGE_ADDRESSES, p, TraceFileReader.Format.SMT1);
+  }
+
+  @Test
+  void smt1RandomTraceAcrossWindows() throws IOException {
+    Random rnd = new Random(3);
+    long[] addresses = new long[5000];
+    for (int i = 0; i < addresses.length; i++)
+      addresses[i] = rnd.nextInt(4) == 0 ? rnd.nextLong() : rnd.nextInt(1 << 20) * 64L;
+    Path p = write("r.smt", TraceFormatTest.encode(addresses));
+    for (long window : new long[] { 1, 7, 4096 })
+      assertArrayEquals(addresses, readAll(p, TraceFileReader.Format.SMT1, window, 1000));
+  }
+
+  @Test
+  void smt1RejectsTruncatedVarint() throws IOException {
+    byte[] trace = TraceFormatTest.encode(new long[] { 1L << 50 });
+    Path p = write("cut.smt", Arrays.copyOf(trace, trace.length - 1));
+    for (long window : WINDOWS)
+      assertThrows(IOException.class, () -> readAll(p, TraceFileReader.Format.SMT1, window, 16));
+  }
+
+  @Test
+  void hexAcceptsPrefixesCommentsBlankLinesAndCrlf() throws IOException {
+    String text = "# header comment\n"
+        + "0x1000\n"
+        + "\n"
+        + "2000 trailing words are ignored\r\n"
+        + "0XABCDEF # comment after the address\n"
+        + "   ff\t\n"
+        + "deadbeefcafebabe\n"
+        + "0\n"
+        + "7fffffffffffffff"; // no final newline
+    Path p = write("t.hex", text);
+    assertEquals(TraceFileReader.Format.HEX, TraceFileReader.detect(p));
+    assertReadsEverywhere(new long[] { 0x1000, 0x2000, 0xabcdef, 0xff, 0xdeadbeefcafebabeL, 0, Long.MAX_VALUE }, p,
+        TraceFileReader.Format.HEX);
+  }
+
+  @Test
+  void dinKeepsReadsWritesAndFetchesOnly() throws IOException {
+    String text = "0 1000 4\n"
+        + "1 2000\n"
+        + "2 3000 8\n"
+        + "3 4000\n" // escape: skipped
+        + "4 5000\n" // flush: skipped
+        + "0 6000";
+    Path p = write("t.din", text);
+    assertEquals(TraceFileReader.Format.DIN, TraceFileReader.detect(p));
+    assertReadsEverywhere(new long[] { 0x1000, 0x2000, 0x3000, 0x6000 }, p, TraceFileReader.Format.DIN);
+  }
+
+  @Test
+  void malformedLineReportsItsNumber() throws IOException {
+    Path p = write("bad.hex", "10\n20\nzz\n");
+    for (long window : WINDOWS) {
+      IOException e = assertThrows(IOException.class, () -> readAll(p, TraceFileReader.Format.HEX, window, 16));
+      assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+    }
+  }
+
+  @Test
+  void bareHexPrefixIsMalformed() throws IOException {
+    Path p = write("bad.hex", "0x\n");
+    assertThrows(IOException.class, () -> readAll(p, TraceFileReader.Format.HEX, 1, 16));
+  }
+
+  @Test
+  void progressListenerCancels() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 100; i++)
+      text.append(Integer.toHexString(i * 64)).append('\n');
+    Path p = write("c.hex", text.toString());
+    try (TraceFileReader r = new TraceFileReader(p, TraceFileReader.Format.HEX, 16)) {
+      r.setProgressListener(reader -> reader.getCount() < 20);
+      long[] buf = new long[10];
+      int total = 0, n;
+      while ((n = r.read(buf, 0, buf.length)) > 0)
+        total += n;
+      assertEquals(20, total);
+      assertTrue(r.isCancelled());
+    }
+  }
+
+  @Test
+  void iteratorViewMatchesBatchReads() throws IOException {
+    Path p = write("i.smt", TraceFormatTest.encode(TraceFormatTest.EDGE_ADDRESSES));
+    try (TraceFileReader r = new TraceFileReader(p, TraceFileReader.Format.SMT1, 3)) {
+      long[] seen = new long[TraceFormatTest.EDGE_ADDRESSES.length];
+      int i = 0;
+      while (r.hasNext())
+        seen[i++] = r.nextLong();
+      assertArrayEquals(TraceFormatTest.EDGE_ADDRESSES, seen);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.smcmap.sim;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongConsumer;
+
+import org.junit.jupiter.api.Test;
+
+class TraceFormatTest {
+
+  /** Addresses that stress the zigzag delta: sign flips, the extremes and full-width jumps. */
+  static final long[] EDGE_ADDRESSES = { 0, 64, 0, -1, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 63,
+      127, 128, 16383, 16384, 0xdeadbeefL, 42, 42, -64 };
+
+  static byte[] encode(long[] addresses) throws IOException {
+    try (InputStream in = new TraceInputStream(Arrays.stream(addresses).iterator())) {
+      return in.readAllBytes();
+    }
+  }
+
+  static long[] decode(byte[] trace) throws IOException {
+    long[] out = new long[16];
+    int[] n = { 0 };
+    TraceFormat.decode(new ByteArrayInputStream(trace), a -> {
+      if (n[0] == out.length)
+        throw new AssertionError("more addresses than expected");
+      out[n[0]++] = a;
+    });
+    return Arrays.copyOf(out, n[0]);
+  }
+
+  @Test
+  void zigzagRoundTripsEveryValue() {
+    for (long v : new long[] { 0, 1, -1, 63, -64, Long.MAX_VALUE, Long.MIN_VALUE })
+      assertEquals(v, TraceFormat.unzigzag(TraceFormat.zigzag(v)));
+    assertEquals(1, TraceFormat.zigzag(-1));
+    assertEquals(2, TraceFormat.zigzag(1));
+  }
+
+  @Test
+  void edgeAddressesRoundTrip() throws IOException {
+    byte[] trace = encode(EDGE_ADDRESSES);
+    assertArrayEquals(TraceFormat.MAGIC, Arrays.copyOf(trace, 4));
+    assertArrayEquals(EDGE_ADDRESSES, decode(trace));
+  }
+
+  @Test
+  void longRandomTraceRoundTripsThroughSmallReads() throws IOException {
+    Random rnd = new Random(7);
+    long[] addresses = new long[50_000];
+    long a = 0;
+    for (int i = 0; i < addresses.length; i++) {
+      a += rnd.nextInt(10) == 0 ? rnd.nextLong() : (rnd.nextInt(64) - 32) * 64L;
+      addresses[i] = a;
+    }
+    // Read back in odd-sized pieces so the encoder's buffer refills mid-varint
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (InputStream in = new TraceInputStream(Arrays.stream(addresses).iterator())) {
+      byte[] piece = new byte[13];
+      int n;
+      while ((n = in.read(piece, 0, piece.length)) > 0)
+        bytes.write(piece, 0, n);
+    }
+    long count = TraceFormat.decode(new ByteArrayInputStream(bytes.toByteArray()), new LongConsumer() {
+      int i;
+
+      @Override
+      public void accept(long v) {
+        assertEquals(addresses[i], v, "address " + i);
+        i++;
+      }
+    });
+    assertEquals(addresses.length, count);
+  }
+
+  @Test
+  void emptyTraceIsJustTheMagic() throws IOException {
+    byte[] trace = encode(new long[0]);
+    assertArrayEquals(TraceFormat.MAGIC, trace);
+    assertEquals(0, decode(trace).length);
+  }
+
+  @Test
+  void rejectsMissingMagic() {
+    assertThrows(IOException.class, () -> decode(new byte[] { 'S', 'M', 'T', '2', 0 }));
+  }
+
+  @Test
+  void rejectsTruncatedVarint() throws IOException {
+    byte[] trace = encode(new long[] { 1L << 40 });
+    byte[] cut = Arrays.copyOf(trace, trace.length - 1);
+    assertThrows(EOFException.class, () -> decode(cut));
+  }
+
+  @Test
+  void rejectsOverlongVarint() {
+    byte[] trace = new byte[4 + 11];
+    System.arraycopy(TraceFormat.MAGIC, 0, trace, 0, 4);
+    Arrays.fill(trace, 4, trace.length, (byte) 0x80);
+    assertThrows(IOException.class, () -> decode(trace));
+  }
+}
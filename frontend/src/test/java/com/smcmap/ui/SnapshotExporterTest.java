@@ -0,0 +1,63 @@
+package com.smcmap.ui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotExporterTest {
+
+  private static final long MB = 1024 * 1024;
+
+  @TempDir
+  Path dir;
+
+  private File export(String format, int rows) throws IOException {
+    File f = dir.resolve("out." + format).toFile();
+    try (SnapshotExporter out = SnapshotExporter.open(f, format, "Export test")) {
+      for (int i = 0; i < rows; i++)
+        out.row(1_700_000_000_000L + i * 1000L, 16384 * MB, (1000 + i) * MB, (15384 - i) * MB);
+      assertEquals(rows, out.getRowCount());
+    }
+    return f;
+  }
+
+  @Test
+  void pdfStartsANewPageWhenOneFills() throws IOException {
+    try (PDDocument doc = Loader.loadPDF(export("pdf", 1000))) {
+      // 44 rows on the first page under the title, 46 on each after
+      assertEquals(22, doc.getNumberOfPages());
+      PDFTextStripper text = new PDFTextStripper();
+      text.setStartPage(22);
+      text.setEndPage(22);
+      String last = text.getText(doc);
+      assertTrue(last.contains("| 1999"), last);
+      assertTrue(last.contains("Page 22"), last);
+    }
+  }
+
+  @Test
+  void emptyPdfStillHasItsHeaderPage() throws IOException {
+    try (PDDocument doc = Loader.loadPDF(export("pdf", 0))) {
+      assertEquals(1, doc.getNumberOfPages());
+      assertTrue(new PDFTextStripper().getText(doc).contains("Export test"));
+    }
+  }
+
+  @Test
+  void csvHasOneLinePerRow() throws IOException {
+    List<String> lines = Files.readAllLines(export("csv", 3).toPath());
+    assertEquals(4, lines.size());
+    assertTrue(lines.get(3).endsWith(",16384,1002,15382"), lines.get(3));
+  }
+}